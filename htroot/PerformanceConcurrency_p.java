@@ -75,6 +75,11 @@ public class PerformanceConcurrency_p {
             prop.putNum("table_" + c + "_blockwritetime", passontime / cycles);
             prop.putNum("table_" + c + "_blockwritepercent", 100 * passontime / passontime_total);
             prop.putNum("table_" + c + "_totalcycles", p.getExecCount());
+            prop.putNum("table_" + c + "_latency50", p.getLatencyHistogram().getPercentile(50));
+            prop.putNum("table_" + c + "_latency95", p.getLatencyHistogram().getPercentile(95));
+            prop.putNum("table_" + c + "_latency99", p.getLatencyHistogram().getPercentile(99));
+            prop.putNum("table_" + c + "_batchsize", p.getAverageBatchSize());
+            prop.putNum("table_" + c + "_throughput", exectime == 0 ? 0 : 1000.0d * p.getJobCount() / exectime);
 
             // set a color for the line to show problems
             boolean problem = false;
@@ -243,6 +243,11 @@ public class PerformanceMemory_p {
         prop.putNum("searchevent.miss", SearchEventCache.cacheMiss);
         prop.putNum("searchevent.insert", SearchEventCache.cacheInsert);
         prop.putNum("searchevent.delete", SearchEventCache.cacheDelete);
+        prop.putNum("searchresult.size", SearchEventCache.resultCache.size());
+        prop.putNum("searchresult.hit", SearchEventCache.resultCache.cacheHit);
+        prop.putNum("searchresult.miss", SearchEventCache.resultCache.cacheMiss);
+        prop.putNum("searchresult.insert", SearchEventCache.resultCache.cacheInsert);
+        prop.putNum("searchresult.delete", SearchEventCache.resultCache.cacheEvict);
         // return rewrite values for templates
         return prop;
     }
@@ -0,0 +1,69 @@
+// servlets_p.java
+// first published on http://yacy.net
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+import java.io.File;
+import java.io.IOException;
+
+import net.yacy.cora.protocol.RequestHeader;
+import net.yacy.http.servlets.ServletRegistry;
+import net.yacy.search.SwitchboardConstants;
+import net.yacy.server.serverObjects;
+import net.yacy.server.serverSwitch;
+
+public class servlets_p {
+
+    public static serverObjects respond(@SuppressWarnings("unused") final RequestHeader header, @SuppressWarnings("unused") final serverObjects post, final serverSwitch env) {
+
+        final serverObjects prop = new serverObjects();
+        final File htrootPath = env.getAppPath(SwitchboardConstants.HTROOT_PATH, SwitchboardConstants.HTROOT_PATH_DEFAULT);
+        String htroot;
+        try {
+            htroot = htrootPath.getCanonicalPath(); // the class files are registered with their canonical path
+        } catch (final IOException e) {
+            htroot = htrootPath.getAbsolutePath();
+        }
+
+        // the servlets which took most of the time come first
+        int c = 0;
+        for (final ServletRegistry.Servlet servlet: ServletRegistry.shared.servletsByTime()) {
+            String name = servlet.getClassFile().getPath();
+            if (name.startsWith(htroot)) name = name.substring(htroot.length() + 1);
+            if (name.endsWith(".class")) name = name.substring(0, name.length() - 6);
+            prop.putXML("servlets_" + c + "_name", name.replace('\\', '/'));
+            prop.put("servlets_" + c + "_calls", servlet.getCalls());
+            prop.put("servlets_" + c + "_errors", servlet.getErrors());
+            prop.put("servlets_" + c + "_time", servlet.getTime());
+            prop.put("servlets_" + c + "_average", Math.round(servlet.getAverageTime() * 100.0d) / 100.0d);
+            prop.put("servlets_" + c + "_max", servlet.getMaxTime());
+            // the latency histogram up to the last bucket which is not empty
+            int last = ServletRegistry.LATENCY_BUCKETS - 1;
+            while (last > 0 && servlet.getLatencyCount(last) == 0) last--;
+            for (int i = 0; i <= last; i++) {
+                final long bound = ServletRegistry.latencyBound(i);
+                prop.put("servlets_" + c + "_latency_" + i + "_below", bound == Long.MAX_VALUE ? "" : Long.toString(bound));
+                prop.put("servlets_" + c + "_latency_" + i + "_count", servlet.getLatencyCount(i));
+            }
+            prop.put("servlets_" + c + "_latency", last + 1);
+            c++;
+        }
+        prop.put("servlets", c);
+
+        // return rewrite properties
+        return prop;
+    }
+
+}
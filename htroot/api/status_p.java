@@ -27,12 +27,17 @@
 
 import java.io.IOException;
 
+import net.yacy.cora.federate.solr.connector.ConcurrentUpdateSolrConnector;
+import net.yacy.cora.federate.solr.connector.SolrConnector;
+import net.yacy.cora.protocol.Domains;
 import net.yacy.cora.protocol.RequestHeader;
 import net.yacy.cora.util.Memory;
 import net.yacy.crawler.CrawlSwitchboard;
 import net.yacy.crawler.data.CrawlProfile;
+import net.yacy.kelondro.index.OpenFileIndexPool;
 import net.yacy.kelondro.index.RowHandleSet;
 import net.yacy.kelondro.io.ByteCount;
+import net.yacy.kelondro.rwi.IODispatcher;
 import net.yacy.kelondro.util.MemoryControl;
 import net.yacy.kelondro.workflow.WorkflowProcessor;
 import net.yacy.search.Switchboard;
@@ -92,10 +97,59 @@ public class status_p {
         prop.putNum("rwipublictextSize", segment.RWICount());
         prop.putNum("rwipublictextSegmentCount", segment.RWISegmentCount());
 
+        // dump and merge jobs of the RWI index
+        final IODispatcher merger = segment.getMerger();
+        prop.putNum("rwiMergerQueue", merger == null ? 0 : merger.getQueueDepth());
+        prop.putNum("rwiMergerRunning", merger == null ? 0 : merger.getRunningMerges());
+        prop.putNum("rwiMergerConcurrency", merger == null ? 0 : merger.getMergeConcurrency());
+        prop.putNum("rwiMergerDumps", merger == null ? 0 : merger.getDumpCount());
+        prop.putNum("rwiMergerMerges", merger == null ? 0 : merger.getMergeCount());
+        prop.putNum("rwiMergerDumped", merger == null ? 0 : merger.getBytesDumped());
+        prop.putNum("rwiMergerMerged", merger == null ? 0 : merger.getBytesMerged());
+        prop.putNum("rwiMergerAmplification", merger == null ? 0.0d : merger.getMergeAmplification());
+
+        // solr update buffer
+        final SolrConnector defaultConnector = fulltext.getDefaultConnector();
+        prop.putNum("solrBufferSize", defaultConnector.bufferSize());
+        if (defaultConnector instanceof ConcurrentUpdateSolrConnector) {
+            final ConcurrentUpdateSolrConnector cusc = (ConcurrentUpdateSolrConnector) defaultConnector;
+            prop.putNum("solrBufferFlushed", cusc.getFlushedDocuments());
+            prop.putNum("solrBufferFlushes", cusc.getFlushLatency().getCount());
+            prop.putNum("solrBufferLatency50", cusc.getFlushLatency().getPercentile(50));
+            prop.putNum("solrBufferLatency95", cusc.getFlushLatency().getPercentile(95));
+            prop.putNum("solrBufferStalls", cusc.getStallCount());
+            prop.putNum("solrBufferStallTime", cusc.getStallTime());
+        } else {
+            prop.putNum("solrBufferFlushed", 0);
+            prop.putNum("solrBufferFlushes", 0);
+            prop.putNum("solrBufferLatency50", 0);
+            prop.putNum("solrBufferLatency95", 0);
+            prop.putNum("solrBufferStalls", 0);
+            prop.putNum("solrBufferStallTime", 0);
+        }
+
         // loader queue
         prop.putNum("loaderSize", sb.crawlQueues.activeWorkerEntries().size());
         prop.putNum("loaderMax", sb.getConfigLong(SwitchboardConstants.CRAWLER_THREADS_ACTIVE_MAX, 10));
 
+        // dns cache
+        prop.putNum("dnsCacheHits", Domains.nameCacheHitSize());
+        prop.putNum("dnsCacheMisses", Domains.nameCacheMissSize());
+        prop.putNum("dnsCacheHitRate", Domains.nameCacheHitRate());
+        prop.putNum("dnsLookups", Domains.lookupCount());
+        prop.putNum("dnsLookupLatency", Domains.lookupLatency());
+        prop.putNum("dnsLookupTimeouts", Domains.lookupTimeouts());
+        prop.putNum("dnsPrefetched", Domains.prefetchCount());
+        prop.putNum("dnsPrefetchQueue", Domains.prefetchQueueSize());
+
+        // opened files of the onDemand crawl queues
+        prop.putNum("queueFilesOpen", OpenFileIndexPool.shared.size());
+        prop.putNum("queueFilesMax", OpenFileIndexPool.shared.getMaxOpen());
+        prop.putNum("queueFilesHits", OpenFileIndexPool.shared.getHits());
+        prop.putNum("queueFilesMisses", OpenFileIndexPool.shared.getMisses());
+        prop.putNum("queueFilesEvictions", OpenFileIndexPool.shared.getEvictions());
+        prop.putNum("queueFilesOpenTime", OpenFileIndexPool.shared.getOpenTime());
+
         //local crawl queue
         prop.putNum("localCrawlSize", sb.getThread(SwitchboardConstants.CRAWLJOB_LOCAL_CRAWL).getJobCount());
         prop.put("localCrawlState", sb.crawlJobIsPaused(SwitchboardConstants.CRAWLJOB_LOCAL_CRAWL) ? STATE_PAUSED : STATE_RUNNING);
@@ -29,14 +29,17 @@
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
 
 import net.yacy.cora.document.encoding.ASCII;
 import net.yacy.cora.document.encoding.UTF8;
 import net.yacy.cora.document.feed.RSSMessage;
 import net.yacy.cora.federate.yacy.Distribution;
+import net.yacy.cora.order.Base64Order;
 import net.yacy.cora.protocol.HeaderFramework;
 import net.yacy.cora.protocol.RequestHeader;
 import net.yacy.cora.storage.HandleSet;
@@ -44,6 +47,7 @@ import net.yacy.cora.util.ConcurrentLog;
 import net.yacy.cora.util.Memory;
 import net.yacy.cora.util.SpaceExceededException;
 import net.yacy.kelondro.data.word.Word;
+import net.yacy.kelondro.data.word.WordReferenceCodec;
 import net.yacy.kelondro.data.word.WordReferenceRow;
 import net.yacy.kelondro.index.RowHandleSet;
 import net.yacy.kelondro.util.FileUtils;
@@ -96,7 +100,7 @@ public final class transferRWI {
             prop.put("result", result);
             return prop;
         }
-        if (!post.containsKey("indexes")) {
+        if (!post.containsKey("indexes") && !post.containsKey("indexesb$file")) {
             result = "missing indexes";
             prop.put("result", result);
             return prop;
@@ -116,6 +120,7 @@ public final class transferRWI {
         final int wordc       = post.getInt("wordc", 0);                  // number of different words
         final int entryc      = post.getInt("entryc", 0);                 // number of entries in indexes
         byte[] indexes        = post.get("indexes", "").getBytes();       // the indexes, as list of word entries
+        String indexesb       = post.get("indexesb$file");               // the indexes in the binary format of WordReferenceCodec, base64-encoded
         boolean granted       = sb.getConfigBool(SwitchboardConstants.INDEX_RECEIVE_ALLOW, false);
         final boolean blockBlacklist = sb.getConfigBool(SwitchboardConstants.INDEX_RECEIVE_BLOCK_BLACKLIST, false);
         final long cachelimit = sb.getConfigLong(SwitchboardConstants.WORDCACHE_MAX_COUNT, 100000);
@@ -167,15 +172,24 @@ public final class transferRWI {
         } else {
             // we want and can receive indexes
             // log value status (currently added to find outOfMemory error
-            if (sb.getLog().isFine()) sb.getLog().fine("Processing " + indexes.length + " bytes / " + wordc + " words / " + entryc + " entries from " + otherPeerName);
+            final boolean binary = indexesb != null;
+            if (sb.getLog().isFine()) sb.getLog().fine("Processing " + (binary ? indexesb.length() : indexes.length) + " bytes / " + wordc + " words / " + entryc + " entries from " + otherPeerName + (binary ? " (binary)" : ""));
             final long startProcess = System.currentTimeMillis();
 
             // decode request
             //System.out.println("STRINGS " + UTF8.String(indexes));
             final Iterator<String> it = FileUtils.strings(indexes);
+            Iterator<Map.Entry<String, WordReferenceRow>> rit = null;
+            if (binary) try {
+                rit = WordReferenceCodec.decode(Base64Order.standardCoder.decode(indexesb));
+            } catch (final IOException e) {
+                logWarning(contentType, "cannot decode binary indexes from " + otherPeerName + ": " + e.getMessage());
+                rit = Collections.<Map.Entry<String, WordReferenceRow>>emptyList().iterator();
+            }
 
             // free memory
             indexes = null;
+            indexesb = null;
 
             // now parse the Strings in the value-vector and write index entries
             String estring;
@@ -189,20 +203,27 @@ public final class transferRWI {
             int blocked = 0;
             int count = 0;
             Set<String> testids = new HashSet<String>();
-            while (it.hasNext()) {
-                estring = it.next();
+            while (binary ? rit.hasNext() : it.hasNext()) {
                 count++;
                 if (count > 1000) break; // protection against flooding
 
-                // check if RWI entry is well-formed
-                p = estring.indexOf('{',0);
-                if (p < 0 || estring.indexOf("x=",0) < 0 || !(estring.indexOf("[B@",0) < 0)) {
-                    blocked++;
-                    continue;
+                if (binary) {
+                    final Map.Entry<String, WordReferenceRow> entry = rit.next();
+                    wordHash = entry.getKey();
+                    iEntry = entry.getValue();
+                } else {
+                    estring = it.next();
+
+                    // check if RWI entry is well-formed
+                    p = estring.indexOf('{',0);
+                    if (p < 0 || estring.indexOf("x=",0) < 0 || !(estring.indexOf("[B@",0) < 0)) {
+                        blocked++;
+                        continue;
+                    }
+                    wordHash = estring.substring(0, p);
+                    iEntry = new WordReferenceRow(estring.substring(p));
                 }
-                wordHash = estring.substring(0, p);
                 wordhashes.add(wordHash);
-                iEntry = new WordReferenceRow(estring.substring(p));
                 urlHash = iEntry.urlhash();
 
                 // block blacklisted entries
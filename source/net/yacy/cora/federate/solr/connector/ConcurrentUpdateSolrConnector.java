@@ -26,6 +26,7 @@ import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
 
 import net.yacy.cora.sorting.ReversibleScoreMap;
 import net.yacy.cora.storage.ARC;
@@ -33,6 +34,7 @@ import net.yacy.cora.storage.ConcurrentARC;
 import net.yacy.cora.util.ConcurrentLog;
 import net.yacy.kelondro.data.word.Word;
 import net.yacy.kelondro.util.MemoryControl;
+import net.yacy.kelondro.workflow.LatencyHistogram;
 import net.yacy.search.schema.CollectionSchema;
 
 import org.apache.solr.client.solrj.response.QueryResponse;
@@ -48,20 +50,31 @@ import org.apache.solr.common.params.ModifiableSolrParams;
  * All time-consuming tasks like updates and deletions are done within a concurrent process
  * which is started for this class in the background.
  * To implement this, we introduce an id exist cache, a deletion id queue and a update document queue.
+ * The update document queue is double-buffered: documents are added to the active buffer while
+ * the previous buffer is written to solr by the commit handler. Writers are only stalled if the
+ * active buffer is full while the previous buffer is still written.
  */
 public class ConcurrentUpdateSolrConnector implements SolrConnector {
 
-    private final static long AUTOCOMMIT = 3000; // milliseconds
+    private final static long AUTOCOMMIT = 3000; // milliseconds; the maximum age of a buffered document
     
     private class CommitHandler extends Thread {
         @Override
         public void run() {
             try {
                 while (ConcurrentUpdateSolrConnector.this.commitProcessRunning) {
-                    commitDocBuffer();
-                    try {Thread.sleep(AUTOCOMMIT);} catch (final InterruptedException e) {
-                        ConcurrentLog.logException(e);
+                    synchronized (ConcurrentUpdateSolrConnector.this.bufferLock) {
+                        // wait until the buffer is full or old enough
+                        long wait;
+                        while (ConcurrentUpdateSolrConnector.this.commitProcessRunning && (wait = flushWaitTime()) > 0) {
+                            try {
+                                ConcurrentUpdateSolrConnector.this.bufferLock.wait(wait);
+                            } catch (final InterruptedException e) {
+                                ConcurrentLog.logException(e);
+                            }
+                        }
                     }
+                    commitDocBuffer();
                 }
             } finally {
                 commitDocBuffer();
@@ -72,17 +85,31 @@ public class ConcurrentUpdateSolrConnector implements SolrConnector {
     private SolrConnector connector;
     private ARC<String, LoadTimeURL> metadataCache;
     //private final ARH<String> missCache;
-    private final LinkedHashMap<String, SolrInputDocument> docBuffer;
+    private final Object bufferLock; // guards docBuffer, writeBuffer and bufferTime
+    private final Object writeLock;  // serializes all write operations to the connector
+    private LinkedHashMap<String, SolrInputDocument> docBuffer;   // the buffer where new documents are added
+    private LinkedHashMap<String, SolrInputDocument> writeBuffer; // the buffer which is currently written, or null
+    private long bufferTime;                                      // the time when the first document was added to docBuffer
     private CommitHandler processHandler;
     private final int updateCapacity;
-    private boolean commitProcessRunning;
+    private volatile boolean commitProcessRunning;
+    private final LatencyHistogram flushLatency;
+    private final AtomicLong flushedDocuments, stallCount, stallTime;
     
     public ConcurrentUpdateSolrConnector(final SolrConnector connector, final int updateCapacity, final int idCacheCapacity, final int concurrency) {
         this.connector = connector;
         this.updateCapacity = updateCapacity;
         this.metadataCache = new ConcurrentARC<>(idCacheCapacity, concurrency);
         //this.missCache = new ConcurrentARH<>(idCacheCapacity, concurrency);
+        this.bufferLock = new Object();
+        this.writeLock = new Object();
         this.docBuffer = new LinkedHashMap<>();
+        this.writeBuffer = null;
+        this.bufferTime = 0;
+        this.flushLatency = new LatencyHistogram();
+        this.flushedDocuments = new AtomicLong(0);
+        this.stallCount = new AtomicLong(0);
+        this.stallTime = new AtomicLong(0);
         this.processHandler = null;
         this.commitProcessRunning = true;
         ensureAliveProcessHandler();
@@ -98,30 +125,128 @@ public class ConcurrentUpdateSolrConnector implements SolrConnector {
         return o instanceof ConcurrentUpdateSolrConnector && this.connector.equals(((ConcurrentUpdateSolrConnector) o).connector);
     }
 
+    /**
+     * the time that the commit handler must wait until the buffer must be flushed; must be called while bufferLock is held
+     * @return the waiting time in milliseconds, 0 if the buffer must be flushed now
+     */
+    private long flushWaitTime() {
+        if (this.docBuffer.size() == 0) return AUTOCOMMIT;
+        if (this.docBuffer.size() >= this.updateCapacity) return 0;
+        return Math.max(0, this.bufferTime + AUTOCOMMIT - System.currentTimeMillis());
+    }
+
+    /**
+     * write all buffered documents to the connector. Only the buffer swap is done while the buffer lock is held;
+     * new documents are added to a fresh buffer while the old buffer is written. Because all writes are
+     * serialized, all documents which had been added before this call are written when it returns.
+     */
     private void commitDocBuffer() {
-        synchronized (this.docBuffer) {
-            //System.out.println("*** commit of " + this.docBuffer.size() + " documents");
-            //Thread.dumpStack();
-            if (this.docBuffer.size() > 0) try {
-                this.connector.add(this.docBuffer.values());
+        synchronized (this.writeLock) {
+            final LinkedHashMap<String, SolrInputDocument> buffer;
+            synchronized (this.bufferLock) {
+                if (this.docBuffer.size() == 0) return;
+                buffer = this.docBuffer;
+                this.writeBuffer = buffer;
+                this.docBuffer = new LinkedHashMap<>();
+                this.bufferTime = 0;
+                this.bufferLock.notifyAll(); // release stalled writers
+            }
+            //System.out.println("*** commit of " + buffer.size() + " documents");
+            final long start = System.currentTimeMillis();
+            try {
+                this.connector.add(buffer.values());
             } catch (final OutOfMemoryError e) {
                 // clear and try again...
                 clearCaches();
                 try {
-                    this.connector.add(this.docBuffer.values());
+                    this.connector.add(buffer.values());
                 } catch (final IOException ee) {
                     ConcurrentLog.logException(e);
                 }
             } catch (final IOException e) {
                 ConcurrentLog.logException(e);
+            } finally {
+                this.flushLatency.add(System.currentTimeMillis() - start);
+                this.flushedDocuments.addAndGet(buffer.size());
+                synchronized (this.bufferLock) {
+                    this.writeBuffer = null;
+                    this.bufferLock.notifyAll();
+                }
             }
-            this.docBuffer.clear();
+        }
+    }
+
+    /**
+     * put a document into the active buffer; this blocks only if the active buffer is full while another buffer is written
+     * @param id
+     * @param solrdoc
+     */
+    private void bufferDocument(final String id, final SolrInputDocument solrdoc) {
+        synchronized (this.bufferLock) {
+            if (this.docBuffer.size() >= this.updateCapacity && this.writeBuffer != null) {
+                final long start = System.currentTimeMillis();
+                this.stallCount.incrementAndGet();
+                while (this.docBuffer.size() >= this.updateCapacity && this.writeBuffer != null && this.commitProcessRunning) {
+                    try {
+                        this.bufferLock.wait(AUTOCOMMIT);
+                    } catch (final InterruptedException e) {
+                        break;
+                    }
+                }
+                this.stallTime.addAndGet(System.currentTimeMillis() - start);
+            }
+            if (this.docBuffer.size() == 0) this.bufferTime = System.currentTimeMillis();
+            this.docBuffer.put(id, solrdoc);
+            if (this.docBuffer.size() >= this.updateCapacity) this.bufferLock.notifyAll(); // wake up the commit handler
+        }
+    }
+
+    /**
+     * get a document which is not yet written to the connector
+     * @param id
+     * @return the document or null if the document is not in the buffer
+     */
+    private SolrInputDocument getBufferedDocument(final String id) {
+        synchronized (this.bufferLock) {
+            final SolrInputDocument doc = this.docBuffer.get(id);
+            if (doc != null || this.writeBuffer == null) return doc;
+            return this.writeBuffer.get(id);
         }
     }
     
     @Override
     public int bufferSize() {
-        return this.docBuffer.size();
+        synchronized (this.bufferLock) {
+            return this.docBuffer.size() + (this.writeBuffer == null ? 0 : this.writeBuffer.size());
+        }
+    }
+
+    /**
+     * @return the latency histogram of the buffer writes in milliseconds
+     */
+    public LatencyHistogram getFlushLatency() {
+        return this.flushLatency;
+    }
+
+    /**
+     * @return the number of documents that had been written from the buffer
+     */
+    public long getFlushedDocuments() {
+        return this.flushedDocuments.get();
+    }
+
+    /**
+     * @return the number of add operations which had to wait for a buffer write
+     */
+    public long getStallCount() {
+        return this.stallCount.get();
+    }
+
+    /**
+     * @return the total time in milliseconds that add operations had to wait for a buffer write
+     */
+    public long getStallTime() {
+        return this.stallTime.get();
     }
 
     @Override
@@ -185,7 +310,10 @@ public class ConcurrentUpdateSolrConnector implements SolrConnector {
     @Override
     public void close() {
         ensureAliveProcessHandler();
-        this.commitProcessRunning = false;
+        synchronized (this.bufferLock) {
+            this.commitProcessRunning = false;
+            this.bufferLock.notifyAll();
+        }
         try {this.processHandler.join();} catch (final InterruptedException e) {}
         this.connector.close();
         this.metadataCache.clear();
@@ -195,8 +323,12 @@ public class ConcurrentUpdateSolrConnector implements SolrConnector {
 
     @Override
     public void clear() throws IOException {
-        this.docBuffer.clear();
-        this.connector.clear();
+        synchronized (this.bufferLock) {
+            this.docBuffer.clear();
+        }
+        synchronized (this.writeLock) {
+            this.connector.clear();
+        }
         this.metadataCache.clear();
         //this.missCache.clear();
     }
@@ -205,10 +337,13 @@ public class ConcurrentUpdateSolrConnector implements SolrConnector {
     public synchronized void deleteById(String id) throws IOException {
         this.metadataCache.remove(id);
         //this.missCache.add(id);
-        synchronized (this.docBuffer) {
+        synchronized (this.bufferLock) {
             this.docBuffer.remove(id);
         }
-        this.connector.deleteById(id);
+        // a running buffer write may contain the document; the deletion must be done after the write
+        synchronized (this.writeLock) {
+            this.connector.deleteById(id);
+        }
     }
 
     @Override
@@ -217,12 +352,14 @@ public class ConcurrentUpdateSolrConnector implements SolrConnector {
             this.metadataCache.remove(id);
             //this.missCache.add(id);
         }
-        synchronized (this.docBuffer) {
+        synchronized (this.bufferLock) {
             for (String id: ids) {
                 this.docBuffer.remove(id);
             }
         }
-        this.connector.deleteByIds(ids);
+        synchronized (this.writeLock) {
+            this.connector.deleteByIds(ids);
+        }
     }
 
     @Override
@@ -245,7 +382,7 @@ public class ConcurrentUpdateSolrConnector implements SolrConnector {
             //Thread.dumpStack();
             return md;
         }
-        SolrInputDocument doc = this.docBuffer.get(id);
+        SolrInputDocument doc = getBufferedDocument(id);
         if (doc != null) {
             //System.out.println("*** docBuffer cache hit; docBuffer.size() = " + docBuffer.size());
             //Thread.dumpStack();
@@ -263,11 +400,11 @@ public class ConcurrentUpdateSolrConnector implements SolrConnector {
         updateCache(id, AbstractSolrConnector.getLoadTimeURL(solrdoc));
         ensureAliveProcessHandler();
         if (this.processHandler.isAlive()) {
-            synchronized (this.docBuffer) {this.docBuffer.put(id, solrdoc);}
+            bufferDocument(id, solrdoc);
         } else {
-            this.connector.add(solrdoc);
+            synchronized (this.writeLock) {this.connector.add(solrdoc);}
         }
-        if (MemoryControl.shortStatus() || this.docBuffer.size() > this.updateCapacity) {
+        if (MemoryControl.shortStatus()) {
             commitDocBuffer();
         }
     }
@@ -275,18 +412,16 @@ public class ConcurrentUpdateSolrConnector implements SolrConnector {
     @Override
     public void add(Collection<SolrInputDocument> solrdocs) throws IOException, SolrException {
         ensureAliveProcessHandler();
-        synchronized (this.docBuffer) {
-            for (SolrInputDocument solrdoc: solrdocs) {
-                String id = (String) solrdoc.getFieldValue(CollectionSchema.id.getSolrFieldName());
-                updateCache(id, AbstractSolrConnector.getLoadTimeURL(solrdoc));
-                if (this.processHandler.isAlive()) {
-                    this.docBuffer.put(id, solrdoc);
-                } else {
-                    this.connector.add(solrdoc);
-                }
+        for (SolrInputDocument solrdoc: solrdocs) {
+            String id = (String) solrdoc.getFieldValue(CollectionSchema.id.getSolrFieldName());
+            updateCache(id, AbstractSolrConnector.getLoadTimeURL(solrdoc));
+            if (this.processHandler.isAlive()) {
+                bufferDocument(id, solrdoc);
+            } else {
+                synchronized (this.writeLock) {this.connector.add(solrdoc);}
             }
         }
-        if (MemoryControl.shortStatus() || this.docBuffer.size() > this.updateCapacity) {
+        if (MemoryControl.shortStatus()) {
             commitDocBuffer();
         }
     }
@@ -295,7 +430,7 @@ public class ConcurrentUpdateSolrConnector implements SolrConnector {
     public SolrDocument getDocumentById(final String id, String... fields) throws IOException {
         assert id.length() == Word.commonHashLength : "wrong id: " + id;
         //if (this.missCache.contains(id)) return null;
-        SolrInputDocument idoc = this.docBuffer.get(id);
+        SolrInputDocument idoc = getBufferedDocument(id);
         if (idoc != null) {
             //System.out.println("*** docBuffer cache hit; docBuffer.size() = " + docBuffer.size());
             //Thread.dumpStack();
@@ -24,8 +24,15 @@
 
 package net.yacy.cora.protocol;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.lang.reflect.Array;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
@@ -34,9 +41,9 @@ import java.net.InetAddress;
 import java.net.NetworkInterface;
 import java.net.SocketException;
 import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashSet;
@@ -49,7 +56,11 @@ import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
@@ -77,7 +88,6 @@ public class Domains {
     private static Class<?> InetAddressLocatorClass;
     private static Method InetAddressLocatorGetLocaleInetAddressMethod;
     private static final Set<String> ccSLD_TLD = new HashSet<String>();
-    private static final String PRESENT = "";
     private static final String LOCALHOST_IPv4_PATTERN = "(127\\..*)";
     private static final String LOCALHOST_IPv6_PATTERN = "((\\[?fe80\\:.*)|(\\[?0\\:0\\:0\\:0\\:0\\:0\\:0\\:1.*)|(\\[?\\:\\:1))(/.*|%.*|\\z)";
     private static final String INTRANET_IPv4_PATTERN = "(10\\..*)|(172\\.(1[6-9]|2[0-9]|3[0-1])\\..*)|(169\\.254\\..*)|(192\\.168\\..*)";
@@ -89,13 +99,40 @@ public class Domains {
     private static final int MAX_NAME_CACHE_MISS_SIZE = 1000;
     private static final int CONCURRENCY_LEVEL = Runtime.getRuntime().availableProcessors() * 2;
 
-    // a dns cache
-    private static final ARC<String, InetAddress> NAME_CACHE_HIT = new ConcurrentARC<>(MAX_NAME_CACHE_HIT_SIZE, CONCURRENCY_LEVEL);
-    private static final ARC<String, String> NAME_CACHE_MISS = new ConcurrentARC<>(MAX_NAME_CACHE_MISS_SIZE, CONCURRENCY_LEVEL);
+    /**
+     * a resolved address together with the time when it must be resolved again.
+     * The java resolver does not tell the TTL of the DNS records, therefore the time to live is a configured value.
+     */
+    private static final class CachedAddress {
+        private final InetAddress address;
+        private final long expires;
+        private CachedAddress(final InetAddress address, final long expires) {
+            this.address = address;
+            this.expires = expires;
+        }
+    }
+
+    // a dns cache; the hit cache is stored in a file and loaded again after a restart
+    private static final ARC<String, CachedAddress> NAME_CACHE_HIT = new ConcurrentARC<>(MAX_NAME_CACHE_HIT_SIZE, CONCURRENCY_LEVEL);
+    private static final ARC<String, Long> NAME_CACHE_MISS = new ConcurrentARC<>(MAX_NAME_CACHE_MISS_SIZE, CONCURRENCY_LEVEL); // value is the expiration time
+    public static long nameCacheHitTTL = 24L * 60L * 60L * 1000L; // milliseconds
+    public static long nameCacheMissTTL = 10L * 60L * 1000L; // milliseconds
+    private static File nameCacheFile = null;
     private static final ConcurrentHashMap<String, Object> LOOKUP_SYNC = new ConcurrentHashMap<>(100, 0.75f, Runtime.getRuntime().availableProcessors() * 2);
     private static       List<Pattern> nameCacheNoCachingPatterns = Collections.synchronizedList(new LinkedList<Pattern>());
     public static long cacheHit_Hit = 0, cacheHit_Miss = 0, cacheHit_Insert = 0; // for statistics only; do not write
     public static long cacheMiss_Hit = 0, cacheMiss_Miss = 0, cacheMiss_Insert = 0; // for statistics only; do not write
+    private static final AtomicLong resolveCount = new AtomicLong(0), resolveWaits = new AtomicLong(0), lookupCount = new AtomicLong(0), lookupTime = new AtomicLong(0), lookupTimeouts = new AtomicLong(0);
+    private static final AtomicLong prefetchCount = new AtomicLong(0);
+
+    // the prefetch of host addresses; a full queue rejects new prefetch requests
+    private static final Set<String> PREFETCH_QUEUED = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private static final ThreadPoolExecutor PREFETCH_EXECUTOR = new ThreadPoolExecutor(
+            8, 8, 10, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(1000),
+            new NamePrefixThreadFactory("Domains.prefetch"));
+    static {
+        PREFETCH_EXECUTOR.allowCoreThreadTimeOut(true);
+    }
 
     private static Set<InetAddress> myHostAddresses = new HashSet<InetAddress>();
     private static Set<InetAddress> localHostAddresses = new HashSet<InetAddress>(); // subset of myHostAddresses
@@ -714,6 +751,81 @@ public class Domains {
         }
     }
 
+    /**
+     * initialize the global host name cache and the dns cache
+     * @param globalHostsnameCache file of the global host names
+     * @param dnsCache file of the dns cache; it is loaded now and written again with close()
+     */
+    public static void init(final File globalHostsnameCache, final File dnsCache) {
+        init(globalHostsnameCache);
+        nameCacheFile = dnsCache;
+        if (dnsCache != null && dnsCache.exists()) {
+            final int count = loadNameCache(dnsCache);
+            log.info("loaded dns cache, size = " + count);
+        }
+    }
+
+    /**
+     * load the not expired entries of a dns cache file
+     * @param file a file written with saveNameCache()
+     * @return the number of loaded entries
+     */
+    public static int loadNameCache(final File file) {
+        final long now = System.currentTimeMillis();
+        int count = 0;
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // host ip expires
+                final String[] s = CommonPattern.SPACE.split(line);
+                if (s.length != 3) continue;
+                try {
+                    final long expires = Long.parseLong(s[2]);
+                    if (expires < now) continue;
+                    final InetAddress ip = InetAddress.getByAddress(s[0], InetAddresses.forString(s[1]).getAddress());
+                    NAME_CACHE_HIT.insertIfAbsent(s[0], new CachedAddress(ip, expires));
+                    count++;
+                } catch (final NumberFormatException e) {
+                } catch (final IllegalArgumentException e) {
+                } catch (final UnknownHostException e) {
+                }
+            }
+        } catch (final IOException e) {
+            log.warn("cannot load dns cache " + file + ": " + e.getMessage());
+        } finally {
+            if (reader != null) try {reader.close();} catch (final IOException e) {}
+        }
+        return count;
+    }
+
+    /**
+     * write the not expired entries of the dns cache to a file; the file is replaced only when it was written completely
+     * @param file
+     */
+    public static void saveNameCache(final File file) {
+        final long now = System.currentTimeMillis();
+        final File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+        Writer writer = null;
+        try {
+            writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8));
+            for (final Map.Entry<String, CachedAddress> entry: NAME_CACHE_HIT) {
+                final CachedAddress c = entry.getValue();
+                if (c.expires < now) continue;
+                writer.write(entry.getKey() + " " + InetAddresses.toAddrString(c.address) + " " + c.expires + "\n");
+            }
+            writer.close();
+            writer = null;
+            if (file.exists() && !file.delete()) throw new IOException("cannot delete " + file);
+            if (!tmp.renameTo(file)) throw new IOException("cannot rename " + tmp);
+        } catch (final IOException e) {
+            log.warn("cannot save dns cache " + file + ": " + e.getMessage());
+        } finally {
+            if (writer != null) try {writer.close();} catch (final IOException e) {}
+        }
+    }
+
     /**
      * the isLocal check can be switched off to gain a better crawling speed.
      * however, if the check is switched off, then ALL urls are considered as local
@@ -728,6 +840,67 @@ public class Domains {
 
     public static synchronized void close() {
         if (globalHosts != null) try {globalHosts.close();} catch (final IOException e) {log.warn(e);}
+        PREFETCH_EXECUTOR.shutdownNow();
+        if (nameCacheFile != null) saveNameCache(nameCacheFile);
+    }
+
+    private static InetAddress cachedHit(final String host) {
+        final CachedAddress c = NAME_CACHE_HIT.get(host);
+        if (c == null) return null;
+        if (c.expires < System.currentTimeMillis()) {
+            NAME_CACHE_HIT.remove(host);
+            return null;
+        }
+        return c.address;
+    }
+
+    private static boolean cachedMiss(final String host) {
+        final Long expires = NAME_CACHE_MISS.get(host);
+        if (expires == null) return false;
+        if (expires.longValue() < System.currentTimeMillis()) {
+            NAME_CACHE_MISS.remove(host);
+            return false;
+        }
+        return true;
+    }
+
+    private static void cacheHit(final String host, final InetAddress ip) {
+        NAME_CACHE_HIT.insertIfAbsent(host, new CachedAddress(ip, System.currentTimeMillis() + nameCacheHitTTL));
+        cacheHit_Insert++;
+    }
+
+    private static void cacheMiss(final String host) {
+        NAME_CACHE_MISS.insertIfAbsent(host, System.currentTimeMillis() + nameCacheMissTTL);
+        cacheMiss_Insert++;
+    }
+
+    /**
+     * resolve a host in the background if it is not already in the dns cache,
+     * so a later dnsResolve() of that host does not need to wait for the dns server
+     * @param host
+     */
+    public static void prefetch(final String host0) {
+        if (host0 == null || host0.isEmpty()) return;
+        final String host = host0.toLowerCase().trim();
+        if (cachedHit(host) != null || cachedMiss(host)) return;
+        if (InetAddresses.isInetAddress(host) || isLocalhost(host)) return;
+        if (LOOKUP_SYNC.containsKey(host) || !PREFETCH_QUEUED.add(host)) return;
+        try {
+            PREFETCH_EXECUTOR.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        prefetchCount.incrementAndGet();
+                        dnsResolve(host, true);
+                    } finally {
+                        PREFETCH_QUEUED.remove(host);
+                    }
+                }
+            });
+        } catch (final RejectedExecutionException e) {
+            // the queue is full or the executor is shut down; the host is resolved when it is loaded
+            PREFETCH_QUEUED.remove(host);
+        }
     }
 
     /**
@@ -741,14 +914,14 @@ public class Domains {
         host = host.toLowerCase().trim();
 
         // trying to resolve host by doing a name cache lookup
-        InetAddress ip = NAME_CACHE_HIT.get(host);
+        InetAddress ip = cachedHit(host);
         if (ip != null) {
             cacheHit_Hit++;
             return ip;
         }
         cacheHit_Miss++;
 
-        if (NAME_CACHE_MISS.containsKey(host)) {
+        if (cachedMiss(host)) {
             cacheMiss_Hit++;
             return null;
         }
@@ -777,11 +950,11 @@ public class Domains {
     }
 
     public static String getHostName(final InetAddress i) {
-        final Collection<String> hosts = NAME_CACHE_HIT.getKeys(i);
-        if (!hosts.isEmpty()) return hosts.iterator().next();
+        for (final Map.Entry<String, CachedAddress> entry: NAME_CACHE_HIT) {
+            if (i.equals(entry.getValue().address)) return entry.getKey();
+        }
         final String host = i.getHostName();
-        NAME_CACHE_HIT.insertIfAbsent(host, i);
-        cacheHit_Insert++;
+        cacheHit(host, i);
         return host;
     }
 
@@ -792,8 +965,7 @@ public class Domains {
      * @param host the known host name
      */
     public static void setHostName(final InetAddress i, final String host) {
-        NAME_CACHE_HIT.insertIfAbsent(host, i);
-        cacheHit_Insert++;
+        cacheHit(host, i);
     }
 
 	final private static TimeLimiter timeLimiter = new SimpleTimeLimiter(
@@ -880,9 +1052,14 @@ public class Domains {
      * @return the hosts InetAddress or null if the address cannot be resolved
      */
     public static InetAddress dnsResolve(final String host0) {
+        return dnsResolve(host0, false);
+    }
+
+    private static InetAddress dnsResolve(final String host0, final boolean prefetch) {
         // consider to call stripToHostName() before calling this
         if (host0 == null || host0.isEmpty()) return null;
         final String host = host0.toLowerCase().trim();
+        if (!prefetch) resolveCount.incrementAndGet();
 
         if (MemoryControl.shortStatus()) {
             NAME_CACHE_HIT.clear();
@@ -895,14 +1072,14 @@ public class Domains {
         }
 
         // try to resolve host by doing a name cache lookup
-        InetAddress ip = NAME_CACHE_HIT.get(host);
+        InetAddress ip = cachedHit(host);
         if (ip != null) {
             //System.out.println("DNSLOOKUP-CACHE-HIT(CONC) " + host);
             cacheHit_Hit++;
             return ip;
         }
         cacheHit_Miss++;
-        if (NAME_CACHE_MISS.containsKey(host)) {
+        if (cachedMiss(host)) {
             //System.out.println("DNSLOOKUP-CACHE-MISS(CONC) " + host);
             cacheMiss_Hit++;
             return null;
@@ -916,7 +1093,7 @@ public class Domains {
         synchronized (sync_obj) {
             // now look again if the host is in the cache where it may be meanwhile because of the synchronization
 
-            ip = NAME_CACHE_HIT.get(host);
+            ip = cachedHit(host);
             if (ip != null) {
                 //System.out.println("DNSLOOKUP-CACHE-HIT(SYNC) " + host);
                 LOOKUP_SYNC.remove(host);
@@ -924,7 +1101,7 @@ public class Domains {
                 return ip;
             }
             cacheHit_Miss++;
-            if (NAME_CACHE_MISS.containsKey(host)) {
+            if (cachedMiss(host)) {
                 //System.out.println("DNSLOOKUP-CACHE-MISS(SYNC) " + host);
                 LOOKUP_SYNC.remove(host);
                 cacheMiss_Hit++;
@@ -933,6 +1110,7 @@ public class Domains {
             cacheMiss_Miss++;
 
             // do the dns lookup on the dns server
+            if (!prefetch) resolveWaits.incrementAndGet();
             //if (!matchesList(host, nameCacheNoCachingPatterns)) System.out.println("DNSLOOKUP " + host);
             try {
                 //final long t = System.currentTimeMillis();
@@ -947,40 +1125,44 @@ public class Domains {
                     }
                 }
                 Thread.currentThread().setName(oldName);
-                if (ip == null) try {
-                    ip = timeLimiter.callWithTimeout(new Callable<InetAddress>() {
-                        @Override
-                        public InetAddress call() throws Exception {
-                            return InetAddress.getByName(host);
-                        }
-                    }, 3000L, TimeUnit.MILLISECONDS, false);
-                    //ip = TimeoutRequest.getByName(host, 1000); // this makes the DNS request to backbone
-                } catch (final UncheckedTimeoutException e) {
-                	// in case of a timeout - maybe cause of massive requests - do not fill NAME_CACHE_MISS
-                	LOOKUP_SYNC.remove(host);
-                    return null;
+                if (ip == null) {
+                    final long start = System.nanoTime();
+                    try {
+                        ip = timeLimiter.callWithTimeout(new Callable<InetAddress>() {
+                            @Override
+                            public InetAddress call() throws Exception {
+                                return InetAddress.getByName(host);
+                            }
+                        }, 3000L, TimeUnit.MILLISECONDS, false);
+                        //ip = TimeoutRequest.getByName(host, 1000); // this makes the DNS request to backbone
+                    } catch (final UncheckedTimeoutException e) {
+                        // in case of a timeout - maybe cause of massive requests - do not fill NAME_CACHE_MISS
+                        lookupTimeouts.incrementAndGet();
+                        LOOKUP_SYNC.remove(host);
+                        return null;
+                    } finally {
+                        lookupCount.incrementAndGet();
+                        lookupTime.addAndGet(System.nanoTime() - start);
+                    }
                 }
                 //.out.println("DNSLOOKUP-*LOOKUP* " + host + ", time = " + (System.currentTimeMillis() - t) + "ms");
             } catch (final Throwable e) {
                 // add new entries
-                NAME_CACHE_MISS.insertIfAbsent(host, PRESENT);
-                cacheMiss_Insert++;
+                cacheMiss(host);
                 LOOKUP_SYNC.remove(host);
                 return null;
             }
 
             if (ip == null) {
                 // add new entries
-                NAME_CACHE_MISS.insertIfAbsent(host, PRESENT);
-                cacheMiss_Insert++;
+                cacheMiss(host);
                 LOOKUP_SYNC.remove(host);
                 return null;
             }
 
             if (!ip.isLoopbackAddress() && !matchesList(host, nameCacheNoCachingPatterns)) {
                 // add new ip cache entries
-                NAME_CACHE_HIT.insertIfAbsent(host, ip);
-                cacheHit_Insert++;
+                cacheHit(host, ip);
 
                 // add also the isLocal host name caches
                 final boolean localp = ip.isAnyLocalAddress() || ip.isLinkLocalAddress() || ip.isSiteLocalAddress();
@@ -1020,6 +1202,50 @@ public class Domains {
         return nameCacheNoCachingPatterns.size();
     }
 
+    /**
+     * @return the share of dnsResolve() calls which did not wait for a lookup on the dns server, in percent; prefetches are not counted
+     */
+    public static double nameCacheHitRate() {
+        final long all = resolveCount.get();
+        return all == 0 ? 0.0d : 100.0d * (all - Math.min(all, resolveWaits.get())) / all;
+    }
+
+    /**
+     * @return the number of lookups on the dns server
+     */
+    public static long lookupCount() {
+        return lookupCount.get();
+    }
+
+    /**
+     * @return the average time of a lookup on the dns server in milliseconds
+     */
+    public static double lookupLatency() {
+        final long c = lookupCount.get();
+        return c == 0 ? 0.0d : lookupTime.get() / 1000000.0d / c;
+    }
+
+    /**
+     * @return the number of lookups on the dns server which had a time-out
+     */
+    public static long lookupTimeouts() {
+        return lookupTimeouts.get();
+    }
+
+    /**
+     * @return the number of hosts that had been resolved by prefetch()
+     */
+    public static long prefetchCount() {
+        return prefetchCount.get();
+    }
+
+    /**
+     * @return the number of hosts waiting for a prefetch
+     */
+    public static int prefetchQueueSize() {
+        return PREFETCH_EXECUTOR.getQueue().size();
+    }
+
     /**
      * myPublicLocalIP() returns the IP of this host which is reachable in the public network under this address
      * This is deprecated since it should be possible that the host is reachable with more than one IP
@@ -0,0 +1,807 @@
+/**
+ *  OffHeapHandleMap
+ *  a HandleMap which stores keys and values outside of the java heap
+ *  First released on http://yacy.net
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.cora.storage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import net.yacy.cora.order.ByteOrder;
+import net.yacy.cora.order.CloneableIterator;
+import net.yacy.cora.util.SpaceExceededException;
+
+/**
+ * A HandleMap implementation which holds all keys and values in direct memory buffers.
+ * The entries are stored in an open addressing hash table with linear probing; each slot has the form
+ * {state, key, value} where the value is a big-endian number of idxbytes bytes.
+ * Beside the hash table an order table holds the slot numbers of all entries. As long as entries are inserted
+ * in ascending key order (which is the case if the map is initialized from a dump), the order table is sorted,
+ * otherwise it is sorted when an ordered iteration is requested. Removed entries leave a tombstone in the hash table
+ * and the order table; both are compacted with the next re-hash.
+ * The dump file format is the same as that of the kelondro RowHandleMap: a sorted sequence of key and value bytes,
+ * therefore both implementations can read the dumps of the other one.
+ */
+public final class OffHeapHandleMap implements HandleMap {
+
+    private static final byte EMPTY = 0, USED = 1, REMOVED = 2;
+    private static final int MAX_SEGMENT_BYTES = 1 << 30;
+    private static final int MIN_CAPACITY = 1 << 10;
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    private final int keylength, idxbytes, slotsize;
+    private final ByteOrder ordering;
+    private final ReentrantReadWriteLock lock;
+
+    private int segmentShift, segmentMask; // number of slots in a segment is 1 << segmentShift
+    private ByteBuffer[] segments;         // the hash table
+    private ByteBuffer order;              // int slot numbers, in insertion order or sorted
+    private int capacity;                  // number of slots, always a power of two
+    private int size;                      // number of used slots
+    private int filled;                    // number of entries in the order table
+    private int occupied;                  // number of used and removed slots in the hash table
+    private boolean sorted;                // true if the order table is sorted by the key ordering
+    private int version;                   // incremented whenever the order table is re-organized
+
+    /**
+     * initialize an empty map
+     * @param keylength the length of the keys
+     * @param ordering the ordering of the keys, used for iterations and dumps
+     * @param idxbytes the number of bytes for the values (0..8)
+     * @param expectedspace the number of expected entries
+     */
+    public OffHeapHandleMap(final int keylength, final ByteOrder ordering, final int idxbytes, final int expectedspace) {
+        assert idxbytes >= 0 && idxbytes <= 8;
+        this.keylength = keylength;
+        this.idxbytes = idxbytes;
+        this.slotsize = 1 + keylength + idxbytes;
+        this.ordering = ordering;
+        this.lock = new ReentrantReadWriteLock();
+        this.version = 0;
+        allocate(capacityFor(expectedspace));
+    }
+
+    /**
+     * initialize a map with the content of a dumped index
+     * @param keylength the length of the keys
+     * @param ordering the ordering of the keys
+     * @param idxbytes the number of bytes for the values
+     * @param file the dump; if the file name ends with .gz it is read as gzipped file
+     * @throws IOException
+     * @throws SpaceExceededException
+     */
+    public OffHeapHandleMap(final int keylength, final ByteOrder ordering, final int idxbytes, final File file) throws IOException, SpaceExceededException {
+        this(keylength, ordering, idxbytes, (int) Math.min(MAX_CAPACITY, file.length() / (keylength + idxbytes)));
+        InputStream is = new BufferedInputStream(new FileInputStream(file), 1024 * 1024);
+        try {
+            if (file.getName().endsWith(".gz")) is = new GZIPInputStream(is);
+            final byte[] a = new byte[keylength + idxbytes];
+            final byte[] key = new byte[keylength];
+            while (readFully(is, a)) {
+                System.arraycopy(a, 0, key, 0, keylength);
+                putUnique(key, decodeLong(a, keylength, idxbytes));
+            }
+        } finally {
+            is.close();
+        }
+    }
+
+    private static boolean readFully(final InputStream is, final byte[] a) throws IOException {
+        int p = 0;
+        while (p < a.length) {
+            final int c = is.read(a, p, a.length - p);
+            if (c <= 0) return false;
+            p += c;
+        }
+        return true;
+    }
+
+    private static int capacityFor(final int entries) {
+        long c = MIN_CAPACITY;
+        while (c * 3 / 4 <= entries && c < MAX_CAPACITY) c = c << 1;
+        return (int) c;
+    }
+
+    private void allocate(final int newCapacity) {
+        int shift = 0;
+        while (shift < 30 && (1L << (shift + 1)) * this.slotsize <= MAX_SEGMENT_BYTES) shift++;
+        shift = Math.min(shift, Integer.numberOfTrailingZeros(newCapacity));
+        final int segmentCount = newCapacity >>> shift;
+        final ByteBuffer[] s = new ByteBuffer[segmentCount];
+        for (int i = 0; i < segmentCount; i++) s[i] = ByteBuffer.allocateDirect((1 << shift) * this.slotsize);
+        final ByteBuffer o = ByteBuffer.allocateDirect(newCapacity * 4);
+        // assign the new tables only after all allocations succeeded
+        this.segmentShift = shift;
+        this.segmentMask = (1 << shift) - 1;
+        this.segments = s;
+        this.order = o;
+        this.capacity = newCapacity;
+        this.size = 0;
+        this.filled = 0;
+        this.occupied = 0;
+        this.sorted = true;
+    }
+
+    // access methods for the slots
+
+    private ByteBuffer segment(final int slot) {
+        return this.segments[slot >>> this.segmentShift];
+    }
+
+    private int offset(final int slot) {
+        return (slot & this.segmentMask) * this.slotsize;
+    }
+
+    private byte state(final int slot) {
+        return segment(slot).get(offset(slot));
+    }
+
+    private boolean keyEquals(final int slot, final byte[] key) {
+        final ByteBuffer b = segment(slot);
+        final int o = offset(slot) + 1;
+        for (int i = 0; i < this.keylength; i++) if (b.get(o + i) != key[i]) return false;
+        return true;
+    }
+
+    private byte[] key(final int slot) {
+        final byte[] key = new byte[this.keylength];
+        readKey(slot, key);
+        return key;
+    }
+
+    private void readKey(final int slot, final byte[] key) {
+        final ByteBuffer b = segment(slot);
+        final int o = offset(slot) + 1;
+        for (int i = 0; i < this.keylength; i++) key[i] = b.get(o + i);
+    }
+
+    private long value(final int slot) {
+        final ByteBuffer b = segment(slot);
+        final int o = offset(slot) + 1 + this.keylength;
+        long c = 0;
+        for (int i = 0; i < this.idxbytes; i++) c = (c << 8) | (b.get(o + i) & 0xFFL);
+        return c;
+    }
+
+    private void setValue(final int slot, long l) {
+        final ByteBuffer b = segment(slot);
+        final int o = offset(slot) + 1 + this.keylength;
+        for (int i = this.idxbytes - 1; i >= 0; i--) {
+            b.put(o + i, (byte) (l & 0xFF));
+            l >>= 8;
+        }
+    }
+
+    private static long decodeLong(final byte[] s, final int offset, final int length) {
+        long c = 0;
+        for (int i = offset; i < offset + length; i++) c = (c << 8) | (s[i] & 0xFFL);
+        return c;
+    }
+
+    private int hash(final byte[] key) {
+        long h = 0xcbf29ce484222325L; // FNV-1a
+        for (int i = 0; i < this.keylength; i++) {
+            h ^= key[i];
+            h *= 0x100000001b3L;
+        }
+        h ^= (h >>> 33);
+        h *= 0xff51afd7ed558ccdL;
+        h ^= (h >>> 33);
+        return (int) h & (this.capacity - 1);
+    }
+
+    /**
+     * find the slot of a key
+     * @param key
+     * @return the slot number or -1 if the key is not in the map
+     */
+    private int find(final byte[] key) {
+        final int mask = this.capacity - 1;
+        int slot = hash(key);
+        while (true) {
+            final byte s = state(slot);
+            if (s == EMPTY) return -1;
+            if (s == USED && keyEquals(slot, key)) return slot;
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * insert a key which is not in the map; the caller must hold the write lock
+     * @return the new slot
+     */
+    private int insertNew(final byte[] key, final long l) throws SpaceExceededException {
+        ensureSpace();
+        final int mask = this.capacity - 1;
+        int slot = hash(key);
+        // removed slots are not re-used because their position in the order table would not fit
+        while (state(slot) != EMPTY) slot = (slot + 1) & mask;
+        final ByteBuffer b = segment(slot);
+        final int o = offset(slot);
+        b.put(o, USED);
+        for (int i = 0; i < this.keylength; i++) b.put(o + 1 + i, key[i]);
+        setValue(slot, l);
+        if (this.sorted && this.filled > 0) {
+            final byte[] last = key(this.order.getInt((this.filled - 1) * 4));
+            if (this.ordering.compare(last, key) >= 0) this.sorted = false;
+        }
+        this.order.putInt(this.filled * 4, slot);
+        this.filled++;
+        this.occupied++;
+        this.size++;
+        return slot;
+    }
+
+    private void ensureSpace() throws SpaceExceededException {
+        if ((this.occupied + 1) * 4L < this.capacity * 3L) return;
+        // if there are many removed entries, re-hash with the same capacity
+        final int newCapacity = (this.size + 1) * 2L < this.capacity ? this.capacity : this.capacity << 1;
+        if (newCapacity > MAX_CAPACITY) throw new SpaceExceededException((long) newCapacity * this.slotsize, "OffHeapHandleMap.ensureSpace");
+        rehash(newCapacity);
+    }
+
+    private void rehash(final int newCapacity) throws SpaceExceededException {
+        final ByteBuffer[] oldSegments = this.segments;
+        final ByteBuffer oldOrder = this.order;
+        final int oldFilled = this.filled;
+        final int oldShift = this.segmentShift, oldMask = this.segmentMask;
+        final boolean wasSorted = this.sorted;
+        try {
+            allocate(newCapacity);
+        } catch (final OutOfMemoryError e) {
+            throw new SpaceExceededException((long) newCapacity * this.slotsize, "OffHeapHandleMap.rehash");
+        }
+        // copy all used entries in order; this keeps the order table sorted if it was sorted before
+        final byte[] key = new byte[this.keylength];
+        final int mask = this.capacity - 1;
+        for (int i = 0; i < oldFilled; i++) {
+            final int oldSlot = oldOrder.getInt(i * 4);
+            final ByteBuffer ob = oldSegments[oldSlot >>> oldShift];
+            final int oo = (oldSlot & oldMask) * this.slotsize;
+            if (ob.get(oo) != USED) continue;
+            for (int j = 0; j < this.keylength; j++) key[j] = ob.get(oo + 1 + j);
+            int slot = hash(key);
+            while (state(slot) != EMPTY) slot = (slot + 1) & mask;
+            final ByteBuffer nb = segment(slot);
+            final int no = offset(slot);
+            for (int j = 0; j < this.slotsize; j++) nb.put(no + j, ob.get(oo + j));
+            this.order.putInt(this.filled * 4, slot);
+            this.filled++;
+            this.occupied++;
+            this.size++;
+        }
+        this.sorted = wasSorted;
+        this.version++;
+    }
+
+    /**
+     * sort the order table; the caller must hold the write lock
+     */
+    private void sort() {
+        if (this.sorted) return;
+        if (this.filled > 1) quicksort(0, this.filled - 1, new byte[this.keylength], new byte[this.keylength]);
+        this.sorted = true;
+        this.version++;
+    }
+
+    private int compareSlots(final int slotA, final int slotB, final byte[] a, final byte[] b) {
+        readKey(slotA, a);
+        readKey(slotB, b);
+        return this.ordering.compare(a, b);
+    }
+
+    private void quicksort(int lo, int hi, final byte[] a, final byte[] b) {
+        while (hi - lo > 16) {
+            // median of three as pivot
+            final int mid = (lo + hi) >>> 1;
+            if (compareSlots(slotAt(mid), slotAt(lo), a, b) < 0) swap(mid, lo);
+            if (compareSlots(slotAt(hi), slotAt(lo), a, b) < 0) swap(hi, lo);
+            if (compareSlots(slotAt(hi), slotAt(mid), a, b) < 0) swap(hi, mid);
+            final int pivot = slotAt(mid);
+            int i = lo, j = hi;
+            while (i <= j) {
+                while (compareSlots(slotAt(i), pivot, a, b) < 0) i++;
+                while (compareSlots(slotAt(j), pivot, a, b) > 0) j--;
+                if (i <= j) swap(i++, j--);
+            }
+            // recurse into the smaller part to limit the stack depth
+            if (j - lo < hi - i) {
+                quicksort(lo, j, a, b);
+                lo = i;
+            } else {
+                quicksort(i, hi, a, b);
+                hi = j;
+            }
+        }
+        // insertion sort for small ranges
+        for (int i = lo + 1; i <= hi; i++) {
+            final int s = slotAt(i);
+            int j = i - 1;
+            while (j >= lo && compareSlots(slotAt(j), s, a, b) > 0) {
+                this.order.putInt((j + 1) * 4, slotAt(j));
+                j--;
+            }
+            this.order.putInt((j + 1) * 4, s);
+        }
+    }
+
+    private int slotAt(final int p) {
+        return this.order.getInt(p * 4);
+    }
+
+    private void swap(final int p, final int q) {
+        final int s = slotAt(p);
+        this.order.putInt(p * 4, slotAt(q));
+        this.order.putInt(q * 4, s);
+    }
+
+    /**
+     * find the position in the sorted order table of the first entry which is equal or greater than the given key
+     * @return a position between 0 and filled
+     */
+    private int lowerBound(final byte[] key) {
+        int lo = 0, hi = this.filled;
+        final byte[] k = new byte[this.keylength];
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            readKey(slotAt(mid), k);
+            if (this.ordering.compare(k, key) < 0) lo = mid + 1; else hi = mid;
+        }
+        return lo;
+    }
+
+    // the HandleMap interface
+
+    @Override
+    public long mem() {
+        this.lock.readLock().lock();
+        try {
+            if (this.segments == null) return 0;
+            return (long) this.capacity * (this.slotsize + 4);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void optimize() {
+        this.lock.writeLock().lock();
+        try {
+            sort();
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * write a dump of the index to a file. All entries are written in order
+     * which makes it possible to read them again in a fast way
+     * @param file
+     * @return the number of written entries
+     * @throws IOException
+     */
+    @Override
+    public int dump(final File file) throws IOException {
+        final File tmp = new File(file.getParentFile(), file.getName() + ".prt");
+        OutputStream os = new BufferedOutputStream(new FileOutputStream(tmp), 4 * 1024 * 1024);
+        if (file.getName().endsWith(".gz")) os = new GZIPOutputStream(os, 65536){{this.def.setLevel(Deflater.BEST_COMPRESSION);}};
+        int c = 0;
+        this.lock.writeLock().lock();
+        try {
+            sort();
+            final byte[] entry = new byte[this.keylength + this.idxbytes];
+            for (int i = 0; i < this.filled; i++) {
+                final int slot = slotAt(i);
+                final ByteBuffer b = segment(slot);
+                final int o = offset(slot);
+                if (b.get(o) != USED) continue;
+                for (int j = 0; j < entry.length; j++) entry[j] = b.get(o + 1 + j);
+                os.write(entry);
+                c++;
+            }
+        } finally {
+            this.lock.writeLock().unlock();
+            os.close();
+        }
+        if (!tmp.renameTo(file)) throw new IOException("cannot rename " + tmp + " to " + file);
+        return c;
+    }
+
+    @Override
+    public void clear() {
+        this.lock.writeLock().lock();
+        try {
+            allocate(MIN_CAPACITY);
+            this.version++;
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public byte[] smallestKey() {
+        this.lock.writeLock().lock();
+        try {
+            sort();
+            for (int i = 0; i < this.filled; i++) {
+                final int slot = slotAt(i);
+                if (state(slot) == USED) return key(slot);
+            }
+            return null;
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public byte[] largestKey() {
+        this.lock.writeLock().lock();
+        try {
+            sort();
+            for (int i = this.filled - 1; i >= 0; i--) {
+                final int slot = slotAt(i);
+                if (state(slot) == USED) return key(slot);
+            }
+            return null;
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean has(final byte[] key) {
+        assert key != null;
+        this.lock.readLock().lock();
+        try {
+            return find(key) >= 0;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public long get(final byte[] key) {
+        assert key != null;
+        this.lock.readLock().lock();
+        try {
+            final int slot = find(key);
+            return slot < 0 ? -1 : value(slot);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public long put(final byte[] key, final long l) throws SpaceExceededException {
+        assert l >= 0 : "l = " + l;
+        assert key != null && key.length >= this.keylength;
+        this.lock.writeLock().lock();
+        try {
+            final int slot = find(key);
+            if (slot >= 0) {
+                final long old = value(slot);
+                setValue(slot, l);
+                return old;
+            }
+            insertNew(key, l);
+            return -1;
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void putUnique(final byte[] key, final long l) throws SpaceExceededException {
+        assert l >= 0 : "l = " + l;
+        assert key != null && key.length >= this.keylength;
+        this.lock.writeLock().lock();
+        try {
+            assert find(key) < 0;
+            insertNew(key, l);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public long add(final byte[] key, final long a) throws SpaceExceededException {
+        assert key != null;
+        this.lock.writeLock().lock();
+        try {
+            final int slot = find(key);
+            if (slot < 0) {
+                insertNew(key, a);
+                return 1;
+            }
+            final long i = value(slot) + a;
+            setValue(slot, i);
+            return i;
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public long inc(final byte[] key) throws SpaceExceededException {
+        return add(key, 1);
+    }
+
+    @Override
+    public long dec(final byte[] key) throws SpaceExceededException {
+        return add(key, -1);
+    }
+
+    /**
+     * keys in a hash table are unique, therefore there are never doubles
+     */
+    @Override
+    public ArrayList<long[]> removeDoubles() {
+        return new ArrayList<long[]>(0);
+    }
+
+    @Override
+    public ArrayList<byte[]> top(final int count) {
+        final ArrayList<byte[]> list = new ArrayList<byte[]>();
+        this.lock.readLock().lock();
+        try {
+            for (int i = this.filled - 1; i >= 0 && list.size() < count; i--) {
+                final int slot = slotAt(i);
+                if (state(slot) == USED) list.add(key(slot));
+            }
+        } finally {
+            this.lock.readLock().unlock();
+        }
+        return list;
+    }
+
+    @Override
+    public long remove(final byte[] key) {
+        assert key != null;
+        this.lock.writeLock().lock();
+        try {
+            final int slot = find(key);
+            if (slot < 0) return -1;
+            return removeSlot(slot);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    private long removeSlot(final int slot) {
+        final long l = value(slot);
+        segment(slot).put(offset(slot), REMOVED);
+        this.size--;
+        return l;
+    }
+
+    @Override
+    public long removeone() {
+        this.lock.writeLock().lock();
+        try {
+            // removed entries at the end of the order table can be dropped from it
+            while (this.filled > 0) {
+                final int slot = slotAt(this.filled - 1);
+                if (state(slot) == USED) return removeSlot(slot);
+                this.filled--;
+            }
+            return -1;
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    @Override
+    public CloneableIterator<byte[]> keys(final boolean up, final byte[] firstKey) {
+        return new KeyIterator(up, firstKey);
+    }
+
+    @Override
+    public void close() {
+        this.lock.writeLock().lock();
+        try {
+            // the direct memory is released when the buffers are collected
+            this.segments = null;
+            this.order = null;
+            this.size = 0;
+            this.filled = 0;
+            this.occupied = 0;
+            this.version++;
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * iterator over the keys in the order of the key ordering.
+     * The iterator is weakly consistent: if the order table is re-organized during the iteration,
+     * the iteration continues after the last returned key.
+     */
+    private class KeyIterator implements CloneableIterator<byte[]> {
+
+        private final boolean up;
+        private final byte[] firstKey;
+        private byte[] lastKey, nextKey;
+        private int position, iteratorVersion;
+
+        public KeyIterator(final boolean up, final byte[] firstKey) {
+            this.up = up;
+            this.firstKey = firstKey;
+            this.lastKey = null;
+            OffHeapHandleMap.this.lock.writeLock().lock();
+            try {
+                sort();
+                this.iteratorVersion = OffHeapHandleMap.this.version;
+                if (firstKey == null) {
+                    this.position = up ? 0 : OffHeapHandleMap.this.filled - 1;
+                } else {
+                    final int p = lowerBound(firstKey);
+                    if (up) {
+                        this.position = p;
+                    } else {
+                        // start with the last key which is equal or smaller than the first key
+                        this.position = (p < OffHeapHandleMap.this.filled && OffHeapHandleMap.this.ordering.compare(key(slotAt(p)), firstKey) == 0) ? p : p - 1;
+                    }
+                }
+            } finally {
+                OffHeapHandleMap.this.lock.writeLock().unlock();
+            }
+            this.nextKey = next0();
+        }
+
+        private byte[] next0() {
+            OffHeapHandleMap.this.lock.writeLock().lock();
+            try {
+                if (OffHeapHandleMap.this.segments == null) return null;
+                if (this.iteratorVersion != OffHeapHandleMap.this.version) {
+                    // the order table was changed; find the position of the last key again
+                    sort();
+                    this.iteratorVersion = OffHeapHandleMap.this.version;
+                    if (this.lastKey != null) {
+                        final int p = lowerBound(this.lastKey);
+                        if (this.up) {
+                            this.position = p;
+                            if (p < OffHeapHandleMap.this.filled && OffHeapHandleMap.this.ordering.compare(key(slotAt(p)), this.lastKey) == 0) this.position++;
+                        } else {
+                            this.position = p - 1;
+                        }
+                    } else {
+                        this.position = this.up ? 0 : OffHeapHandleMap.this.filled - 1;
+                    }
+                }
+                while (this.position >= 0 && this.position < OffHeapHandleMap.this.filled) {
+                    final int slot = slotAt(this.position);
+                    this.position += this.up ? 1 : -1;
+                    if (state(slot) == USED) {
+                        this.lastKey = key(slot);
+                        return this.lastKey;
+                    }
+                }
+                return null;
+            } finally {
+                OffHeapHandleMap.this.lock.writeLock().unlock();
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.nextKey != null;
+        }
+
+        @Override
+        public byte[] next() {
+            if (this.nextKey == null) throw new NoSuchElementException();
+            final byte[] k = this.nextKey;
+            this.nextKey = next0();
+            return k;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public CloneableIterator<byte[]> clone(final Object modifier) {
+            return new KeyIterator(this.up, (modifier instanceof byte[]) ? (byte[]) modifier : this.firstKey);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * iterate all entries in the order of the order table, which is not necessarily sorted
+     */
+    @Override
+    public Iterator<Map.Entry<byte[], Long>> iterator() {
+        return new Iterator<Map.Entry<byte[], Long>>() {
+
+            private int position = 0;
+            private int iteratorVersion = OffHeapHandleMap.this.version;
+            private byte[] lastKey = null;
+            private Map.Entry<byte[], Long> next = next0();
+
+            private Map.Entry<byte[], Long> next0() {
+                OffHeapHandleMap.this.lock.readLock().lock();
+                try {
+                    if (OffHeapHandleMap.this.segments == null) return null;
+                    if (this.iteratorVersion != OffHeapHandleMap.this.version) return null; // the table was re-organized
+                    while (this.position < OffHeapHandleMap.this.filled) {
+                        final int slot = slotAt(this.position++);
+                        if (state(slot) == USED) {
+                            this.lastKey = key(slot);
+                            return new AbstractMap.SimpleEntry<byte[], Long>(this.lastKey, value(slot));
+                        }
+                    }
+                    return null;
+                } finally {
+                    OffHeapHandleMap.this.lock.readLock().unlock();
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                return this.next != null;
+            }
+
+            @Override
+            public Map.Entry<byte[], Long> next() {
+                if (this.next == null) throw new NoSuchElementException();
+                final Map.Entry<byte[], Long> e = this.next;
+                this.next = next0();
+                return e;
+            }
+
+            @Override
+            public void remove() {
+                if (this.lastKey == null) throw new IllegalStateException();
+                // removing does not change the order table, therefore the iteration can go on
+                OffHeapHandleMap.this.remove(this.lastKey);
+            }
+        };
+    }
+
+}
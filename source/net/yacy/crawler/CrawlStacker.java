@@ -150,6 +150,8 @@ public final class CrawlStacker {
 
         // DEBUG
         if (CrawlStacker.log.isFinest()) CrawlStacker.log.finest("ENQUEUE " + entry.url() + ", referer=" + entry.referrerhash() + ", initiator=" + ((entry.initiator() == null) ? "" : ASCII.String(entry.initiator())) + ", name=" + entry.name() + ", appdate=" + entry.appdate() + ", depth=" + entry.depth());
+        // resolve the host in the background, so neither the stacker nor the loader must wait for the dns server
+        Domains.prefetch(entry.url().getHost());
         this.requestQueue.enQueue(entry);
     }
     
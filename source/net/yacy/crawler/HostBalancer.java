@@ -25,8 +25,6 @@ import java.io.IOException;
 import java.lang.reflect.Array;
 import java.net.MalformedURLException;
 import java.util.ArrayList;
-import java.util.ConcurrentModificationException;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -40,6 +38,7 @@ import net.yacy.cora.order.Base64Order;
 import net.yacy.cora.protocol.ClientIdentification;
 import net.yacy.cora.storage.HandleMap;
 import net.yacy.cora.storage.HandleSet;
+import net.yacy.cora.storage.OffHeapHandleMap;
 import net.yacy.cora.util.ConcurrentLog;
 import net.yacy.cora.util.SpaceExceededException;
 import net.yacy.crawler.data.CrawlProfile;
@@ -60,15 +59,39 @@ import net.yacy.kelondro.util.FileUtils;
  * The crawldepth is interpreted as clickdepth and the crawler is producing that semantic using a
  * correct crawl ordering.
  */
-public class HostBalancer implements Balancer {
+public class HostBalancer implements Balancer, Latency.UpdateListener {
 
     private final static ConcurrentLog log = new ConcurrentLog("HostBalancer");
-    public final static HandleMap depthCache = new RowHandleMap(Word.commonHashLength, Word.commonHashOrder, 2, 8 * 1024 * 1024, "HostBalancer.DepthCache");
+    public static volatile HandleMap depthCache = new RowHandleMap(Word.commonHashLength, Word.commonHashOrder, 2, 8 * 1024 * 1024, "HostBalancer.DepthCache");
+
+    /**
+     * switch the depth cache between the on-heap and the off-heap implementation.
+     * The content of the current cache is transferred to the new cache.
+     * @param offHeap if true, the cache is stored outside of the java heap
+     */
+    public static synchronized void setOffHeapDepthCache(final boolean offHeap) {
+        final HandleMap current = depthCache;
+        if (offHeap == (current instanceof OffHeapHandleMap)) return;
+        final HandleMap next = offHeap ?
+                new OffHeapHandleMap(Word.commonHashLength, Word.commonHashOrder, 2, Math.max(1000, current.size())) :
+                new RowHandleMap(Word.commonHashLength, Word.commonHashOrder, 2, 8 * 1024 * 1024, "HostBalancer.DepthCache");
+        try {
+            for (final Map.Entry<byte[], Long> entry: current) next.put(entry.getKey(), entry.getValue());
+        } catch (final SpaceExceededException e) {
+            log.warn("cannot transfer depth cache: " + e.getMessage());
+            next.close();
+            return;
+        }
+        depthCache = next;
+        current.close();
+    }
     
     private final File hostsPath;
     private final boolean exceed134217727;
     private final Map<String, HostQueue> queues;
-    private final Set<String> roundRobinHostHashes;
+    private final HostScheduler scheduler; // the hosts ordered by the time when they may be accessed next
+    private final Map<String, Boolean> activeHosts; // hosts which are currently taken out of the schedule by a pop
+    private volatile RobotsTxt robots; // the robots.txt used for the access time computation; set with each pop
     private final int onDemandLimit;
 
     public HostBalancer(
@@ -82,7 +105,10 @@ public class HostBalancer implements Balancer {
         // create a stack for newly entered entries
         if (!(hostsPath.exists())) hostsPath.mkdirs(); // make the path
         this.queues = new ConcurrentHashMap<String, HostQueue>();
-        this.roundRobinHostHashes = new HashSet<String>();
+        this.scheduler = new HostScheduler();
+        this.activeHosts = new ConcurrentHashMap<String, Boolean>();
+        this.robots = null;
+        Latency.addUpdateListener(this);
         init(); // return without wait but starts a thread to fill the queues
     }
 
@@ -104,6 +130,7 @@ public class HostBalancer implements Balancer {
                             FileUtils.deletedelete(queuePath);
                         } else {
                             queues.put(queue.getHostHash(), queue);
+                            scheduler.schedule(queue.getHostHash(), System.currentTimeMillis());
                         }
                     } catch (MalformedURLException | RuntimeException e) {
                         log.warn("delete queue due to init error for " + hostsPath.getName() + " host=" + hoststr + " " + e.getLocalizedMessage());
@@ -119,11 +146,13 @@ public class HostBalancer implements Balancer {
 
     @Override
     public synchronized void close() {
+        Latency.removeUpdateListener(this);
         if (depthCache != null) {
             depthCache.clear();
         }
         for (HostQueue queue: this.queues.values()) queue.close();
         this.queues.clear();
+        this.scheduler.clear();
     }
 
     @Override
@@ -133,6 +162,7 @@ public class HostBalancer implements Balancer {
         }
         for (HostQueue queue: this.queues.values()) queue.clear();
         this.queues.clear();
+        this.scheduler.clear();
     }
 
     @Override
@@ -250,6 +280,7 @@ public class HostBalancer implements Balancer {
             if (queue == null) {
                 queue = new HostQueue(this.hostsPath, entry.url(), this.queues.size() > this.onDemandLimit, this.exceed134217727);
                 this.queues.put(hosthash, queue);
+                this.scheduler.schedule(hosthash, System.currentTimeMillis()); // a new host can be accessed immediately
                 // profile might be null when continue crawls after YaCy restart
                 robots.ensureExist(entry.url(), profile == null ? ClientIdentification.yacyInternetCrawlerAgent : profile.getAgent(), true); // concurrently load all robots.txt
             }
@@ -271,180 +302,26 @@ public class HostBalancer implements Balancer {
      */
     @Override
     public Request pop(boolean delay, CrawlSwitchboard cs, RobotsTxt robots) throws IOException {
+        this.robots = robots;
         tryagain: while (true) try {
-            HostQueue rhq = null;
-            String rhh = null;
-        
-            synchronized (this) {
-                if (this.roundRobinHostHashes.size() == 0) {
-                    // refresh the round-robin cache
-                    this.roundRobinHostHashes.addAll(this.queues.keySet());
-                    // quickly get rid of small stacks to reduce number of files:
-                    // remove all stacks with more than 10 entries
-                    // this shall kick out small stacks to prevent that too many files are opened for very wide crawls
-                    boolean smallStacksExist = false;
-                    boolean singletonStacksExist = false;
-                    smallsearch: for (String s: this.roundRobinHostHashes) {
-                        HostQueue hq = this.queues.get(s);
-                        if (hq != null) {
-                            int size = hq.size();
-                            if (size ==  1) {singletonStacksExist = true; break smallsearch;}
-                            if (size <= 10) {smallStacksExist = true; break smallsearch;}
-                        }
-                    }
-                    if (singletonStacksExist || smallStacksExist) {
-                        Iterator<String> i = this.roundRobinHostHashes.iterator();
-                        smallstacks: while (i.hasNext()) {
-                            if (this.roundRobinHostHashes.size() <= 10) break smallstacks; // don't shrink the hosts until nothing is left
-                            String s = i.next();
-                            HostQueue hq = this.queues.get(s);
-                            if (hq == null) {i.remove(); continue smallstacks;}
-                            int delta = Latency.waitingRemainingGuessed(hq.getHost(), hq.getPort(), s, robots, ClientIdentification.yacyInternetCrawlerAgent);
-                            if (delta < 0) continue; // keep all non-waiting stacks; they are useful to speed up things
-                            // to protect all small stacks which have a fast throughput, remove all with long waiting time
-                            if (delta >= 1000) {i.remove(); continue smallstacks;}
-                            int size = hq.size();
-                            if (singletonStacksExist) {
-                                if (size != 1) {i.remove(); continue smallstacks;} // remove all non-singletons
-                            } else /*smallStacksExist*/ {
-                                if (size > 10) {i.remove(); continue smallstacks;} // remove all large stacks
-                            }
-                        }
-                    }
-                    if (this.roundRobinHostHashes.size() == 1) {
-                        if (log.isFine()) log.fine("(re-)initialized the round-robin queue with one host");
-                    } else {
-                        log.info("(re-)initialized the round-robin queue; " + this.roundRobinHostHashes.size() + " hosts.");
-                    }
-                }
-                if (this.roundRobinHostHashes.size() == 0) return null;
-                
-                // if the queue size is 1, just take that
-                if (this.roundRobinHostHashes.size() == 1) {
-                    rhh = this.roundRobinHostHashes.iterator().next();
-                    rhq = this.queues.get(rhh);
-                }
-                
-                if (rhq == null) {
-                    // mixed minimum sleep time / largest queue strategy:
-                    // create a map of sleep time / queue relations with a fuzzy sleep time (ms / 500).
-                    // if the entry with the smallest sleep time contains at least two entries,
-                    // then the larger one from these queues are selected.
-                    TreeMap<Integer, List<String>> fastTree = new TreeMap<>();
-                    mixedstrategy: for (String h: this.roundRobinHostHashes) {
-                        HostQueue hq = this.queues.get(h);
-                        if (hq != null) {
-                            int delta = Latency.waitingRemainingGuessed(hq.getHost(), hq.getPort(), h, robots, ClientIdentification.yacyInternetCrawlerAgent) / 200;
-                            if (delta < 0) delta = 0;
-                            List<String> queueHashes = fastTree.get(delta);
-                            if (queueHashes == null) {
-                                queueHashes = new ArrayList<>(2);
-                                fastTree.put(delta, queueHashes);
-                            }
-                            queueHashes.add(h);
-                            // check stop criteria
-                            List<String> firstEntries = fastTree.firstEntry().getValue();
-                            if (firstEntries.size() > 1) {
-                                // select larger queue from that list
-                                int largest = Integer.MIN_VALUE;
-                                for (String hh: firstEntries) {
-                                    HostQueue hhq = this.queues.get(hh);
-                                    if (hhq != null) {
-                                        int s = hhq.size();
-                                        if (s > largest) {
-                                            largest = s;
-                                            rhh = hh;
-                                        }
-                                    }
-                                }
-                                rhq = this.queues.get(rhh);
-                                break mixedstrategy;
-                            }
-                        }
-                    }
-                    if (rhq == null && fastTree.size() > 0) {
-                        // it may be possible that the lowest entry never has more than one queues assigned
-                        // in this case just take the smallest entry
-                        List<String> firstEntries = fastTree.firstEntry().getValue();
-                        assert firstEntries.size() == 1;
-                        rhh = firstEntries.get(0);
-                        rhq = this.queues.get(rhh);
-                    }
-                    // to prevent that the complete roundrobinhosthashes are taken for each round, we remove the entries from the top of the fast queue
-                    List<String> lastEntries = fastTree.size() > 0 ? fastTree.lastEntry().getValue() : null;
-                    if (lastEntries != null) {
-                        for (String h: lastEntries) this.roundRobinHostHashes.remove(h);
-                    }
-                }
-
-                /*
-                // first strategy: get one entry which does not need sleep time
-                Iterator<String> nhhi = this.roundRobinHostHashes.iterator();
-                nosleep: while (nhhi.hasNext()) {
-                    rhh = nhhi.next();
-                    rhq = this.queues.get(rhh);
-                    if (rhq == null) {
-                        nhhi.remove();
-                        continue nosleep;
-            }
-                    int delta = Latency.waitingRemainingGuessed(rhq.getHost(), rhh, robots, ClientIdentification.yacyInternetCrawlerAgent);
-                    if (delta <= 10 || this.roundRobinHostHashes.size() == 1 || rhq.size() == 1) {
-                        nhhi.remove();
-                        break nosleep;
-                    }
-                }
-                if (rhq == null) {
-                    // second strategy: take from the largest stack
-                    int largest = Integer.MIN_VALUE;
-                    for (String h: this.roundRobinHostHashes) {
-                        HostQueue hq = this.queues.get(h);
-                        if (hq != null) {
-                            int s = hq.size();
-                            if (s > largest) {
-                                largest = s;
-                                rhh = h;
-                            }
-                        }
-                    }
-                    rhq = this.queues.get(rhh);
-                }
-                */
-            }
-            
-            if (rhq == null) {
-                this.roundRobinHostHashes.clear(); // force re-initialization
+            // take the host with the earliest allowed access time; while a host is taken, no other thread gets it
+            String rhh = this.scheduler.take();
+            if (rhh == null) {
+                // hosts may be missing in the schedule if their queue was created concurrently
+                if (scheduleMissingHosts() == 0) return null;
                 continue tryagain;
             }
-            this.roundRobinHostHashes.remove(rhh); // prevent that the queue is used again
-            long timestamp = System.currentTimeMillis();
-            Request request = rhq.pop(delay, cs, robots); // this pop is outside of synchronization to prevent blocking of pushes
-            long actualwaiting = System.currentTimeMillis() - timestamp;
-            
-            if (actualwaiting > 1000) {
-                synchronized (this) {
-                    // to prevent that this occurs again, remove all stacks with positive delay times (which may be less after that waiting)
-                    Iterator<String> i = this.roundRobinHostHashes.iterator();
-                    protectcheck: while (i.hasNext()) {
-                        if (this.roundRobinHostHashes.size() <= 3) break protectcheck; // don't shrink the hosts until nothing is left
-                        String s = i.next();
-                        HostQueue hq = this.queues.get(s);
-                        if (hq == null) {i.remove(); continue protectcheck;}
-                        int delta = Latency.waitingRemainingGuessed(hq.getHost(), hq.getPort(), s, robots, ClientIdentification.yacyInternetCrawlerAgent);
-                        if (delta >= 0) {i.remove();}
-                    }
-                }
-            }
-            
-            if (rhq.isEmpty()) {
-                synchronized (this) {
-                    this.queues.remove(rhh);
-                }
-                rhq.close();
+            HostQueue rhq = this.queues.get(rhh);
+            if (rhq == null) continue tryagain;
+            this.activeHosts.put(rhh, Boolean.TRUE);
+            Request request;
+            try {
+                request = rhq.pop(delay, cs, robots); // this pop is outside of synchronization to prevent blocking of pushes
+            } finally {
+                release(rhh, rhq);
             }
             if (request == null) continue tryagain;
             return request;
-        } catch (ConcurrentModificationException e) {
-            continue tryagain;
         } catch (IOException e) {
             throw e;
         } catch (Throwable e) {
@@ -453,6 +330,64 @@ public class HostBalancer implements Balancer {
         }
     }
 
+    /**
+     * put a host back into the schedule after a pop or remove it if its queue is empty
+     * @param hosthash
+     * @param hq
+     */
+    private void release(final String hosthash, final HostQueue hq) {
+        try {
+            if (hq.isEmpty()) {
+                synchronized (this) {
+                    // synchronized with push() which creates new queues
+                    if (hq.isEmpty()) {
+                        this.queues.remove(hosthash);
+                        hq.close();
+                        return;
+                    }
+                }
+            }
+            this.scheduler.schedule(hosthash, nextAccessTime(hq));
+        } finally {
+            this.activeHosts.remove(hosthash);
+        }
+    }
+
+    /**
+     * compute the time when a host may be accessed again
+     * @param hq
+     * @return the time in milliseconds
+     */
+    private long nextAccessTime(final HostQueue hq) {
+        final int delta = Latency.waitingRemainingGuessed(hq.getHost(), hq.getPort(), hq.getHostHash(), this.robots, ClientIdentification.yacyInternetCrawlerAgent);
+        return System.currentTimeMillis() + Math.max(0, delta);
+    }
+
+    /**
+     * put all hosts into the schedule which have a queue but are neither scheduled nor currently used by a pop
+     * @return the number of hosts which had been added to the schedule
+     */
+    private int scheduleMissingHosts() {
+        int c = 0;
+        for (Map.Entry<String, HostQueue> entry: this.queues.entrySet()) {
+            String h = entry.getKey();
+            if (this.activeHosts.containsKey(h) || this.scheduler.isScheduled(h)) continue;
+            if (this.scheduler.schedule(h, nextAccessTime(entry.getValue()))) c++;
+        }
+        if (c > 0) log.info("added " + c + " hosts to the schedule; " + this.scheduler.size() + " hosts scheduled.");
+        return c;
+    }
+
+    /**
+     * the access times of a host have changed; if the host is scheduled, its position in the schedule is updated
+     */
+    @Override
+    public void latencyUpdated(final String hosthash) {
+        if (!this.scheduler.isScheduled(hosthash)) return;
+        HostQueue hq = this.queues.get(hosthash);
+        if (hq != null) this.scheduler.reschedule(hosthash, nextAccessTime(hq));
+    }
+
     @Override
     public Iterator<Request> iterator() throws IOException {
         final Iterator<HostQueue> hostsIterator = this.queues.values().iterator();
@@ -0,0 +1,138 @@
+/**
+ *  HostScheduler
+ *  First released at http://yacy.net
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.crawler;
+
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * a delay queue of host hashes, ordered by the time when the host may be accessed next.
+ * Hosts with the same time are ordered by the time when they were scheduled, which gives a round-robin order.
+ * All methods are lock-free: take() removes the first host atomically, therefore concurrent callers always
+ * get different hosts. A host is not in the schedule while it is taken; it must be scheduled again by the taker.
+ */
+public class HostScheduler {
+
+    private static final class Due implements Comparable<Due> {
+        private final String hosthash;
+        private final long time;
+        private final long sequence;
+
+        private Due(final String hosthash, final long time, final long sequence) {
+            this.hosthash = hosthash;
+            this.time = time;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(final Due o) {
+            if (this.time != o.time) return this.time < o.time ? -1 : 1;
+            if (this.sequence != o.sequence) return this.sequence < o.sequence ? -1 : 1;
+            return 0;
+        }
+    }
+
+    private final ConcurrentSkipListSet<Due> schedule;       // ordered by due time
+    private final ConcurrentHashMap<String, Due> scheduled;  // the current schedule entry for each host
+    private final AtomicLong sequence;
+
+    public HostScheduler() {
+        this.schedule = new ConcurrentSkipListSet<Due>();
+        this.scheduled = new ConcurrentHashMap<String, Due>();
+        this.sequence = new AtomicLong(0);
+    }
+
+    /**
+     * put a host into the schedule if it is not already scheduled
+     * @param hosthash
+     * @param time the time in milliseconds when the host may be accessed next
+     * @return true if the host was added, false if it was already scheduled
+     */
+    public boolean schedule(final String hosthash, final long time) {
+        final Due d = new Due(hosthash, time, this.sequence.incrementAndGet());
+        if (this.scheduled.putIfAbsent(hosthash, d) != null) return false;
+        this.schedule.add(d);
+        return true;
+    }
+
+    /**
+     * change the due time of a host if it is scheduled. The host gets a new sequence number, so the new
+     * entry never compares equal to a stale entry of a concurrent reschedule of the same host.
+     * @param hosthash
+     * @param time the new time in milliseconds when the host may be accessed next
+     * @return true if the host was re-scheduled, false if it is not in the schedule
+     */
+    public boolean reschedule(final String hosthash, final long time) {
+        final Due old = this.scheduled.get(hosthash);
+        if (old == null || old.time == time) return false;
+        final Due d = new Due(hosthash, time, this.sequence.incrementAndGet());
+        if (!this.scheduled.replace(hosthash, old, d)) return false; // taken or re-scheduled concurrently
+        this.schedule.add(d);
+        this.schedule.remove(old);
+        return true;
+    }
+
+    /**
+     * take the host with the smallest due time out of the schedule
+     * @return the host hash or null if no host is scheduled
+     */
+    public String take() {
+        Due d;
+        while ((d = this.schedule.pollFirst()) != null) {
+            // entries which were replaced by reschedule() may still be in the schedule; skip them
+            if (this.scheduled.remove(d.hosthash, d)) return d.hosthash;
+        }
+        return null;
+    }
+
+    /**
+     * @return the time in milliseconds when the first host may be accessed or Long.MAX_VALUE if nothing is scheduled
+     */
+    public long nextTime() {
+        try {
+            return this.schedule.first().time;
+        } catch (final NoSuchElementException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    public boolean isScheduled(final String hosthash) {
+        return this.scheduled.containsKey(hosthash);
+    }
+
+    public void remove(final String hosthash) {
+        final Due d = this.scheduled.remove(hosthash);
+        if (d != null) this.schedule.remove(d);
+    }
+
+    /**
+     * @return the number of scheduled hosts
+     */
+    public int size() {
+        return this.scheduled.size();
+    }
+
+    public void clear() {
+        this.scheduled.clear();
+        this.schedule.clear();
+    }
+}
@@ -40,6 +40,7 @@ import java.io.UnsupportedEncodingException;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.BlockingQueue;
+import java.util.zip.Deflater;
 
 import net.yacy.cora.document.encoding.ASCII;
 import net.yacy.cora.document.id.DigestURL;
@@ -50,6 +51,7 @@ import net.yacy.cora.util.ConcurrentLog;
 import net.yacy.cora.util.SpaceExceededException;
 import net.yacy.kelondro.blob.ArrayStack;
 import net.yacy.kelondro.blob.Compressor;
+import net.yacy.kelondro.blob.DeflateCodec;
 import net.yacy.kelondro.blob.MapHeap;
 import net.yacy.kelondro.data.word.Word;
 import net.yacy.kelondro.index.RowHandleSet;
@@ -59,10 +61,18 @@ public final class Cache {
 
     private static final String RESPONSE_HEADER_DB_NAME = "responseHeader.heap";
     private static final String FILE_DB_NAME = "file.array";
+    private static final String SENTENCE_DB_NAME = "sentences.array";
 
     private static MapHeap responseHeaderDB = null;
     private static Compressor fileDB = null;
     private static ArrayStack fileDBunbuffered = null;
+    private static Compressor sentenceDB = null; // sentence indexes of indexed documents for the snippet computation, see SentenceIndex
+    private static ArrayStack sentenceDBunbuffered = null;
+
+    /**
+     * the deflate level of new cache entries; the fast levels keep the compression cost low for a cache which is written more often than read
+     */
+    public static int compressionLevel = Deflater.BEST_SPEED;
 
     private static long maxCacheSize = Long.MAX_VALUE;
     private static File cachePath = null;
@@ -100,7 +110,7 @@ public final class Cache {
         try {
             fileDBunbuffered = new ArrayStack(new File(cachePath, FILE_DB_NAME), prefix, Base64Order.enhancedCoder, 12, 1024 * 1024 * 2, false, true);
             fileDBunbuffered.setMaxSize(maxCacheSize);
-            fileDB = new Compressor(fileDBunbuffered, 6 * 1024 * 1024);
+            fileDB = new Compressor(fileDBunbuffered, 6 * 1024 * 1024, new DeflateCodec(compressionLevel));
         } catch (final IOException e) {
             ConcurrentLog.logException(e);
             // try a healing
@@ -109,12 +119,21 @@ public final class Cache {
                 try {
                     fileDBunbuffered = new ArrayStack(new File(cachePath, FILE_DB_NAME), prefix, Base64Order.enhancedCoder, 12, 1024 * 1024 * 2, false, true);
                     fileDBunbuffered.setMaxSize(maxCacheSize);
-                    fileDB = new Compressor(fileDBunbuffered, 6 * 1024 * 1024);
+                    fileDB = new Compressor(fileDBunbuffered, 6 * 1024 * 1024, new DeflateCodec(compressionLevel));
                 } catch (final IOException ee) {
                     ConcurrentLog.logException(e);
                 }
             }
         }
+        // open the sentence index
+        try {
+            sentenceDBunbuffered = new ArrayStack(new File(cachePath, SENTENCE_DB_NAME), prefix, Base64Order.enhancedCoder, 12, 1024 * 1024 * 2, false, true);
+            sentenceDBunbuffered.setMaxSize(maxCacheSize);
+            sentenceDB = new Compressor(sentenceDBunbuffered, 2 * 1024 * 1024, new DeflateCodec(compressionLevel));
+        } catch (final IOException e) {
+            ConcurrentLog.logException(e);
+            sentenceDB = null;
+        }
         ConcurrentLog.info("Cache", "initialized cache database responseHeaderDB.size() = " + (responseHeaderDB == null ? "NULL" : responseHeaderDB.size()) + ", fileDB.size() = " + (fileDB == null ? "NULL" : fileDB.size()));
 
         // clean up the responseHeaderDB which cannot be cleaned the same way as the cache files.
@@ -167,6 +186,7 @@ public final class Cache {
 
     public static void commit() {
     	fileDB.flushAll();
+    	if (sentenceDB != null) sentenceDB.flushAll();
     }
 
     /**
@@ -184,6 +204,12 @@ public final class Cache {
         } catch (final IOException e) {
             ConcurrentLog.logException(e);
         }
+        if (sentenceDB != null) try {
+            sentenceDB.clear();
+            sentenceDBunbuffered.clear();
+        } catch (final IOException e) {
+            ConcurrentLog.logException(e);
+        }
     }
 
     /**
@@ -193,6 +219,7 @@ public final class Cache {
     public static void setMaxCacheSize(final long newCacheSize) {
         maxCacheSize = newCacheSize;
         fileDBunbuffered.setMaxSize(maxCacheSize);
+        if (sentenceDBunbuffered != null) sentenceDBunbuffered.setMaxSize(maxCacheSize);
     }
 
     /**
@@ -217,6 +244,7 @@ public final class Cache {
     public static void close() {
         responseHeaderDB.close();
         fileDB.close(true);
+        if (sentenceDB != null) sentenceDB.close(true);
     }
 
     public static void store(final DigestURL url, final ResponseHeader responseHeader, final byte[] file) throws IOException {
@@ -346,5 +374,32 @@ public final class Cache {
     public static void delete(final byte[] hash) throws IOException {
         responseHeaderDB.delete(hash);
         fileDB.delete(hash);
+        if (sentenceDB != null) sentenceDB.delete(hash);
+    }
+
+    /**
+     * store the sentence index of an indexed document. The index is kept independently from the
+     * content, because it is also used for documents which are not cached.
+     * @param urlhash
+     * @param index the encoded index, see SentenceIndex.encode
+     */
+    public static void storeSentenceIndex(final byte[] urlhash, final byte[] index) throws IOException {
+        if (maxCacheSize == 0 || sentenceDB == null) return;
+        sentenceDB.insert(urlhash, index);
+    }
+
+    /**
+     * @param urlhash
+     * @return the sentence index of a document or null if there is none
+     */
+    public static byte[] getSentenceIndex(final byte[] urlhash) {
+        if (sentenceDB == null) return null;
+        try {
+            return sentenceDB.get(urlhash);
+        } catch (final IOException e) {
+            return null;
+        } catch (final SpaceExceededException e) {
+            return null;
+        }
     }
 }
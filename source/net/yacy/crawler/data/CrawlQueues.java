@@ -39,6 +39,7 @@ import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
+import org.apache.http.StatusLine;
 import org.apache.solr.client.solrj.SolrQuery;
 import org.apache.solr.client.solrj.response.QueryResponse;
 import org.apache.solr.common.SolrDocument;
@@ -53,12 +54,18 @@ import net.yacy.cora.federate.solr.FailCategory;
 import net.yacy.cora.federate.yacy.CacheStrategy;
 import net.yacy.cora.order.Base64Order;
 import net.yacy.cora.protocol.ConnectionInfo;
+import net.yacy.cora.protocol.Domains;
+import net.yacy.cora.protocol.RequestHeader;
+import net.yacy.cora.protocol.ResponseHeader;
 import net.yacy.cora.util.ConcurrentLog;
 import net.yacy.crawler.HarvestProcess;
 import net.yacy.crawler.data.NoticedURL.StackType;
+import net.yacy.crawler.retrieval.AsyncHTTPLoader;
+import net.yacy.crawler.retrieval.HTTPLoader;
 import net.yacy.crawler.retrieval.Request;
 import net.yacy.crawler.retrieval.Response;
 import net.yacy.crawler.robots.RobotsTxtEntry;
+import net.yacy.kelondro.io.SpillBuffer;
 import net.yacy.kelondro.workflow.WorkflowJob;
 import net.yacy.peers.DHTSelection;
 import net.yacy.peers.Protocol;
@@ -78,6 +85,8 @@ public class CrawlQueues {
     private final Switchboard sb;
     private final Loader[] worker;
     private final ArrayBlockingQueue<Request> workerQueue;
+    private final HTTPLoader httpLoader;
+    private AsyncHTTPLoader asyncLoader; // null if the crawler uses only the blocking loader
     private ArrayList<String> remoteCrawlProviderHashes;
 
     public  NoticedURL noticeURL;
@@ -92,6 +101,19 @@ public class CrawlQueues {
          * will be used to send POISON_REQUEST items consumed by all eventually running workers in the close() function*/
         this.workerQueue = new ArrayBlockingQueue<Request>(maxWorkers);
         this.remoteCrawlProviderHashes = null;
+        this.httpLoader = new HTTPLoader(sb, log);
+        this.asyncLoader = null;
+        if (sb.getConfigBool(SwitchboardConstants.CRAWLER_HTTP_ASYNC, true)) {
+            try {
+                this.asyncLoader = new AsyncHTTPLoader(log,
+                        (int) sb.getConfigLong("crawler.clientTimeout", 30000),
+                        sb.getConfigInt(SwitchboardConstants.CRAWLER_HTTP_ASYNC_MAX_IN_FLIGHT, 1000),
+                        sb.getConfigInt(SwitchboardConstants.CRAWLER_HTTP_ASYNC_MAX_PER_HOST, 2),
+                        maxWorkers);
+            } catch (final IOException e) {
+                log.warn("cannot start the asynchronous loader, using the loader threads only: " + e.getMessage());
+            }
+        }
 
         // start crawling management
         log.config("Starting Crawling Management");
@@ -154,6 +176,7 @@ public class CrawlQueues {
                 }
             }
         }
+        if (this.asyncLoader != null) this.asyncLoader.close();
         if (this.delegatedURL != null) this.delegatedURL.clear();
     }
 
@@ -254,6 +277,9 @@ public class CrawlQueues {
                     if (r != null) map.put(r.url(), r);
                 }
             }
+            if (this.asyncLoader != null) {
+                for (final Request r: this.asyncLoader.loading()) map.put(r.url(), r);
+            }
             return map;
         }
     }
@@ -376,7 +402,7 @@ public class CrawlQueues {
                 if (urlEntry == null || urlEntry.url() == null) {
                     CrawlQueues.log.info(stats + ": urlEntry = null");
                 } else {
-                    if (!activeWorkerEntries().containsKey(urlEntry.url())) {
+                    if (!activeWorkerEntries().containsKey(urlEntry.url()) && !loadAsync(urlEntry, profile)) {
                         try {
                             ensureLoaderRunning();
                             this.workerQueue.put(urlEntry);
@@ -426,7 +452,7 @@ public class CrawlQueues {
         }
 
         // check again
-        if (this.workerQueue.remainingCapacity() == 0) {
+        if (loaderIsFull()) {
             return "too many workers active: " + this.workerQueue.size();
         }
 
@@ -451,7 +477,7 @@ public class CrawlQueues {
         }
 
         // check again
-        if (this.workerQueue.remainingCapacity() == 0) {
+        if (loaderIsFull()) {
             if (CrawlQueues.log.isFine()) {
                 CrawlQueues.log.fine("remoteCrawlLoaderJob: too many processes in loader queue, dismissed (" + "workerQueue=" + this.workerQueue.size() + "), httpClients = " + ConnectionInfo.getCount());
             }
@@ -696,6 +722,13 @@ public class CrawlQueues {
         }
     }
 
+    /**
+     * @return true if neither the loader threads nor the asynchronous loader can take another request
+     */
+    private boolean loaderIsFull() {
+        return this.workerQueue.remainingCapacity() == 0 && (this.asyncLoader == null || !this.asyncLoader.hasCapacity());
+    }
+
     private void ensureLoaderRunning() {
         // check if there is at least one loader available
         for (int i = 0; i < this.worker.length; i++) {
@@ -707,7 +740,148 @@ public class CrawlQueues {
             if (this.worker[i].loading() == null) return;
         }
     }
-    
+
+    /**
+     * load a request with the asynchronous loader. Requests which may be answered from the cache and requests
+     * to the own peer or to yacy domains are left to the loader threads, because the LoaderDispatcher handles them.
+     * @param request
+     * @param profile
+     * @return true if the request was processed, false if it must be given to the loader threads
+     */
+    private boolean loadAsync(final Request request, final CrawlProfile profile) {
+        if (this.asyncLoader == null) return false;
+        final DigestURL url = request.url();
+        if (!url.isHTTP() && !url.isHTTPS()) return false;
+        final String host = url.getHost();
+        if (host == null || host.length() < 2 || Domains.isLocalhost(host)) return false;
+        if (this.sb.peers != null && this.sb.peers.resolve(host) != null) return false;
+        final CacheStrategy cacheStrategy = profile.cacheStrategy();
+        if (cacheStrategy == CacheStrategy.CACHEONLY || (cacheStrategy != CacheStrategy.NOCACHE && Cache.has(url.hash()))) return false;
+
+        // checking robots.txt and the blacklist like the Loader and the LoaderDispatcher do. This runs in the crawl job,
+        // so only a stored robots.txt is used; hosts which need a robots.txt download are left to the loader threads
+        request.setStatus("worker-checkingrobots", WorkflowJob.STATUS_STARTED);
+        final RobotsTxtEntry robotsEntry = this.sb.robots.getStoredEntry(url, profile.getAgent());
+        if (robotsEntry == null) return false;
+        if (robotsEntry.isDisallowed(url)) {
+            this.errorURL.push(url, request.depth(), profile, FailCategory.FINAL_ROBOTS_RULE, "denied by robots.txt", -1);
+            request.setStatus("worker-disallowed", WorkflowJob.STATUS_FINISHED);
+            return true;
+        }
+        if (Switchboard.urlBlacklist.isListed(BlacklistType.CRAWLER, host.toLowerCase(), url.getFile())) {
+            this.errorURL.push(url, request.depth(), profile, FailCategory.FINAL_LOAD_CONTEXT, "url in blacklist", -1);
+            request.setStatus("worker-disallowed", WorkflowJob.STATUS_FINISHED);
+            return true;
+        }
+
+        final RequestHeader requestHeader;
+        try {
+            requestHeader = this.httpLoader.createRequestheader(request, profile.getAgent());
+        } catch (final IOException e) {
+            return false;
+        }
+        final int maxFileSize = this.sb.getConfigInt("crawler.http.maxFileSize", HTTPLoader.DEFAULT_MAXFILESIZE);
+        request.setStatus("loading", WorkflowJob.STATUS_RUNNING);
+        return this.asyncLoader.load(request, requestHeader, maxFileSize, new AsyncLoaded(profile, maxFileSize));
+    }
+
+    /**
+     * push a loaded response to the indexer
+     * @return null if everything went fine, a fail reason string if a problem occurred
+     */
+    private String toIndexer(final Request request, final Response response) {
+        if (response == null) {
+            request.setStatus("error", WorkflowJob.STATUS_FINISHED);
+            if (CrawlQueues.log.isFine()) {
+                CrawlQueues.log.fine("problem loading " + request.url().toString() + ": no content (possibly caused by cache policy)");
+            }
+            return "no content (possibly caused by cache policy)";
+        }
+        request.setStatus("loaded", WorkflowJob.STATUS_RUNNING);
+        final String storedFailMessage = CrawlQueues.this.sb.toIndexer(response);
+        request.setStatus("enqueued-" + ((storedFailMessage == null) ? "ok" : "fail"), WorkflowJob.STATUS_FINISHED);
+        return (storedFailMessage == null) ? null : "not enqueued to indexer: " + storedFailMessage;
+    }
+
+    /**
+     * record the result of a load process
+     * @param error null if everything went fine, a fail reason string if a problem occurred
+     */
+    private void finish(final Request request, final CrawlProfile profile, String error) {
+        if (error != null) {
+            if (error.endsWith("$")) {
+                // the "$" mark at the end of the error message means, that the error was already pushed to the error-db by the reporting method
+                // thus we only push this message if we don't have that mark
+                error = error.substring(0, error.length() - 1).trim();
+            } else {
+                CrawlQueues.this.errorURL.push(request.url(), request.depth(), profile, FailCategory.TEMPORARY_NETWORK_FAILURE, "cannot load: " + error, -1);
+            }
+            request.setStatus("worker-error", WorkflowJob.STATUS_FINISHED);
+        } else {
+            request.setStatus("worker-processed", WorkflowJob.STATUS_FINISHED);
+        }
+    }
+
+    /**
+     * processes the responses of the asynchronous loader the same way as the Loader threads process
+     * the responses of the LoaderDispatcher. The methods run in the listener threads of the loader,
+     * not in the threads of its http client, so they may block when the indexer queue is full.
+     */
+    private final class AsyncLoaded implements AsyncHTTPLoader.Listener {
+
+        private final CrawlProfile profile;
+        private final int maxFileSize;
+
+        private AsyncLoaded(final CrawlProfile profile, final int maxFileSize) {
+            this.profile = profile;
+            this.maxFileSize = maxFileSize;
+        }
+
+        @Override
+        public void loaded(final Request request, final RequestHeader requestHeader, final StatusLine statusline, final ResponseHeader responseHeader, final SpillBuffer body) {
+            String error;
+            try {
+                final int statusCode = statusline.getStatusCode();
+                if (statusCode > 299 && statusCode < 310) {
+                    if (body != null) body.delete();
+                    // the redirection is followed by a loader thread
+                    request.redirectURL(CrawlQueues.this.httpLoader.redirect(request, this.profile, request.url(), statusline, responseHeader));
+                    ensureLoaderRunning();
+                    if (CrawlQueues.this.workerQueue.offer(request, 10, TimeUnit.SECONDS)) return;
+                    error = "too many workers active to follow redirection";
+                } else {
+                    final Response response = CrawlQueues.this.httpLoader.response(request, this.profile, requestHeader, statusline, responseHeader, body, this.maxFileSize);
+                    if (this.profile.storeHTCache() && response.shallStoreCacheForCrawler() == null) {
+                        try {
+                            Cache.store(request.url(), responseHeader, response.getContent());
+                        } catch (final IOException e) {
+                            CrawlQueues.log.warn("cannot write " + response.url() + " to Cache: " + e.getMessage(), e);
+                        }
+                    }
+                    error = toIndexer(request, response);
+                }
+            } catch (final IOException e) {
+                request.setStatus("error", WorkflowJob.STATUS_FINISHED);
+                if (CrawlQueues.log.isFine()) {
+                    CrawlQueues.log.fine("problem loading " + request.url().toString() + ": " + e.getMessage());
+                }
+                error = "load error - " + e.getMessage();
+            } catch (final InterruptedException e) {
+                error = "interrupted";
+            }
+            finish(request, this.profile, error);
+        }
+
+        @Override
+        public void failed(final Request request, final String reason) {
+            request.setStatus("error", WorkflowJob.STATUS_FINISHED);
+            if (CrawlQueues.log.isFine()) {
+                CrawlQueues.log.fine("problem loading " + request.url().toString() + ": " + reason);
+            }
+            finish(request, this.profile, "load error - " + reason);
+        }
+    }
+
     private final class Loader extends Thread {
 
         private Request request = null;
@@ -747,18 +921,7 @@ public class CrawlQueues {
                             try {
                                 request.setStatus("loading", WorkflowJob.STATUS_RUNNING);
                                 final Response response = CrawlQueues.this.sb.loader.load(request, profile == null ? CacheStrategy.IFEXIST : profile.cacheStrategy(), BlacklistType.CRAWLER, profile.getAgent());
-                                if (response == null) {
-                                    request.setStatus("error", WorkflowJob.STATUS_FINISHED);
-                                    if (CrawlQueues.log.isFine()) {
-                                        CrawlQueues.log.fine("problem loading " + request.url().toString() + ": no content (possibly caused by cache policy)");
-                                    }
-                                    error = "no content (possibly caused by cache policy)";
-                                } else {
-                                    request.setStatus("loaded", WorkflowJob.STATUS_RUNNING);
-                                    final String storedFailMessage = CrawlQueues.this.sb.toIndexer(response);
-                                    request.setStatus("enqueued-" + ((storedFailMessage == null) ? "ok" : "fail"), WorkflowJob.STATUS_FINISHED);
-                                    error = (storedFailMessage == null) ? null : "not enqueued to indexer: " + storedFailMessage;
-                                }
+                                error = toIndexer(request, response);
                             } catch (final IOException e) {
                                 request.setStatus("error", WorkflowJob.STATUS_FINISHED);
                                 if (CrawlQueues.log.isFine()) {
@@ -767,18 +930,7 @@ public class CrawlQueues {
                                 error = "load error - " + e.getMessage();
                             }
    
-                            if (error != null) {
-                                if (error.endsWith("$")) {
-                                    // the "$" mark at the end of the error message means, that the error was already pushed to the error-db by the reporting method
-                                    // thus we only push this message if we don't have that mark
-                                    error = error.substring(0, error.length() - 1).trim();
-                                } else {
-                                    CrawlQueues.this.errorURL.push(request.url(), request.depth(), profile, FailCategory.TEMPORARY_NETWORK_FAILURE, "cannot load: " + error, -1);
-                                }
-                                request.setStatus("worker-error", WorkflowJob.STATUS_FINISHED);
-                            } else {
-                                request.setStatus("worker-processed", WorkflowJob.STATUS_FINISHED);
-                            }
+                            finish(request, profile, error);
                         }
                     } catch (final Exception e) {
                         CrawlQueues.this.errorURL.push(request.url(), request.depth(), profile, FailCategory.TEMPORARY_NETWORK_FAILURE, e.getMessage() + " - in worker", -1);
@@ -26,6 +26,7 @@ package net.yacy.crawler.data;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -46,6 +47,27 @@ public class Latency {
     private static final int mapMaxSize = 1000;
     private static final ConcurrentHashMap<String, Host> map = new ConcurrentHashMap<String, Host>();
 
+    /**
+     * a listener is informed when the access times of a host have changed
+     */
+    public interface UpdateListener {
+        public void latencyUpdated(String hosthash);
+    }
+
+    private static final CopyOnWriteArrayList<UpdateListener> listeners = new CopyOnWriteArrayList<UpdateListener>();
+
+    public static void addUpdateListener(final UpdateListener listener) {
+        listeners.addIfAbsent(listener);
+    }
+
+    public static void removeUpdateListener(final UpdateListener listener) {
+        listeners.remove(listener);
+    }
+
+    private static void notifyListeners(final String hosthash) {
+        for (final UpdateListener listener: listeners) listener.latencyUpdated(hosthash);
+    }
+
     /**
      * update the latency entry after a host was selected for queueing into the loader
      * @param url
@@ -80,6 +102,7 @@ public class Latency {
         } else {
             h.update();
         }
+        notifyListeners(hosthash);
     }
 
     /**
@@ -99,6 +122,7 @@ public class Latency {
         } else {
             h.update(time);
         }
+        notifyListeners(hosthash);
     }
 
     private static Host host(final DigestURL url) {
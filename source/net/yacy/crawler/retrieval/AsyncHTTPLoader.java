@@ -0,0 +1,318 @@
+// AsyncHTTPLoader.java
+// first published on http://yacy.net
+//
+// This is a part of YaCy, a peer-to-peer based web search engine
+//
+// LICENSE
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.crawler.retrieval;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.HttpVersion;
+import org.apache.http.StatusLine;
+import org.apache.http.message.BasicStatusLine;
+import org.eclipse.jetty.client.ContentDecoder;
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.http.HttpField;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
+import net.yacy.cora.document.id.DigestURL;
+import net.yacy.cora.protocol.HeaderFramework;
+import net.yacy.cora.protocol.RequestHeader;
+import net.yacy.cora.protocol.ResponseHeader;
+import net.yacy.cora.util.ConcurrentLog;
+import net.yacy.crawler.data.Latency;
+import net.yacy.kelondro.io.SpillBuffer;
+import net.yacy.kelondro.util.NamePrefixThreadFactory;
+
+/**
+ * a non-blocking http loader for the crawler. All requests are multiplexed over the NIO selectors
+ * of one http client, so the number of requests in flight is not bound to the number of loader threads.
+ * The content of a response is written into a SpillBuffer while it arrives; the listener of a request
+ * is called when the response is complete. The listeners run in an own thread pool and not in the threads
+ * of the http client, so a listener may block without stalling the other requests; a request counts as
+ * in flight until its listener has returned. Redirections are not followed, they are reported to the listener.
+ * The politeness rules are not checked here, the caller must only submit requests which may be loaded now;
+ * the access times are recorded in the Latency table like the blocking HTTPLoader does.
+ */
+public class AsyncHTTPLoader {
+
+    public interface Listener {
+
+        /**
+         * called when a response was received completely
+         * @param request the request
+         * @param requestHeader the header which had been sent
+         * @param statusline the status of the response
+         * @param responseHeader the header of the response
+         * @param body the content, null if the status is neither 200 nor 203; the listener must delete the buffer
+         */
+        public void loaded(Request request, RequestHeader requestHeader, StatusLine statusline, ResponseHeader responseHeader, SpillBuffer body);
+
+        /**
+         * called if the request failed
+         * @param request the request
+         * @param reason the error message
+         */
+        public void failed(Request request, String reason);
+    }
+
+    private final ConcurrentLog log;
+    private final HttpClient client;
+    private final int timeout;
+    private final Semaphore capacity;
+    private final ThreadPoolExecutor processor; // runs the listeners
+    private final Map<DigestURL, Request> inFlight;
+    private final AtomicLong loaded, failed;
+
+    /**
+     * create and start the loader
+     * @param log the log
+     * @param timeout the connect and idle timeout in milliseconds
+     * @param maxInFlight the maximum number of requests which may run at the same time
+     * @param maxConnectionsPerHost the maximum number of connections to the same host
+     * @param threads the number of threads which run the listeners
+     * @throws IOException if the client cannot be started
+     */
+    public AsyncHTTPLoader(final ConcurrentLog log, final int timeout, final int maxInFlight, final int maxConnectionsPerHost, final int threads) throws IOException {
+        this.log = log;
+        this.timeout = timeout;
+        this.capacity = new Semaphore(maxInFlight);
+        this.inFlight = new ConcurrentHashMap<DigestURL, Request>();
+        this.loaded = new AtomicLong(0);
+        this.failed = new AtomicLong(0);
+        // the queue cannot overflow because a permit of the capacity is held until the listener has returned
+        this.processor = new ThreadPoolExecutor(threads, threads, 10, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(maxInFlight), new NamePrefixThreadFactory("AsyncHTTPLoader.listener"));
+        this.processor.allowCoreThreadTimeOut(true);
+        final QueuedThreadPool executor = new QueuedThreadPool(Math.max(threads, 4), 2);
+        executor.setName("AsyncHTTPLoader");
+        executor.setDaemon(true);
+        this.client = new HttpClient(new SslContextFactory(true)); // like the blocking client we accept all certificates
+        this.client.setExecutor(executor);
+        this.client.setFollowRedirects(false); // we want to handle redirection ourselves, so we don't index pages twice
+        this.client.setConnectTimeout(timeout);
+        this.client.setIdleTimeout(timeout);
+        this.client.setMaxConnectionsPerDestination(maxConnectionsPerHost);
+        this.client.setMaxRequestsQueuedPerDestination(maxInFlight);
+        try {
+            this.client.start();
+        } catch (final Exception e) {
+            throw new IOException("cannot start http client: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * submit a request
+     * @param request the request; its url is loaded
+     * @param requestHeader the request header
+     * @param maxFileSize the maximum size of the content, -1 for no limit
+     * @param listener the listener which is called when the request is finished
+     * @return false if the maximum number of requests is in flight; the request was not submitted then
+     */
+    public boolean load(final Request request, final RequestHeader requestHeader, final int maxFileSize, final Listener listener) {
+        if (!this.capacity.tryAcquire()) return false;
+        final DigestURL url = request.url();
+        final org.eclipse.jetty.client.api.Request r;
+        try {
+            r = this.client.newRequest(url.toNormalform(false)).idleTimeout(this.timeout, TimeUnit.MILLISECONDS);
+        } catch (final IllegalArgumentException e) {
+            this.capacity.release();
+            listener.failed(request, "bad url: " + e.getMessage());
+            return true;
+        }
+        for (final Map.Entry<String, String> h: requestHeader.entrySet()) {
+            // the client decompresses the content only for the encodings it announced itself
+            if (HeaderFramework.ACCEPT_ENCODING.equalsIgnoreCase(h.getKey())) continue;
+            if (HeaderFramework.USER_AGENT.equalsIgnoreCase(h.getKey())) r.agent(h.getValue()); else r.header(h.getKey(), h.getValue());
+        }
+        this.inFlight.put(url, request);
+        Latency.updateBeforeLoad(url);
+        r.send(new Exchange(request, requestHeader, maxFileSize, listener, System.currentTimeMillis()));
+        return true;
+    }
+
+    /**
+     * @return the requests which are loading
+     */
+    public Collection<Request> loading() {
+        return new ArrayList<Request>(this.inFlight.values());
+    }
+
+    public int size() {
+        return this.inFlight.size();
+    }
+
+    /**
+     * @return true if another request can be submitted
+     */
+    public boolean hasCapacity() {
+        return this.capacity.availablePermits() > 0;
+    }
+
+    public long loadedCount() {
+        return this.loaded.get();
+    }
+
+    public long failedCount() {
+        return this.failed.get();
+    }
+
+    /**
+     * stop the client; requests in flight are aborted and responses which are not processed yet are discarded
+     */
+    public void close() {
+        try {
+            this.client.stop();
+        } catch (final Exception e) {
+            this.log.warn("cannot stop http client: " + e.getMessage());
+        }
+        this.processor.shutdown();
+        this.inFlight.clear();
+    }
+
+    /**
+     * @param encoding the value of a Content-Encoding header
+     * @return true if the client has decoded the content already
+     */
+    private boolean isDecoded(final String encoding) {
+        if (encoding == null) return false;
+        for (final ContentDecoder.Factory factory: this.client.getContentDecoderFactories()) {
+            if (factory.getEncoding().equalsIgnoreCase(encoding.trim())) return true;
+        }
+        return false;
+    }
+
+    /**
+     * the state of one request; the content is written to a SpillBuffer as it arrives
+     */
+    private final class Exchange extends org.eclipse.jetty.client.api.Response.Listener.Adapter {
+
+        private final Request request;
+        private final RequestHeader requestHeader;
+        private final int maxFileSize;
+        private final Listener listener;
+        private final long start;
+        private SpillBuffer body;
+
+        private Exchange(final Request request, final RequestHeader requestHeader, final int maxFileSize, final Listener listener, final long start) {
+            this.request = request;
+            this.requestHeader = requestHeader;
+            this.maxFileSize = maxFileSize;
+            this.listener = listener;
+            this.start = start;
+            this.body = null;
+        }
+
+        @Override
+        public void onHeaders(final org.eclipse.jetty.client.api.Response response) {
+            final int status = response.getStatus();
+            if (status != 200 && status != 203) return; // the content is not needed
+            final long length = response.getHeaders().getLongField(HttpHeader.CONTENT_LENGTH.asString());
+            if (this.maxFileSize >= 0 && length > this.maxFileSize) {
+                response.abort(new IOException("Content to download exceed maximum value of " + this.maxFileSize + " bytes"));
+                return;
+            }
+            this.body = new SpillBuffer();
+        }
+
+        @Override
+        public void onContent(final org.eclipse.jetty.client.api.Response response, final ByteBuffer content) {
+            if (this.body == null) return;
+            try {
+                if (content.hasArray()) {
+                    this.body.write(content.array(), content.arrayOffset() + content.position(), content.remaining());
+                } else {
+                    final byte[] b = new byte[content.remaining()];
+                    content.get(b);
+                    this.body.write(b, 0, b.length);
+                }
+                if (this.maxFileSize >= 0 && this.body.length() > this.maxFileSize) {
+                    response.abort(new IOException("Download exceeded maximum value of " + this.maxFileSize + " bytes"));
+                }
+            } catch (final IOException e) {
+                response.abort(e);
+            }
+        }
+
+        @Override
+        public void onComplete(final Result result) {
+            // this runs in a thread of the http client: the listener is called in the processor, which may block
+            AsyncHTTPLoader.this.inFlight.remove(this.request.url());
+            Latency.updateAfterLoad(this.request.url(), System.currentTimeMillis() - this.start);
+            try {
+                AsyncHTTPLoader.this.processor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            process(result);
+                        } finally {
+                            AsyncHTTPLoader.this.capacity.release();
+                        }
+                    }
+                });
+            } catch (final RejectedExecutionException e) {
+                // the loader was closed
+                if (this.body != null) this.body.delete();
+                AsyncHTTPLoader.this.capacity.release();
+            }
+        }
+
+        private void process(final Result result) {
+            if (result.isFailed()) {
+                if (this.body != null) this.body.delete();
+                AsyncHTTPLoader.this.failed.incrementAndGet();
+                final Throwable e = result.getFailure();
+                this.listener.failed(this.request, e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage());
+                return;
+            }
+            AsyncHTTPLoader.this.loaded.incrementAndGet();
+            final org.eclipse.jetty.client.api.Response response = result.getResponse();
+            final StatusLine statusline = new BasicStatusLine(HttpVersion.HTTP_1_1, response.getStatus(), response.getReason());
+            final ResponseHeader responseHeader = new ResponseHeader(response.getStatus());
+            // the client decodes a compressed content but leaves the headers of the compressed content,
+            // they must be removed because they do not describe the content any more
+            final boolean decoded = isDecoded(response.getHeaders().get(HttpHeader.CONTENT_ENCODING));
+            for (final HttpField field: response.getHeaders()) {
+                if (decoded && (field.getHeader() == HttpHeader.CONTENT_ENCODING || field.getHeader() == HttpHeader.CONTENT_LENGTH)) continue;
+                responseHeader.add(field.getName(), field.getValue());
+            }
+            try {
+                if (this.body != null) this.body.close();
+                this.listener.loaded(this.request, this.requestHeader, statusline, responseHeader, this.body);
+            } catch (final Throwable e) {
+                if (this.body != null) this.body.delete();
+                AsyncHTTPLoader.this.log.warn("cannot process " + this.request.url().toNormalform(false) + ": " + e.getMessage(), e);
+            }
+        }
+    }
+}
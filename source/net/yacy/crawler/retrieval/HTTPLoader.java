@@ -24,15 +24,18 @@
 
 package net.yacy.crawler.retrieval;
 
-import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
+import org.apache.http.HttpEntity;
 import org.apache.http.StatusLine;
 
 import net.yacy.cora.document.id.DigestURL;
 import net.yacy.cora.federate.solr.FailCategory;
 import net.yacy.cora.protocol.ClientIdentification;
+import net.yacy.cora.protocol.Domains;
 import net.yacy.cora.protocol.HeaderFramework;
 import net.yacy.cora.protocol.RequestHeader;
 import net.yacy.cora.protocol.ResponseHeader;
@@ -44,6 +47,7 @@ import net.yacy.crawler.data.Cache;
 import net.yacy.crawler.data.CrawlProfile;
 import net.yacy.crawler.data.Latency;
 import net.yacy.kelondro.io.ByteCount;
+import net.yacy.kelondro.io.SpillBuffer;
 import net.yacy.repository.Blacklist.BlacklistType;
 import net.yacy.search.Switchboard;
 import net.yacy.search.SwitchboardConstants;
@@ -83,7 +87,7 @@ public final class HTTPLoader {
     }
     
     /**
-     * Open input stream on a requested HTTP resource. When resource is small, fully load it and returns a ByteArrayInputStream instance.
+     * Open input stream on a requested HTTP resource. When resource is small and shall be cached, the content is copied to the cache while it is read.
      * @param request
      * @param profile crawl profile
      * @param retryCount remaining redirect retries count
@@ -204,28 +208,25 @@ public final class HTTPLoader {
 			// the transfer is ok
 
 			/*
-			 * When content is not large (less than 1MB), we have better cache it if cache is enabled and url is not local
+			 * Returns a HTTPInputStream delegating to
+			 * client.getContentstream(). Close method will ensure client is
+			 * properly closed.
+			 */
+			final InputStream stream = new HTTPInputStream(client);
+
+			/*
+			 * When content is not large (less than CRAWLER_MAX_SIZE_TO_CACHE), we have better cache it if cache is enabled and url is not local.
+			 * The content is copied to the cache while the caller reads it, so it is not loaded completely before parsing.
 			 */
 			long contentLength = client.getHttpResponse().getEntity().getContentLength();
 			if (profile != null && profile.storeHTCache() && contentLength > 0 && contentLength < (Response.CRAWLER_MAX_SIZE_TO_CACHE) && !url.isLocal()) {
-				byte[] content = null;
-				try {
-					content = HTTPClient.getByteArray(client.getHttpResponse().getEntity(), maxFileSize);
-					Cache.store(url, responseHeader, content);
-				} catch (final IOException e) {
-					this.log.warn("cannot write " + url + " to Cache (3): " + e.getMessage(), e);
-				} finally {
-					client.finish();
+				if (maxFileSize >= 0 && contentLength > maxFileSize) {
+					stream.close();
+					throw new IOException("Content to download exceed maximum value of " + maxFileSize + " bytes");
 				}
-
-				return new ByteArrayInputStream(content);
+				return new CacheTeeInputStream(stream, url, responseHeader, (int) contentLength);
 			}
-			/*
-			 * Returns a HTTPInputStream delegating to
-			 * client.getContentstream(). Close method will ensure client is
-			 * properly closed.
-			 */
-			return new HTTPInputStream(client);
+			return stream;
 		} else {
 			client.finish();
 			// if the response has not the right response type then reject file
@@ -236,6 +237,81 @@ public final class HTTPLoader {
 		}
 	}
 
+	/**
+	 * A stream on a response body which writes a copy of the content to the cache when the stream is read to the end.
+	 * The copy is dropped if the content becomes larger than CRAWLER_MAX_SIZE_TO_CACHE or if the stream is not read completely.
+	 */
+	private final class CacheTeeInputStream extends FilterInputStream {
+
+		private final DigestURL url;
+		private final ResponseHeader responseHeader;
+		private ByteArrayOutputStream copy;
+
+		private CacheTeeInputStream(final InputStream in, final DigestURL url, final ResponseHeader responseHeader, final int contentLength) {
+			super(in);
+			this.url = url;
+			this.responseHeader = responseHeader;
+			this.copy = new ByteArrayOutputStream(contentLength);
+		}
+
+		@Override
+		public int read() throws IOException {
+			final int b = super.read();
+			if (b < 0) {
+				store();
+			} else if (this.copy != null) {
+				this.copy.write(b);
+				checkSize();
+			}
+			return b;
+		}
+
+		@Override
+		public int read(final byte[] b, final int off, final int len) throws IOException {
+			final int n = super.read(b, off, len);
+			if (n < 0) {
+				store();
+			} else if (this.copy != null && n > 0) {
+				this.copy.write(b, off, n);
+				checkSize();
+			}
+			return n;
+		}
+
+		@Override
+		public long skip(final long n) throws IOException {
+			// skipped bytes are not in the copy
+			this.copy = null;
+			return super.skip(n);
+		}
+
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+
+		@Override
+		public void close() throws IOException {
+			this.copy = null;
+			super.close();
+		}
+
+		private void checkSize() {
+			if (this.copy.size() >= Response.CRAWLER_MAX_SIZE_TO_CACHE) this.copy = null;
+		}
+
+		private void store() {
+			if (this.copy == null) return;
+			final byte[] content = this.copy.toByteArray();
+			this.copy = null;
+			try {
+				Cache.store(this.url, this.responseHeader, content);
+			} catch (final IOException e) {
+				HTTPLoader.this.log.warn("cannot write " + this.url + " to Cache (3): " + e.getMessage(), e);
+			}
+		}
+	}
+
 	/**
 	 * Extract redirect URL from response header. Status code is supposed to be between 299 and 310. Parameters must not be null.
 	 * @return redirect URL
@@ -273,6 +349,36 @@ public final class HTTPLoader {
 		return redirectionUrl;
 	}
 
+    /**
+     * GET the content of a url into a SpillBuffer. Like HTTPClient.GETbytes, the content is only loaded
+     * with status 200 and if the content length does not exceed the maximum size.
+     * @return the content or null if nothing was loaded
+     * @throws IOException if the connection fails or the maximum size is exceeded
+     */
+    private static SpillBuffer getBody(final HTTPClient client, final DigestURL url, final int maxFileSize) throws IOException {
+        client.GET(url, false);
+        try {
+            final HttpEntity entity = client.getHttpResponse().getEntity();
+            if (client.getStatusCode() != 200 || entity == null) return null;
+            if (maxFileSize >= 0 && entity.getContentLength() >= maxFileSize) return null;
+            final InputStream in = client.getContentstream();
+            if (in == null) return null;
+            final SpillBuffer body = new SpillBuffer();
+            try {
+                body.transferFrom(in, maxFileSize);
+                body.close();
+            } catch (final IOException e) {
+                body.delete();
+                throw e;
+            } finally {
+                in.close();
+            }
+            return body;
+        } finally {
+            client.finish();
+        }
+    }
+
 	/**
 	 * Create request header for loading content.
 	 * @param request search request
@@ -280,7 +386,7 @@ public final class HTTPLoader {
 	 * @return a request header
 	 * @throws IOException when an error occured
 	 */
-	private RequestHeader createRequestheader(final Request request, final ClientIdentification.Agent agent)
+	public RequestHeader createRequestheader(final Request request, final ClientIdentification.Agent agent)
 			throws IOException {
 		final RequestHeader requestHeader = new RequestHeader();
 		requestHeader.put(HeaderFramework.USER_AGENT, agent.userAgent);
@@ -333,9 +439,6 @@ public final class HTTPLoader {
         	}
         }
 
-        // take a file from the net
-        Response response = null;
-
         // create a request header
         final RequestHeader requestHeader = createRequestheader(request, agent);
 
@@ -346,86 +449,119 @@ public final class HTTPLoader {
         client.setHeader(requestHeader.entrySet());
 
         // send request
-    	final byte[] responseBody = client.GETbytes(url, sb.getConfig(SwitchboardConstants.ADMIN_ACCOUNT_USER_NAME, "admin"), sb.getConfig(SwitchboardConstants.ADMIN_ACCOUNT_B64MD5, ""), maxFileSize, false);
-        final int statusCode = client.getHttpResponse().getStatusLine().getStatusCode();
-    	final ResponseHeader responseHeader = new ResponseHeader(statusCode, client.getHttpResponse().getAllHeaders());
-        String requestURLString = request.url().toNormalform(true);
+        final SpillBuffer responseBody;
+        if (Domains.isLocalhost(url.getHost())) {
+            // pages of the own peer are small and may need the admin account
+            final byte[] b = client.GETbytes(url, sb.getConfig(SwitchboardConstants.ADMIN_ACCOUNT_USER_NAME, "admin"), sb.getConfig(SwitchboardConstants.ADMIN_ACCOUNT_B64MD5, ""), maxFileSize, false);
+            responseBody = b == null ? null : new SpillBuffer(b);
+        } else {
+            // stream the content into a buffer which writes large content to a temporary file
+            responseBody = getBody(client, url, maxFileSize);
+        }
+        final StatusLine statusline = client.getHttpResponse().getStatusLine();
+        final int statusCode = statusline.getStatusCode();
+        final ResponseHeader responseHeader = new ResponseHeader(statusCode, client.getHttpResponse().getAllHeaders());
 
         // check redirection
-    	if (statusCode > 299 && statusCode < 310) {
-
-    	    final DigestURL redirectionUrl = extractRedirectURL(request, profile, url, client.getHttpResponse().getStatusLine(),
-					responseHeader, requestURLString);
+        if (statusCode > 299 && statusCode < 310) {
+            // retry crawling with new url
+            request.redirectURL(redirect(request, profile, url, statusline, responseHeader));
+            return load(request, profile, retryCount - 1, maxFileSize, blacklistType, agent);
+        }
+        return response(request, profile, requestHeader, statusline, responseHeader, responseBody, maxFileSize);
+    }
 
-    	    if (this.sb.getConfigBool(SwitchboardConstants.CRAWLER_FOLLOW_REDIRECTS, true)) {
-    	        // we have two use cases here: loading from a crawl or just loading the url. Check this:
-    	        if (profile != null && !CrawlSwitchboard.DEFAULT_PROFILES.contains(profile.name())) {
-                    // put redirect url on the crawler queue to repeat a double-check
-    	        	/* We have to clone the request instance and not to modify directly its URL, 
-    	        	 * otherwise the stackCrawl() function would reject it, because detecting it as already in the activeWorkerEntries */
-                    Request redirectedRequest = new Request(request.initiator(),
-                    		redirectionUrl,
-                    		request.referrerhash(),
-                    		request.name(),
-                    		request.appdate(),
-                    		request.profileHandle(),
-                    		request.depth(),
-                    		request.timezoneOffset());
-    	            String rejectReason = this.sb.crawlStacker.stackCrawl(redirectedRequest);
-    	            // in the end we must throw an exception (even if this is not an error, just to abort the current process
-    	            if(rejectReason != null) {
-                        throw new IOException("CRAWLER Redirect of URL=" + requestURLString + " aborted. Reason : " + rejectReason);
-    	            }
-                    throw new IOException("CRAWLER Redirect of URL=" + requestURLString + " to " + redirectionUrl.toNormalform(false) + " placed on crawler queue for double-check");
-    	            
-
-    	        }
-    	        
-                // if we are already doing a shutdown we don't need to retry crawling
-                if (Thread.currentThread().isInterrupted()) {
-                    this.sb.crawlQueues.errorURL.push(request.url(), request.depth(), profile, FailCategory.FINAL_LOAD_CONTEXT, "server shutdown", statusCode);
-                    throw new IOException("CRAWLER Redirect of URL=" + requestURLString + " aborted because of server shutdown.$");
+    /**
+     * Handle a redirection response of a crawl request. If the request belongs to a crawl, the redirection url is
+     * placed on the crawler queue and an IOException is thrown to abort the current request.
+     * @param url the url which had been loaded
+     * @return the url which shall be loaded instead of the request url
+     * @throws IOException if the redirection shall not be followed by the caller
+     */
+    public DigestURL redirect(final Request request, final CrawlProfile profile, final DigestURL url, final StatusLine statusline, final ResponseHeader responseHeader) throws IOException {
+        final int statusCode = statusline.getStatusCode();
+        final String requestURLString = request.url().toNormalform(true);
+        final DigestURL redirectionUrl = extractRedirectURL(request, profile, url, statusline, responseHeader, requestURLString);
+
+        if (this.sb.getConfigBool(SwitchboardConstants.CRAWLER_FOLLOW_REDIRECTS, true)) {
+            // we have two use cases here: loading from a crawl or just loading the url. Check this:
+            if (profile != null && !CrawlSwitchboard.DEFAULT_PROFILES.contains(profile.name())) {
+                // put redirect url on the crawler queue to repeat a double-check
+                /* We have to clone the request instance and not to modify directly its URL, 
+                 * otherwise the stackCrawl() function would reject it, because detecting it as already in the activeWorkerEntries */
+                Request redirectedRequest = new Request(request.initiator(),
+                        redirectionUrl,
+                        request.referrerhash(),
+                        request.name(),
+                        request.appdate(),
+                        request.profileHandle(),
+                        request.depth(),
+                        request.timezoneOffset());
+                String rejectReason = this.sb.crawlStacker.stackCrawl(redirectedRequest);
+                // in the end we must throw an exception (even if this is not an error, just to abort the current process
+                if(rejectReason != null) {
+                    throw new IOException("CRAWLER Redirect of URL=" + requestURLString + " aborted. Reason : " + rejectReason);
                 }
+                throw new IOException("CRAWLER Redirect of URL=" + requestURLString + " to " + redirectionUrl.toNormalform(false) + " placed on crawler queue for double-check");
+            }
 
-                // retry crawling with new url
-                request.redirectURL(redirectionUrl);
-                return load(request, profile, retryCount - 1, maxFileSize, blacklistType, agent);
-    	    }
-            // we don't want to follow redirects
-            this.sb.crawlQueues.errorURL.push(request.url(), request.depth(), profile, FailCategory.FINAL_PROCESS_CONTEXT, "redirection not wanted", statusCode);
-            throw new IOException("REJECTED UNWANTED REDIRECTION '" + client.getHttpResponse().getStatusLine() + "' for URL '" + requestURLString + "'$");
-        } else if (responseBody == null) {
+            // if we are already doing a shutdown we don't need to retry crawling
+            if (Thread.currentThread().isInterrupted()) {
+                this.sb.crawlQueues.errorURL.push(request.url(), request.depth(), profile, FailCategory.FINAL_LOAD_CONTEXT, "server shutdown", statusCode);
+                throw new IOException("CRAWLER Redirect of URL=" + requestURLString + " aborted because of server shutdown.$");
+            }
+            return redirectionUrl;
+        }
+        // we don't want to follow redirects
+        this.sb.crawlQueues.errorURL.push(request.url(), request.depth(), profile, FailCategory.FINAL_PROCESS_CONTEXT, "redirection not wanted", statusCode);
+        throw new IOException("REJECTED UNWANTED REDIRECTION '" + statusline + "' for URL '" + requestURLString + "'$");
+    }
+
+    /**
+     * Create the response of a crawl request which was not redirected.
+     * @param responseBody the loaded content, null if nothing was loaded; it is deleted if the response is rejected
+     * @return the response
+     * @throws IOException if the response is rejected; the reason is pushed to the error cache
+     */
+    public Response response(final Request request, final CrawlProfile profile, final RequestHeader requestHeader, final StatusLine statusline,
+            final ResponseHeader responseHeader, final SpillBuffer responseBody, final int maxFileSize) throws IOException {
+        final int statusCode = statusline.getStatusCode();
+        final String requestURLString = request.url().toNormalform(true);
+        if (responseBody == null) {
     	    // no response, reject file
             this.sb.crawlQueues.errorURL.push(request.url(), request.depth(), profile, FailCategory.TEMPORARY_NETWORK_FAILURE, "no response body", statusCode);
-            throw new IOException("REJECTED EMPTY RESPONSE BODY '" + client.getHttpResponse().getStatusLine() + "' for URL '" + requestURLString + "'$");
+            throw new IOException("REJECTED EMPTY RESPONSE BODY '" + statusline + "' for URL '" + requestURLString + "'$");
     	} else if (statusCode == 200 || statusCode == 203) {
             // the transfer is ok
 
             // we write the new cache entry to file system directly
-            final long contentLength = responseBody.length;
+            final long contentLength = responseBody.length();
             ByteCount.addAccountCount(ByteCount.CRAWLER, contentLength);
 
             // check length again in case it was not possible to get the length before loading
             if (maxFileSize >= 0 && contentLength > maxFileSize) {
+                responseBody.delete();
             	this.sb.crawlQueues.errorURL.push(request.url(), request.depth(), profile, FailCategory.FINAL_PROCESS_CONTEXT, "file size limit exceeded", statusCode);
             	throw new IOException("REJECTED URL " + request.url() + " because file size '" + contentLength + "' exceeds max filesize limit of " + maxFileSize + " bytes. (GET)$");
             }
 
-            // create a new cache entry
-            response = new Response(
+            // create a new cache entry; only a large content stays in the buffer
+            final Response response = new Response(
                     request,
                     requestHeader,
                     responseHeader,
                     profile,
                     false,
-                    responseBody
+                    responseBody.isSpilled() ? null : responseBody.getBytes()
             );
+            if (responseBody.isSpilled()) response.setContentBuffer(responseBody);
 
             return response;
     	} else {
+    	    responseBody.delete();
             // if the response has not the right response type then reject file
         	this.sb.crawlQueues.errorURL.push(request.url(), request.depth(), profile, FailCategory.TEMPORARY_NETWORK_FAILURE, "wrong http status code", statusCode);
-            throw new IOException("REJECTED WRONG STATUS TYPE '" + client.getHttpResponse().getStatusLine() + "' for URL '" + requestURLString + "'$");
+            throw new IOException("REJECTED WRONG STATUS TYPE '" + statusline + "' for URL '" + requestURLString + "'$");
         }
     }
 
@@ -26,6 +26,7 @@
 
 package net.yacy.crawler.retrieval;
 
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.Date;
 
@@ -44,6 +45,7 @@ import net.yacy.document.Document;
 import net.yacy.document.Parser;
 import net.yacy.document.TextParser;
 import net.yacy.document.VocabularyScraper;
+import net.yacy.kelondro.io.SpillBuffer;
 import net.yacy.search.Switchboard;
 
 public class Response {
@@ -67,6 +69,7 @@ public class Response {
     private final  ResponseHeader     responseHeader;
     private final  CrawlProfile       profile;
     private        byte[]             content;
+    private        SpillBuffer        contentBuffer;   // a large content which is not held in memory, or null
     private        int                status;          // tracker indexing status, see status defs below
     private final  boolean            fromCache;
     
@@ -289,6 +292,7 @@ public class Response {
             return this.responseHeader.getContentLengthLong();
         }
         if (this.content != null) return this.content.length;
+        if (this.contentBuffer != null) return this.contentBuffer.length();
         // the size is unknown
         return -1;
     }
@@ -298,16 +302,63 @@ public class Response {
     }
 
     public void setContent(final byte[] data) {
+        releaseContentBuffer();
         this.content = data;
         if (this.responseHeader != null && this.content != null && Integer.parseInt(this.responseHeader.get(HeaderFramework.CONTENT_LENGTH, "0")) <= content.length) {
             this.responseHeader.put(HeaderFramework.CONTENT_LENGTH, Integer.toString(content.length)); // repair length 
         }
     }
 
+    /**
+     * set a content which may be too large to be held in memory. The content is parsed from the buffer;
+     * release the content with releaseContentBuffer() when the response is processed.
+     * @param buffer
+     */
+    public void setContentBuffer(final SpillBuffer buffer) {
+        releaseContentBuffer();
+        this.content = null;
+        this.contentBuffer = buffer;
+        if (this.responseHeader != null && buffer != null && this.responseHeader.getContentLengthLong() <= buffer.length()) {
+            this.responseHeader.put(HeaderFramework.CONTENT_LENGTH, Long.toString(buffer.length())); // repair length
+        }
+    }
+
+    /**
+     * get the content. A content which is held in a buffer is read each time and not kept in memory,
+     * use getContentBuffer() to access such content.
+     * @return the content or null if there is no content
+     */
     public byte[] getContent() {
+        if (this.content == null && this.contentBuffer != null) try {
+            return this.contentBuffer.getBytes();
+        } catch (final IOException e) {
+            return null;
+        }
         return this.content;
     }
 
+    public boolean hasContent() {
+        return this.content != null || this.contentBuffer != null;
+    }
+
+    /**
+     * @return the content as buffer, which can be read as stream without loading the content to memory; null if there is no content
+     */
+    public SpillBuffer getContentBuffer() {
+        if (this.contentBuffer != null) return this.contentBuffer;
+        return this.content == null ? null : new SpillBuffer(this.content);
+    }
+
+    /**
+     * delete the temporary file of a content which was too large to be held in memory.
+     * The content is not available any more afterwards.
+     */
+    public void releaseContentBuffer() {
+        if (this.contentBuffer == null) return;
+        this.contentBuffer.delete();
+        this.contentBuffer = null;
+    }
+
     // the following three methods for cache read/write granting shall be as loose
     // as possible but also as strict as necessary to enable caching of most items
 
@@ -858,7 +909,7 @@ public class Response {
         final String supportError = TextParser.supports(url(), this.responseHeader == null ? null : this.responseHeader.getContentType());
         if (supportError != null) throw new Parser.Failure("no parser support:" + supportError, url());
         try {
-            return TextParser.parseSource(url(), this.responseHeader == null ? null : this.responseHeader.getContentType(), this.responseHeader == null ? StandardCharsets.UTF_8.name() : this.responseHeader.getCharacterEncoding(), new VocabularyScraper(), this.request.timezoneOffset(), this.request.depth(), this.content);
+            return TextParser.parseSource(url(), this.responseHeader == null ? null : this.responseHeader.getContentType(), this.responseHeader == null ? StandardCharsets.UTF_8.name() : this.responseHeader.getCharacterEncoding(), new VocabularyScraper(), this.request.timezoneOffset(), this.request.depth(), getContentBuffer());
         } catch (final Exception e) {
             return null;
         }
@@ -62,6 +62,9 @@ public class RobotsTxt {
 
     private final static ConcurrentLog log = new ConcurrentLog(RobotsTxt.class.getName());
 
+    /** the age in milliseconds after which a stored robots.txt is loaded again */
+    private final static long MAX_AGE = 7L * 24L * 60L * 60L * 1000L;
+
     protected static final String ROBOTS_TXT_PATH = "/robots.txt";
     protected static final String ROBOTS_DB_PATH_SEPARATOR = ";";
     protected static final Pattern ROBOTS_DB_PATH_SEPARATOR_MATCHER = Pattern.compile(ROBOTS_DB_PATH_SEPARATOR);
@@ -125,6 +128,20 @@ public class RobotsTxt {
         return getEntry(getHostPort(theURL), agent, true);
     }
 
+    /**
+     * get the stored robots.txt of a host; the robots.txt is never loaded here
+     * @param theURL an url of the host
+     * @param agent the agent
+     * @return the entry or null if the robots.txt is not stored or if it must be loaded again
+     */
+    public RobotsTxtEntry getStoredEntry(final MultiProtocolURL theURL, final ClientIdentification.Agent agent) {
+        if (theURL == null) throw new IllegalArgumentException();
+        if (!theURL.getProtocol().startsWith("http")) return null;
+        final RobotsTxtEntry entry = getEntry(getHostPort(theURL), agent, false);
+        if (entry == null || entry.getLoadedDate() == null || System.currentTimeMillis() - entry.getLoadedDate().getTime() > MAX_AGE) return null;
+        return entry;
+    }
+
     public RobotsTxtEntry getEntry(final String urlHostPort, final ClientIdentification.Agent agent, final boolean fetchOnlineIfNotAvailableOrNotFresh) {
             // this method will always return a non-null value
         RobotsTxtEntry robotsTxt4Host = null;
@@ -149,7 +166,7 @@ public class RobotsTxt {
         if (fetchOnlineIfNotAvailableOrNotFresh && (
              robotsTxt4Host == null ||
              robotsTxt4Host.getLoadedDate() == null ||
-             System.currentTimeMillis() - robotsTxt4Host.getLoadedDate().getTime() > 7*24*60*60*1000
+             System.currentTimeMillis() - robotsTxt4Host.getLoadedDate().getTime() > MAX_AGE
            )) {
 
             // make or get a synchronization object
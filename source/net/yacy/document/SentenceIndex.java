@@ -0,0 +1,149 @@
+/**
+ *  SentenceIndex
+ *  first published on http://yacy.net
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.document;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.SortedMap;
+
+import net.yacy.cora.document.encoding.UTF8;
+import net.yacy.cora.storage.HandleSet;
+
+/**
+ * A compact index of the sentences of a document, which is computed at indexing time.
+ * For each sentence the index holds a sketch of the hashes of its words, so a snippet
+ * computation can select the sentences which may contain the query words without
+ * parsing the document and without hashing all sentences again. Only the text of the
+ * selected sentences is decoded.
+ *
+ * The encoding is: a version byte, the number of sentences, the end offset of each sentence
+ * within the text block, the sketches and then the UTF-8 text block. A sketch is a bit set of
+ * 64 bits for each 16 words of the sentence, the first byte of a sketch is its number of longs.
+ */
+public final class SentenceIndex {
+
+    private final static byte VERSION = 1;
+    private final static int WORDS_PER_LONG = 16;
+    private final static int MAX_LONGS = 8; // only the first 100 words of a sentence are hashed, see WordTokenizer.hashSentence
+    private final static int MAX_TEXT = 4 * 1024 * 1024; // sentences beyond that size are not stored
+
+    private SentenceIndex() {}
+
+    /**
+     * compute the index of the sentences of a document
+     * @param sentences the sentences as produced by Document.getSentences(false)
+     * @return the encoded index
+     */
+    public static byte[] encode(final Collection<StringBuilder> sentences) {
+        final List<byte[]> texts = new ArrayList<byte[]>(sentences.size());
+        final List<long[]> sketches = new ArrayList<long[]>(sentences.size());
+        int textLength = 0, sketchLength = 0;
+        for (final StringBuilder sentence: sentences) {
+            final String s = sentence.toString();
+            final byte[] text = UTF8.getBytes(s);
+            if (textLength + text.length > MAX_TEXT) break;
+            final Collection<byte[]> words = WordTokenizer.hashSentence(s, 100).keySet();
+            final long[] sketch = new long[Math.max(1, Math.min(MAX_LONGS, (words.size() + WORDS_PER_LONG - 1) / WORDS_PER_LONG))];
+            for (final byte[] word: words) {
+                final int bit = bit(word, sketch.length);
+                sketch[bit >>> 6] |= 1L << (bit & 63);
+            }
+            texts.add(text);
+            sketches.add(sketch);
+            textLength += text.length;
+            sketchLength += 1 + 8 * sketch.length;
+        }
+        final ByteBuffer b = ByteBuffer.allocate(1 + 4 + 4 * texts.size() + sketchLength + textLength);
+        b.put(VERSION);
+        b.putInt(texts.size());
+        int end = 0;
+        for (final byte[] text: texts) {
+            end += text.length;
+            b.putInt(end);
+        }
+        for (final long[] sketch: sketches) {
+            b.put((byte) sketch.length);
+            for (final long l: sketch) b.putLong(l);
+        }
+        for (final byte[] text: texts) b.put(text);
+        return b.array();
+    }
+
+    /**
+     * @param index an encoded index
+     * @return the number of sentences in the index, -1 if the index cannot be read
+     */
+    public static int size(final byte[] index) {
+        if (index == null || index.length < 5 || index[0] != VERSION) return -1;
+        return ByteBuffer.wrap(index).getInt(1);
+    }
+
+    /**
+     * select the sentences which may contain at least one of the query words.
+     * The selection may contain sentences without any query word, but no sentence with a query word is left out.
+     * @param index an encoded index
+     * @param queryhashes the hashes of the query words
+     * @param firstLine the line number of the first sentence of the index
+     * @param candidates the selected sentences are put here, with their line number as key
+     * @return false if the index cannot be read
+     */
+    public static boolean candidates(final byte[] index, final HandleSet queryhashes, final int firstLine, final SortedMap<Integer, StringBuilder> candidates) {
+        final int count = size(index);
+        if (count < 0) return false;
+        final ByteBuffer b = ByteBuffer.wrap(index);
+        final int sketchStart = 5 + 4 * count;
+        b.position(sketchStart);
+        for (int i = 0; i < count; i++) {
+            final int longs = b.get();
+            final int p = b.position();
+            b.position(p + 8 * longs);
+            for (final byte[] word: queryhashes) {
+                final int bit = bit(word, longs);
+                if ((b.getLong(p + 8 * (bit >>> 6)) & (1L << (bit & 63))) != 0) {
+                    candidates.put(firstLine + i, new StringBuilder(sentence(index, i)));
+                    break;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static String sentence(final byte[] index, final int i) {
+        final ByteBuffer b = ByteBuffer.wrap(index);
+        final int count = b.getInt(1);
+        final int start = i == 0 ? 0 : b.getInt(5 + 4 * (i - 1));
+        final int end = b.getInt(5 + 4 * i);
+        return UTF8.String(index, textStart(b, count) + start, end - start);
+    }
+
+    private static int textStart(final ByteBuffer b, final int count) {
+        // the sketches have variable length, the text starts after the last one
+        final int textLength = count == 0 ? 0 : b.getInt(5 + 4 * (count - 1));
+        return b.capacity() - textLength;
+    }
+
+    private static int bit(final byte[] wordhash, final int longs) {
+        int h = 0;
+        for (final byte c: wordhash) h = 31 * h + c;
+        return (h & Integer.MAX_VALUE) % (64 * longs);
+    }
+}
@@ -38,6 +38,25 @@ public class SnippetExtractor {
     HandleSet remainingHashes;
 
     public SnippetExtractor(final Collection<StringBuilder> sentences, final HandleSet queryhashes, int maxLength) throws UnsupportedOperationException {
+        this(number(sentences), queryhashes, maxLength);
+    }
+
+    private static SortedMap<Integer, StringBuilder> number(final Collection<StringBuilder> sentences) {
+        if (sentences == null) return null;
+        final SortedMap<Integer, StringBuilder> numbered = new TreeMap<Integer, StringBuilder>();
+        int linenumber = 0;
+        for (final StringBuilder sentence: sentences) numbered.put(linenumber++, sentence);
+        return numbered;
+    }
+
+    /**
+     * compute a snippet from a selection of the sentences of a document
+     * @param sentences the sentences with their line number in the document; sentences without query words may be left out
+     * @param queryhashes
+     * @param maxLength
+     * @throws UnsupportedOperationException
+     */
+    public SnippetExtractor(final SortedMap<Integer, StringBuilder> sentences, final HandleSet queryhashes, int maxLength) throws UnsupportedOperationException {
         if (sentences == null) throw new UnsupportedOperationException("sentence == null");
         if (queryhashes == null || queryhashes.isEmpty()) throw new UnsupportedOperationException("queryhashes == null");
         SortedMap<byte[], Integer> hs;
@@ -45,9 +64,11 @@ public class SnippetExtractor {
         long uniqCounter = 999L;
         Integer pos;
         TreeSet<Integer> positions;
-        int linenumber = 0;
+        int linenumber;
         int fullmatchcounter = 0;
-        lookup: for (final StringBuilder sentence: sentences) {
+        lookup: for (final Map.Entry<Integer, StringBuilder> entry: sentences.entrySet()) {
+            linenumber = entry.getKey().intValue();
+            final StringBuilder sentence = entry.getValue();
             hs = WordTokenizer.hashSentence(sentence.toString(), 100);
             positions = new TreeSet<Integer>();
             for (final byte[] word: queryhashes) {
@@ -68,7 +89,6 @@ public class SnippetExtractor {
                 if (positions.size() == queryhashes.size()) fullmatchcounter++;
                 if (fullmatchcounter >= 3) break lookup;
             }
-            linenumber++;
         }
 
         StringBuilder sentence;
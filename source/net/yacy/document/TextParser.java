@@ -65,7 +65,7 @@ import net.yacy.document.parser.zipParser;
 import net.yacy.document.parser.images.genericImageParser;
 import net.yacy.document.parser.images.metadataImageParser;
 import net.yacy.document.parser.images.svgParser;
-import net.yacy.kelondro.util.FileUtils;
+import net.yacy.kelondro.io.SpillBuffer;
 import net.yacy.kelondro.util.MemoryControl;
 
 public final class TextParser {
@@ -211,11 +211,39 @@ public final class TextParser {
         }
         assert !idioms.isEmpty() : "no parsers applied for url " + location.toNormalform(true);
 
-        Document[] docs = parseSource(location, mimeType, idioms, charset, scraper, timezoneOffset, depth, content);
+        Document[] docs = parseSource(location, mimeType, idioms, charset, scraper, timezoneOffset, depth, new SpillBuffer(content));
 
         return docs;
     }
 
+    /**
+     * parse a content which may be too large to be held in memory
+     * @param content the content; it is not deleted after parsing
+     */
+    public static Document[] parseSource(
+            final DigestURL location,
+            String mimeType,
+            final String charset,
+            final VocabularyScraper scraper,
+            final int timezoneOffset,
+            final int depth,
+            final SpillBuffer content
+        ) throws Parser.Failure {
+        if (AbstractParser.log.isFine()) AbstractParser.log.fine("Parsing '" + location + "' from buffer");
+        mimeType = normalizeMimeType(mimeType);
+        Set<Parser> idioms = null;
+        try {
+            idioms = parsers(location, mimeType);
+        } catch (final Parser.Failure e) {
+            final String errorMsg = "Parser Failure for extension '" + MultiProtocolURL.getFileExtension(location.getFileName()) + "' or mimetype '" + mimeType + "': " + e.getMessage();
+            AbstractParser.log.warn(errorMsg);
+            throw new Parser.Failure(errorMsg, location);
+        }
+        assert !idioms.isEmpty() : "no parsers applied for url " + location.toNormalform(true);
+
+        return parseSource(location, mimeType, idioms, charset, scraper, timezoneOffset, depth, content);
+    }
+
     public static Document[] parseSource(
             final DigestURL location,
             String mimeType,
@@ -245,17 +273,17 @@ public final class TextParser {
             return parseSource(location, mimeType, idioms.iterator().next(), charset, scraper, timezoneOffset, sourceStream);
         }
 
-        // in case that we know more parsers we first transform the content into a byte[] and use that as base
-        // for a number of different parse attempts.
-        byte[] b = null;
+        // in case that we know more parsers we first buffer the content and use that as base
+        // for a number of different parse attempts. Large content is spilled to a temporary file.
+        final SpillBuffer buffer = new SpillBuffer();
         try {
-            b = FileUtils.read(sourceStream, (int) contentLength);
+            buffer.transferFrom(sourceStream, -1);
+            return parseSource(location, mimeType, idioms, charset, scraper, timezoneOffset, depth, buffer);
         } catch (final IOException e) {
             throw new Parser.Failure(e.getMessage(), location);
+        } finally {
+            buffer.delete();
         }
-        Document[] docs = parseSource(location, mimeType, idioms, charset, scraper, timezoneOffset, depth, b);
-
-        return docs;
     }
 
     private static Document[] parseSource(
@@ -289,10 +317,10 @@ public final class TextParser {
             final VocabularyScraper scraper,
             final int timezoneOffset,
             final int depth,
-            final byte[] sourceArray
+            final SpillBuffer source
         ) throws Parser.Failure {
         final String fileExt = MultiProtocolURL.getFileExtension(location.getFileName());
-        if (AbstractParser.log.isFine()) AbstractParser.log.fine("Parsing " + location + " with mimeType '" + mimeType + "' and file extension '" + fileExt + "' from byte[]");
+        if (AbstractParser.log.isFine()) AbstractParser.log.fine("Parsing " + location + " with mimeType '" + mimeType + "' and file extension '" + fileExt + "' from " + (source.isSpilled() ? "buffer" : "byte[]"));
         final String documentCharset = htmlParser.patchCharsetEncoding(charset);
         assert !parsers.isEmpty();
 
@@ -301,15 +329,16 @@ public final class TextParser {
         String origName = Thread.currentThread().getName();
         Thread.currentThread().setName("parsing + " + location.toString()); // set a name to get the address in Thread Dump
         for (final Parser parser: parsers) {
-            if (MemoryControl.request(sourceArray.length * 6, false)) {
-            	ByteArrayInputStream bis;
-            	if (mimeType.equals("text/plain") && parser.getName().equals("HTML Parser")) {
-            	    // a hack to simulate html files .. is needed for NOLOAD queues. This throws their data into virtual text/plain messages.
-            	    bis = new ByteArrayInputStream(UTF8.getBytes("<html><head></head><body><h1>" + UTF8.String(sourceArray) + "</h1></body><html>"));
-            	} else {
-            	    bis = new ByteArrayInputStream(sourceArray);
-            	}
+            // a spilled content is read from the file, so only the in-memory content must fit into the memory
+            if (source.isSpilled() || MemoryControl.request(source.length() * 6, false)) {
+            	InputStream bis = null;
                 try {
+                    if (mimeType.equals("text/plain") && parser.getName().equals("HTML Parser")) {
+                        // a hack to simulate html files .. is needed for NOLOAD queues. This throws their data into virtual text/plain messages.
+                        bis = new ByteArrayInputStream(UTF8.getBytes("<html><head></head><body><h1>" + UTF8.String(source.getBytes()) + "</h1></body><html>"));
+                    } else {
+                        bis = source.getInputStream(); // each parser gets its own stream on the buffered content
+                    }
                     docs = parser.parse(location, mimeType, documentCharset, scraper, timezoneOffset, bis);
                 } catch (final Parser.Failure e) {
                     failedParser.put(parser, e);
@@ -318,7 +347,7 @@ public final class TextParser {
                     failedParser.put(parser, new Parser.Failure(e.getMessage(), location));
                     //log.logWarning("tried parser '" + parser.getName() + "' to parse " + location.toNormalform(true, false) + " but failed: " + e.getMessage(), e);
                 } finally {
-                	try {
+                	if (bis != null) try {
                 		bis.close();
                 	} catch(IOException ioe) {
                 		// Ignore.
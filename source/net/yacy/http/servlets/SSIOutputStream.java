@@ -0,0 +1,163 @@
+/**
+ *  SSIOutputStream
+ *  First released at http://yacy.net
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.yacy.http.servlets;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.servlet.RequestDispatcher;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import net.yacy.cora.document.encoding.UTF8;
+import net.yacy.cora.util.ConcurrentLog;
+
+/**
+ * an output stream which writes to the servlet response and executes server side includes
+ * (&lt;!--#include virtual="file.html" --&gt;) as soon as they pass through the stream.
+ * Only a partly matched include line is held back, everything else is written immediately.
+ */
+public class SSIOutputStream extends FilterOutputStream {
+
+    private final static byte[] inctxt = UTF8.getBytes("<!--#include virtual=\"");
+    private final static int maxDirective = 4096; // longer include lines are not considered as include
+
+    private final HttpServletRequest request;
+    private final HttpServletResponse response;
+    private int matched; // number of bytes of inctxt which had been seen
+    private ByteArrayOutputStream directive; // the text after inctxt while we wait for the end of the include
+
+    public SSIOutputStream(final OutputStream out, final HttpServletRequest request, final HttpServletResponse response) {
+        super(out);
+        this.request = request;
+        this.response = response;
+        this.matched = 0;
+        this.directive = null;
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        if (this.directive != null) {
+            this.directive.write(b);
+            final int size = this.directive.size();
+            // min length 24; <!--#include virtual="a"
+            if (b == '>' && size >= 5) {
+                final byte[] d = this.directive.toByteArray();
+                if (d[size - 2] == '-' && d[size - 3] == '-') {
+                    this.directive = null;
+                    this.matched = 0;
+                    include(d, size - 3);
+                    return;
+                }
+            }
+            if (size > maxDirective) {
+                this.out.write(inctxt);
+                this.directive.writeTo(this.out);
+                this.directive = null;
+                this.matched = 0;
+            }
+            return;
+        }
+        if (b == inctxt[this.matched]) {
+            if (++this.matched == inctxt.length) this.directive = new ByteArrayOutputStream(64);
+            return;
+        }
+        if (this.matched > 0) {
+            this.out.write(inctxt, 0, this.matched);
+            this.matched = 0;
+            if (b == inctxt[0]) {
+                this.matched = 1;
+                return;
+            }
+        }
+        this.out.write(b);
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+        final int end = off + len;
+        int i = off;
+        while (i < end) {
+            if (this.directive != null || this.matched > 0) {
+                write(b[i++] & 0xff);
+                continue;
+            }
+            // write everything up to the next possible include in one piece
+            int j = i;
+            while (j < end && b[j] != inctxt[0]) j++;
+            if (j > i) this.out.write(b, i, j - i);
+            i = j;
+            if (i < end) write(b[i++] & 0xff);
+        }
+    }
+
+    private void include(final byte[] d, final int end) throws IOException {
+        // find right end quote
+        int rightquote = 1;
+        while (rightquote < end && d[rightquote] != '"') rightquote++;
+        if (rightquote >= end) {
+            ConcurrentLog.warn("FILEHANDLER", "YaCyDefaultServlet: parseSSI closing quote missing " + UTF8.String(inctxt) + UTF8.String(d, 0, end) + " in " + this.request.getPathInfo());
+            return;
+        }
+        final String path = UTF8.String(d, 0, rightquote);
+        this.out.flush();
+        final RequestDispatcher dispatcher = this.request.getRequestDispatcher(path);
+        try {
+            dispatcher.include(this.request, this.response);
+        } catch (final IOException ex) {
+            if (path.indexOf("yacysearch") < 0) ConcurrentLog.warn("FILEHANDLER", "YaCyDefaultServlet: parseSSI dispatcher problem - " + ex.getMessage() + ": " + path);
+            // this is probably a time-out; it may occur during search requests; for search requests we consider that normal
+        } catch (final ServletException ex) {
+            throw new IncludeException(ex);
+        }
+    }
+
+    /**
+     * carries a ServletException of an include through the stream methods; the servlet which writes
+     * to the stream must rethrow the cause
+     */
+    public static class IncludeException extends IOException {
+
+        private static final long serialVersionUID = 2872958318209441235L;
+
+        private IncludeException(final ServletException cause) {
+            super(cause);
+        }
+
+        @Override
+        public ServletException getCause() {
+            return (ServletException) super.getCause();
+        }
+    }
+
+    /**
+     * write an unfinished include line unchanged and close the response stream
+     */
+    @Override
+    public void close() throws IOException {
+        if (this.matched > 0) this.out.write(inctxt, 0, this.matched);
+        if (this.directive != null) this.directive.writeTo(this.out);
+        this.matched = 0;
+        this.directive = null;
+        super.close();
+    }
+}
@@ -0,0 +1,232 @@
+/**
+ *  ServletRegistry
+ *  First released at http://yacy.net
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.yacy.http.servlets;
+
+import java.io.File;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import net.yacy.cora.protocol.RequestHeader;
+import net.yacy.cora.util.ConcurrentLog;
+import net.yacy.server.serverClassLoader;
+import net.yacy.server.serverObjects;
+import net.yacy.server.serverSwitch;
+
+/**
+ * registry of the htroot servlet classes. Each class file is loaded once and its
+ * respond(RequestHeader, serverObjects, serverSwitch) method is kept as a method handle,
+ * so the class loader and reflection are not involved in the following requests.
+ * The registry counts the calls of each servlet and records their latency.
+ */
+public final class ServletRegistry {
+
+    /**
+     * the registry used by the YaCyDefaultServlet
+     */
+    public final static ServletRegistry shared = new ServletRegistry(new serverClassLoader());
+
+    /**
+     * number of latency histogram buckets; bucket i counts calls which took less than 2^i milliseconds,
+     * the last bucket counts all longer calls
+     */
+    public final static int LATENCY_BUCKETS = 16;
+
+    private final static MethodType respondType = MethodType.methodType(Object.class, RequestHeader.class, serverObjects.class, serverSwitch.class);
+
+    private final serverClassLoader provider;
+    private final ConcurrentHashMap<File, Servlet> servlets;
+
+    public ServletRegistry(final serverClassLoader provider) {
+        this.provider = provider;
+        this.servlets = new ConcurrentHashMap<File, Servlet>();
+    }
+
+    public serverClassLoader getClassLoader() {
+        return this.provider;
+    }
+
+    /**
+     * get the servlet for a class file; the class is loaded with the first call
+     * @param classFile the canonical path to the class file
+     * @return the servlet
+     * @throws InvocationTargetException if the class or its respond method cannot be found
+     */
+    public Servlet get(final File classFile) throws InvocationTargetException {
+        Servlet servlet = this.servlets.get(classFile);
+        if (servlet != null) return servlet;
+        try {
+            final Class<?> c = this.provider.loadClass(classFile);
+            final Method m = c.getMethod("respond", RequestHeader.class, serverObjects.class, serverSwitch.class);
+            servlet = new Servlet(classFile, MethodHandles.publicLookup().unreflect(m).asType(respondType));
+        } catch (final ClassNotFoundException e) {
+            ConcurrentLog.severe("FILEHANDLER","YaCyDefaultServlet: class " + classFile + " is missing:" + e.getMessage());
+            throw new InvocationTargetException(e, "class " + classFile + " is missing:" + e.getMessage());
+        } catch (final NoSuchMethodException e) {
+            ConcurrentLog.severe("FILEHANDLER","YaCyDefaultServlet: method 'respond' not found in class " + classFile + ": " + e.getMessage());
+            throw new InvocationTargetException(e, "method 'respond' not found in class " + classFile + ": " + e.getMessage());
+        } catch (final IllegalAccessException e) {
+            ConcurrentLog.severe("FILEHANDLER","YaCyDefaultServlet: method 'respond' not accessible in class " + classFile + ": " + e.getMessage());
+            throw new InvocationTargetException(e, "method 'respond' not accessible in class " + classFile + ": " + e.getMessage());
+        }
+        final Servlet other = this.servlets.putIfAbsent(classFile, servlet);
+        return other == null ? servlet : other;
+    }
+
+    /**
+     * @return all servlets which had been called so far
+     */
+    public Collection<Servlet> servlets() {
+        return new ArrayList<Servlet>(this.servlets.values());
+    }
+
+    /**
+     * @return all servlets which had been called so far, the servlets which took most of the time first.
+     * The times are read once before the sort, because the counters are changed by other threads.
+     */
+    public List<Servlet> servletsByTime() {
+        final List<TimedServlet> timed = new ArrayList<TimedServlet>(this.servlets.size());
+        for (final Servlet servlet: this.servlets.values()) timed.add(new TimedServlet(servlet));
+        Collections.sort(timed);
+        final List<Servlet> sorted = new ArrayList<Servlet>(timed.size());
+        for (final TimedServlet t: timed) sorted.add(t.servlet);
+        return sorted;
+    }
+
+    public int size() {
+        return this.servlets.size();
+    }
+
+    private final static class TimedServlet implements Comparable<TimedServlet> {
+        private final Servlet servlet;
+        private final long time;
+        private TimedServlet(final Servlet servlet) {
+            this.servlet = servlet;
+            this.time = servlet.time.get();
+        }
+        @Override
+        public int compareTo(final TimedServlet o) {
+            return this.time > o.time ? -1 : this.time < o.time ? 1 : 0;
+        }
+    }
+
+    /**
+     * @param bucket
+     * @return the upper latency bound of a histogram bucket in milliseconds, Long.MAX_VALUE for the last bucket
+     */
+    public static long latencyBound(final int bucket) {
+        return bucket >= LATENCY_BUCKETS - 1 ? Long.MAX_VALUE : 1L << bucket;
+    }
+
+    public final static class Servlet {
+
+        private final File classFile;
+        private final MethodHandle respond;
+        private final AtomicLong calls, errors, time, maxTime; // times in nanoseconds
+        private final AtomicLongArray latency;
+
+        private Servlet(final File classFile, final MethodHandle respond) {
+            this.classFile = classFile;
+            this.respond = respond;
+            this.calls = new AtomicLong(0);
+            this.errors = new AtomicLong(0);
+            this.time = new AtomicLong(0);
+            this.maxTime = new AtomicLong(0);
+            this.latency = new AtomicLongArray(LATENCY_BUCKETS);
+        }
+
+        /**
+         * call the respond method of the servlet
+         * @return the result of the servlet
+         * @throws InvocationTargetException if the servlet throws an exception, which is the cause
+         */
+        public Object invoke(final RequestHeader header, final serverObjects post, final serverSwitch env) throws InvocationTargetException {
+            final long start = System.nanoTime();
+            try {
+                return (Object) this.respond.invokeExact(header, post, env);
+            } catch (final Throwable e) {
+                this.errors.incrementAndGet();
+                throw new InvocationTargetException(e);
+            } finally {
+                record(System.nanoTime() - start);
+            }
+        }
+
+        void record(final long nanos) {
+            this.calls.incrementAndGet();
+            this.time.addAndGet(nanos);
+            long max;
+            while (nanos > (max = this.maxTime.get()) && !this.maxTime.compareAndSet(max, nanos)) {}
+            final long ms = nanos / 1000000L;
+            final int bucket = ms == 0 ? 0 : Math.min(LATENCY_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(ms));
+            this.latency.incrementAndGet(bucket);
+        }
+
+        public File getClassFile() {
+            return this.classFile;
+        }
+
+        public long getCalls() {
+            return this.calls.get();
+        }
+
+        public long getErrors() {
+            return this.errors.get();
+        }
+
+        /**
+         * @return the total time of all calls in milliseconds
+         */
+        public long getTime() {
+            return this.time.get() / 1000000L;
+        }
+
+        /**
+         * @return the average time of a call in milliseconds
+         */
+        public double getAverageTime() {
+            final long c = this.calls.get();
+            return c == 0 ? 0.0d : this.time.get() / 1000000.0d / c;
+        }
+
+        /**
+         * @return the longest call in milliseconds
+         */
+        public long getMaxTime() {
+            return this.maxTime.get() / 1000000L;
+        }
+
+        /**
+         * @param bucket see latencyBound()
+         * @return the number of calls within the latency bucket
+         */
+        public long getLatencyCount(final int bucket) {
+            return this.latency.get(bucket);
+        }
+    }
+}
@@ -20,19 +20,12 @@ package net.yacy.http.servlets;
 
 import java.awt.Image;
 import java.awt.image.BufferedImage;
-import java.io.BufferedInputStream;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.lang.ref.SoftReference;
-import java.lang.reflect.Array;
 import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.util.AbstractMap;
@@ -42,7 +35,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
@@ -66,7 +58,6 @@ import net.yacy.cora.order.Base64Order;
 import net.yacy.cora.protocol.Domains;
 import net.yacy.cora.protocol.HeaderFramework;
 import net.yacy.cora.protocol.RequestHeader;
-import net.yacy.cora.util.ByteBuffer;
 import net.yacy.cora.util.ConcurrentLog;
 import net.yacy.data.InvalidURLLicenceException;
 import net.yacy.kelondro.util.FileUtils;
@@ -81,7 +72,6 @@ import net.yacy.server.http.HTTPDFileHandler;
 import net.yacy.server.http.TemplateEngine;
 import net.yacy.server.serverClassLoader;
 import net.yacy.server.serverObjects;
-import net.yacy.server.serverSwitch;
 import net.yacy.server.servletProperties;
 import net.yacy.visualization.RasterPlotter;
 
@@ -145,8 +135,8 @@ public class YaCyDefaultServlet extends HttpServlet  {
     
     protected File _htLocalePath;
     protected File _htDocsPath;    
-    protected static final serverClassLoader provider = new serverClassLoader(/*this.getClass().getClassLoader()*/);
-    protected ConcurrentHashMap<File, SoftReference<Method>> templateMethodCache = null;
+    protected static final ServletRegistry servlets = ServletRegistry.shared;
+    protected static final serverClassLoader provider = servlets.getClassLoader();
     // settings for multipart/form-data
     protected static final File TMPDIR = new File(System.getProperty("java.io.tmpdir"));
     protected static final int SIZE_FILE_THRESHOLD = 1024 * 1024 * 1024; // 1GB is a lot but appropriate for multi-document pushed using the push_p.json servlet
@@ -190,7 +180,6 @@ public class YaCyDefaultServlet extends HttpServlet  {
         if (ConcurrentLog.isFine("FILEHANDLER")) {
             ConcurrentLog.fine("FILEHANDLER","YaCyDefaultServlet: resource base = " + _resourceBase);
         }
-        templateMethodCache = new ConcurrentHashMap<File, SoftReference<Method>>();
     }
     
     /* ------------------------------------------------------------ */
@@ -674,7 +663,7 @@ public class YaCyDefaultServlet extends HttpServlet  {
 
     
     protected Object invokeServlet(final File targetClass, final RequestHeader request, final serverObjects args) throws IllegalArgumentException, IllegalAccessException, InvocationTargetException {
-        return rewriteMethod(targetClass).invoke(null, new Object[]{request, args, Switchboard.getSwitchboard()}); // add switchboard
+        return servlets.get(targetClass).invoke(request, args, Switchboard.getSwitchboard()); // add switchboard
     }
     
     /**
@@ -780,44 +769,6 @@ public class YaCyDefaultServlet extends HttpServlet  {
         }
     }
 
-    protected Method rewriteMethod(final File classFile) throws InvocationTargetException {
-        Method m = null;
-        // now make a class out of the stream
-        try {
-            final SoftReference<Method> ref = templateMethodCache.get(classFile);
-            if (ref != null) {
-                m = ref.get();
-                if (m == null) {
-                    templateMethodCache.remove(classFile);
-                } else {
-                    return m;
-                }
-            }
-
-            final Class<?> c = provider.loadClass(classFile);
-            
-            final Class<?>[] params = (Class<?>[]) Array.newInstance(Class.class, 3);
-            params[0]=  RequestHeader.class;
-            params[1] = serverObjects.class;
-            params[2] = serverSwitch.class;
-            m = c.getMethod("respond", params);
-
-            if (MemoryControl.shortStatus()) {
-                templateMethodCache.clear();
-            } else {
-                // store the method into the cache
-                templateMethodCache.put(classFile, new SoftReference<Method>(m));
-            }
-        } catch (final ClassNotFoundException e) {
-            ConcurrentLog.severe("FILEHANDLER","YaCyDefaultServlet: class " + classFile + " is missing:" + e.getMessage());
-            throw new InvocationTargetException(e, "class " + classFile + " is missing:" + e.getMessage());
-        } catch (final NoSuchMethodException e) {
-            ConcurrentLog.severe("FILEHANDLER","YaCyDefaultServlet: method 'respond' not found in class " + classFile + ": " + e.getMessage());
-            throw new InvocationTargetException(e, "method 'respond' not found in class " + classFile + ": " + e.getMessage());
-        }
-        return m;
-    }
-
     /**
      * Handles a YaCy servlet template, reads the template and replaces the template
      * items with actual values. Because of supported server side includes target 
@@ -1052,38 +1003,17 @@ public class YaCyDefaultServlet extends HttpServlet  {
                 
                 String mimeType = Classification.ext2mime(targetExt, MimeTypes.Type.TEXT_HTML.asString());
 
-                InputStream fis;
-                long fileSize = targetFile.length();
-
-                if (fileSize <= Math.min(4 * 1024 * 1204, MemoryControl.available() / 100)) {
-                    // read file completely into ram, avoid that too many files are open at the same time
-                    fis = new ByteArrayInputStream(FileUtils.read(targetFile));
-                } else {
-                    fis = new BufferedInputStream(new FileInputStream(targetFile));
-                }
-
                 // set response header
                 response.setContentType(mimeType);
                 response.setStatus(HttpServletResponse.SC_OK);
-                ByteArrayOutputStream bas = new ByteArrayOutputStream(4096);
+                // apply the compiled template and handle SSI while the page is written to the client
+                final SSIOutputStream out = new SSIOutputStream(response.getOutputStream(), request, response);
                 try {
-                	// apply templates
-                	TemplateEngine.writeTemplate(targetFile.getName(), fis, bas, templatePatterns);
-                	
-                    // handle SSI
-                    parseSSI (bas.toByteArray(),request,response);
+                    TemplateEngine.writeTemplate(targetFile, out, templatePatterns);
+                } catch (final SSIOutputStream.IncludeException e) {
+                    throw e.getCause();
                 } finally {
-                	try {
-                		fis.close();
-                	} catch(IOException ignored) {
-                		ConcurrentLog.warn("FILEHANDLER", "YaCyDefaultServlet: could not close target file " + targetFile.getName());
-                	}
-                	
-                	try {
-                		bas.close();
-                	} catch(IOException ignored) {
-                		/* Should never happen with a ByteArrayOutputStream */
-                	}
+                    out.close();
                 }
             }
         }
@@ -1176,41 +1106,6 @@ public class YaCyDefaultServlet extends HttpServlet  {
         return proplist + "," + path;
     }
     
-    /**
-     * parse SSI line and include resource (<!--#include virtual="file.html" -->)
-     */
-    protected void parseSSI(final byte[] in, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException {
-        ByteBuffer buffer = new ByteBuffer(in);
-        OutputStream out = response.getOutputStream();
-        final byte[] inctxt ="<!--#include virtual=\"".getBytes();
-        int offset = 0;
-        int p = buffer.indexOf(inctxt, offset);
-        int end;
-        while (p >= 0 && (end = buffer.indexOf("-->".getBytes(), p + 24)) > 0 ) { // min length 24; <!--#include virtual="a"
-            out.write(in, offset, p - offset);
-            out.flush();
-            // find right end quote
-            final int rightquote = buffer.indexOf("\"".getBytes(), p + 23);
-            if (rightquote > 0 && rightquote < end) {
-                final String path = buffer.toString(p + 22, rightquote - p - 22);
-                RequestDispatcher dispatcher = request.getRequestDispatcher(path);
-                try {
-                    dispatcher.include(request, response);
-                } catch (IOException ex) {
-                    if (path.indexOf("yacysearch") < 0) ConcurrentLog.warn("FILEHANDLER", "YaCyDefaultServlet: parseSSI dispatcher problem - " + ex.getMessage() + ": " + path);
-                    // this is probably a time-out; it may occur during search requests; for search requests we consider that normal
-                }
-            } else {
-                ConcurrentLog.warn("FILEHANDLER", "YaCyDefaultServlet: parseSSI closing quote missing " + buffer.toString(p, end - p) + " in " + request.getPathInfo());
-            }
-            offset = end + 3; // after "-->"
-            p = buffer.indexOf(inctxt, offset);
-        }
-        out.write(in, offset, in.length - offset);
-        out.close();
-        buffer.close();
-    }
-
     /**
      * TODO: add same functionality & checks as in HTTPDemon.parseMultipart
      *
@@ -31,10 +31,12 @@ import java.io.IOException;
 import java.lang.reflect.Array;
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.PriorityQueue;
 import java.util.TreeMap;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CompletionService;
@@ -59,6 +61,7 @@ import net.yacy.cora.order.NaturalOrder;
 import net.yacy.cora.util.ConcurrentLog;
 import net.yacy.cora.util.LookAheadIterator;
 import net.yacy.cora.util.SpaceExceededException;
+import net.yacy.kelondro.io.BandwidthLimiter;
 import net.yacy.kelondro.rwi.Reference;
 import net.yacy.kelondro.rwi.ReferenceContainer;
 import net.yacy.kelondro.rwi.ReferenceFactory;
@@ -87,6 +90,9 @@ public class ArrayStack implements BLOB {
     private static final long maxFileSize = Integer.MAX_VALUE;
     public  static final long oneMonth    = 1000L * 60L * 60L * 24L * 365L / 12L;
 
+    // if true, the BLOB files which are not written any more are read with a memory mapping and without synchronization
+    public static boolean memoryMappedReads = false;
+
     private       int            keylength;
     private       ByteOrder      ordering;
     private final File           heapLocation;
@@ -152,7 +158,7 @@ public class ArrayStack implements BLOB {
                 FileUtils.deletedelete(new File(heapLocation, file));
                 deletions = true;
             }
-            if (file.endsWith(".idx") || file.endsWith(".gap")) {
+            if (file.endsWith(".idx") || file.endsWith(".gap") || file.endsWith(".blm")) {
                 final String s = file.substring(0, file.length() - 17);
                 if (!fh.contains(s)) {
                     FileUtils.deletedelete(new File(heapLocation, file));
@@ -206,8 +212,11 @@ public class ArrayStack implements BLOB {
                        if (time == maxtime && !trimall) {
                            oneBlob = new Heap(f, keylength, ordering, buffersize);
                        } else {
-                           oneBlob = new HeapModifier(f, keylength, ordering);
-                           oneBlob.optimize(); // no writings here, can be used with minimum memory
+                           final HeapModifier heap = new HeapModifier(f, keylength, ordering);
+                           heap.optimize(); // no writings here, can be used with minimum memory
+                           heap.loadKeyFilter();
+                           if (memoryMappedReads) heap.memoryMap();
+                           oneBlob = heap;
                        }
                        sortedItems.put(Long.valueOf(time), new blobItem(d, f, oneBlob));
                    } catch (final IOException e) {
@@ -261,8 +270,11 @@ public class ArrayStack implements BLOB {
         if (full && this.buffersize > 0 && !this.trimall) {
             oneBlob = new Heap(location, this.keylength, this.ordering, this.buffersize);
         } else {
-            oneBlob = new HeapModifier(location, this.keylength, this.ordering);
-            oneBlob.optimize();
+            final HeapModifier heap = new HeapModifier(location, this.keylength, this.ordering);
+            heap.optimize();
+            heap.loadKeyFilter();
+            if (memoryMappedReads) heap.memoryMap();
+            oneBlob = heap;
         }
         this.blobs.add(new blobItem(d, location, oneBlob));
     }
@@ -345,6 +357,34 @@ public class ArrayStack implements BLOB {
         return new File[]{f0, f1};
     }
 
+    /**
+     * unmount up to count of the smallest files for a k-way merge
+     * @param count the maximum number of files
+     * @param maxResultSize the maximum sum of the file sizes
+     * @return the unmounted files, or null if less than three files fit into maxResultSize
+     */
+    public synchronized File[] unmountSmallest(final int count, final long maxResultSize) {
+        if (this.blobs.size() < 3) return null;
+        final TreeMap<Long, File> bySize = new TreeMap<Long, File>();
+        for (final blobItem b: this.blobs) {
+            // the position is added to make the keys unique; files of same size are ordered by age
+            bySize.put((b.location.length() << 16) + bySize.size(), b.location);
+        }
+        final List<File> selected = new ArrayList<File>(count);
+        long size = 0;
+        for (final File f: bySize.values()) {
+            if (selected.size() >= count || size + f.length() > maxResultSize) break;
+            selected.add(f);
+            size += f.length();
+        }
+        if (selected.size() < 3) return null;
+        // keep the order of the stack (oldest first) so that merges of equal terms keep the same precedence
+        final List<File> files = new ArrayList<File>(selected.size());
+        for (final blobItem b: this.blobs) if (selected.contains(b.location)) files.add(b.location);
+        for (final File f: files) unmountBLOB(f, false);
+        return files.toArray(new File[files.size()]);
+    }
+
     private synchronized File smallestBLOB(final File excluding, final long maxsize) {
         if (this.blobs.isEmpty()) return null;
         File bestFile = null;
@@ -458,6 +498,15 @@ public class ArrayStack implements BLOB {
             this.location = newBLOB(this.creation);
             this.blob = (buffer == 0) ? new HeapModifier(this.location, ArrayStack.this.keylength, ArrayStack.this.ordering) : new Heap(this.location, ArrayStack.this.keylength, ArrayStack.this.ordering, buffer);
         }
+        /**
+         * check the key filter of the blob
+         * @param key
+         * @return false if the blob does definitely not contain the key
+         */
+        public boolean mightContain(final byte[] key) {
+            final BLOB b = this.blob;
+            return !(b instanceof HeapReader) || ((HeapReader) b).mightContain(key);
+        }
     }
 
     /**
@@ -579,18 +628,24 @@ public class ArrayStack implements BLOB {
         int bs1 = this.blobs.size() - 1;
         blobItem bi = this.blobs.get(bs1);
         if (bi.blob.containsKey(key)) return bi;
-        if (this.blobs.size() == 2) {
+
+        // use the key filters to find the blobs which may contain the key
+        final List<blobItem> candidates = new ArrayList<blobItem>(2);
+        for (int i = 0; i < bs1; i++) {
+            bi = this.blobs.get(i);
+            if (bi.mightContain(key)) candidates.add(bi);
+        }
+        if (candidates.isEmpty()) return null;
+        if (candidates.size() <= 2) {
             // this should not be done concurrently
-            bi = this.blobs.get(0);
-            if (bi.blob.containsKey(key)) return bi;
+            for (final blobItem b: candidates) if (b.blob.containsKey(key)) return b;
             return null;
         }
 
         // start a concurrent query to database tables
         final CompletionService<blobItem> cs = new ExecutorCompletionService<blobItem>(this.executor);
         int accepted = 0;
-        for (int i = 0; i < bs1; i++) {
-            final blobItem b = this.blobs.get(i);
+        for (final blobItem b: candidates) {
             try {
                 cs.submit(new Callable<blobItem>() {
                     @Override
@@ -695,8 +750,9 @@ public class ArrayStack implements BLOB {
         @Override
         protected byte[] next0() {
             while (this.bii.hasNext()) {
-                final BLOB b = this.bii.next().blob;
-                if (b == null) continue;
+                final blobItem bi = this.bii.next();
+                final BLOB b = bi.blob;
+                if (b == null || !bi.mightContain(this.key)) continue;
                 try {
                     final byte[] n = b.get(this.key);
                     if (n != null) return n;
@@ -852,29 +908,36 @@ public class ArrayStack implements BLOB {
             final blobItem bi = this.blobs.get(0);
             bi.blob.delete(key);
         } else {
-            @SuppressWarnings("unchecked")
-            final FutureTask<Boolean>[] t = (FutureTask<Boolean>[]) Array.newInstance(FutureTask.class, this.blobs.size() - 1);
-            int i = 0;
-            for (final blobItem bi: this.blobs) {
-                if (i < t.length) {
-                    // run this in a concurrent thread
-                    final blobItem bi0 = bi;
-                    t[i] = new FutureTask<Boolean>(new Callable<Boolean>() {
-                        @Override
-                        public Boolean call() {
-                            try { bi0.blob.delete(key); } catch (final IOException e) {}
-                            return true;
-                        }
-                    });
-                    DELETE_EXECUTOR.execute(t[i]);
-                } else {
-                    // no additional thread, run in this thread
-                    try { bi.blob.delete(key); } catch (final IOException e) {}
+            // use the key filters to find the blobs which may contain the key
+            final List<blobItem> candidates = new ArrayList<blobItem>(this.blobs.size());
+            for (final blobItem bi: this.blobs) if (bi.mightContain(key)) candidates.add(bi);
+            if (candidates.size() == 1) {
+                candidates.get(0).blob.delete(key);
+            } else if (candidates.size() > 1) {
+                @SuppressWarnings("unchecked")
+                final FutureTask<Boolean>[] t = (FutureTask<Boolean>[]) Array.newInstance(FutureTask.class, candidates.size() - 1);
+                int i = 0;
+                for (final blobItem bi: candidates) {
+                    if (i < t.length) {
+                        // run this in a concurrent thread
+                        final blobItem bi0 = bi;
+                        t[i] = new FutureTask<Boolean>(new Callable<Boolean>() {
+                            @Override
+                            public Boolean call() {
+                                try { bi0.blob.delete(key); } catch (final IOException e) {}
+                                return true;
+                            }
+                        });
+                        DELETE_EXECUTOR.execute(t[i]);
+                    } else {
+                        // no additional thread, run in this thread
+                        try { bi.blob.delete(key); } catch (final IOException e) {}
+                    }
+                    i++;
                 }
-                i++;
+                // wait for termination
+                for (final FutureTask<Boolean> s: t) try {s.get();} catch (final InterruptedException e) {} catch (final ExecutionException e) {}
             }
-            // wait for termination
-            for (final FutureTask<Boolean> s: t) try {s.get();} catch (final InterruptedException e) {} catch (final ExecutionException e) {}
         }
         assert mem() <= m : "m = " + m + ", mem() = " + mem();
     }
@@ -906,10 +969,21 @@ public class ArrayStack implements BLOB {
     public File mergeMount(final File f1, final File f2,
             final ReferenceFactory<? extends Reference> factory,
             final File newFile, final int writeBuffer) {
+        return mergeMount(f1, f2, factory, newFile, writeBuffer, null);
+    }
+
+    /**
+     * merge two blob files into one, see above
+     * @param limiter a limiter for the written bytes, may be null
+     * @return the target file where the given files are merged in
+     */
+    public File mergeMount(final File f1, final File f2,
+            final ReferenceFactory<? extends Reference> factory,
+            final File newFile, final int writeBuffer, final BandwidthLimiter limiter) {
         if (f2 == null) {
             // this is a rewrite
             ConcurrentLog.info("BLOBArray", "rewrite of " + f1.getName());
-            final File resultFile = rewriteWorker(factory, this.keylength, this.ordering, f1, newFile, writeBuffer);
+            final File resultFile = rewriteWorker(factory, this.keylength, this.ordering, f1, newFile, writeBuffer, limiter);
             if (resultFile == null) {
                 ConcurrentLog.warn("BLOBArray", "rewrite of file " + f1 + " returned null. newFile = " + newFile);
                 return null;
@@ -924,7 +998,7 @@ public class ArrayStack implements BLOB {
             return resultFile;
         }
         ConcurrentLog.info("BLOBArray", "merging " + f1.getName() + " with " + f2.getName());
-        final File resultFile = mergeWorker(factory, this.keylength, this.ordering, f1, f2, newFile, writeBuffer);
+        final File resultFile = mergeWorker(factory, this.keylength, this.ordering, f1, f2, newFile, writeBuffer, limiter);
         if (resultFile == null) {
             ConcurrentLog.warn("BLOBArray", "merge of files " + f1 + ", " + f2 + " returned null. newFile = " + newFile);
             return null;
@@ -939,9 +1013,42 @@ public class ArrayStack implements BLOB {
         return resultFile;
     }
 
+    /**
+     * merge any number of blob files into one in a single pass. Each term is read once from
+     * every file and written once, which reduces the write amplification compared to a cascade
+     * of pairwise merges. The files must be given in the order of the stack, the oldest first.
+     * @param files
+     * @param factory
+     * @param newFile
+     * @param writeBuffer
+     * @param limiter a limiter for the written bytes, may be null
+     * @return the target file where the given files are merged in
+     */
+    public File mergeMount(final File[] files,
+            final ReferenceFactory<? extends Reference> factory,
+            final File newFile, final int writeBuffer, final BandwidthLimiter limiter) {
+        if (files.length == 1) return mergeMount(files[0], null, factory, newFile, writeBuffer, limiter);
+        if (files.length == 2) return mergeMount(files[0], files[1], factory, newFile, writeBuffer, limiter);
+        ConcurrentLog.info("BLOBArray", "merging " + files.length + " files into " + newFile.getName());
+        final File resultFile = mergeManyWorker(factory, this.keylength, this.ordering, files, newFile, writeBuffer, limiter);
+        if (resultFile == null) {
+            ConcurrentLog.warn("BLOBArray", "merge of " + files.length + " files returned null. newFile = " + newFile);
+            return null;
+        }
+        try {
+            mountBLOB(resultFile, false);
+        } catch (final IOException e) {
+            ConcurrentLog.warn("BLOBArray", "merge of " + files.length + " files successfull, but read failed. resultFile = " + resultFile);
+            return null;
+        }
+        ConcurrentLog.info("BLOBArray", "merged " + files.length + " files into " + resultFile);
+        return resultFile;
+    }
+
     private static <ReferenceType extends Reference> File mergeWorker(
                     final ReferenceFactory<ReferenceType> factory,
-                    final int keylength, final ByteOrder order, final File f1, final File f2, final File newFile, final int writeBuffer) {
+                    final int keylength, final ByteOrder order, final File f1, final File f2, final File newFile, final int writeBuffer,
+                    final BandwidthLimiter limiter) {
         // iterate both files and write a new one
         ReferenceIterator<ReferenceType> i1 = null;
         try {
@@ -968,7 +1075,7 @@ public class ArrayStack implements BLOB {
                 final File tmpFile = new File(newFile.getParentFile(), newFile.getName() + ".prt");
                 try {
                     final HeapWriter writer = new HeapWriter(tmpFile, newFile, keylength, order, writeBuffer);
-                    merge(i1, i2, order, writer);
+                    merge(i1, i2, order, writer, limiter);
                     writer.close(true);
                 } catch (final IOException e) {
                     ConcurrentLog.severe("ArrayStack", "cannot writing or close writing merge, newFile = " + newFile.toString() + ", tmpFile = " + tmpFile.toString() + ": " + e.getMessage(), e);
@@ -1001,7 +1108,8 @@ public class ArrayStack implements BLOB {
 
     private static <ReferenceType extends Reference> File rewriteWorker(
             final ReferenceFactory<ReferenceType> factory,
-            final int keylength, final ByteOrder order, final File f, final File newFile, final int writeBuffer) {
+            final int keylength, final ByteOrder order, final File f, final File newFile, final int writeBuffer,
+            final BandwidthLimiter limiter) {
         // iterate both files and write a new one
 
         CloneableIterator<ReferenceContainer<ReferenceType>> i = null;
@@ -1019,7 +1127,7 @@ public class ArrayStack implements BLOB {
         final File tmpFile = new File(newFile.getParentFile(), newFile.getName() + ".prt");
         try {
             final HeapWriter writer = new HeapWriter(tmpFile, newFile, keylength, order, writeBuffer);
-            rewrite(i, order, writer);
+            rewrite(i, order, writer, limiter);
             writer.close(true);
             i.close();
         } catch (final IOException e) {
@@ -1041,7 +1149,7 @@ public class ArrayStack implements BLOB {
     private static <ReferenceType extends Reference> void merge(
             final CloneableIterator<ReferenceContainer<ReferenceType>> i1,
             final CloneableIterator<ReferenceContainer<ReferenceType>> i2,
-            final ByteOrder ordering, final HeapWriter writer) throws IOException, SpaceExceededException {
+            final ByteOrder ordering, final HeapWriter writer, final BandwidthLimiter limiter) throws IOException, SpaceExceededException {
         assert i1.hasNext();
         assert i2.hasNext();
         byte[] c1lh, c2lh;
@@ -1056,7 +1164,7 @@ public class ArrayStack implements BLOB {
             if (e < 0) {
             	s = c1.shrinkReferences();
             	if (s > 0) ConcurrentLog.info("ArrayStack", "shrinking index for " + ASCII.String(c1.getTermHash()) + " by " + s + " to " + c1.size() + " entries");
-                writer.add(c1.getTermHash(), c1.exportCollection());
+                write(writer, c1, limiter);
                 if (i1.hasNext()) {
                     c1lh = c1.getTermHash();
                     c1 = i1.next();
@@ -1069,7 +1177,7 @@ public class ArrayStack implements BLOB {
             if (e > 0) {
                 s = c2.shrinkReferences();
                 if (s > 0) ConcurrentLog.info("ArrayStack", "shrinking index for " + ASCII.String(c2.getTermHash()) + " by " + s + " to " + c2.size() + " entries");
-                writer.add(c2.getTermHash(), c2.exportCollection());
+                write(writer, c2, limiter);
                 if (i2.hasNext()) {
                     c2lh = c2.getTermHash();
                     c2 = i2.next();
@@ -1084,7 +1192,7 @@ public class ArrayStack implements BLOB {
             c1 = c1.merge(c2);
             s = c1.shrinkReferences();
             if (s > 0) ConcurrentLog.info("ArrayStack", "shrinking index for " + ASCII.String(c1.getTermHash()) + " by " + s + " to " + c1.size() + " entries");
-            writer.add(c1.getTermHash(), c1.exportCollection());
+            write(writer, c1, limiter);
             c1lh = c1.getTermHash();
             c2lh = c2.getTermHash();
             if (i1.hasNext() && i2.hasNext()) {
@@ -1114,7 +1222,7 @@ public class ArrayStack implements BLOB {
             //System.out.println("FLUSH REMAINING 1: " + c1.getWordHash());
             s = c1.shrinkReferences();
             if (s > 0) ConcurrentLog.info("ArrayStack", "shrinking index for " + ASCII.String(c1.getTermHash()) + " by " + s + " to " + c1.size() + " entries");
-            writer.add(c1.getTermHash(), c1.exportCollection());
+            write(writer, c1, limiter);
             if (i1.hasNext()) {
                 c1lh = c1.getTermHash();
                 c1 = i1.next();
@@ -1127,7 +1235,7 @@ public class ArrayStack implements BLOB {
             //System.out.println("FLUSH REMAINING 2: " + c2.getWordHash());
             s = c2.shrinkReferences();
             if (s > 0) ConcurrentLog.info("ArrayStack", "shrinking index for " + ASCII.String(c2.getTermHash()) + " by " + s + " to " + c2.size() + " entries");
-            writer.add(c2.getTermHash(), c2.exportCollection());
+            write(writer, c2, limiter);
             if (i2.hasNext()) {
                 c2lh = c2.getTermHash();
                 c2 = i2.next();
@@ -1141,7 +1249,7 @@ public class ArrayStack implements BLOB {
 
     private static <ReferenceType extends Reference> void rewrite(
             final CloneableIterator<ReferenceContainer<ReferenceType>> i,
-            final ByteOrder ordering, final HeapWriter writer) throws IOException, SpaceExceededException {
+            final ByteOrder ordering, final HeapWriter writer, final BandwidthLimiter limiter) throws IOException, SpaceExceededException {
         assert i.hasNext();
         byte[] clh;
         ReferenceContainer<ReferenceType> c;
@@ -1151,7 +1259,7 @@ public class ArrayStack implements BLOB {
             assert c != null;
             s = c.shrinkReferences();
             if (s > 0) ConcurrentLog.info("ArrayStack", "shrinking index for " + ASCII.String(c.getTermHash()) + " by " + s + " to " + c.size() + " entries");
-            writer.add(c.getTermHash(), c.exportCollection());
+            write(writer, c, limiter);
             if (i.hasNext()) {
                 clh = c.getTermHash();
                 c = i.next();
@@ -1163,6 +1271,100 @@ public class ArrayStack implements BLOB {
         // finished with writing
     }
 
+    private static <ReferenceType extends Reference> File mergeManyWorker(
+            final ReferenceFactory<ReferenceType> factory,
+            final int keylength, final ByteOrder order, final File[] files, final File newFile, final int writeBuffer,
+            final BandwidthLimiter limiter) {
+        final List<ReferenceIterator<ReferenceType>> iterators = new ArrayList<ReferenceIterator<ReferenceType>>(files.length);
+        final File tmpFile = new File(newFile.getParentFile(), newFile.getName() + ".prt");
+        try {
+            for (final File f: files) iterators.add(new ReferenceIterator<ReferenceType>(f, factory));
+            final HeapWriter writer = new HeapWriter(tmpFile, newFile, keylength, order, writeBuffer);
+            final int count = merge(iterators, order, writer, limiter);
+            writer.close(true);
+            // we don't need the old files any more
+            for (final File f: files) HeapWriter.delete(f);
+            if (count == 0) {
+                HeapWriter.delete(newFile);
+                return null;
+            }
+            return newFile;
+        } catch (final IOException e) {
+            ConcurrentLog.severe("ArrayStack", "cannot merge, newFile = " + newFile.toString() + ", tmpFile = " + tmpFile.toString() + ": " + e.getMessage(), e);
+            HeapWriter.delete(tmpFile);
+            HeapWriter.delete(newFile);
+            return null;
+        } catch (final SpaceExceededException e) {
+            ConcurrentLog.severe("ArrayStack", "cannot merge because of memory failure: " + e.getMessage(), e);
+            HeapWriter.delete(tmpFile);
+            HeapWriter.delete(newFile);
+            return null;
+        } finally {
+            for (final ReferenceIterator<ReferenceType> i: iterators) i.close();
+        }
+    }
+
+    /**
+     * the current container of an input of the k-way merge
+     */
+    private static class MergeHead<ReferenceType extends Reference> {
+        private final CloneableIterator<ReferenceContainer<ReferenceType>> i;
+        private final int position; // the position of the input in the stack; older files first
+        private ReferenceContainer<ReferenceType> c;
+        private MergeHead(final CloneableIterator<ReferenceContainer<ReferenceType>> i, final int position) {
+            this.i = i;
+            this.position = position;
+            this.c = i.next();
+        }
+        private boolean advance() {
+            if (!this.i.hasNext()) return false;
+            this.c = this.i.next();
+            return true;
+        }
+    }
+
+    private static <ReferenceType extends Reference> int merge(
+            final List<? extends CloneableIterator<ReferenceContainer<ReferenceType>>> iterators,
+            final ByteOrder ordering, final HeapWriter writer, final BandwidthLimiter limiter) throws IOException, SpaceExceededException {
+        final PriorityQueue<MergeHead<ReferenceType>> heads = new PriorityQueue<MergeHead<ReferenceType>>(Math.max(1, iterators.size()), new Comparator<MergeHead<ReferenceType>>() {
+            @Override
+            public int compare(final MergeHead<ReferenceType> h1, final MergeHead<ReferenceType> h2) {
+                final int e = ordering.compare(h1.c.getTermHash(), h2.c.getTermHash());
+                if (e != 0) return e;
+                return h1.position - h2.position;
+            }
+        });
+        int p = 0;
+        for (final CloneableIterator<ReferenceContainer<ReferenceType>> i: iterators) {
+            if (i.hasNext()) heads.add(new MergeHead<ReferenceType>(i, p));
+            p++;
+        }
+        int count = 0, s;
+        MergeHead<ReferenceType> h;
+        ReferenceContainer<ReferenceType> c;
+        while ((h = heads.poll()) != null) {
+            c = h.c;
+            if (h.advance()) heads.add(h);
+            // merge the containers of the same term from all other inputs
+            while ((h = heads.peek()) != null && ordering.compare(h.c.getTermHash(), c.getTermHash()) == 0) {
+                heads.poll();
+                c = c.merge(h.c);
+                if (h.advance()) heads.add(h);
+            }
+            s = c.shrinkReferences();
+            if (s > 0) ConcurrentLog.info("ArrayStack", "shrinking index for " + ASCII.String(c.getTermHash()) + " by " + s + " to " + c.size() + " entries");
+            write(writer, c, limiter);
+            count++;
+        }
+        return count;
+    }
+
+    private static void write(final HeapWriter writer, final ReferenceContainer<?> c, final BandwidthLimiter limiter) throws IOException, SpaceExceededException {
+        final byte[] b = c.exportCollection();
+        writer.add(c.getTermHash(), b);
+        if (limiter != null) limiter.acquire(b.length);
+    }
+
     public static void main(final String[] args) {
         final File f = new File("/Users/admin/blobarraytest");
         try {
@@ -27,17 +27,11 @@
 
 package net.yacy.kelondro.blob;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.TreeMap;
 import java.util.zip.Deflater;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
 
 import net.yacy.cora.order.ByteOrder;
 import net.yacy.cora.order.CloneableIterator;
@@ -49,20 +43,41 @@ import net.yacy.kelondro.util.MemoryControl;
 
 public class Compressor implements BLOB, Iterable<byte[]> {
 
-    private static byte[] gzipMagic  = {(byte) 'z', (byte) '|'}; // magic for gzip-encoded content
     private static byte[] plainMagic = {(byte) 'p', (byte) '|'}; // magic for plain content (no encoding)
 
+    // all codecs which may be found in a BLOB; the level does not matter for decoding
+    private static final CompressorCodec[] codecs = new CompressorCodec[] {
+        new DeflateCodec(Deflater.BEST_SPEED),
+        new GzipCodec(Deflater.BEST_COMPRESSION)
+    };
+
     private final BLOB backend;
+    private final CompressorCodec codec; // the codec for new entries
     private TreeMap<byte[], byte[]> buffer; // entries which are not yet compressed, format is RAW (without magic)
-    private long bufferlength;
+    private TreeMap<byte[], byte[]> flushing; // entries which are compressed at this time, outside of the lock
+    private volatile long bufferlength; // the size of the entries in buffer and flushing
     private final long maxbufferlength;
 
     public Compressor(final BLOB backend, final long buffersize) {
+        this(backend, buffersize, new DeflateCodec(Deflater.BEST_SPEED));
+    }
+
+    /**
+     * @param backend the BLOB which stores the compressed entries
+     * @param buffersize the maximum size of the uncompressed entries which are held in memory
+     * @param codec the codec which compresses new entries; entries of other codecs can still be read
+     */
+    public Compressor(final BLOB backend, final long buffersize, final CompressorCodec codec) {
         this.backend = backend;
         this.maxbufferlength = buffersize;
+        this.codec = codec;
         initBuffer();
     }
 
+    public CompressorCodec getCodec() {
+        return this.codec;
+    }
+
     @Override
     public long mem() {
         return this.backend.mem();
@@ -86,6 +101,7 @@ public class Compressor implements BLOB, Iterable<byte[]> {
 
     private void initBuffer() {
         this.buffer = new TreeMap<byte[], byte[]>(this.backend.ordering());
+        this.flushing = new TreeMap<byte[], byte[]>(this.backend.ordering());
         this.bufferlength = 0;
     }
 
@@ -98,34 +114,18 @@ public class Compressor implements BLOB, Iterable<byte[]> {
     public synchronized void close(final boolean writeIDX) {
         // no more thread is running, flush all queues
         flushAll();
+        waitFlushing();
         this.backend.close(writeIDX);
     }
 
-    private static byte[] compress(final byte[] b) {
+    private byte[] compress(final byte[] b) {
         final int l = b.length;
         if (l < 100) return markWithPlainMagic(b);
-        final byte[] bb = compressAddMagic(b);
-        if (bb.length >= l) return markWithPlainMagic(b);
+        final byte[] bb = this.codec.encode(b);
+        if (bb == null || bb.length >= l) return markWithPlainMagic(b);
         return bb;
     }
 
-    private static byte[] compressAddMagic(final byte[] b) {
-        // compress a byte array and add a leading magic for the compression
-        try {
-            //System.out.print("/(" + cdr + ")"); // DEBUG
-            final ByteArrayOutputStream baos = new ByteArrayOutputStream(b.length / 5);
-            baos.write(gzipMagic);
-            final OutputStream os = new GZIPOutputStream(baos, 65536){{def.setLevel(Deflater.BEST_COMPRESSION);}};
-            os.write(b);
-            os.close();
-            baos.close();
-            return baos.toByteArray();
-        } catch (final IOException e) {
-            ConcurrentLog.severe("Compressor", "", e);
-            return null;
-        }
-    }
-
     private static byte[] markWithPlainMagic(final byte[] b) {
         //System.out.print("+"); // DEBUG
         final byte[] r = new byte[b.length + 2];
@@ -135,28 +135,21 @@ public class Compressor implements BLOB, Iterable<byte[]> {
         return r;
     }
 
-    private static byte[] decompress(final byte[] b) {
+    private CompressorCodec codec(final byte[] b) {
+        if (ByteArray.startsWith(b, this.codec.magic())) return this.codec;
+        for (final CompressorCodec c: codecs) {
+            if (ByteArray.startsWith(b, c.magic())) return c;
+        }
+        return null;
+    }
+
+    private byte[] decompress(final byte[] b) {
         // use a magic in the head of the bytes to identify compression type
         if (b == null) return null;
-        if (ByteArray.startsWith(b, gzipMagic)) {
-            //System.out.print("\\"); // DEBUG
-            final ByteArrayInputStream bais = new ByteArrayInputStream(b);
-            // eat up the magic
-            bais.read();
-            bais.read();
-            // decompress what is remaining
-            InputStream gis;
+        final CompressorCodec c = codec(b);
+        if (c != null) {
             try {
-                gis = new GZIPInputStream(bais);
-                final ByteArrayOutputStream baos = new ByteArrayOutputStream(b.length);
-                final byte[] buf = new byte[1024 * 4];
-                int n;
-                while ((n = gis.read(buf)) > 0) baos.write(buf, 0, n);
-                gis.close();
-                bais.close();
-                baos.close();
-
-                return baos.toByteArray();
+                return c.decode(b);
             } catch (final IOException e) {
                 ConcurrentLog.logException(e);
                 return null;
@@ -178,12 +171,14 @@ public class Compressor implements BLOB, Iterable<byte[]> {
         // because if a document was read once, we think that it will not be retrieved another time again soon
         byte[] b = null;
         synchronized (this) {
+            b = this.flushing.get(key);
+            if (b != null) return b;
             b = this.buffer.remove(key);
-            if (b != null) {
-                this.backend.insert(key, compress(b));
-                this.bufferlength = this.bufferlength - b.length;
-                return b;
-            }
+            if (b != null) this.flushing.put(key, b);
+        }
+        if (b != null) {
+            flush(key, b);
+            return b;
         }
 
         // return from the backend
@@ -211,7 +206,7 @@ public class Compressor implements BLOB, Iterable<byte[]> {
     @Override
     public boolean containsKey(final byte[] key) {
         synchronized (this) {
-            return this.buffer.containsKey(key) || this.backend.containsKey(key);
+            return this.buffer.containsKey(key) || this.flushing.containsKey(key) || this.backend.containsKey(key);
         }
     }
 
@@ -232,22 +227,32 @@ public class Compressor implements BLOB, Iterable<byte[]> {
 
     @Override
     public long length(final byte[] key) throws IOException {
+        byte[] b;
         synchronized (this) {
-            byte[] b = this.buffer.get(key);
+            b = this.buffer.get(key);
+            if (b == null) b = this.flushing.get(key);
             if (b != null) return b.length;
-            try {
-                b = this.backend.get(key);
-                if (b == null) return 0;
-                b = decompress(b);
-                return (b == null) ? 0 : b.length;
-            } catch (final SpaceExceededException e) {
-                throw new IOException(e.getMessage());
+        }
+        try {
+            b = this.backend.get(key);
+            if (b == null) return 0;
+            // most codecs know the length without decompression
+            final CompressorCodec c = codec(b);
+            if (c != null) {
+                final int l = c.decodedLength(b);
+                if (l >= 0) return l;
             }
+            b = decompress(b);
+            return (b == null) ? 0 : b.length;
+        } catch (final SpaceExceededException e) {
+            throw new IOException(e.getMessage());
         }
     }
 
     private int removeFromQueues(final byte[] key) {
-        final byte[] b = this.buffer.remove(key);
+        byte[] b = this.buffer.remove(key);
+        if (b != null) return b.length;
+        b = this.flushing.remove(key); // the flushing thread will not write the entry
         if (b != null) return b.length;
         return 0;
     }
@@ -259,14 +264,10 @@ public class Compressor implements BLOB, Iterable<byte[]> {
         delete(key);
 
         // check if the buffer is full or could be full after this write
-        if (this.bufferlength + b.length * 2 > this.maxbufferlength) synchronized (this) {
-            // in case that we compress, just compress as much as is necessary to get enough room
-            while (this.bufferlength + b.length * 2 > this.maxbufferlength) {
-                if (this.buffer.isEmpty()) break;
-                flushOne();
-            }
-            // in case that this was not enough, just flush all
-            if (this.bufferlength + b.length * 2 > this.maxbufferlength) flushAll();
+        // in case that we compress, just compress as much as is necessary to get enough room;
+        // the compression is done without holding the lock so other threads can continue to read and write
+        while (this.bufferlength + b.length * 2 > this.maxbufferlength) {
+            if (!flushOne()) break;
         }
 
         // files are written uncompressed to the uncompressed-queue
@@ -289,31 +290,37 @@ public class Compressor implements BLOB, Iterable<byte[]> {
 
     @Override
     public synchronized int size() {
-        return this.backend.size() + this.buffer.size();
+        return this.backend.size() + this.buffer.size() + this.flushing.size();
     }
 
     @Override
     public synchronized boolean isEmpty() {
         if (!this.backend.isEmpty()) return false;
         if (!this.buffer.isEmpty()) return false;
+        if (!this.flushing.isEmpty()) return false;
         return true;
     }
 
     @Override
     public synchronized CloneableIterator<byte[]> keys(final boolean up, final boolean rotating) throws IOException {
         flushAll();
+        waitFlushing();
         return this.backend.keys(up, rotating);
     }
 
     @Override
     public synchronized CloneableIterator<byte[]> keys(final boolean up, final byte[] firstKey) throws IOException {
         flushAll();
+        waitFlushing();
         return this.backend.keys(up, firstKey);
     }
 
     @Override
     public Iterator<byte[]> iterator() {
         flushAll();
+        synchronized (this) {
+            waitFlushing();
+        }
         try {
             return this.backend.keys(true, false);
         } catch (final IOException e) {
@@ -321,27 +328,66 @@ public class Compressor implements BLOB, Iterable<byte[]> {
         }
     }
 
+    /**
+     * move the first entry of the buffer to the backend
+     * @return false if the buffer is empty or the entry cannot be written
+     */
     private boolean flushOne() {
-        if (this.buffer.isEmpty()) return false;
-        // depending on process case, write it to the file or compress it to the other queue
-        final Map.Entry<byte[], byte[]> entry = this.buffer.entrySet().iterator().next();
-        this.buffer.remove(entry.getKey());
-        try {
-            this.backend.insert(entry.getKey(), compress(entry.getValue()));
-            this.bufferlength -= entry.getValue().length;
-            return true;
-        } catch (final IOException e) {
-            this.buffer.put(entry.getKey(), entry.getValue());
-            return false;
+        // take the entry out of the buffer; it is still visible for readers in the flushing map
+        final Map.Entry<byte[], byte[]> entry;
+        synchronized (this) {
+            entry = this.buffer.pollFirstEntry();
+            if (entry == null) return false;
+            this.flushing.put(entry.getKey(), entry.getValue());
         }
+        return flush(entry.getKey(), entry.getValue());
     }
 
-    public void flushAll() {
-        while (!this.buffer.isEmpty()) {
-            if (!flushOne()) break;
+    /**
+     * compress an entry which is in the flushing map and write it to the backend.
+     * The compression is done without the lock, only the write to the backend is synchronized.
+     */
+    private boolean flush(final byte[] key, final byte[] b) {
+        final byte[] c = compress(b);
+        synchronized (this) {
+            try {
+                // the entry may have been deleted or replaced during the compression
+                if (this.flushing.get(key) != b) return true;
+                try {
+                    this.backend.insert(key, c);
+                } catch (final IOException e) {
+                    this.flushing.remove(key);
+                    this.buffer.put(key, b);
+                    return false;
+                }
+                this.flushing.remove(key);
+                this.bufferlength -= b.length;
+                return true;
+            } finally {
+                this.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * wait until the entries which are compressed by other threads are written to the backend;
+     * must be called while holding the lock
+     */
+    private void waitFlushing() {
+        while (!this.flushing.isEmpty()) {
+            try {
+                this.wait(100);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
         }
     }
 
+    public void flushAll() {
+        while (flushOne()) {}
+    }
+
     @Override
     public int replace(final byte[] key, final Rewriter rewriter) throws IOException, SpaceExceededException {
         final byte[] b = get(key);
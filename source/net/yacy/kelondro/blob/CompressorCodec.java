@@ -0,0 +1,60 @@
+// CompressorCodec.java
+// first published on http://yacy.net
+//
+// This is a part of YaCy, a peer-to-peer based web search engine
+//
+// LICENSE
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.kelondro.blob;
+
+import java.io.IOException;
+
+/**
+ * a compression method for the records of a Compressor BLOB. Each record starts with the magic of
+ * the codec which encoded it, so records of different codecs can be mixed within one BLOB and
+ * a change of the codec does not require a conversion of the stored records.
+ * Implementations must be thread-safe; the Compressor calls them outside of its lock.
+ */
+public interface CompressorCodec {
+
+    /**
+     * @return the two bytes which mark a record of this codec
+     */
+    public byte[] magic();
+
+    /**
+     * compress a byte array
+     * @param b
+     * @return the record including the magic, or null if the compressed form is not smaller than the input
+     */
+    public byte[] encode(byte[] b);
+
+    /**
+     * decompress a record
+     * @param record a record including the magic
+     * @return the decompressed content
+     * @throws IOException if the record is broken
+     */
+    public byte[] decode(byte[] record) throws IOException;
+
+    /**
+     * @param record a record including the magic
+     * @return the length of the decompressed content or -1 if the length is not known without decompression
+     */
+    public int decodedLength(byte[] record);
+
+}
@@ -0,0 +1,125 @@
+// DeflateCodec.java
+// first published on http://yacy.net
+//
+// This is a part of YaCy, a peer-to-peer based web search engine
+//
+// LICENSE
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.kelondro.blob;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * deflate compression with a selectable level. In contrast to the gzip stream format, the record stores the
+ * length of the content, so the decoding needs no growing buffers and the length can be computed without decoding.
+ * Deflater and Inflater objects are expensive to create because they allocate native memory,
+ * therefore they are kept in pools and re-used.
+ *
+ * record layout: magic(2) length(4) zlib-data
+ */
+public class DeflateCodec implements CompressorCodec {
+
+    private static final byte[] MAGIC = {(byte) 'd', (byte) '|'};
+    private static final int HEADER = MAGIC.length + 4;
+    private static final int poolSize = Math.max(2, Runtime.getRuntime().availableProcessors() * 2);
+    private static final ArrayBlockingQueue<Inflater> inflaters = new ArrayBlockingQueue<Inflater>(poolSize);
+
+    private final int level;
+    private final ArrayBlockingQueue<Deflater> deflaters;
+
+    /**
+     * @param level a compression level from Deflater.BEST_SPEED to Deflater.BEST_COMPRESSION
+     */
+    public DeflateCodec(final int level) {
+        this.level = level;
+        this.deflaters = new ArrayBlockingQueue<Deflater>(poolSize);
+    }
+
+    public int getLevel() {
+        return this.level;
+    }
+
+    @Override
+    public byte[] magic() {
+        return MAGIC;
+    }
+
+    @Override
+    public byte[] encode(final byte[] b) {
+        Deflater deflater = this.deflaters.poll();
+        if (deflater == null) deflater = new Deflater(this.level);
+        try {
+            deflater.setInput(b);
+            deflater.finish();
+            // the result must be smaller than the input, otherwise the content is stored plain
+            final byte[] r = new byte[b.length];
+            r[0] = MAGIC[0];
+            r[1] = MAGIC[1];
+            r[2] = (byte) (b.length >>> 24);
+            r[3] = (byte) (b.length >>> 16);
+            r[4] = (byte) (b.length >>> 8);
+            r[5] = (byte) b.length;
+            int p = HEADER;
+            while (!deflater.finished() && p < r.length) {
+                p += deflater.deflate(r, p, r.length - p);
+            }
+            if (!deflater.finished()) return null;
+            return Arrays.copyOf(r, p);
+        } finally {
+            deflater.reset();
+            if (!this.deflaters.offer(deflater)) deflater.end();
+        }
+    }
+
+    @Override
+    public byte[] decode(final byte[] record) throws IOException {
+        final int length = decodedLength(record);
+        if (length < 0) throw new IOException("record too short: " + record.length);
+        Inflater inflater = inflaters.poll();
+        if (inflater == null) inflater = new Inflater();
+        try {
+            inflater.setInput(record, HEADER, record.length - HEADER);
+            final byte[] r = new byte[length];
+            int p = 0;
+            while (p < length) {
+                final int n = inflater.inflate(r, p, length - p);
+                if (n == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("record is truncated: " + p + " of " + length + " bytes");
+                }
+                p += n;
+            }
+            return r;
+        } catch (final DataFormatException e) {
+            throw new IOException(e.getMessage());
+        } finally {
+            inflater.reset();
+            if (!inflaters.offer(inflater)) inflater.end();
+        }
+    }
+
+    @Override
+    public int decodedLength(final byte[] record) {
+        if (record.length < HEADER) return -1;
+        return ((record[2] & 0xff) << 24) | ((record[3] & 0xff) << 16) | ((record[4] & 0xff) << 8) | (record[5] & 0xff);
+    }
+
+}
@@ -0,0 +1,93 @@
+// GzipCodec.java
+// first published on http://yacy.net
+//
+// This is a part of YaCy, a peer-to-peer based web search engine
+//
+// LICENSE
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.kelondro.blob;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * the gzip compression; this was the only compression of the Compressor BLOBs in former releases,
+ * so this codec is mainly required to read old records.
+ *
+ * record layout: magic(2) gzip-stream
+ */
+public class GzipCodec implements CompressorCodec {
+
+    private static final byte[] MAGIC = {(byte) 'z', (byte) '|'};
+
+    private final int level;
+
+    /**
+     * @param level a compression level from Deflater.BEST_SPEED to Deflater.BEST_COMPRESSION
+     */
+    public GzipCodec(final int level) {
+        this.level = level;
+    }
+
+    @Override
+    public byte[] magic() {
+        return MAGIC;
+    }
+
+    @Override
+    public byte[] encode(final byte[] b) {
+        try {
+            final ByteArrayOutputStream baos = new ByteArrayOutputStream(b.length / 5);
+            baos.write(MAGIC);
+            final OutputStream os = new GZIPOutputStream(baos, 65536){{this.def.setLevel(GzipCodec.this.level);}};
+            os.write(b);
+            os.close();
+            baos.close();
+            if (baos.size() >= b.length) return null;
+            return baos.toByteArray();
+        } catch (final IOException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public byte[] decode(final byte[] record) throws IOException {
+        final ByteArrayInputStream bais = new ByteArrayInputStream(record, MAGIC.length, record.length - MAGIC.length);
+        final InputStream gis = new GZIPInputStream(bais);
+        final int length = decodedLength(record);
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream(length > 0 ? length : record.length);
+        final byte[] buf = new byte[1024 * 4];
+        int n;
+        while ((n = gis.read(buf)) > 0) baos.write(buf, 0, n);
+        gis.close();
+        return baos.toByteArray();
+    }
+
+    @Override
+    public int decodedLength(final byte[] record) {
+        // the last four bytes of a gzip stream hold the length of the content (modulo 2^32), little-endian
+        if (record.length < MAGIC.length + 18) return -1;
+        final int p = record.length - 4;
+        return (record[p] & 0xff) | ((record[p + 1] & 0xff) << 8) | ((record[p + 2] & 0xff) << 16) | ((record[p + 3] & 0xff) << 24);
+    }
+
+}
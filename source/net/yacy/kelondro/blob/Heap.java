@@ -320,6 +320,23 @@ public final class Heap extends HeapModifier implements BLOB {
         return this.buffermax;
     }
 
+    /**
+     * a heap with a write buffer writes records into gaps and at the end of the file,
+     * a memory mapping would be outdated constantly. Therefore the mapped read mode is not available here.
+     */
+    @Override
+    public boolean memoryMap() {
+        return false;
+    }
+
+    /**
+     * the key filter is not maintained for new entries, therefore it must not be used for a heap with a write buffer.
+     */
+    @Override
+    public boolean loadKeyFilter() {
+        return false;
+    }
+
     /**
      * write a whole byte array as BLOB to the table
      * @param key  the primary key
@@ -64,6 +64,7 @@ public class HeapModifier extends HeapReader implements BLOB {
      */
     @Override
     public synchronized void clear() throws IOException {
+        unmap();
         this.index.clear();
         this.free.clear();
         this.file.close();
@@ -78,6 +79,7 @@ public class HeapModifier extends HeapReader implements BLOB {
      */
     @Override
     public synchronized void close(boolean writeIDX) {
+        unmap(); // the file may be truncated
         shrinkWithGapsAtEnd();
         super.close(writeIDX);
     }
@@ -125,20 +127,25 @@ public class HeapModifier extends HeapReader implements BLOB {
             }
             super.deleteFingerprint();
 
-            // add entry to free array
-            this.free.put(seek, size);
+            beginWrite();
+            try {
+                // add entry to free array
+                this.free.put(seek, size);
 
-            // fill zeros to the content
-            int l = size; byte[] fill = new byte[size];
-            while (l-- > 0) fill[l] = 0;
-            this.file.write(fill, 0, size);
+                // fill zeros to the content
+                int l = size; byte[] fill = new byte[size];
+                while (l-- > 0) fill[l] = 0;
+                this.file.write(fill, 0, size);
 
-            // remove entry from index
-            this.index.remove(key);
+                // remove entry from index
+                this.index.remove(key);
 
-            // recursively merge gaps
-            tryMergeNextGaps(seek, size);
-            tryMergePreviousGap(seek);
+                // recursively merge gaps
+                tryMergeNextGaps(seek, size);
+                tryMergePreviousGap(seek);
+            } finally {
+                endWrite();
+            }
         }
     }
 
@@ -290,38 +297,43 @@ public class HeapModifier extends HeapReader implements BLOB {
             // rewrite the entry
             blob = reducer.rewrite(blob);
             int reduction = len - blob.length;
-            if (reduction == 0) {
-                // even if the reduction is zero then it is still be possible that the record has been changed
-                this.file.seek(pos + 4 + key.length);
+            beginWrite();
+            try {
+                if (reduction == 0) {
+                    // even if the reduction is zero then it is still be possible that the record has been changed
+                    this.file.seek(pos + 4 + key.length);
+                    this.file.write(blob);
+                    return 0;
+                }
+
+                // the new entry must be smaller than the old entry and must at least be 4 bytes smaller
+                // because that is the space needed to write a new empty entry record at the end of the gap
+                if (blob.length > len - 4) throw new IOException("replace of BLOB for key " + UTF8.String(key) + " failed (too large): new size = " + blob.length + ", old size = " + (len - 4));
+
+                // replace old content
+                this.file.seek(pos);
+                this.file.writeInt(blob.length + key.length);
+                this.file.write(key);
                 this.file.write(blob);
-                return 0;
-            }
-
-            // the new entry must be smaller than the old entry and must at least be 4 bytes smaller
-            // because that is the space needed to write a new empty entry record at the end of the gap
-            if (blob.length > len - 4) throw new IOException("replace of BLOB for key " + UTF8.String(key) + " failed (too large): new size = " + blob.length + ", old size = " + (len - 4));
 
-            // replace old content
-            this.file.seek(pos);
-            this.file.writeInt(blob.length + key.length);
-            this.file.write(key);
-            this.file.write(blob);
-
-            // define the new empty entry
-            final int newfreereclen = reduction - 4;
-            assert newfreereclen >= 0;
-            this.file.writeInt(newfreereclen);
+                // define the new empty entry
+                final int newfreereclen = reduction - 4;
+                assert newfreereclen >= 0;
+                this.file.writeInt(newfreereclen);
 
-            // fill zeros to the content
-            int l = newfreereclen; byte[] fill = new byte[newfreereclen];
-            while (l-- > 0) fill[l] = 0;
-            this.file.write(fill, 0, newfreereclen);
+                // fill zeros to the content
+                int l = newfreereclen; byte[] fill = new byte[newfreereclen];
+                while (l-- > 0) fill[l] = 0;
+                this.file.write(fill, 0, newfreereclen);
 
-            // add a new free entry
-            this.free.put(pos + 4 + blob.length + key.length, newfreereclen);
+                // add a new free entry
+                this.free.put(pos + 4 + blob.length + key.length, newfreereclen);
 
-            assert mem() <= m : "m = " + m + ", mem() = " + mem();
-            return reduction;
+                assert mem() <= m : "m = " + m + ", mem() = " + mem();
+                return reduction;
+            } finally {
+                endWrite();
+            }
         }
     }
 
@@ -25,16 +25,21 @@
 package net.yacy.kelondro.blob;
 
 import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
 
 import net.yacy.cora.document.encoding.ASCII;
 import net.yacy.cora.document.encoding.UTF8;
@@ -43,21 +48,32 @@ import net.yacy.cora.order.CloneableIterator;
 import net.yacy.cora.order.Digest;
 import net.yacy.cora.order.NaturalOrder;
 import net.yacy.cora.storage.HandleMap;
+import net.yacy.cora.storage.OffHeapHandleMap;
 import net.yacy.cora.util.ConcurrentLog;
 import net.yacy.cora.util.LookAheadIterator;
 import net.yacy.cora.util.SpaceExceededException;
 import net.yacy.kelondro.index.RowHandleMap;
 import net.yacy.kelondro.io.CachedFileWriter;
+import net.yacy.kelondro.io.ChunkedMappedFile;
 import net.yacy.kelondro.io.Writer;
 import net.yacy.kelondro.util.FileUtils;
 import net.yacy.kelondro.util.MemoryControl;
 import net.yacy.kelondro.util.RotateIterator;
 
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+
 
 public class HeapReader {
 
     //public final static long keepFreeMem = 20 * 1024 * 1024;
 
+    // the false positive probability of the key filter
+    private final static double keyFilterFpp = 0.01d;
+
+    // if true, the key/seek index of heap files opened for reading is stored outside of the java heap
+    public static boolean offHeapIndex = false;
+
 	private final static ConcurrentLog log = new ConcurrentLog("HeapReader");
 
     // input values
@@ -70,7 +86,11 @@ public class HeapReader {
     protected HandleMap          index;      // key/seek relation for used records
     protected Gap                free;       // set of {seek, size} pairs denoting space and position of free records
     private   File               fingerprintFileIdx, fingerprintFileGap; // files with dumped indexes. Will be deleted if file is written
+    private   File               fingerprintFileBloom; // file with a dumped key filter
+    private volatile BloomFilter<byte[]> keyFilter; // optional probabilistic set of all keys; used to skip files which do not contain a key
     private   Date               closeDate;  // records a time when the file was closed; used for debugging
+    private volatile ChunkedMappedFile mapped; // optional read-only mapping of the heap file for reads without synchronization
+    private final AtomicLong     writeSequence = new AtomicLong(0); // incremented before and after each write; odd while a write is running
 
     public HeapReader(
             final File heapFile,
@@ -176,7 +196,9 @@ public class HeapReader {
         // there is an index and a gap file:
         // read the index file:
         try {
-            this.index = new RowHandleMap(this.keylength, this.ordering, 8, this.fingerprintFileIdx);
+            this.index = offHeapIndex ?
+                    new OffHeapHandleMap(this.keylength, this.ordering, 8, this.fingerprintFileIdx) :
+                    new RowHandleMap(this.keylength, this.ordering, 8, this.fingerprintFileIdx);
         } catch (final IOException e) {
             ConcurrentLog.logException(e);
             return false;
@@ -220,6 +242,10 @@ public class HeapReader {
             FileUtils.deletedelete(this.fingerprintFileGap);
             this.fingerprintFileGap = null;
         }
+        if (this.fingerprintFileBloom != null) {
+            FileUtils.deletedelete(this.fingerprintFileBloom);
+            this.fingerprintFileBloom = null;
+        }
     }
 
     protected static String fingerprintFileHash(File f) {
@@ -242,7 +268,8 @@ public class HeapReader {
             if (l[i].endsWith(".idx") ||
                 l[i].endsWith(".gap") ||
                 l[i].endsWith(".idx.gz") ||
-                l[i].endsWith(".gap.gz")
+                l[i].endsWith(".gap.gz") ||
+                l[i].endsWith(".blm")
                ) FileUtils.deletedelete(new File(d, l[i]));
         }
     }
@@ -252,7 +279,9 @@ public class HeapReader {
         log.info("generating index for " + this.heapFile.toString() + ", " + (this.file.length() / 1024 / 1024) + " MB. Please wait.");
 
         this.free = new Gap();
-        RowHandleMap.initDataConsumer indexready = RowHandleMap.asynchronusInitializer(this.name() + ".initializer", this.keylength, this.ordering, 8, Math.max(10, (int) (Runtime.getRuntime().freeMemory() / (10 * 1024 * 1024))));
+        // the off-heap index is filled directly; it does not need the sort step of the asynchronous initializer
+        final OffHeapHandleMap offHeap = offHeapIndex ? new OffHeapHandleMap(this.keylength, this.ordering, 8, 1000) : null;
+        final RowHandleMap.initDataConsumer indexready = offHeap == null ? RowHandleMap.asynchronusInitializer(this.name() + ".initializer", this.keylength, this.ordering, 8, Math.max(10, (int) (Runtime.getRuntime().freeMemory() / (10 * 1024 * 1024)))) : null;
         byte[] key = new byte[this.keylength];
         int reclen;
         long seek = 0;
@@ -287,7 +316,14 @@ public class HeapReader {
                 if (reclen > 0) this.free.put(seek, reclen);
             } else {
                 if (this.ordering.wellformed(key)) {
-                    indexready.consume(key, seek);
+                    if (offHeap == null) {
+                        indexready.consume(key, seek);
+                    } else try {
+                        offHeap.put(key, seek);
+                    } catch (final SpaceExceededException e) {
+                        offHeap.close();
+                        throw new IOException(e.getMessage());
+                    }
                     key = new byte[this.keylength];
                 } else {
                     // free the lost space
@@ -302,10 +338,12 @@ public class HeapReader {
             seek += 4L + reclen;
         }
         }
-        indexready.finish();
 
         // finish the index generation
-        try {
+        if (offHeap != null) {
+            this.index = offHeap;
+        } else try {
+            indexready.finish();
             this.index = indexready.result();
         } catch (final InterruptedException e) {
         	ConcurrentLog.logException(e);
@@ -388,6 +426,9 @@ public class HeapReader {
         }
         key = normalizeKey(key);
 
+        // the index is thread-safe by itself, in mapped mode there is no need for an additional lock
+        if (this.mapped != null) return this.index.get(key) >= 0;
+
         synchronized (this.index) {
             // check if the file index contains the key
             return this.index.get(key) >= 0;
@@ -489,6 +530,16 @@ public class HeapReader {
         }
         key = normalizeKey(key);
 
+        // try a read from the memory-mapped file first; this does not need any lock
+        final ChunkedMappedFile m = this.mapped;
+        if (m != null) {
+            final long pos = this.index.get(key);
+            if (pos < 0) return null;
+            final byte[] blob = getMapped(m, key, pos);
+            if (blob != null) return blob;
+            // the mapped read was not successful, possibly because of a concurrent write; do a synchronized access instead
+        }
+
         synchronized (this.index) {
             // check if the index contains the key
             final long pos = this.index.get(key);
@@ -561,8 +612,55 @@ public class HeapReader {
         return null;
     }
 
+    /**
+     * read a blob from the memory-mapped file without any synchronization.
+     * The read is verified with the write sequence number: if a write happened during the read, the result is discarded.
+     * @param m the mapping of the heap file
+     * @param key the normalized key
+     * @param pos the seek position of the record as stored in the index
+     * @return the blob or null if the read could not be done with the mapping and a synchronized read must be done
+     * @throws IOException
+     * @throws SpaceExceededException
+     */
+    private byte[] getMapped(final ChunkedMappedFile m, final byte[] key, final long pos) throws IOException, SpaceExceededException {
+        final long sequence = this.writeSequence.get();
+        if ((sequence & 1L) != 0) return null; // a write is running
+        if (!m.covers(pos, 4 + this.keylength)) return null; // a record which was written after the mapping was created
+        final int len = m.readInt(pos) - this.keylength;
+        if (len < 0 || !m.covers(pos + 4 + this.keylength, len)) return null;
+        long memr = len + this.keylength + 64;
+        if (MemoryControl.available() < memr) {
+            if (!MemoryControl.request(memr, true)) throw new SpaceExceededException(memr, "HeapReader.getMapped()/check"); // not enough memory available for this blob
+        }
+
+        // read and verify the key
+        final byte[] keyf = new byte[this.keylength];
+        m.readFully(pos + 4, keyf, 0, keyf.length);
+        if (!this.ordering.equal(key, keyf)) return null; // the synchronized access handles the inconsistency
+
+        // read the blob
+        byte[] blob;
+        try {
+            blob = new byte[len];
+        } catch (final OutOfMemoryError e) {
+            throw new SpaceExceededException(len, "HeapReader.getMapped()/blob");
+        }
+        m.readFully(pos + 4 + this.keylength, blob, 0, len);
+        if (this.writeSequence.get() != sequence) return null; // the record may have been changed while we read it
+        return blob;
+    }
+
     protected boolean checkKey(byte[] key, final long pos) throws IOException {
         key = normalizeKey(key);
+        final ChunkedMappedFile m = this.mapped;
+        if (m != null && m.covers(pos, 4 + this.keylength)) {
+            final long sequence = this.writeSequence.get();
+            if ((sequence & 1L) == 0) {
+                final byte[] keyf = new byte[this.keylength];
+                m.readFully(pos + 4, keyf, 0, keyf.length);
+                if (this.writeSequence.get() == sequence) return this.ordering.equal(key, keyf);
+            }
+        }
         this.file.seek(pos);
         this.file.readInt(); // skip the size value
 
@@ -586,6 +684,17 @@ public class HeapReader {
         }
         key = normalizeKey(key);
 
+        final ChunkedMappedFile m = this.mapped;
+        if (m != null) {
+            final long pos = this.index.get(key);
+            if (pos < 0) return -1;
+            final long sequence = this.writeSequence.get();
+            if ((sequence & 1L) == 0 && m.covers(pos, 4)) {
+                final int len = m.readInt(pos) - this.keylength;
+                if (this.writeSequence.get() == sequence) return len;
+            }
+        }
+
         synchronized (this.index) {
             // check if the index contains the key
             final long pos = this.index.get(key);
@@ -602,6 +711,7 @@ public class HeapReader {
      */
     public void close(boolean writeIDX) {
         if (this.index == null) return;
+        unmap();
         synchronized (this.index) {
             try {
             if (this.file != null)
@@ -643,6 +753,10 @@ public class HeapReader {
                             this.index.dump(newFingerprintFileIdx);
                             log.info("wrote a dump for the " + this.index.size() +  " index entries of " + this.heapFile.getName()+ " in " + (System.currentTimeMillis() - start) + " milliseconds.");
                         }
+                        if (this.keyFilter != null) {
+                            File newFingerprintFileBloom = HeapWriter.fingerprintBloomFile(this.heapFile, fingerprint);
+                            if (!newFingerprintFileBloom.exists()) dumpKeyFilter(this.keyFilter, newFingerprintFileBloom);
+                        }
                     }
                     this.index.close();
                     this.index = null;
@@ -654,6 +768,7 @@ public class HeapReader {
             this.free = null;
             if (this.index != null) this.index.close();
             this.index = null;
+            this.keyFilter = null;
             this.closeDate = new Date();
             } catch (Throwable e) {ConcurrentLog.logException(e);}
             log.info("close HeapFile " + this.heapFile.getName() + "; trace: " + ConcurrentLog.stackTrace());
@@ -669,6 +784,126 @@ public class HeapReader {
         this.close();
     }
 
+    /**
+     * load or compute a filter over all keys of the heap. The filter is a bloom filter that is stored
+     * as a fingerprint dump next to the index and gap dumps. Once a key filter exists, mightContain can be
+     * used to check cheaply if a key is possibly stored in this heap file.
+     * The filter is not updated when keys are inserted, therefore it must only be used for heap files which
+     * do not get new entries; deletions do not harm because the filter is allowed to have false positives.
+     * @return true if a key filter is available
+     */
+    public boolean loadKeyFilter() {
+        if (this.keyFilter != null) return true;
+        if (this.index == null) return false;
+        final String fingerprint = fingerprintFileHash(this.heapFile);
+        if (fingerprint != null) {
+            final File f = HeapWriter.fingerprintBloomFile(this.heapFile, fingerprint);
+            if (f.exists()) {
+                InputStream is = null;
+                try {
+                    is = new BufferedInputStream(new FileInputStream(f), 64 * 1024);
+                    this.keyFilter = BloomFilter.readFrom(is, Funnels.byteArrayFunnel());
+                    this.fingerprintFileBloom = f;
+                    return true;
+                } catch (final IOException e) {
+                    log.warn("cannot read key filter dump " + f.getName() + ", computing a new one: " + e.getMessage());
+                    FileUtils.deletedelete(f);
+                } finally {
+                    if (is != null) try {is.close();} catch (final IOException e) {}
+                }
+            }
+        }
+
+        // compute the filter from the index
+        final long start = System.currentTimeMillis();
+        synchronized (this.index) {
+            final BloomFilter<byte[]> filter = BloomFilter.create(Funnels.byteArrayFunnel(), Math.max(1000, this.index.size()), keyFilterFpp);
+            final Iterator<byte[]> i = this.index.keys(true, null);
+            while (i.hasNext()) filter.put(i.next());
+            this.keyFilter = filter;
+        }
+        log.info("computed a key filter for the " + this.index.size() + " keys of " + this.heapFile.getName() + " in " + (System.currentTimeMillis() - start) + " milliseconds.");
+        return true;
+    }
+
+    private static void dumpKeyFilter(final BloomFilter<byte[]> filter, final File f) {
+        final long start = System.currentTimeMillis();
+        final File tmp = new File(f.getParentFile(), f.getName() + ".prt");
+        OutputStream os = null;
+        try {
+            os = new BufferedOutputStream(new FileOutputStream(tmp), 64 * 1024);
+            filter.writeTo(os);
+            os.close();
+            os = null;
+            if (!tmp.renameTo(f)) throw new IOException("cannot rename " + tmp + " to " + f);
+            log.info("wrote a dump of the key filter for " + f.getName() + " in " + (System.currentTimeMillis() - start) + " milliseconds.");
+        } catch (final IOException e) {
+            log.warn("cannot write key filter dump " + f.getName() + ": " + e.getMessage());
+            FileUtils.deletedelete(tmp);
+        } finally {
+            if (os != null) try {os.close();} catch (final IOException e) {}
+        }
+    }
+
+    /**
+     * check if the key may be stored in this heap. If no key filter was loaded, the result is always true.
+     * This does not need any IO and no synchronization.
+     * @param key
+     * @return false if the key is definitely not stored in the heap, true if the key may be stored in the heap
+     */
+    public boolean mightContain(final byte[] key) {
+        final BloomFilter<byte[]> filter = this.keyFilter;
+        if (filter == null) return true;
+        return filter.mightContain(normalizeKey(key));
+    }
+
+    /**
+     * switch on the memory-mapped read mode: get, length and checkKey read from a mapping of the heap file
+     * and do not synchronize on the index. Concurrent write operations (deletions and reductions) are detected
+     * with a write sequence number; reads which overlap a write are repeated with the synchronized access.
+     * The mapping covers only the current file length, it is therefore only useful for heap files which are
+     * not appended any more, like the mounted files in an ArrayStack.
+     * @return true if the file is mapped
+     */
+    public boolean memoryMap() {
+        if (this.mapped != null) return true;
+        if (this.index == null || this.heapFile.length() == 0) return false;
+        try {
+            this.mapped = new ChunkedMappedFile(this.heapFile);
+            return true;
+        } catch (final IOException e) {
+            log.warn("cannot map heap file " + this.heapFile.getName() + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * @return true if reads are done from a memory-mapped file
+     */
+    public boolean isMemoryMapped() {
+        return this.mapped != null;
+    }
+
+    /**
+     * switch off the memory-mapped read mode. This must be called before the file is truncated or re-created.
+     */
+    protected void unmap() {
+        final ChunkedMappedFile m = this.mapped;
+        this.mapped = null;
+        if (m != null) m.close();
+    }
+
+    /**
+     * must be called before a record in the heap file is overwritten; enclose writes with beginWrite/endWrite
+     */
+    protected final void beginWrite() {
+        this.writeSequence.incrementAndGet();
+    }
+
+    protected final void endWrite() {
+        this.writeSequence.incrementAndGet();
+    }
+
     /**
      * ask for the length of the primary key
      * @return the length of the key
@@ -59,6 +59,8 @@ public class MapDataMining extends MapHeap {
     private Map<String, ScoreMap<String>> sortClusterMap; // a String-kelondroMScoreCluster - relation
     private Map<String, Long>   accLong; // to store accumulations of Long cells
     private Map<String, Float> accFloat; // to store accumulations of Float cells
+    private Map<String, long[]> keyLong; // the accumulated Long cells of each key, to update accLong without reading the old map
+    private Map<String, float[]> keyFloat; // the accumulated Float cells of each key, to update accFloat without reading the old map
     private final MapColumnIndex columnIndex; // to store fast select-where indexes
 
 	@SuppressWarnings("unchecked")
@@ -88,24 +90,24 @@ public class MapDataMining extends MapHeap {
             }
         }
 
-        Long[] longaccumulator = null;
-        Float[] floataccumulator = null;
         if (longaccfields == null) {
         	this.accLong = null;
+        	this.keyLong = null;
         } else {
             this.accLong = new ConcurrentHashMap<String, Long>();
-            longaccumulator = new Long[longaccfields.length];
-            for (int i = 0; i < longaccfields.length; i++) {
-                longaccumulator[i] = LONG0;
+            this.keyLong = new HashMap<String, long[]>();
+            for (final String longaccfield : longaccfields) {
+                this.accLong.put(longaccfield, LONG0);
             }
         }
         if (floataccfields == null) {
             this.accFloat = null;
+            this.keyFloat = null;
         } else {
             this.accFloat = new ConcurrentHashMap<String, Float>();
-            floataccumulator = new Float[floataccfields.length];
-            for (int i = 0; i < floataccfields.length; i++) {
-                floataccumulator[i] = FLOAT0;
+            this.keyFloat = new HashMap<String, float[]>();
+            for (final String floataccfield : floataccfields) {
+                this.accFloat.put(floataccfield, FLOAT0);
             }
         }
 
@@ -114,8 +116,6 @@ public class MapDataMining extends MapHeap {
             final CloneableIterator<byte[]> it = super.keys(true, false);
             byte[] mapnameb;
             String cell;
-            long valuel;
-            float valued;
             Map<String, String> map;
             while (it.hasNext()) {
                 mapnameb = it.next();
@@ -134,27 +134,7 @@ public class MapDataMining extends MapHeap {
                     }
                 }
 
-                if (longaccfields != null && longaccumulator != null) {
-                    for (int i = 0; i < longaccfields.length; i++) {
-                        cell = map.get(longaccfields[i]);
-                        valuel = 0;
-                        if (cell != null) try {
-                            valuel = Long.parseLong(cell);
-                            longaccumulator[i] = Long.valueOf(longaccumulator[i].longValue() + valuel);
-                        } catch (final NumberFormatException e) {}
-                    }
-                }
-
-                if (floataccfields != null && floataccumulator != null) {
-                    for (int i = 0; i < floataccfields.length; i++) {
-                        cell = map.get(floataccfields[i]);
-                        valued = 0f;
-                        if (cell != null) try {
-                            valued = Float.parseFloat(cell);
-                            floataccumulator[i] = new Float(floataccumulator[i].floatValue() + valued);
-                        } catch (final NumberFormatException e) {}
-                    }
-                }
+                updateAcc(UTF8.String(mapnameb), map);
             }
         } catch (final IOException e) {}
 
@@ -162,14 +142,6 @@ public class MapDataMining extends MapHeap {
         if (sortfields != null && cluster != null) {
             for (int i = 0; i < sortfields.length; i++) this.sortClusterMap.put(sortfields[i], cluster[i]);
         }
-
-        // fill acc map
-        if (longaccfields != null && longaccumulator != null) {
-            for (int i = 0; i < longaccfields.length; i++) this.accLong.put(longaccfields[i], longaccumulator[i]);
-        }
-        if (floataccfields != null && floataccumulator != null) {
-            for (int i = 0; i < floataccfields.length; i++) this.accFloat.put(floataccfields[i], floataccumulator[i]);
-        }
     }
 
     @Override
@@ -184,16 +156,20 @@ public class MapDataMining extends MapHeap {
 
         if (this.longaccfields == null) {
             this.accLong = null;
+            this.keyLong = null;
         } else {
             this.accLong = new HashMap<String, Long>();
+            this.keyLong = new HashMap<String, long[]>();
             for (final String longaccfield : this.longaccfields) {
                 this.accLong.put(longaccfield, LONG0);
             }
         }
         if (this.floataccfields == null) {
             this.accFloat = null;
+            this.keyFloat = null;
         } else {
             this.accFloat = new HashMap<String, Float>();
+            this.keyFloat = new HashMap<String, float[]>();
             for (final String floataccfield : this.floataccfields) {
                 this.accFloat.put(floataccfield, FLOAT0);
             }
@@ -208,62 +184,49 @@ public class MapDataMining extends MapHeap {
         assert (key.length > 0);
         assert (newMap != null);
 
-        // update elementCount
-        if ((this.longaccfields != null) || (this.floataccfields != null)) {
-            final Map<String, String> oldMap = super.get(key, false);
-            if (oldMap != null) {
-                // element exists, update acc
-                updateAcc(oldMap, false);
-            }
-
-            // update accumulators with new values (add)
-            updateAcc(newMap, true);
-        }
-
         super.insert(key, newMap);
 
+        // update accumulators: the values of the old map are replaced by the new values
+        updateAcc(UTF8.String(key), newMap);
+
         // update sortCluster
         if (this.sortClusterMap != null) updateSortCluster(UTF8.String(key), newMap);
 
         this.columnIndex.update(key, newMap);
     }
 
-    private void updateAcc(final Map<String, String> map, final boolean add) {
-        String value;
-        long valuel;
-        float valued;
-        Long longaccumulator;
-        Float floataccumulator;
+    /**
+     * replace the accumulated values of a key
+     * @param key the key
+     * @param map the new map of the key or null if the key is deleted
+     */
+    private void updateAcc(final String key, final Map<String, String> map) {
         if (this.longaccfields != null) {
-            for (final String longaccfield : this.longaccfields) {
-                value = map.get(longaccfield);
-                if (value != null) {
-                    try {
-                        valuel = Long.parseLong(value);
-                        longaccumulator = this.accLong.get(longaccfield);
-                        if (add) {
-                            this.accLong.put(longaccfield, Long.valueOf(longaccumulator.longValue() + valuel));
-                        } else {
-                            this.accLong.put(longaccfield, Long.valueOf(longaccumulator.longValue() - valuel));
-                        }
-                    } catch (final NumberFormatException e) {}
-                }
+            final long[] values = map == null ? null : new long[this.longaccfields.length];
+            if (values != null) for (int i = 0; i < this.longaccfields.length; i++) {
+                final String value = map.get(this.longaccfields[i]);
+                if (value != null) try {
+                    values[i] = Long.parseLong(value);
+                } catch (final NumberFormatException e) {}
+            }
+            final long[] oldValues = values == null ? this.keyLong.remove(key) : this.keyLong.put(key, values);
+            for (int i = 0; i < this.longaccfields.length; i++) {
+                final long diff = (values == null ? 0 : values[i]) - (oldValues == null ? 0 : oldValues[i]);
+                if (diff != 0) this.accLong.put(this.longaccfields[i], Long.valueOf(this.accLong.get(this.longaccfields[i]).longValue() + diff));
             }
         }
         if (this.floataccfields != null) {
-            for (final String floataccfield : this.floataccfields) {
-                value = map.get(floataccfield);
-                if (value != null) {
-                    try {
-                        valued = Float.parseFloat(value);
-                        floataccumulator = this.accFloat.get(floataccfield);
-                        if (add) {
-                            this.accFloat.put(floataccfield, Float.valueOf(floataccumulator.floatValue() + valued));
-                        } else {
-                            this.accFloat.put(floataccfield, Float.valueOf(floataccumulator.floatValue() - valued));
-                        }
-                    } catch (final NumberFormatException e) {}
-                }
+            final float[] values = map == null ? null : new float[this.floataccfields.length];
+            if (values != null) for (int i = 0; i < this.floataccfields.length; i++) {
+                final String value = map.get(this.floataccfields[i]);
+                if (value != null) try {
+                    values[i] = Float.parseFloat(value);
+                } catch (final NumberFormatException e) {}
+            }
+            final float[] oldValues = values == null ? this.keyFloat.remove(key) : this.keyFloat.put(key, values);
+            for (int i = 0; i < this.floataccfields.length; i++) {
+                final float diff = (values == null ? 0 : values[i]) - (oldValues == null ? 0 : oldValues[i]);
+                if (diff != 0) this.accFloat.put(this.floataccfields[i], Float.valueOf(this.accFloat.get(this.floataccfields[i]).floatValue() + diff));
             }
         }
     }
@@ -285,24 +248,10 @@ public class MapDataMining extends MapHeap {
     public synchronized void delete(final byte[] key) throws IOException {
         if (key == null) return;
 
-        // update elementCount
-        if (this.sortfields != null || this.longaccfields != null || this.floataccfields != null) {
-            Map<String, String> map;
-            try {
-                map = super.get(key, false);
-                if (map != null) {
-
-                    // update accumulators (subtract)
-                    if (this.longaccfields != null || this.floataccfields != null) updateAcc(map, false);
-
-                    // remove from sortCluster
-                    if (this.sortfields != null) deleteSortCluster(UTF8.String(key));
-                }
-            } catch (final SpaceExceededException e) {
-                map = null;
-                ConcurrentLog.logException(e);
-            }
-        }
+        // update accumulators and sortCluster; the accumulated values of each key are known, so the old map is not read
+        final String skey = UTF8.String(key);
+        updateAcc(skey, null);
+        if (this.sortfields != null) deleteSortCluster(skey);
         super.delete(key);
 
         this.columnIndex.delete(key);
@@ -377,6 +326,24 @@ public class MapDataMining extends MapHeap {
         return new FullMapIterator(keys(up, field));
     }
 
+    /**
+     * count the keys which have at least the given value in a sort field; the count is done on the sort cluster without reading the maps
+     * @param field a sort field
+     * @param value the minimum value, it is converted to a score like the values of the field
+     * @return the number of keys with a score that is not smaller than the score of the value, -1 if the field is not a sort field
+     */
+    public synchronized int sizeAtLeast(final String field, final String value) {
+        if (this.sortClusterMap == null) return -1;
+        final ScoreMap<String> cluster = this.sortClusterMap.get(field);
+        if (cluster == null) return -1;
+        final int minScore = object2score(value);
+        int c = 0;
+        for (final String key: cluster) {
+            if (cluster.get(key) >= minScore) c++;
+        }
+        return c;
+    }
+
     public synchronized long getLongAcc(final String field) {
         final Long accumulator = this.accLong.get(field);
         if (accumulator == null) return -1;
@@ -0,0 +1,177 @@
+// WordReferenceCodec.java
+// first published on http://yacy.net
+//
+// This is a part of YaCy, a peer-to-peer based web search engine
+//
+// LICENSE
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.kelondro.data.word;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import net.yacy.cora.document.encoding.ASCII;
+import net.yacy.cora.util.ConcurrentLog;
+import net.yacy.cora.util.LookAheadIterator;
+import net.yacy.kelondro.index.Row;
+import net.yacy.kelondro.rwi.ReferenceContainer;
+
+/**
+ * binary transfer encoding of word references, used for the DHT distribution as replacement of
+ * the text lines of toPropertyForm(). The references are grouped by term hash and written in their
+ * native row layout. Within a group the references are sorted by url hash and each url hash is
+ * stored as the number of leading bytes that it has in common with the previous url hash, followed
+ * by the remaining bytes. The whole stream is gzip-compressed.
+ *
+ * layout: version(1) rowsize(varint) { termhash(12) count(varint) { prefix(1) suffix(12-prefix) rest(rowsize-12) }* }*
+ */
+public final class WordReferenceCodec {
+
+    public static final byte VERSION = 1;
+
+    private static final int ROWSIZE = WordReferenceRow.urlEntryRow.objectsize;
+    private static final int HASHSIZE = Word.commonHashLength;
+
+    private WordReferenceCodec() {}
+
+    /**
+     * encode a set of reference containers
+     * @param containers the containers; they are sorted during the encoding
+     * @return the compressed binary form
+     * @throws IOException
+     */
+    public static byte[] encode(final Iterable<ReferenceContainer<WordReference>> containers) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(4096);
+        final GZIPOutputStream out = new GZIPOutputStream(bytes, 8192);
+        out.write(VERSION);
+        writeVarint(out, ROWSIZE);
+        final byte[] row = new byte[ROWSIZE];
+        final byte[] last = new byte[HASHSIZE];
+        for (final ReferenceContainer<WordReference> container: containers) {
+            if (container.isEmpty()) continue;
+            assert container.row().objectsize == ROWSIZE : "rowdef = " + container.row().toString();
+            container.sort();
+            out.write(container.getTermHash(), 0, HASHSIZE);
+            writeVarint(out, container.size());
+            Arrays.fill(last, (byte) 0); // the first url hash of each group is compared against zero bytes
+            for (final Row.Entry entry: container) {
+                entry.writeToArray(row, 0);
+                final int common = commonPrefix(last, row);
+                out.write(common);
+                out.write(row, common, ROWSIZE - common);
+                System.arraycopy(row, 0, last, 0, HASHSIZE);
+            }
+        }
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * decode the binary form
+     * @param b the output of encode()
+     * @return an iterator of term hashes and references
+     * @throws IOException if the input does not have the expected header
+     */
+    public static Iterator<Map.Entry<String, WordReferenceRow>> decode(final byte[] b) throws IOException {
+        final InputStream in = new GZIPInputStream(new ByteArrayInputStream(b), 8192);
+        final int version = in.read();
+        if (version != VERSION) throw new IOException("unknown version " + version);
+        final int rowsize = readVarint(in);
+        if (rowsize != ROWSIZE) throw new IOException("wrong row size " + rowsize + ", expected " + ROWSIZE);
+        return new LookAheadIterator<Map.Entry<String, WordReferenceRow>>() {
+            private final byte[] termHash = new byte[HASHSIZE];
+            private final byte[] last = new byte[HASHSIZE];
+            private String term = null;
+            private int remaining = 0;
+
+            @Override
+            protected Map.Entry<String, WordReferenceRow> next0() {
+                try {
+                    while (this.remaining == 0) {
+                        if (!readFully(in, this.termHash, 0, HASHSIZE, true)) return null;
+                        this.term = ASCII.String(this.termHash);
+                        this.remaining = readVarint(in);
+                        Arrays.fill(this.last, (byte) 0);
+                    }
+                    final int common = in.read();
+                    if (common < 0 || common > HASHSIZE) throw new IOException("bad prefix length " + common);
+                    final byte[] row = new byte[ROWSIZE];
+                    System.arraycopy(this.last, 0, row, 0, common);
+                    readFully(in, row, common, ROWSIZE - common, false);
+                    System.arraycopy(row, 0, this.last, 0, HASHSIZE);
+                    this.remaining--;
+                    return new AbstractMap.SimpleImmutableEntry<String, WordReferenceRow>(this.term, new WordReferenceRow(WordReferenceRow.urlEntryRow.newEntry(row)));
+                } catch (final IOException e) {
+                    ConcurrentLog.warn("WordReferenceCodec", "broken input: " + e.getMessage());
+                    return null;
+                }
+            }
+        };
+    }
+
+    private static int commonPrefix(final byte[] a, final byte[] b) {
+        int i = 0;
+        while (i < HASHSIZE && a[i] == b[i]) i++;
+        return i;
+    }
+
+    private static void writeVarint(final OutputStream out, int v) throws IOException {
+        while ((v & ~0x7F) != 0) {
+            out.write((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        out.write(v);
+    }
+
+    private static int readVarint(final InputStream in) throws IOException {
+        int v = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            final int b = in.read();
+            if (b < 0) throw new EOFException();
+            v |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return v;
+        }
+        throw new IOException("varint too long");
+    }
+
+    /**
+     * @return false if the stream ended before the first byte and eofAllowed is true
+     */
+    private static boolean readFully(final InputStream in, final byte[] b, int off, int len, final boolean eofAllowed) throws IOException {
+        final int start = off;
+        while (len > 0) {
+            final int n = in.read(b, off, len);
+            if (n < 0) {
+                if (eofAllowed && off == start) return false;
+                throw new EOFException();
+            }
+            off += n;
+            len -= n;
+        }
+        return true;
+    }
+}
@@ -26,24 +26,19 @@
 
 package net.yacy.kelondro.data.word;
 
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Comparator;
-import java.util.Queue;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
 import net.yacy.cora.date.MicroDate;
 import net.yacy.cora.document.encoding.ASCII;
 import net.yacy.cora.document.encoding.UTF8;
 import net.yacy.cora.order.Base64Order;
 import net.yacy.cora.util.ByteArray;
-import net.yacy.cora.util.ConcurrentLog;
-import net.yacy.kelondro.index.Row;
 import net.yacy.kelondro.index.Row.Entry;
 import net.yacy.kelondro.rwi.AbstractReference;
 import net.yacy.kelondro.rwi.Reference;
-import net.yacy.kelondro.rwi.ReferenceContainer;
 import net.yacy.kelondro.util.Bitfield;
-import net.yacy.kelondro.workflow.WorkflowProcessor;
 
 
 public class WordReferenceVars extends AbstractReference implements WordReference, Reference, Cloneable, Comparable<WordReferenceVars>, Comparator<WordReferenceVars> {
@@ -56,7 +51,7 @@ public class WordReferenceVars extends AbstractReference implements WordReferenc
 
     private final Bitfield flags;
     private long lastModified;
-    private final String language;
+    private final byte[] language;
     public final byte[] urlHash;
     private String hostHash = null;
     private final char type;
@@ -67,7 +62,8 @@ public class WordReferenceVars extends AbstractReference implements WordReferenc
             urlcomps, urllength,
             wordsintext, wordsintitle;
     private int virtualAge;
-    private Queue<Integer> positions; // word positons of joined references
+    private int[] positions; // word positons of joined references; only the first positionCount entries are used
+    private int positionCount;
     private double termFrequency;
     private final boolean local;
 
@@ -80,7 +76,7 @@ public class WordReferenceVars extends AbstractReference implements WordReferenc
             final int      wordcount,     // total number of words
             final int      phrasecount,   // total number of phrases
             final int      posintext,     // first position of word in text
-            final Queue<Integer> ps,      // positions of words that are joined into the reference
+            final Collection<Integer> ps, // positions of words that are joined into the reference
             final int      posinphrase,   // position of word in its phrase
             final int      posofphrase,   // number of the phrase where word appears
             final long     lastmodified,  // last-modified time of the document where word appears
@@ -95,7 +91,7 @@ public class WordReferenceVars extends AbstractReference implements WordReferenc
         this.flags = flags;
         //this.freshUntil = Math.max(0, mddlm + (mddct - mddlm) * 2);
         this.lastModified = lastmodified;
-        this.language = language;
+        this.language = language == null ? null : ASCII.getBytes(language);
         this.urlHash = urlHash;
         this.type = doctype;
         this.hitcount = hitcount;
@@ -103,12 +99,9 @@ public class WordReferenceVars extends AbstractReference implements WordReferenc
         this.lother = outlinksOther;
         this.phrasesintext = phrasecount;
         
-        if (ps != null && !ps.isEmpty()) {
-            this.positions = new LinkedBlockingQueue<Integer>();
-            for (final Integer i : ps) this.positions.add(i);
-        } else {
-            this.positions = null;
-        }
+        this.positions = null;
+        this.positionCount = 0;
+        if (ps != null) for (final Integer i : ps) this.addPosition(i.intValue());
         this.posinphrase = posinphrase;
         this.posintext = posintext;
         this.posofphrase = posofphrase;
@@ -125,7 +118,7 @@ public class WordReferenceVars extends AbstractReference implements WordReferenc
         this.flags = e.flags();
         //this.freshUntil = e.freshUntil();
         this.lastModified = e.lastModified();
-        this.language = ASCII.String(e.getLanguage());
+        this.language = e.getLanguage();
         this.urlHash = e.urlhash();
         this.type = e.getType();
         this.hitcount = e.hitcount();
@@ -133,11 +126,16 @@ public class WordReferenceVars extends AbstractReference implements WordReferenc
         this.lother = e.lother();
         this.phrasesintext = e.phrasesintext();
         
-        if (e.positions() != null && !e.positions().isEmpty()) {
-            this.positions = new LinkedBlockingQueue<Integer>();
-            for (final Integer i: e.positions()) this.positions.add(i);
+        if (e instanceof WordReferenceVars) {
+            // copy the positions without boxing
+            final WordReferenceVars v = (WordReferenceVars) e;
+            this.positionCount = v.positionCount;
+            this.positions = v.positionCount == 0 ? null : Arrays.copyOf(v.positions, v.positionCount);
         } else {
             this.positions = null;
+            this.positionCount = 0;
+            final Collection<Integer> ps = e.positions();
+            if (ps != null) for (final Integer i: ps) this.addPosition(i.intValue());
         }
         this.posinphrase = e.posinphrase();
         this.posintext = e.posintext();
@@ -165,6 +163,7 @@ public class WordReferenceVars extends AbstractReference implements WordReferenc
         this.lother = 0;
         this.phrasesintext = 0;
         this.positions = null;
+        this.positionCount = 0;
         this.posinphrase = 0;
         this.posintext = 0;
         this.posofphrase = 0;
@@ -179,26 +178,7 @@ public class WordReferenceVars extends AbstractReference implements WordReferenc
 
     @Override
     public WordReferenceVars clone() {
-        final WordReferenceVars c = new WordReferenceVars(
-                this.urlHash,
-                this.urllength,
-                this.urlcomps,
-                this.wordsintitle,
-                this.hitcount,
-                this.wordsintext,
-                this.phrasesintext,
-                this.posintext,
-                this.positions,
-                this.posinphrase,
-                this.posofphrase,
-                this.lastModified,
-                this.language,
-                this.type,
-                this.llocal,
-                this.lother,
-                this.flags,
-                this.termFrequency);
-        return c;
+        return new WordReferenceVars(this, true);
     }
 
     @Override
@@ -208,7 +188,7 @@ public class WordReferenceVars extends AbstractReference implements WordReferenc
 
     @Override
     public byte[] getLanguage() {
-        return ASCII.getBytes(this.language);
+        return this.language;
     }
 
     @Override
@@ -266,7 +246,35 @@ public class WordReferenceVars extends AbstractReference implements WordReferenc
      */
     @Override
     public Collection<Integer> positions() {
-        return this.positions;
+        if (this.positionCount == 0) return null;
+        return new AbstractList<Integer>() {
+            @Override
+            public Integer get(final int index) {
+                if (index >= WordReferenceVars.this.positionCount) throw new IndexOutOfBoundsException("index " + index + ", size " + WordReferenceVars.this.positionCount);
+                return WordReferenceVars.this.positions[index];
+            }
+            @Override
+            public int size() {
+                return WordReferenceVars.this.positionCount;
+            }
+        };
+    }
+
+    /**
+     * the same computation as in AbstractReference.distance() but without boxing of the positions
+     */
+    @Override
+    public int distance() {
+        if (this.positionCount == 0) return 0;
+        int d = 0;
+        int s0 = this.posintext; // init with own positon
+        int s1;
+        for (int i = 0; i < this.positionCount; i++) {
+            s1 = this.positions[i];
+            if (s0 > 0) d += Math.abs(s0 - s1);
+            s0 = s1;
+        }
+        return d / this.positionCount;
     }
 
     @Override
@@ -288,7 +296,7 @@ public class WordReferenceVars extends AbstractReference implements WordReferenc
                 this.posofphrase,   // number of the phrase where word appears
                 this.lastModified,  // last-modified time of the document where word appears
                 System.currentTimeMillis(),    // update time;
-                ASCII.getBytes(this.language), // (guessed) language of document
+                this.language,      // (guessed) language of document
                 this.type,          // type of document
                 this.llocal,        // outlinks to same domain
                 this.lother,        // outlinks to other domain
@@ -369,16 +377,12 @@ public class WordReferenceVars extends AbstractReference implements WordReferenc
         if (this.posintext > (v = other.posintext)) this.posintext = v;
 
         // calculate and remember min distance
-        if (this.positions != null || other.positions != null) {
+        if (this.positionCount > 0 || other.positionCount > 0) {
             int odist = other.distance();
             int dist = this.distance();
             if (odist > 0 && odist < dist) {
-                if (this.positions == null) {
-                    this.positions = new LinkedBlockingQueue<Integer>();
-                } else {
-                    this.positions.clear();
-                }
-                this.positions.add(this.posintext + odist);
+                this.positionCount = 0;
+                this.addPosition(this.posintext + odist);
             }
         }
 
@@ -406,16 +410,12 @@ public class WordReferenceVars extends AbstractReference implements WordReferenc
         if (this.posintext < (v = other.posintext)) this.posintext = v;
 
         // calculate and remember max distance
-        if (this.positions != null || other.positions != null) {
+        if (this.positionCount > 0 || other.positionCount > 0) {
             int odist = other.distance();
             int dist = this.distance();
             if (odist > 0 && odist > dist) {
-                if (this.positions == null) {
-                    this.positions = new LinkedBlockingQueue<Integer>();
-                } else {
-                    this.positions.clear();
-                }
-                this.positions.add(this.posintext + odist);
+                this.positionCount = 0;
+                this.addPosition(this.posintext + odist);
             }
         }
 
@@ -507,125 +507,13 @@ public class WordReferenceVars extends AbstractReference implements WordReferenc
      * @param position
      */
     public void addPosition(final int position) {
-        if (this.positions == null && position > 0) this.positions = new LinkedBlockingQueue<Integer>();
-        if (position > 0) this.positions.add(position);
-    }
-
-    /**
-     * transform a reference container into a stream of parsed entries
-     * @param container
-     * @return a blocking queue filled with WordReferenceVars that is still filled when the object is returned
-     */
-    public static BlockingQueue<WordReferenceVars> transform(final ReferenceContainer<WordReference> container, final long maxtime, final boolean local) {
-    	final LinkedBlockingQueue<WordReferenceVars> vars = new LinkedBlockingQueue<WordReferenceVars>();
-    	if (container.size() <= 100) {
-    	    // transform without concurrency to omit thread creation overhead
-    	    for (final Row.Entry entry: container) {
-    	        try {
-    	            vars.put(new WordReferenceVars(new WordReferenceRow(entry), local));
-    	        } catch (final InterruptedException e) {}
-    	    }
-            try {
-                vars.put(WordReferenceVars.poison);
-            } catch (final InterruptedException e) {}
-            return vars;
-    	}
-    	final Thread distributor = new TransformDistributor(container, vars, maxtime, local);
-    	distributor.start();
-
-    	// return the resulting queue while the processing queues are still working
-    	return vars;
-    }
-
-    private static class TransformDistributor extends Thread {
-
-    	private ReferenceContainer<WordReference> container;
-    	private BlockingQueue<WordReferenceVars> out;
-    	private long maxtime;
-    	private final boolean local;
-    	private TransformDistributor(final ReferenceContainer<WordReference> container, final BlockingQueue<WordReferenceVars> out, final long maxtime, final boolean local) {
-    		super("WordReferenceVars.TransformDistributor");
-    		this.container = container;
-    		this.out = out;
-    		this.maxtime = maxtime;
-    		this.local = local;
-    	}
-
-        @Override
-    	public void run() {
-        	// start the transformation threads
-        	final int cores0 = Math.min(WorkflowProcessor.availableCPU, this.container.size() / 100) + 1;
-        	final TransformWorker[] worker = new TransformWorker[cores0];
-        	for (int i = 0; i < cores0; i++) {
-        		worker[i] = new TransformWorker(this.out, this.maxtime, this.local);
-        		worker[i].start();
-        	}
-        	long timeout = this.maxtime == Long.MAX_VALUE ? Long.MAX_VALUE : System.currentTimeMillis() + this.maxtime;
-
-        	// fill the queue
-        	int p = this.container.size();
-    		while (p > 0) {
-    			p--;
-				worker[p % cores0].add(this.container.get(p, false));
-				if (p % 100 == 0 && System.currentTimeMillis() > timeout) {
-				    ConcurrentLog.warn("TransformDistributor", "distribution of WordReference entries to worker queues ended with timeout = " + this.maxtime);
-				    break;
-				}
-            }
-
-        	// insert poison to stop the queues
-        	for (int i = 0; i < cores0; i++) {
-        	    worker[i].add(WordReferenceRow.poisonRowEntry);
-        	}
-
-        	// wait for the worker to terminate because we want to place a poison entry into the out queue afterwards
-        	for (int i = 0; i < cores0; i++) {
-                try {
-                    worker[i].join();
-                } catch (final InterruptedException e) {
-                }
-            }
-
-        	this.out.add(WordReferenceVars.poison);
-    	}
-    }
-
-    private static class TransformWorker extends Thread {
-
-    	private BlockingQueue<Row.Entry> in;
-    	private BlockingQueue<WordReferenceVars> out;
-    	private long maxtime;
-    	private final boolean local;
-
-    	private TransformWorker(final BlockingQueue<WordReferenceVars> out, final long maxtime, final boolean local) {
-    		super("WordReferenceVars.TransformWorker");
-    		this.in = new LinkedBlockingQueue<Row.Entry>();
-    		this.out = out;
-    		this.maxtime = maxtime;
-    		this.local = local;
-    	}
-
-    	private void add(final Row.Entry entry) {
-    		try {
-				this.in.put(entry);
-			} catch (final InterruptedException e) {
-			}
-    	}
-
-        @Override
-    	public void run() {
-        	Row.Entry entry;
-        	long timeout = this.maxtime == Long.MAX_VALUE ? Long.MAX_VALUE : System.currentTimeMillis() + this.maxtime;
-    		try {
-				while ((entry = this.in.take()) != WordReferenceRow.poisonRowEntry) {
-				    this.out.put(new WordReferenceVars(new WordReferenceRow(entry), local));
-				    if (System.currentTimeMillis() > timeout) {
-	                    ConcurrentLog.warn("TransformWorker", "normalization of row entries from row to vars ended with timeout = " + this.maxtime);
-				        break;
-				    }
-				}
-			} catch (final InterruptedException e) {}
-    	}
+        if (position <= 0) return;
+        if (this.positions == null) {
+            this.positions = new int[2];
+        } else if (this.positionCount == this.positions.length) {
+            this.positions = Arrays.copyOf(this.positions, this.positionCount * 2);
+        }
+        this.positions[this.positionCount++] = position;
     }
 
 }
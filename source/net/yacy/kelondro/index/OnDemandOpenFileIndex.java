@@ -31,11 +31,8 @@ import java.util.Map;
 import java.util.TreeMap;
 
 import net.yacy.cora.order.CloneableIterator;
-import net.yacy.cora.util.ConcurrentLog;
 import net.yacy.cora.util.SpaceExceededException;
 import net.yacy.kelondro.index.Row.Entry;
-import net.yacy.kelondro.table.Table;
-import net.yacy.kelondro.util.kelondroException;
 
 /**
  * a write buffer for ObjectIndex entries
@@ -56,16 +53,16 @@ public class OnDemandOpenFileIndex implements Index, Iterable<Row.Entry> {
         this.sizecache = -1;
     }
 
+    /**
+     * get the opened table from the pool of open files; it must be given back with releaseIndex()
+     * @return the table or null if the file cannot be opened
+     */
     private Index getIndex() {
-        try {
-            return new Table(file, rowdef, 1000, 0, false, exceed134217727, false);
-        } catch (kelondroException e) {
-            ConcurrentLog.logException(e);
-            return null;
-        } catch (SpaceExceededException e) {
-            ConcurrentLog.logException(e);
-            return null;
-        }
+        return OpenFileIndexPool.shared.acquire(this.file, this.rowdef, this.exceed134217727);
+    }
+
+    private void releaseIndex() {
+        OpenFileIndexPool.shared.release(this.file);
     }
     
     @Override
@@ -73,7 +70,7 @@ public class OnDemandOpenFileIndex implements Index, Iterable<Row.Entry> {
         Index index = getIndex();
         if (index == null) return null;
         byte[] b = index.smallestKey();
-        index.close();
+        releaseIndex();
         return b;
     }
 
@@ -82,7 +79,7 @@ public class OnDemandOpenFileIndex implements Index, Iterable<Row.Entry> {
         Index index = getIndex();
         if (index == null) return null;
         byte[] b = index.largestKey();
-        index.close();
+        releaseIndex();
         return b;
     }
 
@@ -91,7 +88,7 @@ public class OnDemandOpenFileIndex implements Index, Iterable<Row.Entry> {
         Index index = getIndex();
         if (index == null) return;
         index.optimize();
-        index.close();
+        releaseIndex();
     }
     
     @Override
@@ -99,7 +96,7 @@ public class OnDemandOpenFileIndex implements Index, Iterable<Row.Entry> {
         Index index = getIndex();
         if (index == null) return 0;
         long l = index.mem();
-        index.close();
+        releaseIndex();
         return l;
     }
 
@@ -113,7 +110,7 @@ public class OnDemandOpenFileIndex implements Index, Iterable<Row.Entry> {
         } catch (IOException e) {
             throw e;
         } finally {
-            index.close();
+            releaseIndex();
         }
     }
 
@@ -127,19 +124,20 @@ public class OnDemandOpenFileIndex implements Index, Iterable<Row.Entry> {
         } catch (IOException e) {
             throw e;
         } finally {
-            index.close();
+            releaseIndex();
         }
     }
 
     @Override
     public synchronized void close() {
+        OpenFileIndexPool.shared.close(this.file);
     }
 
     @Override
     public synchronized void deleteOnExit() {
         Index index = getIndex();
         index.deleteOnExit();
-        index.close();
+        releaseIndex();
     }
 
     @Override
@@ -153,7 +151,7 @@ public class OnDemandOpenFileIndex implements Index, Iterable<Row.Entry> {
         Index index = getIndex();
         if (index == null) return 0;
         int i = index.size();
-        index.close();
+        releaseIndex();
         this.sizecache = i;
         return i;
     }
@@ -168,7 +166,7 @@ public class OnDemandOpenFileIndex implements Index, Iterable<Row.Entry> {
         } catch (IOException e) {
             throw e;
         } finally {
-            index.close();
+            releaseIndex();
         }
     }
 
@@ -190,7 +188,7 @@ public class OnDemandOpenFileIndex implements Index, Iterable<Row.Entry> {
         Index index = getIndex();
         if (index == null) return false;
         boolean b = index.has(key);
-        index.close();
+        releaseIndex();
         return b;
     }
 
@@ -201,7 +199,7 @@ public class OnDemandOpenFileIndex implements Index, Iterable<Row.Entry> {
         if (index == null) return true;
         boolean b = index.isEmpty();
         if (b) this.sizecache = 0;
-        index.close();
+        releaseIndex();
         return b;
     }
 
@@ -223,7 +221,7 @@ public class OnDemandOpenFileIndex implements Index, Iterable<Row.Entry> {
         } catch (IOException e) {
             throw e;
         } finally {
-            index.close();
+            releaseIndex();
         }
     }
 
@@ -238,7 +236,7 @@ public class OnDemandOpenFileIndex implements Index, Iterable<Row.Entry> {
         } catch (IOException e) {
             throw e;
         } finally {
-            index.close();
+            releaseIndex();
         }
     }
 
@@ -253,7 +251,7 @@ public class OnDemandOpenFileIndex implements Index, Iterable<Row.Entry> {
         } catch (IOException e) {
             throw e;
         } finally {
-            index.close();
+            releaseIndex();
         }
     }
 
@@ -268,7 +266,7 @@ public class OnDemandOpenFileIndex implements Index, Iterable<Row.Entry> {
         } catch (IOException e) {
             throw e;
         } finally {
-            index.close();
+            releaseIndex();
         }
     }
 
@@ -281,7 +279,7 @@ public class OnDemandOpenFileIndex implements Index, Iterable<Row.Entry> {
         } catch (IOException e) {
             throw e;
         } finally {
-            index.close();
+            releaseIndex();
         }
     }
 
@@ -294,7 +292,7 @@ public class OnDemandOpenFileIndex implements Index, Iterable<Row.Entry> {
         } catch (IOException e) {
             throw e;
         } finally {
-            index.close();
+            releaseIndex();
         }
     }
 
@@ -309,7 +307,7 @@ public class OnDemandOpenFileIndex implements Index, Iterable<Row.Entry> {
         } catch (IOException e) {
             throw e;
         } finally {
-            index.close();
+            releaseIndex();
         }
     }
 
@@ -324,7 +322,7 @@ public class OnDemandOpenFileIndex implements Index, Iterable<Row.Entry> {
         } catch (IOException e) {
             throw e;
         } finally {
-            index.close();
+            releaseIndex();
         }
     }
 
@@ -342,7 +340,7 @@ public class OnDemandOpenFileIndex implements Index, Iterable<Row.Entry> {
         } catch (IOException e) {
             throw e;
         } finally {
-            index.close();
+            releaseIndex();
         }
     }
 
@@ -353,7 +351,7 @@ public class OnDemandOpenFileIndex implements Index, Iterable<Row.Entry> {
         List<Entry> list = new ArrayList<Entry>();
         Iterator<Entry> i = index.iterator();
         while (i.hasNext()) list.add(i.next());
-        index.close();
+        releaseIndex();
         return list.iterator();
     }
 
@@ -364,7 +362,7 @@ public class OnDemandOpenFileIndex implements Index, Iterable<Row.Entry> {
         final List<Entry> list = new ArrayList<Entry>();
         final Iterator<Entry> i = index.rows(up, firstKey);
         while (i.hasNext()) list.add(i.next());
-        index.close();
+        releaseIndex();
         final Iterator<Entry> li = list.iterator();
         return new CloneableIterator<Entry>(){
             @Override
@@ -396,7 +394,7 @@ public class OnDemandOpenFileIndex implements Index, Iterable<Row.Entry> {
         final List<Entry> list = new ArrayList<Entry>();
         final Iterator<Entry> i = index.rows();
         while (i.hasNext()) list.add(i.next());
-        index.close();
+        releaseIndex();
         final Iterator<Entry> li = list.iterator();
         return new CloneableIterator<Entry>(){
             @Override
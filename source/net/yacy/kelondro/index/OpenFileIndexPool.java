@@ -0,0 +1,216 @@
+/**
+ *  OpenFileIndexPool
+ *  First released at http://yacy.net
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.yacy.kelondro.index;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.yacy.cora.util.ConcurrentLog;
+import net.yacy.cora.util.SpaceExceededException;
+import net.yacy.kelondro.table.Table;
+import net.yacy.kelondro.util.kelondroException;
+
+/**
+ * a pool of opened table files with a least-recently-used eviction strategy.
+ * The OnDemandOpenFileIndex objects do not open their file for each access but acquire it from this pool.
+ * If the number of opened files exceeds the limit, the files which were not used for the longest time are closed.
+ * Files which are in use are never closed by the pool.
+ */
+public class OpenFileIndexPool {
+
+    private final static ConcurrentLog log = new ConcurrentLog("OpenFileIndexPool");
+
+    /**
+     * the pool which is shared by all OnDemandOpenFileIndex objects
+     */
+    public final static OpenFileIndexPool shared = new OpenFileIndexPool(200);
+
+    private static class Handle {
+        private final Table table;
+        private int users;
+        private Handle(final Table table) {
+            this.table = table;
+            this.users = 0;
+        }
+    }
+
+    private final LinkedHashMap<File, Handle> handles; // in access order
+    private volatile int maxOpen;
+    private final AtomicLong hits, misses, evictions, openTime;
+
+    public OpenFileIndexPool(final int maxOpen) {
+        this.handles = new LinkedHashMap<File, Handle>(16, 0.75f, true);
+        this.maxOpen = maxOpen;
+        this.hits = new AtomicLong(0);
+        this.misses = new AtomicLong(0);
+        this.evictions = new AtomicLong(0);
+        this.openTime = new AtomicLong(0);
+    }
+
+    /**
+     * set the maximum number of opened files; a value of 0 closes each file after use
+     * @param maxOpen
+     */
+    public void setMaxOpen(final int maxOpen) {
+        this.maxOpen = Math.max(0, maxOpen);
+        evict();
+    }
+
+    public int getMaxOpen() {
+        return this.maxOpen;
+    }
+
+    /**
+     * get an opened table for a file. The table must be given back with release()
+     * @param file
+     * @param rowdef
+     * @param exceed134217727
+     * @return the table or null if the file cannot be opened
+     */
+    public Index acquire(final File file, final Row rowdef, final boolean exceed134217727) {
+        synchronized (this.handles) {
+            final Handle h = this.handles.get(file);
+            if (h != null) {
+                h.users++;
+                this.hits.incrementAndGet();
+                return h.table;
+            }
+        }
+        // open the file outside of the lock; this is the expensive part
+        this.misses.incrementAndGet();
+        final long start = System.nanoTime();
+        Table table;
+        try {
+            table = new Table(file, rowdef, 1000, 0, false, exceed134217727, false);
+        } catch (final kelondroException e) {
+            ConcurrentLog.logException(e);
+            return null;
+        } catch (final SpaceExceededException e) {
+            ConcurrentLog.logException(e);
+            return null;
+        } finally {
+            this.openTime.addAndGet(System.nanoTime() - start);
+        }
+        Table obsolete = null;
+        Index result;
+        synchronized (this.handles) {
+            Handle h = this.handles.get(file);
+            if (h == null) {
+                h = new Handle(table);
+                this.handles.put(file, h);
+            } else {
+                // the file was opened concurrently; use the other table
+                obsolete = table;
+            }
+            h.users++;
+            result = h.table;
+        }
+        if (obsolete != null) obsolete.close();
+        evict();
+        return result;
+    }
+
+    /**
+     * give back a table which was acquired with acquire()
+     * @param file
+     */
+    public void release(final File file) {
+        synchronized (this.handles) {
+            final Handle h = this.handles.get(file);
+            if (h != null && h.users > 0) h.users--;
+        }
+        evict();
+    }
+
+    /**
+     * close the file if it is open; this must be done before the file is deleted or opened otherwise
+     * @param file
+     */
+    public void close(final File file) {
+        Handle h;
+        synchronized (this.handles) {
+            h = this.handles.get(file);
+            if (h == null || h.users > 0) return;
+            this.handles.remove(file);
+        }
+        h.table.close();
+    }
+
+    private void evict() {
+        List<Table> closeList = null;
+        synchronized (this.handles) {
+            if (this.handles.size() <= this.maxOpen) return;
+            final Iterator<Handle> i = this.handles.values().iterator();
+            while (i.hasNext() && this.handles.size() > this.maxOpen) {
+                final Handle h = i.next();
+                if (h.users > 0) continue;
+                i.remove();
+                if (closeList == null) closeList = new ArrayList<Table>();
+                closeList.add(h.table);
+            }
+        }
+        if (closeList == null) return;
+        this.evictions.addAndGet(closeList.size());
+        for (final Table table: closeList) table.close();
+        if (log.isFine()) log.fine("closed " + closeList.size() + " files");
+    }
+
+    /**
+     * @return the number of currently opened files
+     */
+    public int size() {
+        synchronized (this.handles) {
+            return this.handles.size();
+        }
+    }
+
+    /**
+     * @return the number of acquire() calls which found the file already opened
+     */
+    public long getHits() {
+        return this.hits.get();
+    }
+
+    /**
+     * @return the number of acquire() calls which had to open the file
+     */
+    public long getMisses() {
+        return this.misses.get();
+    }
+
+    /**
+     * @return the number of files which had been closed to keep the limit
+     */
+    public long getEvictions() {
+        return this.evictions.get();
+    }
+
+    /**
+     * @return the total time in milliseconds that was spent to open files
+     */
+    public long getOpenTime() {
+        return this.openTime.get() / 1000000L;
+    }
+
+}
@@ -508,6 +508,33 @@ public class RowCollection implements Sortable<Row.Entry>, Iterable<Row.Entry>,
         checkShrink();
     }
 
+    /**
+     * remove a number of rows in one pass; the order of the remaining rows is kept
+     * @param positions the positions of the rows, in ascending order without doubles
+     * @param count the number of positions that are used from the positions array
+     */
+    public synchronized final void removeRows(final int[] positions, final int count) {
+        if (count == 0) return;
+        final int objectsize = this.rowdef.objectsize;
+        int target = positions[0];
+        int removedBelowSortBound = 0;
+        for (int i = 0; i < count; i++) {
+            assert positions[i] >= 0 && positions[i] < this.chunkcount : "p = " + positions[i] + ", chunkcount = " + this.chunkcount;
+            assert i == 0 || positions[i] > positions[i - 1];
+            if (positions[i] < this.sortBound) removedBelowSortBound++;
+            // move the rows between this and the next removed row down
+            final int next = i + 1 < count ? positions[i + 1] : this.chunkcount;
+            final int length = next - positions[i] - 1;
+            if (length > 0) {
+                System.arraycopy(this.chunkcache, (positions[i] + 1) * objectsize, this.chunkcache, target * objectsize, length * objectsize);
+                target += length;
+            }
+        }
+        this.sortBound -= removedBelowSortBound;
+        this.chunkcount -= count;
+        this.lastTimeWrote = System.currentTimeMillis();
+        checkShrink();
+    }
 
     @Override
     public final void delete(final int p) {
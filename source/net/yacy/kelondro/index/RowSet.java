@@ -353,6 +353,38 @@ public class RowSet extends RowCollection implements Index, Iterable<Row.Entry>,
         return l;
     }
 
+    /**
+     * exponential search (galloping) for a key in the sorted part of the collection, starting at a given position.
+     * The cost is logarithmic in the distance to the result position, not in the size of the collection;
+     * this makes it the preferred method to intersect collections of very different size.
+     * @param key
+     * @param astart the offset of the key in the key array
+     * @param from the first position which is considered
+     * @return the first position, not lower than from, of an entry that is not lower than the key,
+     *         or the size of the sorted part if no such entry exists
+     */
+    protected final int gallop(final byte[] key, final int astart, final int from) {
+        assert (this.rowdef.objectOrder != null);
+        final int bound = this.sortBound;
+        int l = from;
+        if (l >= bound) return bound;
+        int step = 1;
+        int r = l;
+        while (r < bound && compare(key, astart, r) > 0) {
+            l = r + 1;
+            r += step;
+            step <<= 1;
+        }
+        if (r > bound) r = bound;
+        // binary search in [l, r)
+        int p;
+        while (l < r) {
+            p = (l + r) >>> 1;
+            if (compare(key, astart, p) > 0) l = p + 1; else r = p;
+        }
+        return l;
+    }
+
     public final synchronized Iterator<byte[]> keys() {
         sort();
         return super.keys(true);
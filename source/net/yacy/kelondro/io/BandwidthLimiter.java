@@ -0,0 +1,91 @@
+// BandwidthLimiter.java
+// first published on http://yacy.net
+//
+// This is a part of YaCy, a peer-to-peer based web search engine
+//
+// LICENSE
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.kelondro.io;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * a limiter for the number of bytes per second that are written by background jobs.
+ * All threads which use the same limiter share the bandwidth. The limiter also counts
+ * the bytes, so it can be used for statistics when no limit is set.
+ */
+public class BandwidthLimiter {
+
+    private static final long window = 5000; // milliseconds; the time after which the measurement starts again
+
+    private volatile long limit; // bytes per second; 0 means no limit
+    private final AtomicLong total;
+    private long windowStart, windowBytes;
+
+    /**
+     * @param limit the maximum number of bytes per second, 0 for no limit
+     */
+    public BandwidthLimiter(final long limit) {
+        this.limit = Math.max(0, limit);
+        this.total = new AtomicLong(0);
+        this.windowStart = System.currentTimeMillis();
+        this.windowBytes = 0;
+    }
+
+    public void setLimit(final long limit) {
+        this.limit = Math.max(0, limit);
+    }
+
+    public long getLimit() {
+        return this.limit;
+    }
+
+    /**
+     * account a number of written bytes. If the limit is exceeded, the method sleeps until
+     * the bytes are within the limit again.
+     * @param bytes
+     */
+    public void acquire(final long bytes) {
+        this.total.addAndGet(bytes);
+        final long l = this.limit;
+        if (l <= 0) return;
+        synchronized (this) {
+            final long now = System.currentTimeMillis();
+            if (now - this.windowStart > window) {
+                this.windowStart = now;
+                this.windowBytes = 0;
+            }
+            this.windowBytes += bytes;
+            // the time that should have been passed to write windowBytes within the limit
+            final long sleep = this.windowBytes * 1000L / l - (now - this.windowStart);
+            if (sleep <= 0) return;
+            // wait() releases the lock; other threads add their bytes and wait correspondingly longer
+            try {
+                this.wait(sleep);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * @return the number of bytes that had been written
+     */
+    public long getBytes() {
+        return this.total.get();
+    }
+}
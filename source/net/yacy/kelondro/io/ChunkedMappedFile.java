@@ -0,0 +1,135 @@
+// ChunkedMappedFile.java
+// -----------------------
+// part of The Kelondro Database
+// (C) by the YaCy developers; http://yacy.net
+// first published on http://yacy.net
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.kelondro.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import net.yacy.cora.util.ConcurrentLog;
+
+/**
+ * read-only access to a file using memory-mapped regions.
+ * The file is mapped in chunks of at most chunksize bytes because a single MappedByteBuffer
+ * cannot address more than 2GB. All read methods use absolute positions and do not share a file pointer,
+ * therefore they can be called concurrently without any synchronization.
+ * The mapping covers only the file length at the time of construction; reads beyond that position
+ * must be done with a different access method.
+ */
+public final class ChunkedMappedFile {
+
+    private final static int defaultChunkSize = 1 << 30; // 1GB
+
+    private final File file;
+    private final long length;
+    private final int chunksize;
+    private volatile MappedByteBuffer[] chunks;
+
+    public ChunkedMappedFile(final File file) throws IOException {
+        this(file, defaultChunkSize);
+    }
+
+    public ChunkedMappedFile(final File file, final int chunksize) throws IOException {
+        assert chunksize > 0;
+        this.file = file;
+        this.chunksize = chunksize;
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            final FileChannel channel = raf.getChannel();
+            this.length = channel.size();
+            final int count = (int) ((this.length + chunksize - 1) / chunksize);
+            this.chunks = new MappedByteBuffer[count];
+            for (int i = 0; i < count; i++) {
+                final long start = (long) i * chunksize;
+                this.chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(chunksize, this.length - start));
+            }
+        } finally {
+            // the mapping stays valid after the channel is closed
+            raf.close();
+        }
+    }
+
+    public File file() {
+        return this.file;
+    }
+
+    /**
+     * @return the length of the mapped part of the file
+     */
+    public long length() {
+        return this.length;
+    }
+
+    /**
+     * check if a range can be read from the mapping
+     * @param pos the start position
+     * @param len the number of bytes
+     * @return true if the range is completely inside the mapped part of the file
+     */
+    public boolean covers(final long pos, final int len) {
+        return pos >= 0 && len >= 0 && pos + len <= this.length;
+    }
+
+    public int readInt(final long pos) throws IOException {
+        final MappedByteBuffer[] c = this.chunks;
+        if (c == null) throw new IOException("mapping of " + this.file + " is closed");
+        if (!covers(pos, 4)) throw new IOException("EOF in " + this.file.getName() + ", pos = " + pos + ", length = " + this.length);
+        final int ci = (int) (pos / this.chunksize);
+        final int offset = (int) (pos % this.chunksize);
+        if (offset + 4 <= c[ci].limit()) return c[ci].getInt(offset);
+        // the int is split across two chunks
+        final byte[] b = new byte[4];
+        readFully(pos, b, 0, 4);
+        return ((b[0] & 0xff) << 24) | ((b[1] & 0xff) << 16) | ((b[2] & 0xff) << 8) | (b[3] & 0xff);
+    }
+
+    public void readFully(long pos, final byte[] b, int off, int len) throws IOException {
+        final MappedByteBuffer[] c = this.chunks;
+        if (c == null) throw new IOException("mapping of " + this.file + " is closed");
+        if (!covers(pos, len)) throw new IOException("EOF in " + this.file.getName() + ", pos = " + pos + ", requested = " + len + ", length = " + this.length);
+        while (len > 0) {
+            final int ci = (int) (pos / this.chunksize);
+            final int offset = (int) (pos % this.chunksize);
+            final int l = Math.min(len, c[ci].limit() - offset);
+            // use a duplicate because the position of a shared buffer must not be changed concurrently
+            final ByteBuffer d = c[ci].duplicate();
+            d.position(offset);
+            d.get(b, off, l);
+            pos += l;
+            off += l;
+            len -= l;
+        }
+    }
+
+    /**
+     * release the mapping. The memory is unmapped by the garbage collector
+     * when no more reference to the buffers exist.
+     */
+    public void close() {
+        if (this.chunks == null) return;
+        this.chunks = null;
+        ConcurrentLog.fine("ChunkedMappedFile", "released mapping of " + this.file.getName());
+    }
+
+}
@@ -0,0 +1,338 @@
+// SpillBuffer.java
+// first published on http://yacy.net
+//
+// This is a part of YaCy, a peer-to-peer based web search engine
+//
+// LICENSE
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.kelondro.io;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import net.yacy.kelondro.util.FileUtils;
+
+/**
+ * a buffer for content of unknown size. The first bytes are held in memory, everything
+ * beyond a threshold is written to a temporary file. When the writing is finished, the
+ * content can be read as often as necessary with getInputStream(); the returned streams
+ * support mark/reset over the whole content, so parsers which need to look at the content
+ * more than once do not have to copy it.
+ * The temporary file should be removed with delete(); files of buffers which became unreachable
+ * without a delete() are removed when the next buffer spills to disk.
+ */
+public class SpillBuffer extends OutputStream {
+
+    /**
+     * the number of bytes which are held in memory, if no other threshold is given
+     */
+    public static int defaultThreshold = 1024 * 1024;
+
+    private static final ReferenceQueue<SpillBuffer> unreachable = new ReferenceQueue<SpillBuffer>();
+    private static final Set<FileReference> spilled = Collections.newSetFromMap(new ConcurrentHashMap<FileReference, Boolean>());
+
+    private static final class FileReference extends PhantomReference<SpillBuffer> {
+        private final File file;
+        private FileReference(final SpillBuffer buffer, final File file) {
+            super(buffer, unreachable);
+            this.file = file;
+        }
+    }
+
+    /**
+     * remove the temporary files of buffers which had not been deleted
+     */
+    private static void cleanup() {
+        Reference<? extends SpillBuffer> r;
+        while ((r = unreachable.poll()) != null) {
+            spilled.remove(r);
+            FileUtils.deletedelete(((FileReference) r).file);
+        }
+    }
+
+    private final int threshold;
+    private byte[] buffer;
+    private int count;
+    private File file;
+    private FileReference reference;
+    private OutputStream fileOut;
+    private long length;
+
+    public SpillBuffer() {
+        this(defaultThreshold);
+    }
+
+    /**
+     * @param threshold the maximum number of bytes which are held in memory
+     */
+    public SpillBuffer(final int threshold) {
+        this.threshold = Math.max(0, threshold);
+        this.buffer = new byte[Math.min(this.threshold, 4096)];
+        this.count = 0;
+        this.file = null;
+        this.reference = null;
+        this.fileOut = null;
+        this.length = 0;
+    }
+
+    /**
+     * wrap a byte array; the array is not copied
+     * @param b the content
+     */
+    public SpillBuffer(final byte[] b) {
+        this.threshold = b.length;
+        this.buffer = b;
+        this.count = b.length;
+        this.file = null;
+        this.reference = null;
+        this.fileOut = null;
+        this.length = b.length;
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        if (this.file == null && this.count < this.threshold) {
+            if (this.count == this.buffer.length) grow(this.count + 1);
+            this.buffer[this.count++] = (byte) b;
+        } else {
+            spill().write(b);
+        }
+        this.length++;
+    }
+
+    @Override
+    public void write(final byte[] b, int off, int len) throws IOException {
+        if (this.file == null) {
+            final int m = Math.min(len, this.threshold - this.count);
+            if (m > 0) {
+                if (this.count + m > this.buffer.length) grow(this.count + m);
+                System.arraycopy(b, off, this.buffer, this.count, m);
+                this.count += m;
+                this.length += m;
+                off += m;
+                len -= m;
+            }
+        }
+        if (len > 0) {
+            spill().write(b, off, len);
+            this.length += len;
+        }
+    }
+
+    private void grow(final int minCapacity) {
+        final int capacity = (int) Math.min(this.threshold, Math.max(minCapacity, 2L * this.buffer.length));
+        final byte[] b = new byte[capacity];
+        System.arraycopy(this.buffer, 0, b, 0, this.count);
+        this.buffer = b;
+    }
+
+    private OutputStream spill() throws IOException {
+        if (this.fileOut == null) {
+            if (this.file != null) throw new IOException("buffer is closed");
+            cleanup();
+            this.file = FileUtils.createTempFile(SpillBuffer.class, "spill.tmp");
+            this.reference = new FileReference(this, this.file);
+            spilled.add(this.reference);
+            this.fileOut = new BufferedOutputStream(new FileOutputStream(this.file), 65536);
+        }
+        return this.fileOut;
+    }
+
+    /**
+     * copy a stream into the buffer
+     * @param in the source; it is not closed
+     * @param maxBytes the maximum number of bytes, -1 for no limit
+     * @return the number of copied bytes
+     * @throws IOException if the stream has more than maxBytes bytes
+     */
+    public long transferFrom(final InputStream in, final long maxBytes) throws IOException {
+        final byte[] b = new byte[8192];
+        long sum = 0;
+        int l;
+        while ((l = in.read(b)) != -1) {
+            sum += l;
+            if (maxBytes >= 0 && sum > maxBytes) throw new IOException("Download exceeded maximum value of " + maxBytes + " bytes");
+            write(b, 0, l);
+        }
+        return sum;
+    }
+
+    /**
+     * finish the writing; the temporary file is kept until delete() is called
+     */
+    @Override
+    public void close() throws IOException {
+        if (this.fileOut != null) {
+            this.fileOut.close();
+            this.fileOut = null;
+        }
+    }
+
+    /**
+     * remove the temporary file and free the memory
+     */
+    public void delete() {
+        try {
+            close();
+        } catch (final IOException e) {}
+        if (this.file != null) FileUtils.deletedelete(this.file);
+        if (this.reference != null) {
+            spilled.remove(this.reference);
+            this.reference.clear();
+            this.reference = null;
+        }
+        this.buffer = new byte[0];
+        this.count = 0;
+        this.length = 0;
+    }
+
+    /**
+     * @return the number of bytes in the buffer
+     */
+    public long length() {
+        return this.length;
+    }
+
+    /**
+     * @return true if a part of the content is in a temporary file
+     */
+    public boolean isSpilled() {
+        return this.file != null;
+    }
+
+    /**
+     * get the whole content as byte array. This loads a spilled content into memory!
+     * @return the content
+     * @throws IOException
+     */
+    public byte[] getBytes() throws IOException {
+        if (this.file == null) {
+            if (this.count == this.buffer.length) return this.buffer;
+            final byte[] b = new byte[this.count];
+            System.arraycopy(this.buffer, 0, b, 0, this.count);
+            return b;
+        }
+        if (this.length > Integer.MAX_VALUE) throw new IOException("content too large for an array: " + this.length);
+        final byte[] b = new byte[(int) this.length];
+        final InputStream in = getInputStream();
+        try {
+            int p = 0, c;
+            while (p < b.length && (c = in.read(b, p, b.length - p)) > 0) p += c;
+        } finally {
+            in.close();
+        }
+        return b;
+    }
+
+    /**
+     * get a new stream on the content; the writing is finished by this call
+     * @return a stream which supports mark/reset
+     * @throws IOException
+     */
+    public InputStream getInputStream() throws IOException {
+        close();
+        return new Input();
+    }
+
+    private final class Input extends InputStream {
+
+        private long pos, mark;
+        private RandomAccessFile raf;
+
+        private Input() {
+            this.pos = 0;
+            this.mark = 0;
+            this.raf = null;
+        }
+
+        private RandomAccessFile file() throws IOException {
+            if (this.raf == null) this.raf = new RandomAccessFile(SpillBuffer.this.file, "r");
+            if (this.raf.getFilePointer() != this.pos - SpillBuffer.this.count) this.raf.seek(this.pos - SpillBuffer.this.count);
+            return this.raf;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (this.pos < SpillBuffer.this.count) return SpillBuffer.this.buffer[(int) this.pos++] & 0xff;
+            if (this.pos >= SpillBuffer.this.length) return -1;
+            final int b = file().read();
+            if (b >= 0) this.pos++;
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if (len == 0) return 0;
+            if (this.pos >= SpillBuffer.this.length) return -1;
+            if (this.pos < SpillBuffer.this.count) {
+                final int m = (int) Math.min(len, SpillBuffer.this.count - this.pos);
+                System.arraycopy(SpillBuffer.this.buffer, (int) this.pos, b, off, m);
+                this.pos += m;
+                return m;
+            }
+            final int m = file().read(b, off, (int) Math.min(len, SpillBuffer.this.length - this.pos));
+            if (m > 0) this.pos += m;
+            return m;
+        }
+
+        @Override
+        public long skip(final long n) {
+            final long s = Math.max(0, Math.min(n, SpillBuffer.this.length - this.pos));
+            this.pos += s;
+            return s;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, SpillBuffer.this.length - this.pos);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return true;
+        }
+
+        @Override
+        public synchronized void mark(final int readlimit) {
+            this.mark = this.pos;
+        }
+
+        @Override
+        public synchronized void reset() {
+            this.pos = this.mark;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (this.raf != null) {
+                this.raf.close();
+                this.raf = null;
+            }
+        }
+    }
+}
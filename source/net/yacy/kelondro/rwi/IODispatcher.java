@@ -27,190 +27,278 @@ package net.yacy.kelondro.rwi;
 import java.io.File;
 import java.io.IOException;
 import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import net.yacy.cora.util.ConcurrentLog;
 import net.yacy.kelondro.blob.ArrayStack;
+import net.yacy.kelondro.io.BandwidthLimiter;
 import net.yacy.kelondro.util.MemoryControl;
 
 
 /**
- * this is a concurrent merger that can merge single files that are queued for merging.
+ * this is a concurrent merger that can merge files that are queued for merging.
  * when several ReferenceContainerArray classes host their ReferenceContainer file arrays,
  * they may share a single ReferenceContainerMerger object which does the sharing for all
- * of them. This is the best way to do the merging, because it does heavy IO access and
- * such access should not be performed concurrently, but queued. This class is the
- * manaagement class for queueing of merge jobs.
+ * of them. This class is the manaagement class for queueing of dump and merge jobs.
+ *
+ * Dump jobs are done by the dispatcher thread itself, so flushing the RAM cache to disc is never
+ * delayed by long-running merges. Merge jobs are done by a number of merge threads which share a
+ * bandwidth limit, so the merges do not starve the foreground IO of search and crawling.
  *
  * to use this class, first instantiate a object and then start the concurrent execution
- * of merging with a call to the start() - method. To shut down all mergings, call terminate()
+ * of dumping and merging with a call to the start() - method. To shut down all mergings, call terminate()
  * only once.
  */
 public class IODispatcher extends Thread {
 
     private static final ConcurrentLog log = new ConcurrentLog("IODispatcher");
 
-    private   Semaphore                    controlQueue;
-    private   final Semaphore              termination;
+    /**
+     * the number of concurrent merge threads; must be set before the dispatcher is created
+     */
+    public static int mergeConcurrency = 2;
+
+    /**
+     * the maximum number of bytes per second that are written by all merge threads together, 0 means no limit
+     */
+    public static long mergeBandwidth = 0;
+
+    /**
+     * the maximum number of files which are merged in one pass
+     */
+    public static int mergeFanIn = 8;
+
+    private static final long pollTimeout = 1000; // milliseconds
+
     private   ArrayBlockingQueue<MergeJob> mergeQueue;
     private   ArrayBlockingQueue<DumpJob<? extends Reference>> dumpQueue;
-    //private ReferenceFactory<ReferenceType> factory;
-    private   boolean                      terminate;
-    private final int                          writeBufferSize;
+    private   volatile boolean             terminate;
+    private final int                      writeBufferSize;
+    private final Thread[]                 mergeThreads;
+    private final BandwidthLimiter         limiter;
+    private final AtomicInteger            runningMerges;
+    private final AtomicLong               bytesDumped, bytesMerged, dumpCount, mergeCount;
 
     public IODispatcher(final int dumpQueueLength, final int mergeQueueLength, final int writeBufferSize) {
-        this.termination = new Semaphore(0);
-        this.controlQueue = new Semaphore(0);
         this.dumpQueue = new ArrayBlockingQueue<DumpJob<? extends Reference>>(dumpQueueLength);
-        this.mergeQueue = new ArrayBlockingQueue<MergeJob>(mergeQueueLength);
+        this.mergeQueue = new ArrayBlockingQueue<MergeJob>(mergeQueueLength + Math.max(1, mergeConcurrency));
         this.writeBufferSize = writeBufferSize;
         this.terminate = false;
+        this.limiter = new BandwidthLimiter(mergeBandwidth);
+        this.runningMerges = new AtomicInteger(0);
+        this.bytesDumped = new AtomicLong(0);
+        this.bytesMerged = new AtomicLong(0);
+        this.dumpCount = new AtomicLong(0);
+        this.mergeCount = new AtomicLong(0);
+        this.mergeThreads = new Thread[Math.max(1, mergeConcurrency)];
+        for (int i = 0; i < this.mergeThreads.length; i++) {
+            this.mergeThreads[i] = new Thread("IODispatcher.merge-" + i) {
+                @Override
+                public void run() {
+                    mergeLoop();
+                }
+            };
+        }
         this.setName("IODispatcher");
     }
 
+    @Override
+    public synchronized void start() {
+        super.start();
+        for (final Thread t: this.mergeThreads) t.start();
+    }
+
     public void terminate() {
-        this.terminate = true; // asure current run() loop will termiate
-        if (this.termination != null && this.controlQueue != null && isAlive()) {
-            this.controlQueue.release();
-            // await termination
-            try {
-                this.termination.acquire();
-            } catch (final InterruptedException e) {
-                ConcurrentLog.logException(e);
-            }
+        this.terminate = true; // asure current run() loops will termiate
+        try {
+            // pending jobs are finished before the threads terminate
+            this.join();
+            for (final Thread t: this.mergeThreads) t.join();
+        } catch (final InterruptedException e) {
+            ConcurrentLog.logException(e);
         }
     }
 
     @SuppressWarnings("unchecked")
-	protected synchronized void dump(final ReferenceContainerCache<? extends Reference> cache, final File file, final ReferenceContainerArray<? extends Reference> array) {
-        if (this.dumpQueue == null || this.controlQueue == null || !isAlive()) {
+	protected void dump(final ReferenceContainerCache<? extends Reference> cache, final File file, final ReferenceContainerArray<? extends Reference> array) {
+        @SuppressWarnings("rawtypes")
+        final
+        DumpJob<? extends Reference> job = new DumpJob(cache, file, array);
+        final ArrayBlockingQueue<DumpJob<? extends Reference>> queue = this.dumpQueue;
+        if (queue == null || this.terminate || !isAlive()) {
             log.warn("emergency dump of file " + file.getName());
-             if (!cache.isEmpty()) cache.dump(file, (int) Math.min(MemoryControl.available() / 3, this.writeBufferSize), true);
-        } else {
-            @SuppressWarnings("rawtypes")
-            final
-            DumpJob<? extends Reference> job = new DumpJob(cache, file, array);
-            // check if the dispatcher is running
-            if (isAlive()) {
-                try {
-                    this.dumpQueue.add(job);
-                    log.info("appended dump job for file " + file.getName());
-                } catch (final IllegalStateException e) {
-                    log.warn("could not append dump job, emergency dump of file " + file.getName());
-                    cache.dump(file, (int) Math.min(MemoryControl.available() / 3, this.writeBufferSize), true);
-                } finally {
-                    this.controlQueue.release();
-                }
-            } else {
+            job.dump();
+            return;
+        }
+        if (queue.offer(job)) {
+            // the dump loop may have terminated between the check above and the offer; if the job is
+            // still in the queue then, nobody else will take it
+            if (this.terminate && queue.remove(job)) {
+                log.warn("dispatcher terminated, emergency dump of file " + file.getName());
                 job.dump();
-                log.warn("dispatcher is not alive, just dumped file " + file.getName());
+                return;
             }
+            log.info("appended dump job for file " + file.getName());
+        } else {
+            log.warn("could not append dump job, emergency dump of file " + file.getName());
+            job.dump();
         }
     }
 
-    protected synchronized int queueLength() {
-        return (this.controlQueue == null || !isAlive()) ? 0 : this.controlQueue.availablePermits();
+    /**
+     * @return the number of dump and merge jobs which are waiting for execution
+     */
+    protected int queueLength() {
+        final ArrayBlockingQueue<DumpJob<? extends Reference>> dq = this.dumpQueue;
+        final ArrayBlockingQueue<MergeJob> mq = this.mergeQueue;
+        return (dq == null ? 0 : dq.size()) + (mq == null ? 0 : mq.size());
     }
 
-    protected synchronized void merge(final File f1, final File f2, final ReferenceFactory<? extends Reference> factory, final ArrayStack array, final File newFile) {
-        if (this.mergeQueue == null || this.controlQueue == null || !isAlive()) {
-            if (f2 == null) {
-                log.warn("emergency rewrite of file " + f1.getName() + " to " + newFile.getName());
-            } else {
-                log.warn("emergency merge of files " + f1.getName() + ", " + f2.getName() + " to " + newFile.getName());
-            }
-            array.mergeMount(f1, f2, factory, newFile, (int) Math.min(MemoryControl.available() / 3, this.writeBufferSize));
-        } else {
-            final MergeJob job = new MergeJob(f1, f2, factory, array, newFile);
-            if (isAlive()) {
-                try {
-                    this.mergeQueue.add(job);
-                    if (f2 == null) {
-                        log.info("appended rewrite job of file " + f1.getName() + " to " + newFile.getName());
-                    } else {
-                        log.info("appended merge job of files " + f1.getName() + ", " + f2.getName() + " to " + newFile.getName());
-                    }
-                } catch (final IllegalStateException e) { // because mergeQueue size is 1, IllegalStateException could happen frequently (serial execution ensured in run() )
-                	log.warn("Could not add merge job to queue: " + e.getMessage());
-                } finally {
-                    this.controlQueue.release();
-                }
-            } else {
+    protected void merge(final File f1, final File f2, final ReferenceFactory<? extends Reference> factory, final ArrayStack array, final File newFile) {
+        merge(f2 == null ? new File[]{f1} : new File[]{f1, f2}, factory, array, newFile);
+    }
+
+    /**
+     * merge a number of files into one. If only one file is given, the file is rewritten.
+     * The files must be unmounted from the array and are mounted again as newFile after the merge.
+     * @param files the files to merge, the oldest first
+     * @param factory
+     * @param array
+     * @param newFile
+     */
+    protected void merge(final File[] files, final ReferenceFactory<? extends Reference> factory, final ArrayStack array, final File newFile) {
+        final MergeJob job = new MergeJob(files, factory, array, newFile);
+        final ArrayBlockingQueue<MergeJob> queue = this.mergeQueue;
+        if (queue == null || this.terminate || !isAlive()) {
+            log.warn("dispatcher not running, emergency " + job);
+            job.merge();
+            return;
+        }
+        if (queue.offer(job)) {
+            if (this.terminate && queue.remove(job)) {
+                log.warn("dispatcher terminated, emergency " + job);
                 job.merge();
-                if (f2 == null) {
-                    log.warn("dispatcher not running, merged files " + f1.getName() + " to " + newFile.getName());
-                } else {
-                    log.warn("dispatcher not running, rewrote file " + f1.getName() + ", " + f2.getName() + " to " + newFile.getName());
-                }
+                return;
             }
+            log.info("appended " + job);
+        } else {
+            // the files are already unmounted; they must not be dropped, so the caller does the job
+            log.warn("merge queue is full, doing " + job + " synchronously");
+            job.merge();
         }
     }
 
     @Override
     public void run() {
-        MergeJob mergeJob;
         DumpJob<? extends Reference> dumpJob;
         try {
-            loop: while (true) try {
-                this.controlQueue.acquire();
-
-                // prefer dump actions to flush memory to disc
-                if (!this.dumpQueue.isEmpty()) {
-                	File f = null;
-                    try {
-                        dumpJob = this.dumpQueue.take();
-                        f = dumpJob.file;
-                        dumpJob.dump();
-                    } catch (final InterruptedException e) {
-                        log.severe("main run job was interrupted (1)", e);
-                    } catch (final Throwable e) {
-                        log.severe("main run job had errors (1), dump to " + f + " failed.", e);
-                    }
-                    continue loop;
-                }
-
-                // otherwise do a merge operation
-                if (!this.mergeQueue.isEmpty() && !MemoryControl.shortStatus()) {
-                	File f = null, f1 = null, f2 = null;
-                    try {
-                        mergeJob = this.mergeQueue.take();
-                        f = mergeJob.newFile;
-                        f1 = mergeJob.f1;
-                        f2 = mergeJob.f2;
-                        mergeJob.merge();
-                    } catch (final InterruptedException e) {
-                        log.severe("main run job was interrupted (2)", e);
-                    } catch (final Throwable e) {
-                        if (f2 == null) {
-                            log.severe("main run job had errors (2), dump to " + f + " failed. Input file is " + f1, e);
-                        } else {
-                            log.severe("main run job had errors (2), dump to " + f + " failed. Input files are " + f1 + " and " + f2, e);
-                        }
-                    }
-                    continue loop;
-                }
-
-                // check termination
-                if (this.terminate) {
-                    log.info("caught termination signal");
-                    break;
+            while (!this.terminate || !this.dumpQueue.isEmpty()) {
+                File f = null;
+                try {
+                    dumpJob = this.dumpQueue.poll(pollTimeout, TimeUnit.MILLISECONDS);
+                    if (dumpJob == null) continue;
+                    f = dumpJob.file;
+                    dumpJob.dump();
+                } catch (final InterruptedException e) {
+                    log.severe("main run job was interrupted (1)", e);
+                } catch (final Throwable e) {
+                    log.severe("main run job had errors (1), dump to " + f + " failed.", e);
                 }
-                
-            } catch (final Throwable e) {
-                log.severe("main run job failed (X)", e);
             }
-        log.info("loop terminated");
+            log.info("dump loop terminated");
         } catch (final Throwable e) {
             log.severe("main run job failed (4)", e);
         } finally {
             log.info("terminating run job");
-            this.controlQueue = null;
-            this.dumpQueue = null;
-            this.mergeQueue = null;
-            this.termination.release();
         }
     }
 
+    private void mergeLoop() {
+        MergeJob mergeJob;
+        try {
+            while (!this.terminate || !this.mergeQueue.isEmpty()) {
+                // do not start a merge while the memory is short, but wait for the next cleanup
+                if (!this.terminate && MemoryControl.shortStatus()) {
+                    Thread.sleep(pollTimeout);
+                    continue;
+                }
+                try {
+                    mergeJob = this.mergeQueue.poll(pollTimeout, TimeUnit.MILLISECONDS);
+                    if (mergeJob == null) continue;
+                    mergeJob.merge();
+                } catch (final InterruptedException e) {
+                    throw e;
+                } catch (final Throwable e) {
+                    log.severe("merge job failed", e);
+                }
+            }
+            log.info("merge loop terminated");
+        } catch (final InterruptedException e) {
+            log.severe("merge job was interrupted", e);
+        }
+    }
+
+    /**
+     * @return the number of dump and merge jobs which are waiting for execution
+     */
+    public int getQueueDepth() {
+        return queueLength();
+    }
+
+    /**
+     * @return the number of merges which are currently running
+     */
+    public int getRunningMerges() {
+        return this.runningMerges.get();
+    }
+
+    public int getMergeConcurrency() {
+        return this.mergeThreads.length;
+    }
+
+    public long getMergeBandwidth() {
+        return this.limiter.getLimit();
+    }
+
+    public void setMergeBandwidth(final long bytesPerSecond) {
+        this.limiter.setLimit(bytesPerSecond);
+    }
+
+    public long getDumpCount() {
+        return this.dumpCount.get();
+    }
+
+    public long getMergeCount() {
+        return this.mergeCount.get();
+    }
+
+    /**
+     * @return the number of bytes written by dumps of the RAM cache
+     */
+    public long getBytesDumped() {
+        return this.bytesDumped.get();
+    }
+
+    /**
+     * @return the number of bytes written by merges
+     */
+    public long getBytesMerged() {
+        return this.bytesMerged.get();
+    }
+
+    /**
+     * the merge amplification is the number of bytes which are written to disc for each byte
+     * that is dumped from the RAM cache: (dumped + merged) / dumped
+     * @return the merge amplification or 0 if nothing was dumped yet
+     */
+    public double getMergeAmplification() {
+        final long dumped = this.bytesDumped.get();
+        if (dumped == 0) return 0.0d;
+        return ((double) (dumped + this.bytesMerged.get())) / ((double) dumped);
+    }
+
     private class DumpJob<ReferenceType extends Reference> {
         private final ReferenceContainerCache<ReferenceType> cache;
         private final File file;
@@ -223,6 +311,8 @@ public class IODispatcher extends Thread {
         private void dump() {
             try {
                 if (!this.cache.isEmpty()) this.cache.dump(this.file, (int) Math.min(MemoryControl.available() / 3, IODispatcher.this.writeBufferSize), true);
+                IODispatcher.this.bytesDumped.addAndGet(this.file.length());
+                IODispatcher.this.dumpCount.incrementAndGet();
                 this.array.mountBLOBFile(this.file);
             } catch (final IOException e) {
                 ConcurrentLog.logException(e);
@@ -232,33 +322,49 @@ public class IODispatcher extends Thread {
 
     private class MergeJob {
 
-        private final File f1, f2, newFile;
+        private final File[] files;
+        private final File newFile;
         private final ArrayStack array;
         private final ReferenceFactory<? extends Reference> factory;
 
         private MergeJob(
-                final File f1,
-                final File f2,
+                final File[] files,
                 final ReferenceFactory<? extends Reference> factory,
                 final ArrayStack array,
                 final File newFile) {
-            this.f1 = f1;
-            this.f2 = f2;
+            this.files = files;
             this.factory = factory;
             this.newFile = newFile;
             this.array = array;
         }
 
         private File merge() {
-        	if (!this.f1.exists()) {
-        	    log.warn("merge of file (1) " + this.f1.getName() + " failed: file does not exists");
-        		return null;
-        	}
-        	if (this.f2 != null && !this.f2.exists()) {
-        	    log.warn("merge of file (2) " + this.f2.getName() + " failed: file does not exists");
-        		return null;
-        	}
-            return this.array.mergeMount(this.f1, this.f2, this.factory, this.newFile, (int) Math.min(MemoryControl.available() / 3, IODispatcher.this.writeBufferSize));
+            for (final File f: this.files) {
+                if (!f.exists()) {
+                    log.warn("merge of file " + f.getName() + " failed: file does not exists");
+                    return null;
+                }
+            }
+            IODispatcher.this.runningMerges.incrementAndGet();
+            try {
+                final File result = this.array.mergeMount(this.files, this.factory, this.newFile, (int) Math.min(MemoryControl.available() / 3, IODispatcher.this.writeBufferSize), IODispatcher.this.limiter);
+                if (result != null) IODispatcher.this.bytesMerged.addAndGet(result.length());
+                IODispatcher.this.mergeCount.incrementAndGet();
+                return result;
+            } finally {
+                IODispatcher.this.runningMerges.decrementAndGet();
+            }
+        }
+
+        @Override
+        public String toString() {
+            if (this.files.length == 1) return "rewrite job of file " + this.files[0].getName() + " to " + this.newFile.getName();
+            final StringBuilder sb = new StringBuilder("merge job of files ");
+            for (int i = 0; i < this.files.length; i++) {
+                if (i > 0) sb.append(", ");
+                sb.append(this.files[i].getName());
+            }
+            return sb.append(" to ").append(this.newFile.getName()).toString();
         }
     }
 
@@ -185,8 +185,15 @@ public final class IndexCell<ReferenceType extends Reference> extends AbstractBu
         if (this.array.entries() < 2) return false;
         boolean donesomething = false;
 
-        // first try to merge small files that match
+        // if there are many files, merge the smallest of them in one pass
         int term = 10;
+        while (term-- > 0 && this.array.entries() >= IODispatcher.mergeFanIn && this.merger.queueLength() < this.merger.getMergeConcurrency()) {
+            if (!this.array.shrinkManySmallFiles(this.merger, targetFileSize, IODispatcher.mergeFanIn)) break;
+            donesomething = true;
+        }
+
+        // then try to merge small files that match
+        term = 10;
         while (term-- > 0 && (this.merger.queueLength() < 3 || this.array.entries() >= 50)) {
             if (!this.array.shrinkBestSmallFiles(this.merger, targetFileSize)) break;
             donesomething = true;
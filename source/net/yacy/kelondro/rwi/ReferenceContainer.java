@@ -38,7 +38,6 @@ import java.util.TreeMap;
 
 import net.yacy.cora.document.encoding.ASCII;
 import net.yacy.cora.order.Base64Order;
-import net.yacy.cora.order.ByteOrder;
 import net.yacy.cora.storage.HandleSet;
 import net.yacy.cora.util.ConcurrentLog;
 import net.yacy.cora.util.SpaceExceededException;
@@ -343,27 +342,17 @@ public class ReferenceContainer<ReferenceType extends Reference> extends RowSet
             if (singleContainer == null || singleContainer.isEmpty()) return null; // as this is a cunjunction of searches, we have no result if any word is not known
 
             // store result in order of result size
-            map.put(Long.valueOf(singleContainer.size() * 1000 + count), singleContainer);
+            map.put(Long.valueOf(singleContainer.size() * 1000L + count), singleContainer);
             count++;
         }
 
         // check if there is any result
         if (map.isEmpty()) return null; // no result, nothing found
+        if (map.size() == 1) return map.firstEntry().getValue();
 
         // the map now holds the search results in order of number of hits per word
-        // we now must pairwise build up a conjunction of these sets
-        Long k = map.firstKey(); // the smallest, which means, the one with the least entries
-        ReferenceContainer<ReferenceType> searchA, searchB, searchResult = map.remove(k);
-        while (!map.isEmpty() && !searchResult.isEmpty()) {
-            // take the first element of map which is a result and combine it with result
-            k = map.firstKey(); // the next smallest...
-            searchA = searchResult;
-            searchB = map.remove(k);
-            searchResult = ReferenceContainer.joinConstructive(factory, searchA, searchB, maxDistance);
-            // free resources
-            searchA = null;
-            searchB = null;
-        }
+        // we now build the conjunction of all sets in one pass
+        final ReferenceContainer<ReferenceType> searchResult = joinConstructive(factory, new ArrayList<ReferenceContainer<ReferenceType>>(map.values()), maxDistance);
 
         // in 'searchResult' is now the combined search result
         if (searchResult.isEmpty()) return null;
@@ -388,11 +377,6 @@ public class ReferenceContainer<ReferenceType extends Reference> extends RowSet
     }
 
     // join methods
-    private static int log2(int x) {
-        int l = 0;
-        while (x > 0) {x = x >> 1; l++;}
-        return l;
-    }
 
     public static <ReferenceType extends Reference> ReferenceContainer<ReferenceType> joinConstructive(
             final ReferenceFactory<ReferenceType> factory,
@@ -401,93 +385,81 @@ public class ReferenceContainer<ReferenceType extends Reference> extends RowSet
             final int maxDistance) throws SpaceExceededException {
         if ((i1 == null) || (i2 == null)) return null;
         if (i1.isEmpty() || i2.isEmpty()) return null;
-
-        // decide which method to use
-        final int high = ((i1.size() > i2.size()) ? i1.size() : i2.size());
-        final int low  = ((i1.size() > i2.size()) ? i2.size() : i1.size());
-        final int stepsEnum = 10 * (high + low - 1);
-        final int stepsTest = 12 * log2(high) * low;
-
-        // start most efficient method
-        if (stepsEnum > stepsTest) {
-            if (i1.size() < i2.size()) return joinConstructiveByTest(factory, i1, i2, maxDistance);
-            return joinConstructiveByTest(factory, i2, i1, maxDistance);
-        }
-        return joinConstructiveByEnumeration(factory, i1, i2, maxDistance);
+        final List<ReferenceContainer<ReferenceType>> containers = new ArrayList<ReferenceContainer<ReferenceType>>(2);
+        containers.add(i1.size() <= i2.size() ? i1 : i2);
+        containers.add(i1.size() <= i2.size() ? i2 : i1);
+        return joinConstructive(factory, containers, maxDistance);
     }
 
-    private static <ReferenceType extends Reference> ReferenceContainer<ReferenceType> joinConstructiveByTest(
+    /**
+     * join any number of containers in one pass. The url hashes of the smallest container are the
+     * candidates; each candidate is searched in the other containers with an exponential search that
+     * starts at the position of the last hit. If a container does not have the candidate, the next
+     * candidate is the first entry of the smallest container that is not lower than the entry that was found.
+     * The number of comparisons is about (size of the smallest container) * (log of the distance between two hits)
+     * for each other container, so a frequent term costs nearly nothing compared to a rare term.
+     * @param factory
+     * @param containers the containers, ordered by size with the smallest first
+     * @param maxDistance
+     * @return the joined references
+     * @throws SpaceExceededException
+     */
+    private static <ReferenceType extends Reference> ReferenceContainer<ReferenceType> joinConstructive(
             final ReferenceFactory<ReferenceType> factory,
-            final ReferenceContainer<ReferenceType> small,
-            final ReferenceContainer<ReferenceType> large,
+            final List<ReferenceContainer<ReferenceType>> containers,
             final int maxDistance) throws SpaceExceededException {
-        //System.out.println("DEBUG: JOIN METHOD BY TEST, maxdistance = " + maxDistance);
-        assert small.rowdef.equals(large.rowdef) : "small = " + small.rowdef.toString() + "; large = " + large.rowdef.toString();
-        final int keylength = small.rowdef.width(0);
-        assert (keylength == large.rowdef.width(0));
         final ReferenceContainer<ReferenceType> conj = new ReferenceContainer<ReferenceType>(factory, null, 0); // start with empty search result
-        final Iterator<ReferenceType> se = small.entries();
-        ReferenceType ie1;
-        ReferenceType ie2;
-        while (se.hasNext()) {
-            ie1 = se.next();
-            ie2 = large.getReference(ie1.urlhash());
-            if ((ie1 != null) && (ie2 != null)) {
-                assert (ie1.urlhash().length == keylength) : "ie0.urlHash() = " + ASCII.String(ie1.urlhash());
-                assert (ie2.urlhash().length == keylength) : "ie1.urlHash() = " + ASCII.String(ie2.urlhash());
-                // this is a hit. Calculate word distance:
-
-                ie1 = factory.produceFast(ie2, true);
-                ie1.join(ie2);
-                if (ie1.distance() <= maxDistance) conj.add(ie1);
-            }
+        final ReferenceContainer<ReferenceType> first = containers.get(0);
+        for (final ReferenceContainer<ReferenceType> c: containers) {
+            assert first.rowdef.equals(c.rowdef) : "first = " + first.rowdef.toString() + "; c = " + c.rowdef.toString();
+            if (!((first.rowdef.getOrdering().signature().equals(c.rowdef.getOrdering().signature())))) return conj; // ordering must be equal
+            c.sort();
         }
-        return conj;
-    }
+        final int n = containers.size();
+        final int objectsize = first.rowdef.objectsize;
+        final int[] pos = new int[n];
+        ReferenceContainer<ReferenceType> c;
+        int keyoffset, p;
+        ReferenceType ie;
+        boolean hit;
+        candidates: while (pos[0] < first.size()) {
+            keyoffset = pos[0] * objectsize;
+            for (int j = 1; j < n; j++) {
+                c = containers.get(j);
+                p = c.gallop(first.chunkcache, keyoffset, pos[j]);
+                if (p >= c.size()) break candidates; // there cannot be any other hit
+                pos[j] = p;
+                if (c.compare(first.chunkcache, keyoffset, p) != 0) {
+                    // skip all candidates which are lower than the entry that was found
+                    pos[0] = first.gallop(c.chunkcache, p * objectsize, pos[0] + 1);
+                    continue candidates;
+                }
+            }
 
-    private static <ReferenceType extends Reference> ReferenceContainer<ReferenceType> joinConstructiveByEnumeration(
-            final ReferenceFactory<ReferenceType> factory,
-            final ReferenceContainer<ReferenceType> i1,
-            final ReferenceContainer<ReferenceType> i2,
-            final int maxDistance) throws SpaceExceededException {
-        //System.out.println("DEBUG: JOIN METHOD BY ENUMERATION, maxdistance = " + maxDistance);
-        assert i1.rowdef.equals(i2.rowdef) : "i1 = " + i1.rowdef.toString() + "; i2 = " + i2.rowdef.toString();
-        final int keylength = i1.rowdef.width(0);
-        assert (keylength == i2.rowdef.width(0));
-        final ReferenceContainer<ReferenceType> conj = new ReferenceContainer<ReferenceType>(factory, null, 0); // start with empty search result
-        if (!((i1.rowdef.getOrdering().signature().equals(i2.rowdef.getOrdering().signature())))) return conj; // ordering must be equal
-        final ByteOrder ordering = i1.rowdef.getOrdering();
-        final Iterator<ReferenceType> e1 = i1.entries();
-        final Iterator<ReferenceType> e2 = i2.entries();
-        int c;
-        if ((e1.hasNext()) && (e2.hasNext())) {
-            ReferenceType ie1;
-            ReferenceType ie2;
-            ie1 = e1.next();
-            ie2 = e2.next();
-
-            while (true) {
-                assert (ie1.urlhash().length == keylength) : "ie1.urlHash() = " + ASCII.String(ie1.urlhash());
-                assert (ie2.urlhash().length == keylength) : "ie2.urlHash() = " + ASCII.String(ie2.urlhash());
-                c = ordering.compare(ie1.urlhash(), ie2.urlhash());
-                //System.out.println("** '" + ie1.getUrlHash() + "'.compareTo('" + ie2.getUrlHash() + "')="+c);
-                if (c < 0) {
-                    if (e1.hasNext()) ie1 = e1.next(); else break;
-                } else if (c > 0) {
-                    if (e2.hasNext()) ie2 = e2.next(); else break;
-                } else {
-                    // we have found the same urls in different searches!
-                    ie1 = factory.produceFast(ie1, true);
-                    ie1.join(ie2);
-                    if (ie1.distance() <= maxDistance) conj.add(ie1);
-                    if (e1.hasNext()) ie1 = e1.next(); else break;
-                    if (e2.hasNext()) ie2 = e2.next(); else break;
+            // we have found the same urls in all searches!
+            ie = factory.produceFast(factory.produceSlow(first.get(pos[0], false)), true);
+            hit = true;
+            for (int j = 1; j < n; j++) {
+                ie.join(factory.produceSlow(containers.get(j).get(pos[j], false)));
+                if (ie.distance() > maxDistance) {
+                    hit = false;
+                    break;
                 }
             }
+            if (hit) conj.add(ie);
+            pos[0]++;
         }
         return conj;
     }
 
+    /**
+     * remove all references from the pivot container which are also in the excl container.
+     * Both containers are walked with an exponential search, which is fast also if one container is much larger than the other.
+     * @param factory
+     * @param pivot
+     * @param excl
+     * @return the pivot container or null if it is empty
+     */
     public static <ReferenceType extends Reference> ReferenceContainer<ReferenceType> excludeDestructive(
             final ReferenceFactory<ReferenceType> factory,
             final ReferenceContainer<ReferenceType> pivot,
@@ -496,77 +468,27 @@ public class ReferenceContainer<ReferenceType extends Reference> extends RowSet
         if (excl == null) return pivot;
         if (pivot.isEmpty()) return null;
         if (excl.isEmpty()) return pivot;
-
-        // decide which method to use
-        final int high = ((pivot.size() > excl.size()) ? pivot.size() : excl.size());
-        final int low  = ((pivot.size() > excl.size()) ? excl.size() : pivot.size());
-        final int stepsEnum = 10 * (high + low - 1);
-        final int stepsTest = 12 * log2(high) * low;
-
-        // start most efficient method
-        if (stepsEnum > stepsTest) {
-            return excludeDestructiveByTest(pivot, excl);
-        }
-        return excludeDestructiveByEnumeration(factory, pivot, excl);
-    }
-
-    private static <ReferenceType extends Reference> ReferenceContainer<ReferenceType> excludeDestructiveByTest(
-            final ReferenceContainer<ReferenceType> pivot,
-            final ReferenceContainer<ReferenceType> excl) {
-        assert pivot.rowdef.equals(excl.rowdef) : "small = " + pivot.rowdef.toString() + "; large = " + excl.rowdef.toString();
-        final int keylength = pivot.rowdef.width(0);
-        assert (keylength == excl.rowdef.width(0));
-        final boolean iterate_pivot = pivot.size() < excl.size();
-        final Iterator<ReferenceType> se = (iterate_pivot) ? pivot.entries() : excl.entries();
-        Reference ie0, ie1;
-            while (se.hasNext()) {
-                ie0 = se.next();
-                ie1 = excl.getReference(ie0.urlhash());
-                if ((ie0 != null) && (ie1 != null)) {
-                    assert (ie0.urlhash().length == keylength) : "ie0.urlHash() = " + ASCII.String(ie0.urlhash());
-                    assert (ie1.urlhash().length == keylength) : "ie1.urlHash() = " + ASCII.String(ie1.urlhash());
-                    if (iterate_pivot) se.remove(); pivot.delete(ie0.urlhash());
-                }
-            }
-        return pivot;
-    }
-
-    private static <ReferenceType extends Reference> ReferenceContainer<ReferenceType> excludeDestructiveByEnumeration(
-                            final ReferenceFactory<ReferenceType> factory,
-                            final ReferenceContainer<ReferenceType> pivot,
-                            final ReferenceContainer<ReferenceType> excl) {
-        assert pivot.rowdef.equals(excl.rowdef) : "i1 = " + pivot.rowdef.toString() + "; i2 = " + excl.rowdef.toString();
-        final int keylength = pivot.rowdef.width(0);
-        assert (keylength == excl.rowdef.width(0));
+        assert pivot.rowdef.equals(excl.rowdef) : "pivot = " + pivot.rowdef.toString() + "; excl = " + excl.rowdef.toString();
         if (!((pivot.rowdef.getOrdering().signature().equals(excl.rowdef.getOrdering().signature())))) return pivot; // ordering must be equal
-        final Iterator<ReferenceType> e1 = pivot.entries();
-        final Iterator<ReferenceType> e2 = excl.entries();
-        int c;
-        if ((e1.hasNext()) && (e2.hasNext())) {
-            ReferenceType ie1;
-            ReferenceType ie2;
-            ie1 = e1.next();
-            ie2 = e2.next();
-
-            while (true) {
-                assert (ie1.urlhash().length == keylength) : "ie1.urlHash() = " + ASCII.String(ie1.urlhash());
-                assert (ie2.urlhash().length == keylength) : "ie2.urlHash() = " + ASCII.String(ie2.urlhash());
-                c = pivot.rowdef.getOrdering().compare(ie1.urlhash(), ie2.urlhash());
-                //System.out.println("** '" + ie1.getUrlHash() + "'.compareTo('" + ie2.getUrlHash() + "')="+c);
-                if (c < 0) {
-                    if (e1.hasNext()) ie1 = e1.next(); else break;
-                } else if (c > 0) {
-                    if (e2.hasNext()) ie2 = e2.next(); else break;
-                } else {
-                    // we have found the same urls in different searches!
-                    ie1 = factory.produceFast(ie1, true);
-                    ie1.join(ie2);
-                    e1.remove();
-                    if (e1.hasNext()) ie1 = e1.next(); else break;
-                    if (e2.hasNext()) ie2 = e2.next(); else break;
-                }
+        pivot.sort();
+        excl.sort();
+        final int objectsize = pivot.rowdef.objectsize;
+        final int[] remove = new int[Math.min(pivot.size(), excl.size())];
+        int count = 0;
+        int pp = 0, pe = 0;
+        while (pp < pivot.size() && pe < excl.size()) {
+            pe = excl.gallop(pivot.chunkcache, pp * objectsize, pe);
+            if (pe >= excl.size()) break;
+            if (excl.compare(pivot.chunkcache, pp * objectsize, pe) == 0) {
+                // we have found the same urls in different searches!
+                remove[count++] = pp;
+                pp++;
+                pe++;
+            } else {
+                pp = pivot.gallop(excl.chunkcache, pe * objectsize, pp + 1);
             }
         }
+        pivot.removeRows(remove, count);
         return pivot;
     }
 
@@ -415,6 +415,21 @@ public final class ReferenceContainerArray<ReferenceType extends Reference> {
         return true;
     }
 
+    /**
+     * merge up to fanIn of the smallest files in one pass
+     * @param merger
+     * @param targetFileSize the maximum size of the merged file
+     * @param fanIn the maximum number of files that are merged at once
+     * @return true if a merge job was submitted
+     */
+    public boolean shrinkManySmallFiles(final IODispatcher merger, final long targetFileSize, final int fanIn) {
+        final File[] ff = this.array.unmountSmallest(fanIn, targetFileSize);
+        if (ff == null) return false;
+        ConcurrentLog.info("RICELL-shrink0", "unmountSmallest(" + fanIn + ", " + targetFileSize + "): " + ff.length + " files");
+        merger.merge(ff, this.factory, this.array, newContainerBLOBFile());
+        return true;
+    }
+
     public boolean shrinkUpToMaxSizeFiles(final IODispatcher merger, final long maxFileSize) {
         final File[] ff = this.array.unmountBestMatch(2.0f, maxFileSize);
         if (ff == null) return false;
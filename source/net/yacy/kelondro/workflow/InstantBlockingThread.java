@@ -36,8 +36,7 @@ import net.yacy.cora.util.ConcurrentLog;
 public class InstantBlockingThread<J extends WorkflowJob> extends AbstractBlockingThread<J> implements BlockingThread<J> {
     private static final String BLOCKINGTHREAD = "BLOCKINGTHREAD";
 
-    private final Method jobExecMethod;
-    private final Object environment;
+    private final WorkflowTask<J> task;
     private final Long   handle;
     private static AtomicInteger handleCounter = new AtomicInteger(0);
     private static AtomicInteger instantThreadCounter = new AtomicInteger(0);
@@ -46,18 +45,12 @@ public class InstantBlockingThread<J extends WorkflowJob> extends AbstractBlocki
     public InstantBlockingThread(final WorkflowProcessor<J> manager) {
         super();
         
-        // jobExec is the name of a method of the object 'env' that executes the one-step-run
-        // jobCount is the name of a method that returns the size of the job
-
         // set the manager of blocking queues for input and output
         setManager(manager);
 
-        // define execution class
-        final Object env = manager.getEnvironment();
-        final String jobExec = manager.getMethodName();
-        this.jobExecMethod = execMethod(env, jobExec);
-        this.environment = (env instanceof Class<?>) ? null : env;
-        setName(this.jobExecMethod.getClass().getName() + "." + this.jobExecMethod.getName() + "." + handleCounter.getAndIncrement());
+        // the task executes the one-step-run
+        this.task = manager.getTask();
+        setName(manager.getName() + (manager.getMethodName() == null ? "" : "." + manager.getMethodName()) + "." + handleCounter.getAndIncrement());
         this.handle = Long.valueOf(System.currentTimeMillis() + getName().hashCode());
     }
 
@@ -98,7 +91,7 @@ public class InstantBlockingThread<J extends WorkflowJob> extends AbstractBlocki
             jobs.put(this.handle, getName());
 
             try {
-                out = (J) this.jobExecMethod.invoke(this.environment, new Object[]{next});
+                out = this.task.process(next);
             } catch (final Throwable e) {
                 ConcurrentLog.severe(BLOCKINGTHREAD, "Internal Error in serverInstantThread.job: " + e.getMessage());
                 ConcurrentLog.severe(BLOCKINGTHREAD, "shutting down thread '" + getName() + "'");
@@ -0,0 +1,96 @@
+// LatencyHistogram.java
+// (C) by the YaCy developers; http://yacy.net
+// first published on http://yacy.net
+//
+// LICENSE
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.kelondro.workflow;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * a lock-free histogram of latency values in milliseconds.
+ * The values are counted in buckets with exponentially growing bounds: bucket 0 counts
+ * the value 0, bucket i counts the values from 2^(i-1) to 2^i - 1. The last bucket counts all greater values.
+ */
+public class LatencyHistogram {
+
+    private static final int BUCKETS = 24; // the last bucket starts at about 2.3 hours
+
+    private final AtomicLongArray counts;
+
+    public LatencyHistogram() {
+        this.counts = new AtomicLongArray(BUCKETS);
+    }
+
+    private static int bucket(final long time) {
+        if (time <= 0) return 0;
+        return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(time));
+    }
+
+    /**
+     * the upper bound of the values in a bucket
+     */
+    private static long upperBound(final int bucket) {
+        return bucket == 0 ? 0 : (1L << bucket) - 1;
+    }
+
+    /**
+     * count a latency value
+     * @param time the latency in milliseconds
+     */
+    public void add(final long time) {
+        this.counts.incrementAndGet(bucket(time));
+    }
+
+    public long getCount() {
+        long c = 0;
+        for (int i = 0; i < BUCKETS; i++) c += this.counts.get(i);
+        return c;
+    }
+
+    /**
+     * compute an estimation of a percentile
+     * @param p the percentile, a number between 0 and 100
+     * @return the upper bound of the bucket which contains the percentile, in milliseconds
+     */
+    public long getPercentile(final double p) {
+        final long[] c = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            c[i] = this.counts.get(i);
+            total += c[i];
+        }
+        if (total == 0) return 0;
+        final long rank = (long) Math.ceil(total * p / 100.0d);
+        long sum = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            sum += c[i];
+            if (sum >= rank) return upperBound(i);
+        }
+        return upperBound(BUCKETS - 1);
+    }
+
+    public void clear() {
+        for (int i = 0; i < BUCKETS; i++) this.counts.set(i, 0);
+    }
+
+    @Override
+    public String toString() {
+        return "p50=" + getPercentile(50) + "ms, p95=" + getPercentile(95) + "ms, p99=" + getPercentile(99) + "ms, count=" + getCount();
+    }
+}
@@ -24,7 +24,9 @@
 
 package net.yacy.kelondro.workflow;
 
+import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
@@ -50,24 +52,67 @@ public class WorkflowProcessor<J extends WorkflowJob> {
     private final Object environment;
     private final String processName, methodName, description;
     private final String[] childs;
+    private final WorkflowTask<J> task;
+    private final LatencyHistogram latency;
     private long blockTime, execTime, passOnTime;
     private long execCount;
+    private long batchCount, batchJobCount;
 
+    /**
+     * create a processor which calls a method of the environment object for each job.
+     * The method is looked up once; use the constructor with a WorkflowTask to avoid the reflection call for each job.
+     * @param name
+     * @param description
+     * @param childnames
+     * @param env the object which has the job method or the class with a static job method
+     * @param jobExecMethod the name of a method with one argument
+     * @param inputQueueSize
+     * @param output
+     * @param maxpoolsize
+     */
     public WorkflowProcessor(
             final String name, final String description, final String[] childnames,
             final Object env, final String jobExecMethod,
             final int inputQueueSize, final WorkflowProcessor<J> output,
             final int maxpoolsize) {
+        this(name, description, childnames, env, jobExecMethod, new MethodTask<J>(env, jobExecMethod), inputQueueSize, output, maxpoolsize);
+    }
+
+    /**
+     * create a processor which calls a task for each job
+     * @param name
+     * @param description
+     * @param childnames
+     * @param task the processing step of this stage
+     * @param inputQueueSize
+     * @param output
+     * @param maxpoolsize
+     */
+    public WorkflowProcessor(
+            final String name, final String description, final String[] childnames,
+            final WorkflowTask<J> task,
+            final int inputQueueSize, final WorkflowProcessor<J> output,
+            final int maxpoolsize) {
+        this(name, description, childnames, task, null, task, inputQueueSize, output, maxpoolsize);
+    }
+
+    private WorkflowProcessor(
+            final String name, final String description, final String[] childnames,
+            final Object env, final String jobExecMethod, final WorkflowTask<J> task,
+            final int inputQueueSize, final WorkflowProcessor<J> output,
+            final int maxpoolsize) {
         // start a fixed number of executors that handle entries in the process queue
         this.environment = env;
         this.processName = name;
         this.description = description;
         this.methodName = jobExecMethod;
+        this.task = task;
         this.childs = childnames;
         this.maxpoolsize = maxpoolsize;
         this.input = new LinkedBlockingQueue<J>(Math.max(maxpoolsize + 1, inputQueueSize));
         this.output = output;
-        this.executor = Executors.newCachedThreadPool(new NamePrefixThreadFactory(this.methodName));
+        this.executor = Executors.newCachedThreadPool(new NamePrefixThreadFactory(this.methodName == null ? this.processName : this.methodName));
+        this.latency = new LatencyHistogram();
         this.executorRunning = new AtomicInteger(0);
         /*
         for (int i = 0; i < this.maxpoolsize; i++) {
@@ -80,6 +125,8 @@ public class WorkflowProcessor<J extends WorkflowJob> {
         this.execTime = 0;
         this.passOnTime = 0;
         this.execCount = 0;
+        this.batchCount = 0;
+        this.batchJobCount = 0;
 
         // store this object for easy monitoring
         processMonitor.add(this);
@@ -89,9 +136,16 @@ public class WorkflowProcessor<J extends WorkflowJob> {
         return this.environment;
     }
     
+    /**
+     * @return the name of the job method or null if the processor was created with a WorkflowTask
+     */
     public String getMethodName() {
         return this.methodName;
     }
+
+    public WorkflowTask<J> getTask() {
+        return this.task;
+    }
     
     public int getQueueSize() {
         if (this.input == null) return 0;
@@ -133,6 +187,45 @@ public class WorkflowProcessor<J extends WorkflowJob> {
         return j;
     }
 
+    /**
+     * take more jobs from the input queue to process them together with a job from take().
+     * This waits until the given number of jobs is collected or the time is over.
+     * A poison pill is not taken from the queue; it stays there for the executors.
+     * @param batch the collection where the jobs are added; it should contain the job from take()
+     * @param maxCount the maximum number of jobs to add
+     * @param maxTime the maximum time in milliseconds to wait for more jobs
+     * @return the number of added jobs
+     * @throws InterruptedException
+     */
+    public int drain(final Collection<J> batch, final int maxCount, final long maxTime) throws InterruptedException {
+        final BlockingQueue<J> queue = this.input;
+        int c = 0;
+        if (queue != null) {
+            final long timeout = System.currentTimeMillis() + maxTime;
+            while (c < maxCount) {
+                J j = queue.poll();
+                if (j == null) {
+                    // wait for the next job
+                    final long wait = timeout - System.currentTimeMillis();
+                    if (wait <= 0) break;
+                    final long t = System.currentTimeMillis();
+                    j = queue.poll(wait, TimeUnit.MILLISECONDS);
+                    this.blockTime += System.currentTimeMillis() - t;
+                    if (j == null) break;
+                }
+                if (j == WorkflowJob.poisonPill || j.status == WorkflowJob.STATUS_POISON) {
+                    queue.put(j); // give it back to the executors
+                    break;
+                }
+                batch.add(j);
+                c++;
+            }
+        }
+        this.batchCount++;
+        this.batchJobCount += c + 1;
+        return c;
+    }
+
     public void passOn(final J next) {
         // don't mix this method up with enQueue()!
         // this method enqueues into the _next_ queue, not this queue!
@@ -169,14 +262,13 @@ public class WorkflowProcessor<J extends WorkflowJob> {
         this.input = i;
     }
 
-    @SuppressWarnings("unchecked")
     public void enQueue(final J in) {
         // ensure that enough job executors are running
         if (this.input == null || this.executor == null || this.executor.isShutdown() || this.executor.isTerminated()) {
             // execute serialized without extra thread
             //Log.logWarning("PROCESSOR", "executing job " + environment.getClass().getName() + "." + methodName + " serialized");
             try {
-                final J out = (J) InstantBlockingThread.execMethod(this.environment, this.methodName).invoke(this.environment, new Object[]{in});
+                final J out = this.task.process(in);
                 if (out != null && this.output != null) {
                     this.output.enQueue(out);
                 }
@@ -262,6 +354,7 @@ public class WorkflowProcessor<J extends WorkflowJob> {
     protected void increaseJobTime(final long time) {
         this.execTime += time;
         this.execCount++;
+        this.latency.add(time);
     }
 
     public String getName() {
@@ -300,6 +393,23 @@ public class WorkflowProcessor<J extends WorkflowJob> {
         return this.execCount;
     }
 
+    /**
+     * the number of processed jobs; in case that jobs are processed in batches with drain(), this is
+     * the sum of the jobs of all batches, otherwise it is the number of executions
+     * @return
+     */
+    public long getJobCount() {
+        return this.batchCount == 0 ? this.execCount : this.execCount - this.batchCount + this.batchJobCount;
+    }
+
+    /**
+     * the average number of jobs which were processed together; this is 1 if drain() is not used
+     * @return
+     */
+    public double getAverageBatchSize() {
+        return this.batchCount == 0 ? 1.0d : ((double) this.batchJobCount) / this.batchCount;
+    }
+
     /**
      * the passOn time is the time that a put() takes to enqueue a result value to the next queue
      * in case that the target queue is limited and may be full, this value may increase
@@ -309,4 +419,32 @@ public class WorkflowProcessor<J extends WorkflowJob> {
         return this.passOnTime;
     }
 
+    /**
+     * the latency histogram contains the exec times of all jobs of this stage
+     * @return
+     */
+    public LatencyHistogram getLatencyHistogram() {
+        return this.latency;
+    }
+
+    /**
+     * a task which calls a job method of an environment object by reflection
+     */
+    private static class MethodTask<J extends WorkflowJob> implements WorkflowTask<J> {
+
+        private final Object environment;
+        private final Method method;
+
+        public MethodTask(final Object env, final String jobExecMethod) {
+            this.method = InstantBlockingThread.execMethod(env, jobExecMethod);
+            this.environment = (env instanceof Class<?>) ? null : env;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public J process(final J in) throws Exception {
+            return (J) this.method.invoke(this.environment, new Object[]{in});
+        }
+    }
+
 }
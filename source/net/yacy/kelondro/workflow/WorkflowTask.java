@@ -0,0 +1,38 @@
+// WorkflowTask.java
+// (C) by the YaCy developers; http://yacy.net
+// first published on http://yacy.net
+//
+// LICENSE
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.kelondro.workflow;
+
+/**
+ * the processing step of a WorkflowProcessor stage.
+ * A task is called for each job in the input queue of the stage; the result is passed on
+ * to the next stage, if there is one.
+ */
+public interface WorkflowTask<J extends WorkflowJob> {
+
+    /**
+     * process one job
+     * @param in the job from the input queue
+     * @return the job for the next stage or null if nothing shall be passed on
+     * @throws Exception
+     */
+    public J process(J in) throws Exception;
+
+}
@@ -85,15 +85,14 @@ public class DHTSelection {
         Collection<Seed> extraSeeds = new HashSet<Seed>();
         
         if (seedDB != null) {
-            final OrderedScoreMap<Seed> seedSelection = new OrderedScoreMap<Seed>(null);
+            final OrderedScoreMap<SeedRecord> seedSelection = new OrderedScoreMap<SeedRecord>(null);
+            final Set<String> omitHashes = new HashSet<String>();
+            if (omit != null) for (final Seed s: omit) omitHashes.add(s.hash);
             
-            // create sets that contains only robinson/node/large/young peers
-            Iterator<Seed> dhtEnum = seedDB.seedsConnected(true, false, null, 0.50f);
-            Seed seed;
-            while (dhtEnum.hasNext()) {
-                seed = dhtEnum.next();
-                if (seed == null) continue;
-                if (omit != null && omit.contains(seed)) continue; // sort out peers that are target for DHT
+            // create sets that contains only robinson/node/large/young peers; the selection is done on the typed seed records
+            for (final SeedRecord seed: seedDB.recordsConnected()) {
+                if (seed.getVersion() < 0.50d && seed.getVersion() != 0.0d) continue; // include 0.0 to access always developer peers
+                if (omitHashes.contains(seed.hash)) continue; // sort out peers that are target for DHT
                 if (seed.isLastSeenTimeout(3600000)) continue; // do not ask peers that had not been seen more than one hour (happens during a startup situation)
                 if (!seed.getFlagSolrAvailable()) continue; // extra peers always use solr direct, skip if solr interface is not available
                 if (!seed.getFlagAcceptRemoteIndex() && seed.matchPeerTags(wordhashes)) seedSelection.dec(seed, r.nextInt(10) + 2); // robinson peers with matching peer tags
@@ -109,11 +108,13 @@ public class DHTSelection {
                 }
             }
             
-            // select the maxount
-            Iterator<Seed> i = seedSelection.iterator();
+            // select the maxount; only the selected peers are loaded from the seed table
+            Iterator<SeedRecord> i = seedSelection.iterator();
             int count = 0;
-            while (i.hasNext() && count++ < maxcount) {
-                seed = i.next();
+            while (i.hasNext() && count < maxcount) {
+                final Seed seed = seedDB.getConnected(i.next().hash);
+                if (seed == null) continue; // disconnected in the meantime
+                count++;
                 if (RemoteSearch.log.isInfo()) {
                     RemoteSearch.log.info("selectPeers/extra: " + seed.hash + ":" + seed.getName() + ", " + seed.getLinkCount() + " URLs" +
                             (seed.getLinkCount() >= 1000000 ? " LARGE-SIZE" : "") +
@@ -278,7 +279,7 @@ public class DHTSelection {
     
     private static class seedDHTEnum implements Iterator<Seed> {
 
-        private Iterator<Seed> e;
+        private Iterator<SeedRecord> e;
         private int steps;
         private final SeedDB seedDB;
         private boolean alsoMyOwn;
@@ -288,7 +289,7 @@ public class DHTSelection {
         private seedDHTEnum(final SeedDB seedDB, final byte[] firstHash, final boolean alsoMyOwn) {
             this.seedDB = seedDB;
             this.steps = seedDB.sizeConnected() + ((alsoMyOwn) ? 1 : 0);
-            this.e = seedDB.seedsConnected(true, false, firstHash, yacyVersion.YACY_HANDLES_COLLECTION_INDEX);
+            this.e = seedDB.recordsConnected(firstHash);
             this.pass = 1;
             this.alsoMyOwn = alsoMyOwn;
             if (alsoMyOwn) {
@@ -305,16 +306,22 @@ public class DHTSelection {
         }
 
         public Seed nextInternal() {
-            if (this.steps == 0) return null;
-            this.steps--;
+            while (this.steps > 0) {
+                this.steps--;
 
-            if (!this.e.hasNext() && this.pass == 1) {
-                // rotate from the beginning; this closes the ordering of the DHT at the ends
-                this.e = this.seedDB.seedsConnected(true, false, null, yacyVersion.YACY_HANDLES_COLLECTION_INDEX);
-                this.pass = 2;
-            }
-            if (this.e.hasNext()) {
-                return this.e.next();
+                if (!this.e.hasNext() && this.pass == 1) {
+                    // rotate from the beginning; this closes the ordering of the DHT at the ends
+                    this.e = this.seedDB.recordsConnected(null);
+                    this.pass = 2;
+                }
+                if (!this.e.hasNext()) break;
+
+                // the version and flag is checked on the seed record; only seeds which accept a remote index are loaded
+                final SeedRecord record = this.e.next();
+                if (record.getVersion() < yacyVersion.YACY_HANDLES_COLLECTION_INDEX && record.getVersion() != 0.0d) continue; // include 0.0 to access always developer peers
+                if (!record.getFlagAcceptRemoteIndex()) continue;
+                final Seed seed = this.seedDB.getConnected(record.hash);
+                if (seed != null) return seed;
             }
             this.steps = 0;
             return null;
@@ -28,9 +28,11 @@ package net.yacy.peers;
 import java.io.IOException;
 import java.lang.reflect.Array;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 import net.yacy.cora.document.encoding.ASCII;
@@ -44,6 +46,7 @@ import net.yacy.kelondro.data.word.WordReference;
 import net.yacy.kelondro.index.RowHandleSet;
 import net.yacy.kelondro.rwi.ReferenceContainer;
 import net.yacy.kelondro.workflow.WorkflowProcessor;
+import net.yacy.kelondro.workflow.WorkflowTask;
 import net.yacy.search.Switchboard;
 import net.yacy.search.SwitchboardConstants;
 import net.yacy.search.index.Segment;
@@ -80,6 +83,10 @@ public class Dispatcher {
      * 9   concurrency ends for the transmission, if the wanted number of redundant peers received the entry,
      *     or the target queue runs out of entries. If the target queue is empty, the transmission is
      *     called failed. In case of a fail, the RWI fragment is put back into the backend index structure
+     * The transmission (7) is pipelined in two stages: the RWI transmission and the transmission of the
+     * URLs which the target peer requested in its answer. The URLs of one chunk are transmitted while
+     * the RWIs of the next chunks are transmitted. Only one chunk per target peer is in the RWI stage at
+     * the same time, so a slow peer blocks only one transmission thread.
      */
 
     /**
@@ -99,6 +106,10 @@ public class Dispatcher {
 
     // transmission process
     private WorkflowProcessor<Transmission.Chunk> indexingTransmissionProcessor;
+    private WorkflowProcessor<Transmission.Chunk> urlTransmissionProcessor;
+
+    // the hashes of the peers which currently receive a chunk in the RWI stage
+    private final Set<String> activeTargets;
 
     // transmission object
     private final Transmission transmission;
@@ -120,12 +131,31 @@ public class Dispatcher {
             gzipBody,
             timeout);
 
+        this.activeTargets = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
         final int concurrentSender = Math.min(8, WorkflowProcessor.availableCPU);
+        this.urlTransmissionProcessor = new WorkflowProcessor<Transmission.Chunk>(
+                "transferDocumentURL",
+                "This is the URL transmission process which follows the RWI transmission",
+                new String[]{"RWI/Cache/Collections"},
+                new WorkflowTask<Transmission.Chunk>() {
+                    @Override
+                    public Transmission.Chunk process(final Transmission.Chunk chunk) {
+                        return Dispatcher.this.transferDocumentURL(chunk);
+                    }
+                },
+                concurrentSender * 3, null, concurrentSender);
         this.indexingTransmissionProcessor = new WorkflowProcessor<Transmission.Chunk>(
                 "transferDocumentIndex",
                 "This is the RWI transmission process",
                 new String[]{"RWI/Cache/Collections"},
-                this, "transferDocumentIndex", concurrentSender * 3, null, concurrentSender);
+                new WorkflowTask<Transmission.Chunk>() {
+                    @Override
+                    public Transmission.Chunk process(final Transmission.Chunk chunk) {
+                        return Dispatcher.this.transferDocumentIndex(chunk);
+                    }
+                },
+                concurrentSender * 3, this.urlTransmissionProcessor, concurrentSender);
     }
 
     public int bufferSize() {
@@ -332,54 +362,81 @@ public class Dispatcher {
 
     /**
      * PROCESS(5)
-     * take the largest container from the write buffer and put it into the 'next' array,
-     * where it waits to be processed.
+     * take the largest containers from the write buffer and put them into the 'next' array,
+     * where they wait to be processed. Containers for peers which currently receive
+     * another chunk are not taken; as many containers are taken as transmission threads are free.
      * This method returns true if a container was dequeued, false if not
      */
     public boolean dequeueContainer() {
     	if (this.transmissionBuffer == null) return false;
-        if (this.indexingTransmissionProcessor.getQueueSize() > this.indexingTransmissionProcessor.getMaxConcurrency()) return false;
-        String maxtarget = null;
-        int maxsize = -1;
-        for (final Map.Entry<String, Transmission.Chunk> chunk: this.transmissionBuffer.entrySet()) {
-            if (chunk.getValue().containersSize() > maxsize) {
-                maxsize = chunk.getValue().containersSize();
-                maxtarget = chunk.getKey();
+        boolean dequeued = false;
+        while (this.activeTargets.size() < this.indexingTransmissionProcessor.getMaxConcurrency()) {
+            String maxtarget = null;
+            int maxsize = -1;
+            for (final Map.Entry<String, Transmission.Chunk> chunk: this.transmissionBuffer.entrySet()) {
+                if (this.activeTargets.contains(chunk.getKey())) continue;
+                if (chunk.getValue().containersSize() > maxsize) {
+                    maxsize = chunk.getValue().containersSize();
+                    maxtarget = chunk.getKey();
+                }
             }
+            if (maxsize < 0) break;
+            final Transmission.Chunk chunk = this.transmissionBuffer.remove(maxtarget);
+            if (chunk == null) continue;
+            this.activeTargets.add(maxtarget);
+            this.indexingTransmissionProcessor.enQueue(chunk);
+            dequeued = true;
         }
-        if (maxsize < 0) return false;
-        final Transmission.Chunk chunk = this.transmissionBuffer.remove(maxtarget);
-        this.indexingTransmissionProcessor.enQueue(chunk);
-        return true;
+        return dequeued;
     }
 
     /**
-     * transfer job: this method is called using reflection from the switchboard
-     * the method is called as a Workflow process. That means it is always called whenever
+     * transfer job: this method is the task of the first stage of the transmission workflow.
+     * It is always called whenever
      * a job is placed in the workflow queue. This happens in dequeueContainer()
+     * The method transmits the RWIs; a successfully transmitted chunk is passed to transferDocumentURL()
      * @param chunk
      * @return
      */
     public Transmission.Chunk transferDocumentIndex(final Transmission.Chunk chunk) {
+        try {
+            // try to keep the system healthy; sleep as long as System load is too high
+            while (Protocol.metadataRetrievalRunning.get() > 0) try {Thread.sleep(1000);} catch (InterruptedException e) {break;}
 
-        // try to keep the system healthy; sleep as long as System load is too high
-        while (Protocol.metadataRetrievalRunning.get() > 0) try {Thread.sleep(1000);} catch (InterruptedException e) {break;}
-        
-        // we must test this here again
-        while (Memory.load() > Switchboard.getSwitchboard().getConfigFloat(SwitchboardConstants.INDEX_DIST_LOADPREREQ, 2.0f)) try {Thread.sleep(10000);} catch (InterruptedException e) {break;}
-        
-        // do the transmission
-        final boolean success = chunk.transmit();
-        if (success) return chunk;
+            // we must test this here again
+            while (Memory.load() > Switchboard.getSwitchboard().getConfigFloat(SwitchboardConstants.INDEX_DIST_LOADPREREQ, 2.0f)) try {Thread.sleep(10000);} catch (InterruptedException e) {break;}
+
+            // do the transmission
+            final boolean success = chunk.transmitRWI();
+            if (success) return chunk;
+        } finally {
+            this.activeTargets.remove(chunk.dhtTarget().hash);
+        }
 
         this.log.info("STORE: Chunk " + chunk.dhtTarget().getName() + " does not respond or accept the dht index, putting back index to backend");
         chunk.restore();
         return null;
     }
 
+    /**
+     * transfer job: this method is the task of the second stage of the transmission workflow.
+     * It transmits the URLs which the target peer requested after the RWI transmission.
+     * @param chunk
+     * @return
+     */
+    public Transmission.Chunk transferDocumentURL(final Transmission.Chunk chunk) {
+        final boolean success = chunk.transmitURL();
+        if (success) return chunk;
+
+        this.log.info("STORE: Chunk " + chunk.dhtTarget().getName() + " does not accept the urls of the dht index, putting back index to backend");
+        chunk.restore();
+        return null;
+    }
+
     public void close() {
         // removes all entries from the dispatcher and puts them back to a RAMRI
         if (this.indexingTransmissionProcessor != null) this.indexingTransmissionProcessor.shutdown();
+        if (this.urlTransmissionProcessor != null) this.urlTransmissionProcessor.shutdown();
         if (this.transmissionBuffer != null) {
         	outerLoop: for (final Map.Entry<String, Transmission.Chunk> e : this.transmissionBuffer.entrySet()) {
         		for (final ReferenceContainer<WordReference> i : e.getValue()) try {
@@ -396,6 +453,10 @@ public class Dispatcher {
         	this.indexingTransmissionProcessor.clear();
         }
         this.indexingTransmissionProcessor = null;
+        if (this.urlTransmissionProcessor != null) {
+            this.urlTransmissionProcessor.clear();
+        }
+        this.urlTransmissionProcessor = null;
     }
 
 }
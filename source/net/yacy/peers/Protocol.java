@@ -87,6 +87,7 @@ import net.yacy.cora.federate.solr.connector.SolrConnector;
 import net.yacy.cora.federate.solr.instance.RemoteInstance;
 import net.yacy.cora.order.Base64Order;
 import net.yacy.cora.order.Digest;
+import net.yacy.cora.protocol.ByteArrayBody;
 import net.yacy.cora.protocol.ClientIdentification;
 import net.yacy.cora.protocol.Domains;
 import net.yacy.cora.protocol.http.HTTPClient;
@@ -106,6 +107,7 @@ import net.yacy.crawler.data.ResultURLs.EventOrigin;
 import net.yacy.kelondro.data.meta.URIMetadataNode;
 import net.yacy.kelondro.data.word.Word;
 import net.yacy.kelondro.data.word.WordReference;
+import net.yacy.kelondro.data.word.WordReferenceCodec;
 import net.yacy.kelondro.data.word.WordReferenceFactory;
 import net.yacy.kelondro.rwi.Reference;
 import net.yacy.kelondro.rwi.ReferenceContainer;
@@ -1459,6 +1461,29 @@ public final class Protocol {
         final boolean gzipBody,
         final int timeout) {
 
+        final List<String> unknownURLs = new ArrayList<String>();
+        final String error = transferIndexRWI(seeds, targetSeed, indexes, urlRefs, gzipBody, timeout, unknownURLs);
+        if (error != null) return error;
+        if (unknownURLs.isEmpty()) return null; // all url's known, we are ready here
+        return transferIndexURL(seeds, targetSeed, unknownURLs.toArray(new String[unknownURLs.size()]), urlRefs, segment, gzipBody, timeout);
+    }
+
+    /**
+     * first phase of transferIndex(): transfer the RWIs without the URLs.
+     * If the transmission fails, return a string describing the cause. If everything is ok, return null.
+     *
+     * @param unknownURLs a list where the url hashes are added which are unknown to the target peer
+     * @return
+     */
+    public static String transferIndexRWI(
+        final SeedDB seeds,
+        final Seed targetSeed,
+        final ReferenceContainerCache<WordReference> indexes,
+        final HandleSet urlRefs,
+        final boolean gzipBody,
+        final int timeout,
+        final List<String> unknownURLs) {
+
         // check if we got all necessary urls in the urlCache (only for debugging)
         if (Network.log.isFine()) {
             Iterator<WordReference> eenum;
@@ -1477,7 +1502,7 @@ public final class Protocol {
         }
         
         // transfer the RWI without the URLs
-        Map<String, String> in = transferRWI(targetSeed, indexes, gzipBody, timeout);
+        Map<String, String> in = transferRWI(targetSeed, indexes, gzipBody, timeout, targetSeed.getFlagBinaryRWI());
 
         if ( in == null ) {
             String errorCause = "no connection from transferRWI";
@@ -1514,14 +1539,33 @@ public final class Protocol {
         } // all url's known
 
         EventChannel.channels(EventChannel.DHTSEND).addMessage(new RSSMessage("Sent " + indexes.size() + " RWIs " + indexes.toString() + " to " + targetSeed.getName() + "/[" + targetSeed.hash + "], " + uhs.length + " URLs there unknown", "", targetSeed.hash));
+        for (final String uh: uhs) unknownURLs.add(uh);
+        return null;
+    }
 
-        in = transferURL(targetSeed, uhs, urlRefs, segment, gzipBody, timeout);
+    /**
+     * second phase of transferIndex(): transfer the URLs which are unknown to the target peer.
+     * If the transmission fails, return a string describing the cause. If everything is ok, return null.
+     *
+     * @param uhs the url hashes which had been requested by the target peer in the first phase
+     * @return
+     */
+    public static String transferIndexURL(
+        final SeedDB seeds,
+        final Seed targetSeed,
+        final String[] uhs,
+        final HandleSet urlRefs,
+        final Segment segment,
+        final boolean gzipBody,
+        final int timeout) {
+
+        final Map<String, String> in = transferURL(targetSeed, uhs, urlRefs, segment, gzipBody, timeout);
 
         if ( in == null ) {
             return "no connection from transferURL";
         }
 
-        result = in.get("result");
+        final String result = in.get("result");
         if ( result == null ) {
             String errorCause = "no result from transferURL";
             seeds.peerActions.peerDeparture(targetSeed, errorCause); // disconnect unavailable peer
@@ -1542,11 +1586,17 @@ public final class Protocol {
         return null;
     }
 
+    /**
+     * send the RWIs to the target peer
+     * @param binary if true, the RWIs are sent in the binary format of WordReferenceCodec, otherwise as text lines.
+     *   The text format is used as fallback if the target peer does not accept the binary format
+     */
     private static Map<String, String> transferRWI(
         final Seed targetSeed,
         final ReferenceContainerCache<WordReference> indexes,
         boolean gzipBody,
-        final int timeout) {
+        final int timeout,
+        final boolean binary) {
         String ip = targetSeed.getIP();
         if ( ip == null ) {
             Network.log.warn("no address for transferRWI");
@@ -1563,18 +1613,22 @@ public final class Protocol {
         }
 
         int indexcount = 0;
-        final StringBuilder entrypost = new StringBuilder(indexes.size() * 73);
-        Iterator<WordReference> eenum;
-        Reference entry;
-        for ( final ReferenceContainer<WordReference> ic : indexes ) {
-            eenum = ic.entries();
-            while ( eenum.hasNext() ) {
-                entry = eenum.next();
-                entrypost
-                    .append(ASCII.String(ic.getTermHash()))
-                    .append(entry.toPropertyForm())
-                    .append(serverCore.CRLF_STRING);
-                indexcount++;
+        final StringBuilder entrypost = new StringBuilder(binary ? 0 : indexes.size() * 73);
+        if (binary) {
+            for ( final ReferenceContainer<WordReference> ic : indexes ) indexcount += ic.size();
+        } else {
+            Iterator<WordReference> eenum;
+            Reference entry;
+            for ( final ReferenceContainer<WordReference> ic : indexes ) {
+                eenum = ic.entries();
+                while ( eenum.hasNext() ) {
+                    entry = eenum.next();
+                    entrypost
+                        .append(ASCII.String(ic.getTermHash()))
+                        .append(entry.toPropertyForm())
+                        .append(serverCore.CRLF_STRING);
+                    indexcount++;
+                }
             }
         }
 
@@ -1589,7 +1643,16 @@ public final class Protocol {
             final Map<String, ContentBody> parts = basicRequestParts(Switchboard.getSwitchboard(), targetSeed.hash, salt);
             parts.put("wordc", UTF8.StringBody(Integer.toString(indexes.size())));
             parts.put("entryc", UTF8.StringBody(Integer.toString(indexcount)));
-            parts.put("indexes", UTF8.StringBody(entrypost.toString()));
+            final int payloadSize;
+            if (binary) {
+                // the binary form is already compressed; the filename extension makes the receiver transport it as base64
+                final byte[] indexesb = WordReferenceCodec.encode(indexes);
+                parts.put("indexesb", new ByteArrayBody(indexesb, "indexes.gz"));
+                payloadSize = indexesb.length;
+            } else {
+                parts.put("indexes", UTF8.StringBody(entrypost.toString()));
+                payloadSize = entrypost.length();
+            }
             // final byte[] content = HTTPConnector.getConnector(MultiProtocolURI.yacybotUserAgent).post(new MultiProtocolURI("http://" + address + "/yacy/transferRWI.html"), timeout, targetSeed.getHexHash() + ".yacyh", parts, gzipBody);
             final HTTPClient httpClient = new HTTPClient(ClientIdentification.yacyInternetCrawlerAgent, timeout);
             final byte[] content =
@@ -1597,13 +1660,17 @@ public final class Protocol {
                     new MultiProtocolURL("http://" + address + "/yacy/transferRWI.html"),
                     targetSeed.getHexHash() + ".yacyh",
                     parts,
-                    gzipBody, true);
+                    gzipBody && !binary, true);
             final Iterator<String> v = FileUtils.strings(content);
             // this should return a list of urlhashes that are unknown
 
             final Map<String, String> result = FileUtils.table(v);
+            if (binary && "missing indexes".equals(result.get("result"))) {
+                // the peer does not know the binary format; send the text format
+                return transferRWI(targetSeed, indexes, gzipBody, timeout, false);
+            }
             // return the transfered index data in bytes (for debugging only)
-            result.put("indexPayloadSize", Integer.toString(entrypost.length()));
+            result.put("indexPayloadSize", Integer.toString(payloadSize));
             return result;
         } catch (final Exception e ) {
             Network.log.info("yacyClient.transferRWI to " + address + " error: " + e.getMessage());
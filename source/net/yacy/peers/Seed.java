@@ -152,7 +152,7 @@ public class Seed implements Cloneable, Comparable<Seed>, Comparator<Seed>
     
     /** UTC-Offset */
     public static final String UTC = "UTC";
-    private static final String PEERTAGS = "Tags";
+    static final String PEERTAGS = "Tags";
 
     /** the speed of indexing (pages/minute) of the peer */
     public static final String ISPEED = "ISpeed";
@@ -210,6 +210,7 @@ public class Seed implements Cloneable, Comparable<Seed>, Comparator<Seed>
     private static final int FLAG_ACCEPT_REMOTE_INDEX = 2;
     private static final int FLAG_ROOT_NODE = 3;
     private static final int FLAG_SSL_AVAILABLE = 4;
+    private static final int FLAG_BINARY_RWI = 5;
 
     public static final String DFLT_NETWORK_UNIT = "freeworld";
     public static final String DFLT_NETWORK_GROUP = "";
@@ -222,7 +223,21 @@ public class Seed implements Cloneable, Comparable<Seed>, Comparator<Seed>
     /** a set of identity founding values, eg. IP, name of the peer, YaCy-version, ... */
     private final ConcurrentMap<String, String> dna;
     private long birthdate; // keep this value in ram since it is often used and may cause lockings in concurrent situations.
-    Bitfield bitfield = null;
+    // typed values which are parsed from the dna strings only once; they are re-parsed if the string was replaced
+    private volatile Parsed flags = null, version = null, lastSeen = null;
+
+    /**
+     * a dna string together with its parsed value. The holder is immutable, so the string and
+     * the value are always replaced together when the holder is replaced.
+     */
+    private static final class Parsed {
+        private final String source;
+        private final long value;
+        private Parsed(final String source, final long value) {
+            this.source = source;
+            this.value = value;
+        }
+    }
     
     public Seed(final String theHash, final ConcurrentMap<String, String> theDna) {
         // create a seed with a pre-defined hash map
@@ -706,12 +721,18 @@ public class Seed implements Cloneable, Comparable<Seed>, Comparator<Seed>
      * @return the YaCy version of this peer as a float or <code>0</code> if no valid value could be retrieved
      *         from this yacySeed object
      */
-    public final Double getVersion() {
+    public final double getVersion() {
+        final String v = get(Seed.VERSION, Seed.ZERO);
+        final Parsed parsed = this.version;
+        if (parsed != null && parsed.source == v) return Double.longBitsToDouble(parsed.value);
+        double d;
         try {
-            return Double.parseDouble(get(Seed.VERSION, Seed.ZERO));
+            d = Double.parseDouble(v);
         } catch (final NumberFormatException e ) {
-            return 0.0d;
+            d = 0.0d;
         }
+        this.version = new Parsed(v, Double.doubleToRawLongBits(d));
+        return d;
     }
 
     /**
@@ -799,17 +820,21 @@ public class Seed implements Cloneable, Comparable<Seed>, Comparator<Seed>
      * @return the last seen time converted to UTC in milliseconds
      */
     public final long getLastSeenUTC() {
+        final String ls = get(Seed.LASTSEEN, "20040101000000");
+        final Parsed parsed = this.lastSeen;
+        if (parsed != null && parsed.source == ls) return parsed.value;
         try {
             final GenericFormatter my_SHORT_SECOND_FORMATTER =
                 new GenericFormatter(GenericFormatter.FORMAT_SHORT_SECOND, GenericFormatter.time_second); // use our own formatter to prevent concurrency locks with other processes
-            final long t = my_SHORT_SECOND_FORMATTER.parse(get(Seed.LASTSEEN, "20040101000000"), 0).getTime().getTime();
+            final long t = my_SHORT_SECOND_FORMATTER.parse(ls, 0).getTime().getTime();
             // getTime creates a UTC time number. But in this case java thinks, that the given
             // time string is a local time, which has a local UTC offset applied.
             // Therefore java subtracts the local UTC offset, to get a UTC number.
             // But the given time string is already in UTC time, so the subtraction
             // of the local UTC offset is wrong. We correct this here by adding the local UTC
             // offset again.
-            return t /*+ DateFormatter.UTCDiff()*/;
+            this.lastSeen = new Parsed(ls, t /*+ DateFormatter.UTCDiff()*/);
+            return t;
         } catch (final java.text.ParseException e ) { // in case of an error make seed look old!!!
             return System.currentTimeMillis() - AbstractFormatter.dayMillis;
         } catch (final java.lang.NumberFormatException e ) {
@@ -905,11 +930,23 @@ public class Seed implements Cloneable, Comparable<Seed>, Comparator<Seed>
     }
 
     private boolean getFlag(final int flag) {
-        if (this.bitfield == null) {
-            final String flags = get(Seed.FLAGS, Seed.FLAGSZERO);
-            this.bitfield = new Bitfield(ASCII.getBytes(flags));
+        return (getFlags() & (1 << flag)) != 0;
+    }
+
+    /**
+     * @return the flags as bits of an integer, bit n is the flag n
+     */
+    private int getFlags() {
+        final String flags = get(Seed.FLAGS, Seed.FLAGSZERO);
+        final Parsed parsed = this.flags;
+        if (parsed != null && parsed.source == flags) return (int) parsed.value;
+        final Bitfield bitfield = new Bitfield(ASCII.getBytes(flags));
+        int bits = 0;
+        for (int i = 0; i < Math.min(32, bitfield.length()); i++) {
+            if (bitfield.get(i)) bits |= 1 << i;
         }
-        return this.bitfield.get(flag);
+        this.flags = new Parsed(flags, bits);
+        return bits;
     }
 
     private void setFlag(final int flag, final boolean value) {
@@ -920,7 +957,6 @@ public class Seed implements Cloneable, Comparable<Seed>, Comparator<Seed>
         final Bitfield f = new Bitfield(ASCII.getBytes(flags));
         f.set(flag, value);
         this.dna.put(Seed.FLAGS, UTF8.String(f.getBytes()));
-        this.bitfield = null;
     }
 
     public final void setFlagDirectConnect(final boolean value) {
@@ -969,6 +1005,17 @@ public class Seed implements Cloneable, Comparable<Seed>, Comparator<Seed>
         return getFlag(FLAG_SSL_AVAILABLE);
     }
 
+    /**
+     * @param value true if the peer accepts RWI transmissions in the binary format of WordReferenceCodec
+     */
+    public final void setFlagBinaryRWI(final boolean value) {
+        setFlag(FLAG_BINARY_RWI, value);
+    }
+
+    public final boolean getFlagBinaryRWI() {
+        return getFlag(FLAG_BINARY_RWI);
+    }
+
     /**
      * remembers status of remote Solr interface dynamicly
      * should not be used for the local peer
@@ -996,10 +1043,10 @@ public class Seed implements Cloneable, Comparable<Seed>, Comparator<Seed>
 
     /**
      * set unused flags to zero
-     * currently last used flag is FLAG_SSL_AVAILABLE=4 (2015-10-24)
+     * currently last used flag is FLAG_BINARY_RWI=5
      */
     public final void setUnusedFlags() {
-        for ( int i = 5; i < 20; i++ ) {
+        for ( int i = 6; i < 20; i++ ) {
             setFlag(i, false);
         }
     }
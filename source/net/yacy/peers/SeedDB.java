@@ -32,6 +32,7 @@ import java.io.PrintWriter;
 import java.net.InetAddress;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -39,10 +40,12 @@ import java.util.Set;
 import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import net.yacy.cora.document.encoding.ASCII;
 import net.yacy.cora.document.encoding.UTF8;
+import net.yacy.cora.date.GenericFormatter;
 import net.yacy.cora.document.id.DigestURL;
 import net.yacy.cora.federate.yacy.Distribution;
 import net.yacy.cora.order.Base64Order;
@@ -85,6 +88,7 @@ public final class SeedDB implements AlternativeDomainNames {
     private File seedActiveDBFile, seedPassiveDBFile, seedPotentialDBFile;
     private File myOwnSeedFile;
     private MapDataMining seedActiveDB, seedPassiveDB, seedPotentialDB;
+    private final ConcurrentSkipListMap<byte[], SeedRecord> activeRecords; // typed copies of the connected seeds, ordered by hash
 
     protected int lastSeedUpload_seedDBSize = 0;
     public long lastSeedUpload_timeStamp = System.currentTimeMillis();
@@ -115,11 +119,13 @@ public final class SeedDB implements AlternativeDomainNames {
         this.myOwnSeedFile = myOwnSeedFile;
         this.netRedundancy = redundancy;
         this.scheme = new Distribution(partitionExponent);
+        this.activeRecords = new ConcurrentSkipListMap<byte[], SeedRecord>(Base64Order.enhancedCoder);
 
         // set up seed database
         this.seedActiveDB = openSeedTable(this.seedActiveDBFile);
         this.seedPassiveDB = openSeedTable(this.seedPassiveDBFile);
         this.seedPotentialDB = openSeedTable(this.seedPotentialDBFile);
+        loadActiveRecords();
 
         // check if we are in the seedCaches: this can happen if someone else published our seed
         removeMySeed();
@@ -165,6 +171,7 @@ public final class SeedDB implements AlternativeDomainNames {
         this.seedActiveDB = openSeedTable(this.seedActiveDBFile);
         this.seedPassiveDB = openSeedTable(this.seedPassiveDBFile);
         this.seedPotentialDB = openSeedTable(this.seedPotentialDBFile);
+        loadActiveRecords();
 
         initMySeed();
         this.mySeed.setName(peername);
@@ -276,6 +283,7 @@ public final class SeedDB implements AlternativeDomainNames {
         try {
             final byte[] mySeedHash = ASCII.getBytes(this.mySeed.hash);
             this.seedActiveDB.delete(mySeedHash);
+            this.activeRecords.remove(mySeedHash);
             this.seedPassiveDB.delete(mySeedHash);
             this.seedPotentialDB.delete(mySeedHash);
         } catch (final IOException e) { ConcurrentLog.warn("yacySeedDB", "could not remove hash ("+ e.getClass() +"): "+ e.getMessage()); }
@@ -326,7 +334,10 @@ public final class SeedDB implements AlternativeDomainNames {
         return seedDB;
     }
 
-    public synchronized void resetActiveTable() { this.seedActiveDB = resetSeedTable(this.seedActiveDB, this.seedActiveDBFile); }
+    public synchronized void resetActiveTable() {
+        this.seedActiveDB = resetSeedTable(this.seedActiveDB, this.seedActiveDBFile);
+        this.activeRecords.clear();
+    }
     private synchronized void resetPassiveTable() { this.seedPassiveDB = resetSeedTable(this.seedPassiveDB, this.seedPassiveDBFile); }
     private synchronized void resetPotentialTable() { this.seedPotentialDB = resetSeedTable(this.seedPotentialDB, this.seedPotentialDBFile); }
 
@@ -338,6 +349,34 @@ public final class SeedDB implements AlternativeDomainNames {
         this.peerActions.close();
     }
 
+    private void loadActiveRecords() {
+        this.activeRecords.clear();
+        final Iterator<Seed> i = new seedEnum(true, false, null, null, this.seedActiveDB, 0.0d);
+        while (i.hasNext()) {
+            final Seed seed = i.next();
+            if (seed != null) this.activeRecords.put(ASCII.getBytes(seed.hash), new SeedRecord(seed));
+        }
+    }
+
+    /**
+     * the typed records of all connected peers. The records are maintained together with the active seed table,
+     * so a peer selection can iterate over them without reading and parsing the seed table.
+     * Use getConnected(hash) to get the complete seed of a selected record.
+     * @return the records ordered by peer hash
+     */
+    public Collection<SeedRecord> recordsConnected() {
+        return this.activeRecords.values();
+    }
+
+    /**
+     * iterate the typed records of the connected peers in hash order
+     * @param firstHash the hash where the iteration starts, null to start with the smallest hash
+     * @return the records
+     */
+    public Iterator<SeedRecord> recordsConnected(final byte[] firstHash) {
+        return (firstHash == null) ? this.activeRecords.values().iterator() : this.activeRecords.tailMap(firstHash, true).values().iterator();
+    }
+
     public Iterator<Seed> seedsSortedConnected(final boolean up, final String field) {
         // enumerates seed-type objects: all seeds sequentially ordered by field
         return new seedEnum(up, field, this.seedActiveDB);
@@ -420,25 +459,11 @@ public final class SeedDB implements AlternativeDomainNames {
      * @return the number of peers seen in the given time
      */
     public int sizeActiveSince(final long limitMinutes) {
-        int c = this.seedActiveDB.size();
-        Seed seed;
-        Iterator<Seed> i = seedsSortedDisconnected(false, Seed.LASTSEEN);
-        while (i.hasNext()) {
-            seed = i.next();
-            if (seed != null) {
-                if (Math.abs((System.currentTimeMillis() - seed.getLastSeenUTC()) / 1000 / 60) > limitMinutes) break;
-                c++;
-            }
-        }
-        i = seedsSortedPotential(false, Seed.LASTSEEN);
-        while (i.hasNext()) {
-            seed = i.next();
-            if (seed != null) {
-                if (Math.abs((System.currentTimeMillis() - seed.getLastSeenUTC()) / 1000 / 60) > limitMinutes) break;
-                c++;
-            }
-        }
-        return c;
+        // the sort cluster of the last-seen field holds the time in minutes, so the peers can be counted without loading them
+        final String limit = GenericFormatter.SHORT_SECOND_FORMATTER.format(new Date(System.currentTimeMillis() - limitMinutes * 60000L));
+        return this.seedActiveDB.size() +
+               this.seedPassiveDB.sizeAtLeast(Seed.LASTSEEN, limit) +
+               this.seedPotentialDB.sizeAtLeast(Seed.LASTSEEN, limit);
     }
 
      public int sizeConnected() {
@@ -469,6 +494,7 @@ public final class SeedDB implements AlternativeDomainNames {
         synchronized (this) {
             try {
                 this.seedActiveDB.insert(ASCII.getBytes(seed.hash), seedPropMap);
+                this.activeRecords.put(ASCII.getBytes(seed.hash), new SeedRecord(seed));
                 this.seedPassiveDB.delete(ASCII.getBytes(seed.hash));
                 this.seedPotentialDB.delete(ASCII.getBytes(seed.hash));
             } catch (final Exception e) {
@@ -483,6 +509,7 @@ public final class SeedDB implements AlternativeDomainNames {
         synchronized (this) {
             try {
                 this.seedActiveDB.delete(ASCII.getBytes(seed.hash));
+                this.activeRecords.remove(ASCII.getBytes(seed.hash));
                 this.seedPotentialDB.delete(ASCII.getBytes(seed.hash));
             } catch (final Exception e) { ConcurrentLog.warn("yacySeedDB", "could not remove hash ("+ e.getClass() +"): "+ e.getMessage()); }
             //seed.put(yacySeed.LASTSEEN, yacyCore.shortFormatter.format(new Date(yacyCore.universalTime())));
@@ -502,6 +529,7 @@ public final class SeedDB implements AlternativeDomainNames {
         synchronized (this) {
             try {
                 this.seedActiveDB.delete(ASCII.getBytes(seed.hash));
+                this.activeRecords.remove(ASCII.getBytes(seed.hash));
                 this.seedPassiveDB.delete(ASCII.getBytes(seed.hash));
             } catch (final Exception e) { ConcurrentLog.warn("yacySeedDB", "could not remove hash ("+ e.getClass() +"): "+ e.getMessage()); }
             //seed.put(yacySeed.LASTSEEN, yacyCore.shortFormatter.format(new Date(yacyCore.universalTime())));
@@ -569,11 +597,11 @@ public final class SeedDB implements AlternativeDomainNames {
     private Seed get(final byte[] hash, final MapDataMining database) {
         if (hash == null || hash.length == 0) return null;
         if ((this.mySeed != null) && (ASCII.String(hash).equals(this.mySeed.hash))) return this.mySeed;
-        final ConcurrentHashMap<String, String> entry = new ConcurrentHashMap<String, String>();
+        final ConcurrentHashMap<String, String> entry;
         try {
             final Map<String, String> map = database.get(hash);
             if (map == null) return null;
-            entry.putAll(map);
+            entry = new ConcurrentHashMap<String, String>(map);
         } catch (final IOException e) {
             ConcurrentLog.logException(e);
             return null;
@@ -621,6 +649,7 @@ public final class SeedDB implements AlternativeDomainNames {
         synchronized (this) {
             if (this.seedActiveDB.containsKey(ASCII.getBytes(seed.hash))) try {
                 this.seedActiveDB.insert(ASCII.getBytes(seed.hash), seedPropMap);
+                this.activeRecords.put(ASCII.getBytes(seed.hash), new SeedRecord(seed));
             } catch (final Exception e) {
                 Network.log.severe("ERROR add: seed.db corrupt (" + e.getMessage() + "); resetting seed.db", e);
                 resetActiveTable();
@@ -1001,13 +1030,13 @@ public final class SeedDB implements AlternativeDomainNames {
             } catch (final IOException e) {
                 ConcurrentLog.logException(e);
                 Network.log.severe("ERROR seedLinEnum: seed.db corrupt (" + e.getMessage() + "); resetting seed.db", e);
-                if (database == SeedDB.this.seedActiveDB) SeedDB.this.seedActiveDB = resetSeedTable(SeedDB.this.seedActiveDB, SeedDB.this.seedActiveDBFile);
+                if (database == SeedDB.this.seedActiveDB) SeedDB.this.resetActiveTable();
                 if (database == SeedDB.this.seedPassiveDB) SeedDB.this.seedPassiveDB = resetSeedTable(SeedDB.this.seedPassiveDB, SeedDB.this.seedPassiveDBFile);
                 this.it = null;
             } catch (final kelondroException e) {
                 ConcurrentLog.logException(e);
                 Network.log.severe("ERROR seedLinEnum: seed.db corrupt (" + e.getMessage() + "); resetting seed.db", e);
-                if (database == SeedDB.this.seedActiveDB) SeedDB.this.seedActiveDB = resetSeedTable(SeedDB.this.seedActiveDB, SeedDB.this.seedActiveDBFile);
+                if (database == SeedDB.this.seedActiveDB) SeedDB.this.resetActiveTable();
                 if (database == SeedDB.this.seedPassiveDB) SeedDB.this.seedPassiveDB = resetSeedTable(SeedDB.this.seedPassiveDB, SeedDB.this.seedPassiveDBFile);
                 this.it = null;
             }
@@ -1021,7 +1050,7 @@ public final class SeedDB implements AlternativeDomainNames {
             } catch (final kelondroException e) {
                 ConcurrentLog.logException(e);
                 Network.log.severe("ERROR seedLinEnum: seed.db corrupt (" + e.getMessage() + "); resetting seed.db", e);
-                if (database == SeedDB.this.seedActiveDB) SeedDB.this.seedActiveDB = resetSeedTable(SeedDB.this.seedActiveDB, SeedDB.this.seedActiveDBFile);
+                if (database == SeedDB.this.seedActiveDB) SeedDB.this.resetActiveTable();
                 if (database == SeedDB.this.seedPassiveDB) SeedDB.this.seedPassiveDB = resetSeedTable(SeedDB.this.seedPassiveDB, SeedDB.this.seedPassiveDBFile);
                 if (database == SeedDB.this.seedPotentialDB) SeedDB.this.seedPotentialDB = resetSeedTable(SeedDB.this.seedPotentialDB, SeedDB.this.seedPotentialDBFile);
                 this.it = null;
@@ -1061,7 +1090,7 @@ public final class SeedDB implements AlternativeDomainNames {
             } catch (final Exception e) {
                 ConcurrentLog.logException(e);
                 Network.log.severe("ERROR internalNext: seed.db corrupt (" + e.getMessage() + "); resetting seed.db", e);
-                if (this.database == SeedDB.this.seedActiveDB) SeedDB.this.seedActiveDB = resetSeedTable(SeedDB.this.seedActiveDB, SeedDB.this.seedActiveDBFile);
+                if (this.database == SeedDB.this.seedActiveDB) SeedDB.this.resetActiveTable();
                 if (this.database == SeedDB.this.seedPassiveDB) SeedDB.this.seedPassiveDB = resetSeedTable(SeedDB.this.seedPassiveDB, SeedDB.this.seedPassiveDBFile);
                 if (this.database == SeedDB.this.seedPotentialDB) SeedDB.this.seedPotentialDB = resetSeedTable(SeedDB.this.seedPotentialDB, SeedDB.this.seedPotentialDBFile);
                 return null;
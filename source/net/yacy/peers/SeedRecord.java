@@ -0,0 +1,115 @@
+// SeedRecord.java
+// -------------------------------------
+// first published on http://yacy.net
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.peers;
+
+import java.util.Set;
+
+import net.yacy.cora.storage.HandleSet;
+import net.yacy.kelondro.data.word.Word;
+import net.yacy.kelondro.util.MapTools;
+
+/**
+ * a compact and immutable copy of the values of a seed which are used to select peers.
+ * All values are parsed once when the record is created, so a selection over all known peers
+ * can be done without creating Seed objects and without parsing the dna strings again.
+ * The SeedDB holds one record for each connected peer and replaces it whenever the seed is stored.
+ */
+public final class SeedRecord {
+
+    private static final int ACCEPT_REMOTE_INDEX = 1, ROOT_NODE = 2, SOLR_AVAILABLE = 4;
+    private static final long dayMillis = 1000L * 60L * 60L * 24L;
+
+    public final String hash;
+    private final long lastSeen, birthdate, linkCount;
+    private final double version;
+    private final int flags;
+    private final byte[][] peerTags; // the word hashes of the peer tags, null if the peer accepts all words
+
+    public SeedRecord(final Seed seed) {
+        this.hash = seed.hash;
+        this.lastSeen = seed.getLastSeenUTC();
+        this.birthdate = seed.getBirthdate();
+        this.linkCount = seed.getLinkCount();
+        this.version = seed.getVersion();
+        this.flags =
+                (seed.getFlagAcceptRemoteIndex() ? ACCEPT_REMOTE_INDEX : 0) |
+                (seed.getFlagRootNode() ? ROOT_NODE : 0) |
+                (seed.getFlagSolrAvailable() ? SOLR_AVAILABLE : 0);
+        final String tags = seed.get(Seed.PEERTAGS, "");
+        if (tags.equals("*")) {
+            this.peerTags = null;
+        } else {
+            final Set<String> tagset = MapTools.string2set(tags, "|");
+            this.peerTags = new byte[tagset.size()][];
+            int i = 0;
+            for (final String tag: tagset) this.peerTags[i++] = Word.word2hash(tag);
+        }
+    }
+
+    public long getLastSeenUTC() {
+        return this.lastSeen;
+    }
+
+    public boolean isLastSeenTimeout(final long milliseconds) {
+        return Math.abs(System.currentTimeMillis() - this.lastSeen) > milliseconds;
+    }
+
+    /** @return the age of the seed in number of days */
+    public int getAge() {
+        return (int) Math.abs((System.currentTimeMillis() - this.birthdate) / dayMillis);
+    }
+
+    public long getLinkCount() {
+        return this.linkCount;
+    }
+
+    public double getVersion() {
+        return this.version;
+    }
+
+    public boolean getFlagAcceptRemoteIndex() {
+        return (this.flags & ACCEPT_REMOTE_INDEX) != 0;
+    }
+
+    public boolean getFlagRootNode() {
+        return (this.flags & ROOT_NODE) != 0;
+    }
+
+    public boolean getFlagSolrAvailable() {
+        return (this.flags & SOLR_AVAILABLE) != 0;
+    }
+
+    public boolean matchPeerTags(final HandleSet searchHashes) {
+        if (this.peerTags == null) return true;
+        for (final byte[] tag: this.peerTags) {
+            if (searchHashes.has(tag)) return true;
+        }
+        return false;
+    }
+
+    @Override
+    public int hashCode() {
+        return this.hash.hashCode();
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+        return other instanceof SeedRecord && this.hash.equals(((SeedRecord) other).hash);
+    }
+}
@@ -31,6 +31,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import net.yacy.cora.document.encoding.ASCII;
 import net.yacy.cora.storage.HandleSet;
@@ -51,11 +52,18 @@ public class Transmission {
     // anything beyond that might get discarded without notice
     public static final int maxRWIsCount = 1000; // since SVN 7993 hardcoded in htroot/yacy/transferRWI.java:161
 
+    // the smallest chunk size for slow peers
+    public static final int minRWIsCount = 100;
+
+    // the chunk size of a peer is adapted to the number of RWIs which it received within this time
+    private static final long targetTransmissionTime = 10000; // milliseconds
+
     protected ConcurrentLog log;
     protected Segment segment;
     protected SeedDB seeds;
     protected boolean gzipBody4Transfer;
     protected int timeout4Transfer;
+    private final ConcurrentHashMap<String, Integer> chunkSizes; // the adapted chunk size for each peer hash
 
     public Transmission(
             final ConcurrentLog log,
@@ -68,12 +76,35 @@ public class Transmission {
         this.seeds = seeds;
         this.gzipBody4Transfer = gzipBody4Transfer;
         this.timeout4Transfer = timeout4Transfer;
+        this.chunkSizes = new ConcurrentHashMap<String, Integer>();
     }
 
     public Chunk newChunk(final Seed dhtTarget) {
         return new Chunk(dhtTarget);
     }
 
+    /**
+     * get the maximum number of RWIs for a chunk to the given peer. This is adapted
+     * to the measured throughput of the peer, so slow peers get smaller chunks.
+     * @param dhtTarget
+     * @return the number of RWIs, between minRWIsCount and maxRWIsCount
+     */
+    public int chunkSize(final Seed dhtTarget) {
+        final Integer size = this.chunkSizes.get(dhtTarget.hash);
+        return size == null ? maxRWIsCount : size.intValue();
+    }
+
+    private void adaptChunkSize(final Seed dhtTarget, final int references, final long time) {
+        // the number of references that the peer would have received within the target time
+        final long capacity = references * targetTransmissionTime / Math.max(1, time);
+        final int size = (int) Math.max(minRWIsCount, Math.min(maxRWIsCount, (chunkSize(dhtTarget) + capacity) / 2));
+        this.chunkSizes.put(dhtTarget.hash, size);
+    }
+
+    private void reduceChunkSize(final Seed dhtTarget) {
+        this.chunkSizes.put(dhtTarget.hash, Math.max(minRWIsCount, chunkSize(dhtTarget) / 2));
+    }
+
     public class Chunk extends WorkflowJob implements Iterable<ReferenceContainer<WordReference>> {
         /**
          * a dispatcher entry contains
@@ -88,6 +119,7 @@ public class Transmission {
         private final ReferenceContainerCache<WordReference> containers;
         private final HandleSet                      references;
         private final HandleSet                      badReferences;
+        private String[]                             unknownURLs; // the url hashes which the target requested after the RWI transmission
 
         /**
          * generate a new dispatcher target. such a target is defined with a primary target and
@@ -101,6 +133,7 @@ public class Transmission {
             this.containers = new ReferenceContainerCache<WordReference>(Segment.wordReferenceFactory, Segment.wordOrder, Word.commonHashLength);
             this.references = new RowHandleSet(WordReferenceRow.urlEntryRow.primaryKeyLength, WordReferenceRow.urlEntryRow.objectOrder, 0);
             this.badReferences = new RowHandleSet(WordReferenceRow.urlEntryRow.primaryKeyLength, WordReferenceRow.urlEntryRow.objectOrder, 0);
+            this.unknownURLs = null;
         }
 
         /*
@@ -143,7 +176,7 @@ public class Transmission {
          * @throws SpaceExceededException
          */
         public void add(final ReferenceContainer<WordReference> container) throws SpaceExceededException {
-            int remaining = maxRWIsCount;
+            int remaining = chunkSize(this.dhtTarget);
             for (final ReferenceContainer<WordReference> ic : this) remaining -= ic.size();
             if (remaining <= 0) {
                 // No space left in this chunk
@@ -207,17 +240,52 @@ public class Transmission {
             return this.dhtTarget;
         }
 
-        public boolean transmit() {
+        public int referencesSize() {
+            int size = 0;
+            for (final ReferenceContainer<WordReference> ic : this) size += ic.size();
+            return size;
+        }
+
+        /**
+         * first phase of the transmission: transmit the RWIs. The target peer answers with the
+         * URLs which it does not know; these must be transmitted afterwards with transmitURL()
+         * @return true if the transmission was successful
+         */
+        public boolean transmitRWI() {
             // transferring selected words to remote peer
-            if (this.dhtTarget == Transmission.this.seeds.mySeed() || this.dhtTarget.hash.equals(Transmission.this.seeds.mySeed().hash)) {
+            if (isSelfTarget()) {
             	// target is my own peer. This is easy. Just restore the indexContainer
             	restore();
+            	this.unknownURLs = new String[0];
             	Transmission.this.log.info("Transfer of chunk to myself-target");
             	return true;
             }
             Transmission.this.log.info("starting new index transmission request to " + this.dhtTarget.getName());
             final long start = System.currentTimeMillis();
-            final String error = Protocol.transferIndex(Transmission.this.seeds, this.dhtTarget, this.containers, this.references, Transmission.this.segment, Transmission.this.gzipBody4Transfer, Transmission.this.timeout4Transfer);
+            final List<String> unknown = new ArrayList<String>();
+            final String error = Protocol.transferIndexRWI(Transmission.this.seeds, this.dhtTarget, this.containers, this.references, Transmission.this.gzipBody4Transfer, Transmission.this.timeout4Transfer, unknown);
+            if (error == null) {
+                this.unknownURLs = unknown.toArray(new String[unknown.size()]);
+                final long transferTime = System.currentTimeMillis() - start;
+                adaptChunkSize(this.dhtTarget, referencesSize(), transferTime);
+                Transmission.this.log.info("RWI transfer to peer " + this.dhtTarget.getName() + " in " + transferTime + " milliseconds, " + this.unknownURLs.length + " URLs requested, next chunk size " + chunkSize(this.dhtTarget));
+                return true;
+            }
+            reduceChunkSize(this.dhtTarget);
+            failed(error);
+            return false;
+        }
+
+        /**
+         * second phase of the transmission: transmit the URLs which had been requested in transmitRWI()
+         * @return true if the transmission was successful
+         */
+        public boolean transmitURL() {
+            if (this.unknownURLs == null) return false; // transmitRWI() was not successful
+            if (isSelfTarget()) return true; // the chunk was restored in transmitRWI(), nothing was transmitted
+            final long start = System.currentTimeMillis();
+            final String error = this.unknownURLs.length == 0 ? null :
+                Protocol.transferIndexURL(Transmission.this.seeds, this.dhtTarget, this.unknownURLs, this.references, Transmission.this.segment, Transmission.this.gzipBody4Transfer, Transmission.this.timeout4Transfer);
             if (error == null) {
                 // words successfully transfered
                 final long transferTime = System.currentTimeMillis() - start;
@@ -237,6 +305,15 @@ public class Transmission {
                 Transmission.this.log.info("Transfer finished of chunk to target " + this.dhtTarget.hash + "/" + this.dhtTarget.getName());
                 return true;
             }
+            failed(error);
+            return false;
+        }
+
+        private boolean isSelfTarget() {
+            return this.dhtTarget == Transmission.this.seeds.mySeed() || this.dhtTarget.hash.equals(Transmission.this.seeds.mySeed().hash);
+        }
+
+        private void failed(final String error) {
             Transmission.this.log.info(
                     "Index transfer to peer " + this.dhtTarget.getName() + ":" + this.dhtTarget.hash +
                     " failed: " + error);
@@ -254,7 +331,6 @@ public class Transmission {
             } else {
                 // target not in DB anymore. ???
             }
-            return false;
         }
 
         public void restore() {
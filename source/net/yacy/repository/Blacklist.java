@@ -37,12 +37,10 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.regex.Pattern;
-import java.util.regex.PatternSyntaxException;
 
 import net.yacy.cora.document.id.DigestURL;
 import net.yacy.cora.document.id.MultiProtocolURL;
@@ -103,6 +101,7 @@ public class Blacklist {
     private final ConcurrentMap<BlacklistType, HandleSet> cachedUrlHashs;
     private final ConcurrentMap<BlacklistType, Map<String, Set<Pattern>>> hostpaths_matchable; // key=host, value=path; mapped url is http://host/path; path does not start with '/' here
     private final ConcurrentMap<BlacklistType, Map<String, Set<Pattern>>> hostpaths_notmatchable; // key=host, value=path; mapped url is http://host/path; path does not start with '/' here
+    private final ConcurrentMap<BlacklistType, BlacklistMatcher> matchers; // compiled from the hostpaths maps, replaced on each change
 
     public Blacklist(final File rootPath) {
 
@@ -112,14 +111,28 @@ public class Blacklist {
         this.hostpaths_matchable = new ConcurrentHashMap<BlacklistType, Map<String, Set<Pattern>>>();
         this.hostpaths_notmatchable = new ConcurrentHashMap<BlacklistType, Map<String, Set<Pattern>>>();
         this.cachedUrlHashs = new ConcurrentHashMap<BlacklistType, HandleSet>();
+        this.matchers = new ConcurrentHashMap<BlacklistType, BlacklistMatcher>();
 
         for (final BlacklistType blacklistType : BlacklistType.values()) {
             this.hostpaths_matchable.put(blacklistType, new ConcurrentHashMap<String, Set<Pattern>>());
             this.hostpaths_notmatchable.put(blacklistType, new ConcurrentHashMap<String, Set<Pattern>>());
+            compile(blacklistType);
             loadDHTCache(blacklistType);
         }
     }
 
+    /**
+     * compile the blacklist maps of the given type into a new matcher, which replaces the current one.
+     * Until the new matcher is ready, isListed() uses the old one.
+     * @param blacklistType
+     */
+    private final synchronized void compile(final BlacklistType blacklistType) {
+        final long start = System.currentTimeMillis();
+        final BlacklistMatcher matcher = new BlacklistMatcher(getBlacklistMap(blacklistType, true), getBlacklistMap(blacklistType, false));
+        this.matchers.put(blacklistType, matcher);
+        if (log.isFine()) log.fine("compiled " + blacklistType + " blacklist with " + matcher.size() + " entries in " + (System.currentTimeMillis() - start) + " milliseconds");
+    }
+
     /**
      * Close (shutdown) this "sub-system", add more here for shutdown.
      */
@@ -170,6 +183,9 @@ public class Blacklist {
         for (final HandleSet entry : this.cachedUrlHashs.values()) {
             entry.clear();
         }
+        for (final BlacklistType blacklistType : BlacklistType.values()) {
+            compile(blacklistType);
+        }
     }
 
     public final int size() {
@@ -188,8 +204,13 @@ public class Blacklist {
     }
 
     public final void loadList(final BlacklistFile[] blFiles, final String sep) {
+        final Set<BlacklistType> types = new HashSet<BlacklistType>();
         for (final BlacklistFile blf : blFiles) {
             loadList(blf, sep);
+            types.add(blf.getType());
+        }
+        for (final BlacklistType blacklistType : types) {
+            compile(blacklistType);
         }
     }
 
@@ -256,6 +277,7 @@ public class Blacklist {
         // method for not breaking older plasmaURLPattern interface
         final BlacklistFile blFile = new BlacklistFile(fileNames, blacklistType);
         loadList(blFile, sep);
+        compile(blacklistType);
     }
 
     /**
@@ -299,6 +321,7 @@ public class Blacklist {
                 blacklistMapNotMatch.remove(host);
             }
         }
+        compile(blacklistType);
 
         //TODO: check if delete from blacklist is desired, on reload entry will not be available in any blacklist
         //      even if remove (above) from internal maps (at runtime) is only done for given blacklistType
@@ -356,6 +379,7 @@ public class Blacklist {
         Pattern pattern = Pattern.compile(p, Pattern.CASE_INSENSITIVE); 
         
         hostList.add(pattern); 
+        compile(blacklistType);
 
         // Append the line to the file.
         PrintWriter pw = null;
@@ -412,6 +436,7 @@ public class Blacklist {
         Pattern pattern = Pattern.compile(p, Pattern.CASE_INSENSITIVE); 
         
         // update (put) pattern to internal blacklist maps (for which source is active)
+        final Set<BlacklistType> types = new HashSet<BlacklistType>();
         for (final BlacklistType supportedBlacklistType : BlacklistType.values()) {
             if (ListManager.listSetContains(supportedBlacklistType + ".BlackLists", blacklistSourcefile)) {
                 final Map<String, Set<Pattern>> blacklistMap = getBlacklistMap(supportedBlacklistType, isMatchable(host));
@@ -420,8 +445,12 @@ public class Blacklist {
                     blacklistMap.put(h, (hostList = new HashSet<Pattern>()));
                 }
                 hostList.add(pattern);
+                types.add(supportedBlacklistType);
             }
         }
+        for (final BlacklistType blacklistType : types) {
+            compile(blacklistType);
+        }
 
         // Append the line to the file.
         PrintWriter pw = null;
@@ -564,16 +593,24 @@ public class Blacklist {
             throw new IllegalArgumentException("path may not be null");
         }
 
-        // getting the proper blacklists
-        final Map<String, Set<Pattern>> blacklistMapMatched = getBlacklistMap(blacklistType, true);
-        
-        final Map<String, Set<Pattern>> blacklistMapNotMatched = getBlacklistMap(blacklistType, false);
-
-        return Blacklist.isListed(hostlow, path, blacklistMapMatched, blacklistMapNotMatched);
+        long beginTime = 0;
+        if(log.isFine()) {
+            beginTime = System.nanoTime();
+        }
+        final boolean matched = this.matchers.get(blacklistType).isListed(hostlow, path);
+        if(log.isFine()) {
+            /* Trace URLs spending too much CPU time : set Blacklist.level = FINE in yacy.logging file */
+            long timeInSeconds = (System.nanoTime() - beginTime) / 1000000000;
+            if(timeInSeconds > 10) {
+                log.fine("Long processing : " + timeInSeconds + " seconds. URL :  " + hostlow + path);
+            }
+        }
+        return matched;
     }
 
     /**
      * Check if the URL made of the specified host and path is blacklisted. All parameters must not be null.
+     * The blacklist maps are compiled for each call, so this should only be used for single checks.
      * @param hostlow host part
      * @param path path on the host
      * @param blacklistMapMatched blacklist patterns indexed by matched hosts
@@ -583,90 +620,8 @@ public class Blacklist {
 	protected final static boolean isListed(final String hostlow, final String path,
 			final Map<String, Set<Pattern>> blacklistMapMatched,
 			final Map<String, Set<Pattern>> blacklistMapNotMatched) {
-		long beginTime = 0;
-		if(log.isFine()) {
-			beginTime = System.nanoTime();
-		}
-		final String p = (!path.isEmpty() && path.charAt(0) == '/') ? path.substring(1) : path;
-
-        Pattern[] app;
-        boolean matched = false;
-        Pattern pp; // path-pattern
-
-        // try to match complete domain
-        if (!matched && blacklistMapMatched.get(hostlow) != null) {
-            app = blacklistMapMatched.get(hostlow).toArray(new Pattern[0]);
-            for (int i = app.length - 1; !matched && i > -1; i--) {
-                pp = app[i];
-                matched |= pp.matcher(p).matches();
-            }
-        }
-        // first try to match the domain with wildcard '*'
-        // [TL] While "." are found within the string
-        int index = 0;
-        while (!matched && (index = hostlow.indexOf('.', index + 1)) != -1) {
-            if (blacklistMapMatched.get(hostlow.substring(0, index + 1) + "*") != null) {
-                app = blacklistMapMatched.get(hostlow.substring(0, index + 1) + "*").toArray(new Pattern[0]);
-                for (int i = app.length - 1; !matched && i > -1; i--) {
-                    pp = app[i];
-                    matched |= pp.matcher(p).matches();
-                }
-            }
-            if (blacklistMapMatched.get(hostlow.substring(0, index)) != null) {
-                app = blacklistMapMatched.get(hostlow.substring(0, index)).toArray(new Pattern[0]);
-                for (int i = app.length - 1; !matched && i > -1; i--) {
-                    pp = app[i];
-                    matched |= pp.matcher(p).matches();
-                }
-            }
-        }
-        index = hostlow.length();
-        while (!matched && (index = hostlow.lastIndexOf('.', index - 1)) != -1) {
-            if (blacklistMapMatched.get("*" + hostlow.substring(index, hostlow.length())) != null) {
-                app = blacklistMapMatched.get("*" + hostlow.substring(index, hostlow.length())).toArray(new Pattern[0]);
-                for (int i = app.length - 1; !matched && i > -1; i--) {
-                    pp = app[i];
-                    matched |= pp.matcher(p).matches();
-                }
-            }
-            if (blacklistMapMatched.get(hostlow.substring(index + 1, hostlow.length())) != null) {
-                app = blacklistMapMatched.get(hostlow.substring(index + 1, hostlow.length())).toArray(new Pattern[0]);
-                for (int i = app.length - 1; !matched && i > -1; i--) {
-                    pp = app[i];
-                    matched |= pp.matcher(p).matches();
-                }
-            }
-        }
-
-
-        // loop over all Regex-entries
-        if (!matched) {
-            String key;
-            for (final Entry<String, Set<Pattern>> entry : blacklistMapNotMatched.entrySet()) {
-                key = entry.getKey();
-                try {
-                    if (Pattern.matches(key, hostlow)) {
-                        app = entry.getValue().toArray(new Pattern[0]);
-                        for (final Pattern ap : app) {
-                            if (ap.matcher(p).matches()) {
-                                return true;
-                            }
-                        }
-                    }
-                } catch (final PatternSyntaxException e) {
-                    //System.out.println(e.toString());
-                }
-            }
-        }
-        if(log.isFine()) {
-        	/* Trace URLs spending too much CPU time : set Blacklist.level = FINE in yacy.logging file */
-        	long timeInSeconds = (System.nanoTime() - beginTime) / 1000000000;
-        	if(timeInSeconds > 10) {
-        		log.fine("Long processing : " + timeInSeconds + " seconds. URL :  " + hostlow + path);
-        	}
-        }
-        return matched;
-	}
+        return new BlacklistMatcher(blacklistMapMatched, blacklistMapNotMatched).isListed(hostlow, path);
+    }
 
     public static BlacklistError checkError(final String element, final Map<String, String> properties) {
 
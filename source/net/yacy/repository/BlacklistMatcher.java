@@ -0,0 +1,495 @@
+// BlacklistMatcher.java
+// first published on http://yacy.net
+//
+// This is a part of YaCy, a peer-to-peer based web search engine
+//
+// LICENSE
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.repository;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import net.yacy.cora.storage.ARC;
+import net.yacy.cora.storage.ConcurrentARC;
+
+/**
+ * an immutable, compiled form of the blacklist maps of one blacklist type.
+ * The matchable host entries are stored in two label tries: a trie of the reversed host labels
+ * for the exact and the sub-domain matches ("example.com", "*.example.com") and a trie of the host labels
+ * for the prefix matches ("ftp.*"). The hosts of the regular expression entries are pre-filtered with an
+ * Aho-Corasick automaton of literal strings which every matching host must contain.
+ * All path patterns of a host entry are combined into a single regular expression.
+ * The path sets which apply to a host are cached, so for a known host only the path must be matched.
+ *
+ * The matcher is never changed; the Blacklist replaces it with a new one when the lists change.
+ */
+public class BlacklistMatcher {
+
+    private static final int CACHE_SIZE = 10000;
+    private static final int MIN_LITERAL = 3;
+
+    private final Node reverse; // trie of reversed host labels
+    private final Node forward; // trie of host labels
+    private final AhoCorasick literals; // host regex entries with a literal
+    private final HostRegex[] unindexed; // host regex entries without a literal
+    private final ARC<String, Verdict> verdicts;
+    private final int size;
+
+    /**
+     * compile the blacklist maps
+     * @param matchable blacklist patterns indexed by matchable hosts
+     * @param notmatchable blacklist patterns indexed by host regular expressions
+     */
+    public BlacklistMatcher(final Map<String, Set<Pattern>> matchable, final Map<String, Set<Pattern>> notmatchable) {
+        this.reverse = new Node();
+        this.forward = new Node();
+        int count = 0;
+        for (final Map.Entry<String, Set<Pattern>> entry: matchable.entrySet()) {
+            final String key = entry.getKey();
+            final Pattern[] paths = toArray(entry.getValue());
+            count += paths.length;
+            if (key.startsWith("*.")) {
+                // match sub-domains
+                this.reverse.put(reversed(labels(key.substring(2)))).add(Node.SUB, paths);
+            } else if (key.endsWith(".*")) {
+                // match host prefixes
+                this.forward.put(labels(key.substring(0, key.length() - 2))).add(Node.PREFIX, paths);
+            } else {
+                // a domain matches itself, its sub-domains and also hosts which start with the domain
+                final Node r = this.reverse.put(reversed(labels(key)));
+                r.add(Node.EXACT, paths);
+                r.add(Node.SUB, paths);
+                this.forward.put(labels(key)).add(Node.PREFIX, paths);
+            }
+        }
+        this.reverse.compile();
+        this.forward.compile();
+
+        final List<HostRegex> indexed = new ArrayList<HostRegex>();
+        final List<HostRegex> unindexedList = new ArrayList<HostRegex>();
+        for (final Map.Entry<String, Set<Pattern>> entry: notmatchable.entrySet()) {
+            final Pattern host;
+            try {
+                host = Pattern.compile(entry.getKey());
+            } catch (final PatternSyntaxException e) {
+                continue;
+            }
+            final Pattern[] paths = toArray(entry.getValue());
+            count += paths.length;
+            final HostRegex hr = new HostRegex(host, literal(entry.getKey()), new PathSet(paths));
+            if (hr.literal == null) unindexedList.add(hr); else indexed.add(hr);
+        }
+        this.literals = new AhoCorasick(indexed);
+        this.unindexed = unindexedList.toArray(new HostRegex[unindexedList.size()]);
+        this.verdicts = new ConcurrentARC<String, Verdict>(CACHE_SIZE, Math.min(32, 2 * Runtime.getRuntime().availableProcessors()));
+        this.size = count;
+    }
+
+    /**
+     * @return the number of path patterns in this matcher
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * @return the number of hosts in the verdict cache
+     */
+    public int cacheSize() {
+        return this.verdicts.size();
+    }
+
+    /**
+     * check if the URL made of the specified host and path is blacklisted
+     * @param hostlow the lower-case host
+     * @param path the path, with or without leading '/'
+     * @return true when host/path is blacklisted
+     */
+    public boolean isListed(final String hostlow, final String path) {
+        Verdict verdict = this.verdicts.get(hostlow);
+        if (verdict == null) {
+            verdict = verdict(hostlow);
+            this.verdicts.put(hostlow, verdict);
+        }
+        if (verdict == Verdict.NONE) return false;
+        if (verdict == Verdict.ALL) return true;
+        final String p = (!path.isEmpty() && path.charAt(0) == '/') ? path.substring(1) : path;
+        for (final PathSet paths: verdict.paths) {
+            if (paths.matches(p)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * collect the path sets which apply to a host
+     */
+    private Verdict verdict(final String hostlow) {
+        final List<PathSet> sets = new ArrayList<PathSet>();
+        final String[] labels = labels(hostlow);
+
+        // exact and sub-domain matches: walk from the top level label to the left
+        Node n = this.reverse;
+        for (int i = labels.length - 1; i >= 0 && n != null; i--) {
+            n = n.get(labels[i]);
+            if (n == null) break;
+            if (i > 0) n.collect(Node.SUB, sets); else n.collect(Node.EXACT, sets);
+        }
+
+        // prefix matches: walk from the left, the host must have more labels than the entry
+        n = this.forward;
+        for (int i = 0; i < labels.length - 1 && n != null; i++) {
+            n = n.get(labels[i]);
+            if (n == null) break;
+            n.collect(Node.PREFIX, sets);
+        }
+
+        // host regex matches
+        for (final HostRegex hr: this.literals.candidates(hostlow)) {
+            if (hr.host.matcher(hostlow).matches()) sets.add(hr.paths);
+        }
+        for (final HostRegex hr: this.unindexed) {
+            if (hr.host.matcher(hostlow).matches()) sets.add(hr.paths);
+        }
+
+        if (sets.isEmpty()) return Verdict.NONE;
+        for (final PathSet paths: sets) if (paths.all) return Verdict.ALL;
+        return new Verdict(sets.toArray(new PathSet[sets.size()]));
+    }
+
+    private static Pattern[] toArray(final Set<Pattern> set) {
+        return set.toArray(new Pattern[set.size()]);
+    }
+
+    /**
+     * split a host into its labels; empty labels are kept so that the match is the same as a string comparison
+     */
+    private static String[] labels(final String host) {
+        final List<String> l = new ArrayList<String>(4);
+        int p = 0, q;
+        while ((q = host.indexOf('.', p)) >= 0) {
+            l.add(host.substring(p, q));
+            p = q + 1;
+        }
+        l.add(host.substring(p));
+        return l.toArray(new String[l.size()]);
+    }
+
+    private static String[] reversed(final String[] a) {
+        final String[] r = new String[a.length];
+        for (int i = 0; i < a.length; i++) r[i] = a[a.length - 1 - i];
+        return r;
+    }
+
+    /**
+     * escaped letters which stand for one character or a boundary and have no argument
+     */
+    private static final String simpleEscapes = "dDsSwWhHvVbBAGZzRXtnrfae";
+
+    /**
+     * find the longest literal string which must be part of every string that matches the regular expression
+     * @param regex
+     * @return the literal or null if no literal with a minimum length can be found
+     */
+    protected static String literal(final String regex) {
+        if (regex.indexOf('|') >= 0 || regex.indexOf('(') >= 0) return null; // alternatives and groups may make any part optional
+        String best = null;
+        StringBuilder run = new StringBuilder();
+        int i = 0;
+        while (i < regex.length()) {
+            final char c = regex.charAt(i);
+            if (c == '\\' && i + 1 < regex.length()) {
+                final char d = regex.charAt(i + 1);
+                if (Character.isLetterOrDigit(d)) {
+                    // escapes with an argument (\x61, \u0061, octal and back references, \cA, \p{L}, \Q..\E, \k<name>) are not parsed
+                    if (simpleEscapes.indexOf(d) < 0) return null;
+                    best = longer(best, run); // a character class like \d
+                    run = new StringBuilder();
+                } else {
+                    run.append(d);
+                }
+                i += 2;
+                continue;
+            }
+            if (c == '*' || c == '?' || c == '{') {
+                // the previous character is optional
+                if (run.length() > 0) run.setLength(run.length() - 1);
+                best = longer(best, run);
+                run = new StringBuilder();
+                if (c == '{') {
+                    final int e = regex.indexOf('}', i);
+                    i = e < 0 ? regex.length() : e + 1;
+                } else {
+                    i++;
+                }
+                continue;
+            }
+            if (c == '[') {
+                best = longer(best, run);
+                run = new StringBuilder();
+                final int e = regex.indexOf(']', i + 2);
+                i = e < 0 ? regex.length() : e + 1;
+                // the class may be optional
+                if (i < regex.length() && (regex.charAt(i) == '*' || regex.charAt(i) == '?' || regex.charAt(i) == '{')) {
+                    i++;
+                }
+                continue;
+            }
+            if (c == '.' || c == '^' || c == '$' || c == '+') {
+                // with '+' the previous character is required but may be repeated
+                best = longer(best, run);
+                run = new StringBuilder();
+                i++;
+                continue;
+            }
+            run.append(c);
+            i++;
+        }
+        best = longer(best, run);
+        return best == null || best.length() < MIN_LITERAL ? null : best;
+    }
+
+    private static String longer(final String best, final StringBuilder run) {
+        if (best == null || run.length() > best.length()) return run.length() == 0 ? best : run.toString();
+        return best;
+    }
+
+    /**
+     * a host regular expression entry
+     */
+    private static final class HostRegex {
+        private final Pattern host;
+        private final String literal;
+        private final PathSet paths;
+        private HostRegex(final Pattern host, final String literal, final PathSet paths) {
+            this.host = host;
+            this.literal = literal;
+            this.paths = paths;
+        }
+    }
+
+    /**
+     * the path sets which apply to one host
+     */
+    private static final class Verdict {
+        private static final Verdict NONE = new Verdict(new PathSet[0]);
+        private static final Verdict ALL = new Verdict(new PathSet[0]);
+        private final PathSet[] paths;
+        private Verdict(final PathSet[] paths) {
+            this.paths = paths;
+        }
+    }
+
+    /**
+     * a set of path patterns. Patterns with the same flags are combined into one alternation,
+     * so a path is matched with one regular expression instead of one for each pattern.
+     */
+    private static final class PathSet {
+        private final boolean all;
+        private final Pattern[] patterns;
+
+        private PathSet(final Pattern[] paths) {
+            boolean a = false;
+            final Map<Integer, List<Pattern>> byFlags = new HashMap<Integer, List<Pattern>>();
+            final List<Pattern> result = new ArrayList<Pattern>();
+            for (final Pattern p: paths) {
+                if (".*".equals(p.pattern())) {
+                    a = true;
+                    break;
+                }
+                if (p.pattern().matches(".*\\\\(\\d|k<).*")) {
+                    result.add(p); // back references would be shifted in the alternation
+                    continue;
+                }
+                List<Pattern> l = byFlags.get(p.flags());
+                if (l == null) {
+                    l = new ArrayList<Pattern>();
+                    byFlags.put(p.flags(), l);
+                }
+                l.add(p);
+            }
+            this.all = a;
+            if (!a) {
+                for (final Map.Entry<Integer, List<Pattern>> entry: byFlags.entrySet()) {
+                    final List<Pattern> l = entry.getValue();
+                    if (l.size() == 1) {
+                        result.add(l.get(0));
+                        continue;
+                    }
+                    final StringBuilder sb = new StringBuilder();
+                    for (final Pattern p: l) {
+                        if (sb.length() > 0) sb.append('|');
+                        sb.append("(?:").append(p.pattern()).append(')');
+                    }
+                    try {
+                        result.add(Pattern.compile(sb.toString(), entry.getKey()));
+                    } catch (final PatternSyntaxException e) {
+                        result.addAll(l);
+                    }
+                }
+            }
+            this.patterns = result.toArray(new Pattern[result.size()]);
+        }
+
+        private boolean matches(final String path) {
+            if (this.all) return true;
+            for (final Pattern p: this.patterns) {
+                if (p.matcher(path).matches()) return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * a node of a host label trie
+     */
+    private static final class Node {
+        private static final int EXACT = 0, SUB = 1, PREFIX = 2;
+
+        private Map<String, Node> children = null;
+        private Set<Pattern>[] collecting = null; // only during the construction
+        private final PathSet[] paths = new PathSet[3];
+
+        private Node get(final String label) {
+            return this.children == null ? null : this.children.get(label);
+        }
+
+        private Node put(final String[] labels) {
+            Node n = this;
+            for (final String label: labels) {
+                if (n.children == null) n.children = new HashMap<String, Node>();
+                Node c = n.children.get(label);
+                if (c == null) {
+                    c = new Node();
+                    n.children.put(label, c);
+                }
+                n = c;
+            }
+            return n;
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private void add(final int role, final Pattern[] patterns) {
+            if (this.collecting == null) this.collecting = new Set[3];
+            if (this.collecting[role] == null) this.collecting[role] = new HashSet<Pattern>();
+            for (final Pattern p: patterns) this.collecting[role].add(p);
+        }
+
+        private void collect(final int role, final List<PathSet> sets) {
+            if (this.paths[role] != null) sets.add(this.paths[role]);
+        }
+
+        private void compile() {
+            final LinkedList<Node> stack = new LinkedList<Node>();
+            stack.add(this);
+            while (!stack.isEmpty()) {
+                final Node n = stack.removeLast();
+                if (n.collecting != null) {
+                    for (int role = 0; role < 3; role++) {
+                        final Set<Pattern> s = n.collecting[role];
+                        if (s != null) n.paths[role] = new PathSet(s.toArray(new Pattern[s.size()]));
+                    }
+                    n.collecting = null;
+                }
+                if (n.children != null) stack.addAll(n.children.values());
+            }
+        }
+    }
+
+    /**
+     * an Aho-Corasick automaton of the host regex literals; it finds all entries with a literal that is contained in a host
+     * with a single scan of the host
+     */
+    private static final class AhoCorasick {
+
+        private static final class State {
+            private final Map<Character, State> next = new HashMap<Character, State>();
+            private State fail = null;
+            private HostRegex[] output = new HostRegex[0];
+        }
+
+        private final State root;
+
+        private AhoCorasick(final List<HostRegex> entries) {
+            this.root = new State();
+            for (final HostRegex hr: entries) {
+                State s = this.root;
+                for (int i = 0; i < hr.literal.length(); i++) {
+                    final Character c = hr.literal.charAt(i);
+                    State t = s.next.get(c);
+                    if (t == null) {
+                        t = new State();
+                        s.next.put(c, t);
+                    }
+                    s = t;
+                }
+                s.output = append(s.output, new HostRegex[]{hr});
+            }
+            // breadth-first construction of the failure links
+            final LinkedList<State> queue = new LinkedList<State>();
+            for (final State s: this.root.next.values()) {
+                s.fail = this.root;
+                queue.add(s);
+            }
+            while (!queue.isEmpty()) {
+                final State s = queue.removeFirst();
+                for (final Map.Entry<Character, State> e: s.next.entrySet()) {
+                    final State t = e.getValue();
+                    State f = s.fail;
+                    while (f != null && !f.next.containsKey(e.getKey())) f = f.fail;
+                    t.fail = f == null ? this.root : f.next.get(e.getKey());
+                    t.output = append(t.output, t.fail.output);
+                    queue.add(t);
+                }
+            }
+        }
+
+        private static HostRegex[] append(final HostRegex[] a, final HostRegex[] b) {
+            if (b.length == 0) return a;
+            final HostRegex[] r = new HostRegex[a.length + b.length];
+            System.arraycopy(a, 0, r, 0, a.length);
+            System.arraycopy(b, 0, r, a.length, b.length);
+            return r;
+        }
+
+        private Set<HostRegex> candidates(final String text) {
+            Set<HostRegex> result = null;
+            State s = this.root;
+            for (int i = 0; i < text.length(); i++) {
+                final Character c = text.charAt(i);
+                while (s != this.root && !s.next.containsKey(c)) s = s.fail;
+                final State t = s.next.get(c);
+                s = t == null ? this.root : t;
+                if (s.output.length > 0) {
+                    if (result == null) result = Collections.newSetFromMap(new IdentityHashMap<HostRegex, Boolean>());
+                    for (final HostRegex hr: s.output) result.add(hr);
+                }
+            }
+            return result == null ? Collections.<HostRegex>emptySet() : result;
+        }
+    }
+
+}
@@ -249,7 +249,7 @@ public final class LoaderDispatcher {
         if (response == null) {
             throw new IOException("no response (NULL) for url " + url);
         }
-        if (response.getContent() == null) {
+        if (!response.hasContent()) {
             throw new IOException("empty response (code " + response.getStatus() + ") for url " + url.toNormalform(true));
         }
 
@@ -518,10 +518,15 @@ public final class LoaderDispatcher {
         if (response == null) throw new IOException("no Response for url " + url);
 
         // if it is still not available, report an error
-        if (response.getContent() == null || response.getResponseHeader() == null) throw new IOException("no Content available for url " + url);
+        if (!response.hasContent() || response.getResponseHeader() == null) throw new IOException("no Content available for url " + url);
 
         // parse resource
-        Document[] documents = response.parse();
+        Document[] documents;
+        try {
+            documents = response.parse();
+        } finally {
+            response.releaseContentBuffer();
+        }
 
         String x_robots_tag = response.getResponseHeader().getXRobotsTag();
         if (x_robots_tag.indexOf("noindex",0) >= 0) {
@@ -539,7 +544,7 @@ public final class LoaderDispatcher {
         if (response == null) throw new IOException("no Response for url " + url);
 
         // if it is still not available, report an error
-        if (response.getContent() == null || response.getResponseHeader() == null) throw new IOException("no Content available for url " + url);
+        if (!response.hasContent() || response.getResponseHeader() == null) throw new IOException("no Content available for url " + url);
 
         // parse resource
         try {
@@ -552,6 +557,8 @@ public final class LoaderDispatcher {
             return merged;
         } catch(final Parser.Failure e) {
             throw new IOException(e.getMessage());
+        } finally {
+            response.releaseContentBuffer();
         }
     }
 
@@ -566,17 +573,19 @@ public final class LoaderDispatcher {
         final Response response = load(request(url, true, false), cacheStrategy, Integer.MAX_VALUE, blacklistType, agent);
         if (response == null) throw new IOException("response == null");
         final ResponseHeader responseHeader = response.getResponseHeader();
-        if (response.getContent() == null) throw new IOException("resource == null");
+        if (!response.hasContent()) throw new IOException("resource == null");
         if (responseHeader == null) throw new IOException("responseHeader == null");
 
         Document[] documents = null;
         final String supportError = TextParser.supports(url, responseHeader.getContentType());
         if (supportError != null) throw new IOException("no parser support: " + supportError);
         try {
-            documents = TextParser.parseSource(url, responseHeader.getContentType(), responseHeader.getCharacterEncoding(), response.profile().scraper(), timezoneOffset, response.depth(), response.getContent());
+            documents = TextParser.parseSource(url, responseHeader.getContentType(), responseHeader.getCharacterEncoding(), response.profile().scraper(), timezoneOffset, response.depth(), response.getContentBuffer());
             if (documents == null) throw new IOException("document == null");
         } catch (final Exception e) {
             throw new IOException("parser error: " + e.getMessage());
+        } finally {
+            response.releaseContentBuffer();
         }
 
         return Document.getHyperlinks(documents, true);
@@ -125,6 +125,7 @@ import net.yacy.cora.util.Memory;
 import net.yacy.crawler.CrawlStacker;
 import net.yacy.crawler.CrawlSwitchboard;
 import net.yacy.crawler.HarvestProcess;
+import net.yacy.crawler.HostBalancer;
 import net.yacy.crawler.data.Cache;
 import net.yacy.crawler.data.CrawlProfile;
 import net.yacy.crawler.data.CrawlQueues;
@@ -155,6 +156,7 @@ import net.yacy.document.Document;
 import net.yacy.document.LibraryProvider;
 import net.yacy.document.Parser;
 import net.yacy.document.ProbabilisticClassifier;
+import net.yacy.document.SentenceIndex;
 import net.yacy.document.TextParser;
 import net.yacy.document.VocabularyScraper;
 import net.yacy.document.Parser.Failure;
@@ -168,11 +170,16 @@ import net.yacy.document.parser.html.Evaluation;
 import net.yacy.gui.Audio;
 import net.yacy.gui.Tray;
 import net.yacy.http.YaCyHttpServer;
+import net.yacy.kelondro.blob.ArrayStack;
 import net.yacy.kelondro.blob.BEncodedHeap;
+import net.yacy.kelondro.blob.HeapReader;
 import net.yacy.kelondro.blob.Tables;
 import net.yacy.kelondro.data.meta.URIMetadataNode;
 import net.yacy.kelondro.data.word.Word;
+import net.yacy.kelondro.index.OpenFileIndexPool;
+import net.yacy.kelondro.io.SpillBuffer;
 import net.yacy.kelondro.logging.GuiHandler;
+import net.yacy.kelondro.rwi.IODispatcher;
 import net.yacy.kelondro.rwi.ReferenceContainer;
 import net.yacy.kelondro.util.FileUtils;
 import net.yacy.kelondro.util.MemoryControl;
@@ -181,6 +188,7 @@ import net.yacy.kelondro.util.SetTools;
 import net.yacy.kelondro.workflow.BusyThread;
 import net.yacy.kelondro.workflow.InstantBusyThread;
 import net.yacy.kelondro.workflow.WorkflowProcessor;
+import net.yacy.kelondro.workflow.WorkflowTask;
 import net.yacy.kelondro.workflow.WorkflowThread;
 import net.yacy.peers.Dispatcher;
 import net.yacy.peers.EventChannel;
@@ -411,8 +419,10 @@ public final class Switchboard extends serverSwitch {
             }
         }.start();
 
-        // init global host name cache
-        Domains.init(new File(this.workPath, "globalhosts.list"));
+        // init global host name cache and the dns cache
+        Domains.nameCacheHitTTL = 60000L * getConfigLong("dns.cache.ttl", 1440);
+        Domains.nameCacheMissTTL = 60000L * getConfigLong("dns.cache.missttl", 10);
+        Domains.init(new File(this.workPath, "globalhosts.list"), new File(this.workPath, "dnscache.list"));
 
         // init sessionid name file
         final String sessionidNamesFile = getConfig("sessionidNamesFile", "defaults/sessionid.names");
@@ -545,6 +555,13 @@ public final class Switchboard extends serverSwitch {
 
         // initialize index
         ReferenceContainer.maxReferences = getConfigInt("index.maxReferences", 0);
+        ArrayStack.memoryMappedReads = getConfigBool("index.blob.mmap", false);
+        HeapReader.offHeapIndex = getConfigBool("index.blob.offheapIndex", false);
+        HostBalancer.setOffHeapDepthCache(getConfigBool("crawler.depthCache.offheap", false));
+        OpenFileIndexPool.shared.setMaxOpen(getConfigInt("crawler.onDemand.maxOpenFiles", 200));
+        IODispatcher.mergeConcurrency = Math.max(1, getConfigInt("index.merge.concurrency", 2));
+        IODispatcher.mergeBandwidth = Math.max(0, getConfigLong("index.merge.bandwidth", 0)) * 1024L;
+        IODispatcher.mergeFanIn = Math.max(3, getConfigInt("index.merge.fanIn", 8));
         final File segmentsPath = new File(new File(indexPath, networkName), "SEGMENTS");
         try {this.index = new Segment(this.log, segmentsPath, archivePath, solrCollectionConfigurationWork, solrWebgraphConfigurationWork);} catch (IOException e) {ConcurrentLog.logException(e);}
         if (this.getConfigBool(SwitchboardConstants.CORE_SERVICE_RWI, true)) try {
@@ -726,6 +743,8 @@ public final class Switchboard extends serverSwitch {
         this.log.info("HTCACHE Path = " + this.htCachePath.getAbsolutePath());
         final long maxCacheSize =
             1024L * 1024L * Long.parseLong(getConfig(SwitchboardConstants.PROXY_CACHE_SIZE, "2")); // this is megabyte
+        Cache.compressionLevel = Math.max(-1, Math.min(9, getConfigInt("proxyCache.compressionLevel", 1))); // a Deflater level, -1 is the default compression
+        SpillBuffer.defaultThreshold = getConfigInt("crawler.spillThreshold", 1024 * 1024);
         Cache.init(this.htCachePath, this.peers.mySeed().hash, maxCacheSize);
         final File transactiondir = new File(this.htCachePath, "snapshots");
         Transactions.init(transactiondir);
@@ -986,8 +1005,13 @@ public final class Switchboard extends serverSwitch {
                 new String[] {
                     "RWI/Cache/Collections"
                 },
-                this,
-                "storeDocumentIndex",
+                new WorkflowTask<IndexingQueueEntry>() {
+                    @Override
+                    public IndexingQueueEntry process(final IndexingQueueEntry in) {
+                        Switchboard.this.storeDocumentIndexBatch(in);
+                        return null;
+                    }
+                },
                 2,
                 null,
                 1);
@@ -998,8 +1022,12 @@ public final class Switchboard extends serverSwitch {
                 new String[] {
                     "storeDocumentIndex"
                 },
-                this,
-                "webStructureAnalysis",
+                new WorkflowTask<IndexingQueueEntry>() {
+                    @Override
+                    public IndexingQueueEntry process(final IndexingQueueEntry in) {
+                        return Switchboard.this.webStructureAnalysis(in);
+                    }
+                },
                 WorkflowProcessor.availableCPU + 1,
                 this.indexingStorageProcessor,
                 WorkflowProcessor.availableCPU);
@@ -1010,8 +1038,12 @@ public final class Switchboard extends serverSwitch {
                 new String[] {
                     "webStructureAnalysis"
                 },
-                this,
-                "condenseDocument",
+                new WorkflowTask<IndexingQueueEntry>() {
+                    @Override
+                    public IndexingQueueEntry process(final IndexingQueueEntry in) {
+                        return Switchboard.this.condenseDocument(in);
+                    }
+                },
                 WorkflowProcessor.availableCPU + 1,
                 this.indexingAnalysisProcessor,
                 WorkflowProcessor.availableCPU);
@@ -1022,8 +1054,12 @@ public final class Switchboard extends serverSwitch {
                 new String[] {
                     "condenseDocument", "CrawlStacker"
                 },
-                this,
-                "parseDocument",
+                new WorkflowTask<IndexingQueueEntry>() {
+                    @Override
+                    public IndexingQueueEntry process(final IndexingQueueEntry in) {
+                        return Switchboard.this.parseDocument(in);
+                    }
+                },
                 Math.max(20, WorkflowProcessor.availableCPU * 2), // it may happen that this is filled with new files from the search process. That means there should be enough place for two result pages
                 this.indexingCondensementProcessor,
                 WorkflowProcessor.availableCPU);
@@ -1178,6 +1214,9 @@ public final class Switchboard extends serverSwitch {
 
         // set configurable ui defaults
         QueryParams.FACETS_STANDARD_MAXCOUNT = sb.getConfigInt(SwitchboardConstants.SEARCH_NAVIGATION_MAXCOUNT, QueryParams.FACETS_STANDARD_MAXCOUNT); // max number of navigator/facet lines
+        SearchEventCache.resultCache.setLimits(
+                sb.getConfigLong(SwitchboardConstants.SEARCH_RESULTCACHE_MAXBYTES, 16 * 1024 * 1024),
+                sb.getConfigLong(SwitchboardConstants.SEARCH_RESULTCACHE_MAXAGE, 3600000));
         
         this.log.config("Finished Switchboard Initialization");
     }
@@ -1905,6 +1944,7 @@ public final class Switchboard extends serverSwitch {
         } catch (final InterruptedException e ) {
             ConcurrentLog.logException(e);
         }
+        closeConfig();
         this.log.config("SWITCHBOARD SHUTDOWN TERMINATED");
     }
 
@@ -2717,17 +2757,16 @@ public final class Switchboard extends serverSwitch {
 
         // PARSE CONTENT
         final long parsingStartTime = System.currentTimeMillis();
-        if ( response.getContent() == null ) {
+        if ( !response.hasContent() ) {
             // fetch the document from cache
             response.setContent(Cache.getContent(response.url().hash()));
-            if ( response.getContent() == null ) {
+            if ( !response.hasContent() ) {
                 this.log.warn("the resource '" + response.url() + "' is missing in the cache.");
                 // create a new errorURL DB entry
                 this.crawlQueues.errorURL.push(response.url(), response.depth(), response.profile(), FailCategory.FINAL_LOAD_CONTEXT, "missing in cache", -1);
                 return null;
             }
         }
-        assert response.getContent() != null;
         try {
             // parse the document
             documents =
@@ -2738,7 +2777,7 @@ public final class Switchboard extends serverSwitch {
                     response.profile().scraper(),
                     response.profile().timezoneOffset(),
                     response.depth(),
-                    response.getContent());
+                    response.getContentBuffer());
             if ( documents == null ) {
                 throw new Parser.Failure("Parser returned null.", response.url());
             }
@@ -2747,6 +2786,9 @@ public final class Switchboard extends serverSwitch {
             // create a new errorURL DB entry
             this.crawlQueues.errorURL.push(response.url(), response.depth(), response.profile(), FailCategory.FINAL_PROCESS_CONTEXT, e.getMessage(), -1);
             return null;
+        } finally {
+            // a large content is held in a temporary file which is not needed after parsing
+            response.releaseContentBuffer();
         }
         final long parsingEndTime = System.currentTimeMillis();
         
@@ -2949,6 +2991,45 @@ public final class Switchboard extends serverSwitch {
 
     public void storeDocumentIndex(final IndexingQueueEntry in) {
         in.queueEntry.updateStatus(Response.QUEUE_STATE_INDEXSTORAGE);
+        storeDocumentIndex(in, null);
+        in.queueEntry.updateStatus(Response.QUEUE_STATE_FINISHED);
+    }
+
+    /**
+     * the storage step of the indexing queue. If batching is switched on, more entries are taken from
+     * the queue of the storage process and all of them are written to the index at once.
+     * @param in the entry which the storage process has taken from its queue
+     */
+    public void storeDocumentIndexBatch(final IndexingQueueEntry in) {
+        final int batchSize = getConfigInt(SwitchboardConstants.INDEXER_STORAGE_BATCHSIZE, 1);
+        if (batchSize <= 1 || this.indexingStorageProcessor == null) {
+            storeDocumentIndex(in);
+            return;
+        }
+        final List<IndexingQueueEntry> entries = new ArrayList<IndexingQueueEntry>(batchSize);
+        entries.add(in);
+        try {
+            this.indexingStorageProcessor.drain(entries, batchSize - 1, getConfigLong(SwitchboardConstants.INDEXER_STORAGE_BATCHTIME, 100));
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt(); // process what we have and let the executor terminate
+        }
+        final Segment.IndexBatch batch = new Segment.IndexBatch();
+        try {
+            for (final IndexingQueueEntry entry: entries) {
+                entry.queueEntry.updateStatus(Response.QUEUE_STATE_INDEXSTORAGE);
+                try {
+                    storeDocumentIndex(entry, batch);
+                } catch (final Throwable e) {
+                    ConcurrentLog.logException(e);
+                }
+            }
+        } finally {
+            this.index.storeBatch(batch);
+        }
+        for (final IndexingQueueEntry entry: entries) entry.queueEntry.updateStatus(Response.QUEUE_STATE_FINISHED);
+    }
+
+    private void storeDocumentIndex(final IndexingQueueEntry in, final Segment.IndexBatch batch) {
         // the condenser may be null in case that an indexing is not wanted (there may be a no-indexing flag in the file)
         if ( in.condenser != null ) {
             for ( int i = 0; i < in.documents.length; i++ ) {
@@ -2959,10 +3040,10 @@ public final class Switchboard extends serverSwitch {
                     in.documents[i],
                     in.condenser[i],
                     null,
-                    profile == null ? "crawler" : profile.handle());
+                    profile == null ? "crawler" : profile.handle(),
+                    batch);
             }
         }
-        in.queueEntry.updateStatus(Response.QUEUE_STATE_FINISHED);
     }
 
     /**
@@ -2973,6 +3054,7 @@ public final class Switchboard extends serverSwitch {
      * @param condenser
      * @param searchEvent
      * @param sourceName if this document was created by a crawl, then the sourceName contains the crawl hash
+     * @param batch if not null, the index data is collected in the batch and must be written with Segment.storeBatch
      */
     private void storeDocumentIndex(
         final Response queueEntry,
@@ -2980,7 +3062,8 @@ public final class Switchboard extends serverSwitch {
         final Document document,
         final Condenser condenser,
         final SearchEvent searchEvent,
-        final String sourceName) {
+        final String sourceName,
+        final Segment.IndexBatch batch) {
 
         //TODO: document must carry referer, size and last modified
 
@@ -3025,7 +3108,17 @@ public final class Switchboard extends serverSwitch {
                 sourceName,
                 getConfigBool(SwitchboardConstants.DHT_ENABLED, false),
                 this.getConfigBool(SwitchboardConstants.PROXY_TRANSPARENT_PROXY, false) ? "http://127.0.0.1:" + sb.getConfigInt("port", 8090) : null,
-                this.getConfig("crawler.http.acceptLanguage", null));
+                this.getConfig("crawler.http.acceptLanguage", null),
+                batch);
+
+        // store the sentences of the document for the snippet computation
+        if (this.getConfigBool(SwitchboardConstants.SEARCH_SNIPPET_SENTENCE_INDEX, true)) {
+            try {
+                Cache.storeSentenceIndex(url.hash(), SentenceIndex.encode(document.getSentences(false)));
+            } catch (final IOException e) {
+                this.log.warn("cannot store sentence index of " + url.toNormalform(true) + ": " + e.getMessage());
+            }
+        }
         final RSSFeed feed =
             EventChannel.channels(queueEntry.initiator() == null
                 ? EventChannel.PROXY
@@ -3358,7 +3451,7 @@ public final class Switchboard extends serverSwitch {
                         if (response == null) {
                             throw new IOException("response == null");
                         }
-                        if (response.getContent() == null) {
+                        if (!response.hasContent()) {
                             throw new IOException("content == null");
                         }
                         if (response.getResponseHeader() == null) {
@@ -3383,7 +3476,8 @@ public final class Switchboard extends serverSwitch {
                                     document,
                                     condenser,
                                     searchEvent,
-                                    "heuristic:" + heuristicName);
+                                    "heuristic:" + heuristicName,
+                                    null);
                                 Switchboard.this.log.info("addToIndex fill of url " + urlName + " finished");
                             }
                         }
@@ -3949,6 +4043,7 @@ public final class Switchboard extends serverSwitch {
         mySeed.setFlagAcceptRemoteCrawl(getConfigBool(SwitchboardConstants.CRAWLJOB_REMOTE, false));
         mySeed.setFlagAcceptRemoteIndex(getConfigBool(SwitchboardConstants.INDEX_RECEIVE_ALLOW, true));
         mySeed.setFlagSSLAvailable(this.getHttpServer() != null && this.getHttpServer().withSSL() && getConfigBool("server.https", false));
+        mySeed.setFlagBinaryRWI(true);
         if (mySeed.getFlagSSLAvailable()) mySeed.put(Seed.PORTSSL, Integer.toString(getPublicPort("port.ssl", 8443)));
 
         // set local ips
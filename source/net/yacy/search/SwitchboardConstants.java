@@ -317,11 +317,21 @@ public final class SwitchboardConstants {
     public static final String CRAWLER_MAX_SAME_HOST_IN_QUEUE   = "crawler.MaxSameHostInQueue";
     public static final String CRAWLER_FOLLOW_REDIRECTS         = "crawler.http.FollowRedirects"; // ignore the target url and follow to the redirect
     public static final String CRAWLER_RECORD_REDIRECTS         = "crawler.http.RecordRedirects"; // record the ignored redirected page to the index store
+    public static final String CRAWLER_HTTP_ASYNC               = "crawler.http.async"; // load http urls of the crawler with the non-blocking loader
+    public static final String CRAWLER_HTTP_ASYNC_MAX_IN_FLIGHT = "crawler.http.async.maxInFlight";
+    public static final String CRAWLER_HTTP_ASYNC_MAX_PER_HOST  = "crawler.http.async.maxConnectionsPerHost";
     
     public static final String CRAWLER_USER_AGENT_NAME          = "crawler.userAgent.name";
     public static final String CRAWLER_USER_AGENT_STRING        = "crawler.userAgent.string";
     public static final String CRAWLER_USER_AGENT_MINIMUMDELTA  = "crawler.userAgent.minimumdelta";
     public static final String CRAWLER_USER_AGENT_CLIENTTIMEOUT = "crawler.userAgent.clienttimeout";
+
+    /**
+     * the storage step of the indexing queue writes up to batchSize documents at once;
+     * it waits at most batchTime milliseconds for more documents. A batchSize of 1 switches batching off.
+     */
+    public static final String INDEXER_STORAGE_BATCHSIZE        = "indexer.storage.batchSize";
+    public static final String INDEXER_STORAGE_BATCHTIME        = "indexer.storage.batchTime";
     
     /**
      * debug flags
@@ -498,6 +508,9 @@ public final class SwitchboardConstants {
     public static final String SEARCH_TARGET_SPECIAL_PATTERN  = "search.target.special.pattern"; // ie 'own' addresses in topframe, 'other' in iframe
     public static final String SEARCH_VERIFY  = "search.verify";
     public static final String SEARCH_VERIFY_DELETE = "search.verify.delete";
+    public static final String SEARCH_SNIPPET_SENTENCE_INDEX = "search.snippet.sentenceIndex"; // store sentence indexes for the snippet computation
+    public static final String SEARCH_RESULTCACHE_MAXBYTES = "search.resultCache.maxBytes"; // byte budget of the query result cache, 0 switches it off
+    public static final String SEARCH_RESULTCACHE_MAXAGE = "search.resultCache.maxAge"; // time in milliseconds a cached query result is used
 
     public static final String SEARCH_NAVIGATION_MAXCOUNT = "search.navigation.maxcount"; // max lines displayed in standard search navigators/facets
 
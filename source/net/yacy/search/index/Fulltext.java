@@ -311,6 +311,36 @@ public final class Fulltext {
         return getMetadata(urlHash, null, 0L);
     }
     
+    /**
+     * get the metadata of many urls with a single solr query
+     * @param urlHashes the hashes of the urls
+     * @return a map from the url hash to the metadata; urls which are not in the index are missing in the map
+     */
+    public Map<String, URIMetadataNode> getMetadata(final Collection<byte[]> urlHashes) {
+        final Map<String, URIMetadataNode> nodes = new HashMap<String, URIMetadataNode>();
+        if (urlHashes.isEmpty()) return nodes;
+        final StringBuilder query = new StringBuilder(urlHashes.size() * 16 + 8).append(CollectionSchema.id.getSolrFieldName()).append(":(");
+        boolean first = true;
+        for (final byte[] urlHash: urlHashes) {
+            if (!first) query.append(" OR ");
+            query.append('"').append(ASCII.String(urlHash)).append('"');
+            first = false;
+        }
+        query.append(')');
+        try {
+            final SolrDocumentList docs = this.getDefaultConnector().getDocumentListByQuery(query.toString(), null, 0, urlHashes.size());
+            for (final SolrDocument doc: docs) try {
+                final URIMetadataNode node = new URIMetadataNode(doc);
+                nodes.put(ASCII.String(node.hash()), node);
+            } catch (final MalformedURLException e) {
+                ConcurrentLog.logException(e);
+            }
+        } catch (final IOException e) {
+            ConcurrentLog.logException(e);
+        }
+        return nodes;
+    }
+
     private URIMetadataNode getMetadata(final byte[] urlHash, final WordReferenceVars wre, final long score) {
         String u = ASCII.String(urlHash);
         
@@ -342,6 +372,19 @@ public final class Fulltext {
         if (MemoryControl.shortStatus()) clearCaches();
     }
 
+    public void putDocuments(final Collection<SolrInputDocument> docs) throws IOException {
+        SolrConnector connector = this.getDefaultConnector();
+        if (connector == null) return;
+        if (docs == null || docs.size() == 0) return;
+        ConcurrentLog.info("Fulltext", "indexing " + docs.size() + " documents");
+        try {
+            connector.add(docs);
+        } catch (final SolrException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+        if (MemoryControl.shortStatus()) clearCaches();
+    }
+
     public void putEdges(final Collection<SolrInputDocument> edges) throws IOException {
         if (!this.useWebgraph()) return;
         if (edges == null || edges.size() == 0) return;
@@ -29,12 +29,14 @@ package net.yacy.search.index;
 import java.io.File;
 import java.io.IOException;
 import java.net.MalformedURLException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
@@ -216,6 +218,13 @@ public class Segment {
         return this.fulltext;
     }
 
+    /**
+     * @return the dispatcher for dump and merge jobs of the kelondro indexes or null if no index is connected
+     */
+    public IODispatcher getMerger() {
+        return this.merger;
+    }
+
     public IndexCell<WordReference> termIndex() {
         return this.termIndex;
     }
@@ -558,6 +567,102 @@ public class Segment {
         }
     }
 
+    /**
+     * index data of several documents which is collected by storeDocument and written at once with storeBatch.
+     * The solr documents and webgraph edges are sent with one request each and the references of each term
+     * are merged into one container before they are added to the RWI.
+     */
+    public static class IndexBatch {
+
+        private final List<SolrInputDocument> documents;
+        private final List<SolrInputDocument> edges;
+        private final Map<byte[], ReferenceContainer<WordReference>> references;
+
+        public IndexBatch() {
+            this.documents = new ArrayList<SolrInputDocument>();
+            this.edges = new ArrayList<SolrInputDocument>();
+            this.references = new TreeMap<byte[], ReferenceContainer<WordReference>>(wordOrder);
+        }
+
+        private void addReference(final byte[] termHash, final WordReferenceRow entry) throws SpaceExceededException {
+            ReferenceContainer<WordReference> container = this.references.get(termHash);
+            if (container == null) {
+                container = ReferenceContainer.emptyContainer(wordReferenceFactory, termHash, 1);
+                this.references.put(termHash, container);
+            }
+            container.add(entry); // this copies the entry; the entry object is re-used by the caller
+        }
+
+        /**
+         * @return the number of documents in this batch
+         */
+        public int size() {
+            return this.documents.size();
+        }
+
+        public boolean isEmpty() {
+            return this.documents.isEmpty();
+        }
+    }
+
+    /**
+     * write all index data of a batch to the fulltext, the webgraph and the RWI
+     * @param batch the data which was collected with storeDocument
+     */
+    public void storeBatch(final IndexBatch batch) {
+        if (batch.isEmpty()) return;
+        final long startTime = System.currentTimeMillis();
+        try {
+            this.fulltext.putDocuments(batch.documents);
+        } catch (final IOException e) {
+            ConcurrentLog.logException(e);
+        }
+        if (batch.edges.size() > 0) {
+            final String error = putEdges(batch.edges, batch.edges.size() + " edges");
+            if (error != null) ConcurrentLog.severe("SOLR", error + ", PLEASE REPORT TO bugs.yacy.net");
+        }
+        final long storageEndTime = System.currentTimeMillis();
+        if (this.termIndex != null) {
+            for (final ReferenceContainer<WordReference> container: batch.references.values()) try {
+                this.termIndex.add(container);
+            } catch (final Exception e) {
+                ConcurrentLog.logException(e);
+            }
+        }
+        if (this.log.isInfo()) {
+            this.log.info("*Indexed batch of " + batch.size() + " documents, " + batch.edges.size() + " edges, " + batch.references.size() + " terms" +
+                    "\n\tLinkStorageTime: " + (storageEndTime - startTime) + " ms | " +
+                    "indexStorageTime: " + (System.currentTimeMillis() - storageEndTime) + " ms");
+        }
+        batch.documents.clear();
+        batch.edges.clear();
+        batch.references.clear();
+    }
+
+    /**
+     * write webgraph edges to solr; failed attempts are repeated up to 20 times
+     * @param edges
+     * @param name a description of the edges for the log
+     * @return null if the edges were written, the last error otherwise
+     */
+    private String putEdges(final List<SolrInputDocument> edges, final String name) {
+        String error = null;
+        tryloop: for (int i = 0; i < 20; i++) {
+            try {
+                error = null;
+                this.fulltext.putEdges(edges);
+                break tryloop;
+            } catch (final IOException e ) {
+                error = "failed to send " + name + " to solr: " + e.getMessage();
+                ConcurrentLog.warn("SOLR", error);
+                if (i == 10) this.fulltext.commit(true);
+                try {Thread.sleep(1000);} catch (final InterruptedException e1) {}
+                continue tryloop;
+            }
+        }
+        return error;
+    }
+
     public SolrInputDocument storeDocument(
             final DigestURL url,
             final DigestURL referrerURL,
@@ -572,6 +677,30 @@ public class Segment {
             final String proxy,
             final String acceptLanguage
             ) {
+        return storeDocument(url, referrerURL, collections, crawlProfile, responseHeader, document, condenser, searchEvent, sourceName, storeToRWI, proxy, acceptLanguage, null);
+    }
+
+    /**
+     * store a document to the indexes
+     * @param batch if not null, the solr documents, the webgraph edges and the RWI references are not written
+     *   but collected in the batch; they must be written afterwards with storeBatch
+     * @return the solr document
+     */
+    public SolrInputDocument storeDocument(
+            final DigestURL url,
+            final DigestURL referrerURL,
+            final Map<String, Pattern> collections,
+            final CrawlProfile crawlProfile,
+            final ResponseHeader responseHeader,
+            final Document document,
+            final Condenser condenser,
+            final SearchEvent searchEvent,
+            final String sourceName, // contains the crawl profile hash if this comes from a web crawl
+            final boolean storeToRWI,
+            final String proxy,
+            final String acceptLanguage,
+            final IndexBatch batch
+            ) {
         final long startTime = System.currentTimeMillis();
         
         // CREATE INDEX
@@ -613,26 +742,16 @@ public class Segment {
         }
         
         // STORE TO SOLR
-        this.putDocument(vector);
+        if (batch == null) this.putDocument(vector); else batch.documents.add(vector);
         List<SolrInputDocument> webgraph = vector.getWebgraphDocuments();
         String error = null;
         if (webgraph != null && webgraph.size() > 0) {
             
             // write the edges to the webgraph solr index
-            if (this.fulltext.useWebgraph()) {
-                tryloop: for (int i = 0; i < 20; i++) {
-                    try {
-                        error = null;
-                        this.fulltext.putEdges(webgraph);
-                        break tryloop;
-                    } catch (final IOException e ) {
-                        error = "failed to send " + urlNormalform + " to solr: " + e.getMessage();
-                        ConcurrentLog.warn("SOLR", error);
-                        if (i == 10) this.fulltext.commit(true);
-                        try {Thread.sleep(1000);} catch (final InterruptedException e1) {}
-                        continue tryloop;
-                    }
-                }
+            if (batch != null) {
+                if (this.fulltext.useWebgraph()) batch.edges.addAll(webgraph);
+            } else if (this.fulltext.useWebgraph()) {
+                error = putEdges(webgraph, urlNormalform);
             }
         
         }
@@ -717,7 +836,7 @@ public class Segment {
                 ientry.setWord(wprop);
                 wordhash = Word.word2hash(word);
                 if (this.termIndex != null && storeToRWI) try {
-                    this.termIndex.add(wordhash, ientry);
+                    if (batch == null) this.termIndex.add(wordhash, ientry); else batch.addReference(wordhash, ientry);
                 } catch (final Exception e) {
                     ConcurrentLog.logException(e);
                 }
@@ -742,7 +861,7 @@ public class Segment {
     
             // assign the catchall word
             ientry.setWord(wprop == null ? catchallWord : wprop); // we use one of the word properties as template to get the document characteristics
-            if (this.termIndex != null) try {this.termIndex.add(catchallHash, ientry);} catch (final Throwable e) {ConcurrentLog.logException(e);}
+            if (this.termIndex != null) try {if (batch == null) this.termIndex.add(catchallHash, ientry); else batch.addReference(catchallHash, ientry);} catch (final Throwable e) {ConcurrentLog.logException(e);}
         }
 
         // finish index time
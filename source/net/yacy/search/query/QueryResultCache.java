@@ -0,0 +1,268 @@
+// QueryResultCache.java
+// first published on http://yacy.net
+//
+// This is a part of YaCy, a peer-to-peer based web search engine
+//
+// LICENSE
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.search.query;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.yacy.cora.order.Base64Order;
+import net.yacy.cora.sorting.ScoreMap;
+import net.yacy.kelondro.data.word.Word;
+
+/**
+ * a cache for the final results of search events. In contrast to the SearchEventCache which holds
+ * complete events with all their threads, stacks and navigators, this cache holds only the ranked
+ * url hashes, the navigator counts and the result counters of a search. The size of each entry is
+ * accounted and the least recently used entries are evicted when the byte budget is exceeded.
+ * A search event can be re-constructed from an entry without doing any index search.
+ */
+public class QueryResultCache {
+
+    private final LinkedHashMap<String, Entry> cache; // access-ordered, the eldest entry is the least recently used
+    private long maxBytes, maxAge, bytes;
+    public long cacheInsert = 0, cacheHit = 0, cacheMiss = 0, cacheEvict = 0;
+
+    /**
+     * create a cache
+     * @param maxBytes the byte budget of all entries, 0 disables the cache
+     * @param maxAge the time in milliseconds after which an entry is not used any more
+     */
+    public QueryResultCache(final long maxBytes, final long maxAge) {
+        this.cache = new LinkedHashMap<String, Entry>(64, 0.75f, true);
+        this.maxBytes = maxBytes;
+        this.maxAge = maxAge;
+        this.bytes = 0;
+    }
+
+    /**
+     * compute the cache key of a query. Beside the query id, which already contains the query hashes,
+     * modifiers, language and ranking profile, the key contains the normalized query string and the
+     * configured navigation because both change the result of a search.
+     * @param query the query
+     * @param navigation the configured navigators
+     * @return the key
+     */
+    public static String key(final QueryParams query, final String navigation) {
+        return query.id(false) + '*' + query.getQueryGoal().getQueryString(false).toLowerCase() + '*' + navigation;
+    }
+
+    public synchronized void setLimits(final long maxBytes, final long maxAge) {
+        this.maxBytes = maxBytes;
+        this.maxAge = maxAge;
+        shrink();
+    }
+
+    public boolean isEnabled() {
+        return this.maxBytes > 0;
+    }
+
+    /**
+     * get a cache entry; entries which are older than the maximum age are removed
+     * @param key the key as computed with key()
+     * @return the entry or null if there is no valid entry
+     */
+    public synchronized Entry get(final String key) {
+        final Entry entry = this.cache.get(key);
+        if (entry != null && entry.time + this.maxAge < System.currentTimeMillis()) {
+            remove(key);
+            this.cacheMiss++;
+            return null;
+        }
+        if (entry == null) this.cacheMiss++; else this.cacheHit++;
+        return entry;
+    }
+
+    /**
+     * put an entry to the cache; the least recently used entries are evicted if the cache is full
+     * @param key the key as computed with key()
+     * @param entry the entry
+     */
+    public synchronized void put(final String key, final Entry entry) {
+        final long size = entry.byteSize() + 40 + 2 * key.length();
+        if (size > this.maxBytes) return;
+        remove(key);
+        entry.cacheSize = size;
+        this.cache.put(key, entry);
+        this.bytes += size;
+        this.cacheInsert++;
+        shrink();
+    }
+
+    public synchronized void remove(final String key) {
+        final Entry entry = this.cache.remove(key);
+        if (entry != null) this.bytes -= entry.cacheSize;
+    }
+
+    /**
+     * remove all entries which contain the given url; this is used if a document was deleted from the index
+     * @param urlhash the hash of the url
+     * @return the number of removed entries
+     */
+    public synchronized int removeURL(final byte[] urlhash) {
+        int c = 0;
+        final Iterator<Entry> i = this.cache.values().iterator();
+        while (i.hasNext()) {
+            final Entry entry = i.next();
+            if (entry.contains(urlhash)) {
+                i.remove();
+                this.bytes -= entry.cacheSize;
+                c++;
+            }
+        }
+        return c;
+    }
+
+    public synchronized void clear() {
+        this.cache.clear();
+        this.bytes = 0;
+    }
+
+    public synchronized int size() {
+        return this.cache.size();
+    }
+
+    public synchronized long byteSize() {
+        return this.bytes;
+    }
+
+    private void shrink() {
+        final Iterator<Entry> i = this.cache.values().iterator();
+        while (this.bytes > this.maxBytes && i.hasNext()) {
+            this.bytes -= i.next().cacheSize;
+            i.remove();
+            this.cacheEvict++;
+        }
+    }
+
+    /**
+     * the result of a search: url hashes in ranking order, navigator counts and result counters.
+     * All values are stored in arrays to keep the memory footprint small and predictable.
+     */
+    public static final class Entry {
+
+        private final long time;
+        private final byte[] urlhashes; // concatenated url hashes in ranking order
+        private final int[] counters;
+        private final Map<String, String[]> facetKeys;
+        private final Map<String, int[]> facetCounts;
+        private long cacheSize;
+
+        /**
+         * create an entry
+         * @param urlhashes the url hashes of the results in ranking order
+         * @param counters the result counters of the search event
+         * @param facets the navigators of the search event, key is the navigator name
+         */
+        public Entry(final List<byte[]> urlhashes, final int[] counters, final Map<String, ScoreMap<String>> facets) {
+            this.time = System.currentTimeMillis();
+            this.urlhashes = new byte[urlhashes.size() * Word.commonHashLength];
+            int p = 0;
+            for (final byte[] urlhash: urlhashes) {
+                System.arraycopy(urlhash, 0, this.urlhashes, p, Word.commonHashLength);
+                p += Word.commonHashLength;
+            }
+            this.counters = counters.clone();
+            this.facetKeys = new LinkedHashMap<String, String[]>();
+            this.facetCounts = new LinkedHashMap<String, int[]>();
+            for (final Map.Entry<String, ScoreMap<String>> facet: facets.entrySet()) {
+                final ScoreMap<String> map = facet.getValue();
+                if (map == null || map.isEmpty()) continue;
+                final String[] keys = new String[map.size()];
+                final int[] counts = new int[keys.length];
+                int i = 0;
+                for (final String key: map) {
+                    if (i >= keys.length) break;
+                    keys[i] = key;
+                    counts[i++] = map.get(key);
+                }
+                this.facetKeys.put(facet.getKey(), i == keys.length ? keys : Arrays.copyOf(keys, i));
+                this.facetCounts.put(facet.getKey(), i == counts.length ? counts : Arrays.copyOf(counts, i));
+            }
+            this.cacheSize = 0;
+        }
+
+        public long getTime() {
+            return this.time;
+        }
+
+        /**
+         * @return the number of url hashes
+         */
+        public int size() {
+            return this.urlhashes.length / Word.commonHashLength;
+        }
+
+        /**
+         * @param i the rank position
+         * @return the url hash at the given rank position
+         */
+        public byte[] urlhash(final int i) {
+            final byte[] urlhash = new byte[Word.commonHashLength];
+            System.arraycopy(this.urlhashes, i * Word.commonHashLength, urlhash, 0, Word.commonHashLength);
+            return urlhash;
+        }
+
+        public boolean contains(final byte[] urlhash) {
+            for (int p = 0; p < this.urlhashes.length; p += Word.commonHashLength) {
+                if (Base64Order.enhancedCoder.equal(this.urlhashes, p, urlhash, 0, Word.commonHashLength)) return true;
+            }
+            return false;
+        }
+
+        public int[] getCounters() {
+            return this.counters.clone();
+        }
+
+        public Set<String> facetNames() {
+            return Collections.unmodifiableSet(this.facetKeys.keySet());
+        }
+
+        /**
+         * add the counts of a facet to a navigator
+         * @param name the navigator name
+         * @param target the navigator
+         */
+        public void facet(final String name, final ScoreMap<String> target) {
+            final String[] keys = this.facetKeys.get(name);
+            if (keys == null || target == null) return;
+            final int[] counts = this.facetCounts.get(name);
+            for (int i = 0; i < keys.length; i++) target.inc(keys[i], counts[i]);
+        }
+
+        /**
+         * @return an estimation of the memory used by this entry
+         */
+        public long byteSize() {
+            long size = 64 + 16 + this.urlhashes.length + 16 + 4 * this.counters.length;
+            for (final Map.Entry<String, String[]> facet: this.facetKeys.entrySet()) {
+                size += 96 + 2 * facet.getKey().length();
+                for (final String key: facet.getValue()) size += 48 + 2 * key.length() + 4;
+            }
+            return size;
+        }
+    }
+}
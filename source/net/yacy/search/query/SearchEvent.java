@@ -31,6 +31,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.ConcurrentModificationException;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
@@ -40,9 +41,7 @@ import java.util.Set;
 import java.util.SortedMap;
 import java.util.SortedSet;
 import java.util.TreeMap;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
 
@@ -130,6 +129,8 @@ public final class SearchEvent {
 
     public static final int SNIPPET_MAX_LENGTH = 220;
     private static final int MAX_TOPWORDS = 12; // default count of words for topicnavigagtor
+    private static final String VOCABULARY_FACET = "vocabulary:"; // prefix of vocabulary navigator names in the QueryResultCache
+    private static final String PLUGIN_FACET = "plugin:"; // prefix of navigator plugin names in the QueryResultCache
 
     private long eventTime;
     public QueryParams query;
@@ -165,6 +166,7 @@ public final class SearchEvent {
     private long                                          snippetComputationAllTime;
     private ConcurrentHashMap<String, LinkedHashSet<String>> snippets;
     private final boolean remote;
+    private final boolean fromResultCache; // true if this event was re-constructed from the QueryResultCache
     public final boolean addResultsToLocalIndex; // add received results to local index (defult=true)
     /** Maximum size allowed (in kbytes) for a remote document result to be stored to local index */
     private long remoteStoredDocMaxSize;
@@ -231,7 +233,8 @@ public final class SearchEvent {
         final int remote_maxcount,
         final long remote_maxtime,
         final boolean deleteIfSnippetFail,
-        final boolean addResultsToLocalIdx) {
+        final boolean addResultsToLocalIdx,
+        final QueryResultCache.Entry cached) {
 
         long ab = MemoryControl.available();
         if (ab < 1024 * 1024 * 200) {
@@ -317,7 +320,8 @@ public final class SearchEvent {
         }
 
         this.snippets = new ConcurrentHashMap<String, LinkedHashSet<String>>(); 
-        this.secondarySearchSuperviser = (this.query.getQueryGoal().getIncludeHashes().size() > 1) ? new SecondarySearchSuperviser(this) : null; // generate abstracts only for combined searches
+        this.fromResultCache = cached != null;
+        this.secondarySearchSuperviser = (cached == null && this.query.getQueryGoal().getIncludeHashes().size() > 1) ? new SecondarySearchSuperviser(this) : null; // generate abstracts only for combined searches
         if (this.secondarySearchSuperviser != null) this.secondarySearchSuperviser.start();
         this.secondarySearchThreads = null;
         this.preselectedPeerHashes = preselectedPeerHashes;
@@ -326,7 +330,7 @@ public final class SearchEvent {
         this.heuristics = new TreeMap<byte[], HeuristicResult>(Base64Order.enhancedCoder);
         this.IAmaxcounthash = null;
         this.IAneardhthash = null;
-        this.remote = (peers != null && peers.sizeConnected() > 0) && (this.query.domType == QueryParams.Searchdom.CLUSTER || (this.query.domType == QueryParams.Searchdom.GLOBAL && Switchboard.getSwitchboard().getConfigBool(SwitchboardConstants.INDEX_RECEIVE_ALLOW_SEARCH, false)));
+        this.remote = cached == null && (peers != null && peers.sizeConnected() > 0) && (this.query.domType == QueryParams.Searchdom.CLUSTER || (this.query.domType == QueryParams.Searchdom.GLOBAL && Switchboard.getSwitchboard().getConfigBool(SwitchboardConstants.INDEX_RECEIVE_ALLOW_SEARCH, false)));
         this.addResultsToLocalIndex = addResultsToLocalIdx;
         /* Défault : no size limit to store remote result documents to local index. Use setter to eventually modify it. */
         this.remoteStoredDocMaxSize = -1;
@@ -358,7 +362,7 @@ public final class SearchEvent {
             this.flagcount[i] = 0;
         }
         this.feedersAlive = new AtomicInteger(0);
-        this.feedersTerminated = new AtomicInteger(0);
+        this.feedersTerminated = new AtomicInteger(cached == null ? 0 : 1); // an event from the result cache has no feeders
         this.snippetFetchAlive = new AtomicInteger(0);
         this.addRunning = true;
         this.receivedRemoteReferences = new AtomicInteger(0);
@@ -370,14 +374,14 @@ public final class SearchEvent {
         }
 
         // start a local solr search
-        if (!Switchboard.getSwitchboard().getConfigBool(SwitchboardConstants.DEBUG_SEARCH_LOCAL_SOLR_OFF, false)) {
+        if (cached == null && !Switchboard.getSwitchboard().getConfigBool(SwitchboardConstants.DEBUG_SEARCH_LOCAL_SOLR_OFF, false)) {
             this.localsolrsearch = RemoteSearch.solrRemoteSearch(this, this.query.solrQuery(this.query.contentdom, true, this.excludeintext_image), 0, this.query.itemsPerPage, null /*this peer*/, 0, Switchboard.urlBlacklist);
         }
         this.localsolroffset = this.query.itemsPerPage;
         
         // start a local RWI search concurrently
         this.rwiProcess = null;
-        if (query.getSegment().connectedRWI() && !Switchboard.getSwitchboard().getConfigBool(SwitchboardConstants.DEBUG_SEARCH_LOCAL_DHT_OFF, false)) {
+        if (cached == null && query.getSegment().connectedRWI() && !Switchboard.getSwitchboard().getConfigBool(SwitchboardConstants.DEBUG_SEARCH_LOCAL_DHT_OFF, false)) {
             // we start the local search only if this peer is doing a remote search or when it is doing a local search and the peer is old
             rwiProcess = new RWIProcess(this.localsolrsearch);
             rwiProcess.start();
@@ -426,7 +430,7 @@ public final class SearchEvent {
         } else {
             this.primarySearchThreadsL = null;
             this.nodeSearchThreads = null;
-            this.pollImmediately = !query.getSegment().connectedRWI() || !Switchboard.getSwitchboard().getConfigBool(SwitchboardConstants.INDEX_RECEIVE_ALLOW_SEARCH, false);
+            this.pollImmediately = cached != null || !query.getSegment().connectedRWI() || !Switchboard.getSwitchboard().getConfigBool(SwitchboardConstants.INDEX_RECEIVE_ALLOW_SEARCH, false);
             if ( generateAbstracts ) {
                 // we need the results now
                 try {
@@ -495,6 +499,9 @@ public final class SearchEvent {
             this.snippetFetchWordHashes.excludeDestructive(Switchboard.stopwordHashes);
         }
 
+        // re-construct the result of an earlier search from the result cache
+        if (cached != null) restoreResultCacheEntry(cached);
+
         // clean up events
         SearchEventCache.cleanupEvents(false);
         EventTracker.update(EventTracker.EClass.SEARCH, new ProfilingGraph.EventSearch(this.query.id(true), SearchEventType.CLEANUP, "", 0, 0), false);
@@ -612,7 +619,7 @@ public final class SearchEvent {
         long timer = System.currentTimeMillis();
 
         // normalize entries
-        final BlockingQueue<WordReferenceVars> decodedEntries = this.order.normalizeWith(index, maxtime, local);
+        final WordReferenceVars[] decodedEntries = this.order.normalize(index, maxtime, local);
         int is = index.size();
         EventTracker.update(EventTracker.EClass.SEARCH, new ProfilingGraph.EventSearch(
             this.query.id(true),
@@ -629,24 +636,15 @@ public final class SearchEvent {
         long timeout = maxtime == Long.MAX_VALUE ? Long.MAX_VALUE : System.currentTimeMillis() + maxtime;
         int successcounter = 0;
         try {
-            WordReferenceVars iEntry;
-            long remaining;
             String acceptableAlternativeSitehash = null;
             if (this.query.modifier.sitehost != null && this.query.modifier.sitehost.length() > 0) try {
                 acceptableAlternativeSitehash = DigestURL.hosthash(this.query.modifier.sitehost.startsWith("www.") ? this.query.modifier.sitehost.substring(4) : "www." + this.query.modifier.sitehost, 80);
             } catch (MalformedURLException e1) {}
-            pollloop: while ( true ) {
-                remaining = timeout - System.currentTimeMillis();
-                if (remaining <= 0) {
-                    ConcurrentLog.warn("SearchEvent", "terminated 'add' loop before poll time-out = " + remaining + ", decodedEntries.size = " + decodedEntries.size());
-                    break;
-                }
-                iEntry = decodedEntries.poll(remaining, TimeUnit.MILLISECONDS);
-                if (iEntry == null) {
-                    ConcurrentLog.warn("SearchEvent", "terminated 'add' loop after poll time-out = " + remaining + ", decodedEntries.size = " + decodedEntries.size());
-                    break pollloop;
-                }
-                if (iEntry == WordReferenceVars.poison) {
+            int p = 0;
+            pollloop: for (final WordReferenceVars iEntry: decodedEntries) {
+                p++;
+                if ((p & 0x3f) == 0 && System.currentTimeMillis() > timeout) {
+                    ConcurrentLog.warn("SearchEvent", "terminated 'add' loop at time-out, remaining entries = " + (decodedEntries.length - p));
                     break pollloop;
                 }
                 assert (iEntry.urlhash().length == index.row().primaryKeyLength);
@@ -715,7 +713,6 @@ public final class SearchEvent {
             }
             if (System.currentTimeMillis() >= timeout) ConcurrentLog.warn("SearchEvent", "rwi normalization ended with timeout = " + maxtime);
 
-        } catch (final InterruptedException e ) {
         } catch (final SpaceExceededException e ) {
         }
 
@@ -775,6 +772,93 @@ public final class SearchEvent {
         this.resultList.clear();
     }
 
+    /**
+     * compute an entry for the QueryResultCache: the url hashes of the result list and of the node stack
+     * in ranking order, the navigator counts and the result counters. References which are still in
+     * the rwi stack are not part of the entry because they have no metadata yet.
+     * This consumes the stacks, so it must only be called when the event is removed from the SearchEventCache.
+     * @return the entry or null if the search is not finished, has no result or was itself taken from the result cache;
+     * also null if remote results are not stored in the local index, because they could not be restored from the index
+     */
+    protected QueryResultCache.Entry resultCacheEntry() {
+        if (this.fromResultCache || !this.feedingIsFinished()) return null;
+        if (!this.addResultsToLocalIndex && (this.remote_rwi_available.get() > 0 || this.remote_solr_available.get() > 0)) return null;
+        final List<byte[]> hashes = new ArrayList<byte[]>();
+        final Set<String> double_check = new HashSet<String>();
+        final Iterator<Element<URIMetadataNode>> i = this.resultList.iterator();
+        while (i.hasNext()) {
+            final byte[] hash = i.next().getElement().hash();
+            if (double_check.add(ASCII.String(hash))) hashes.add(hash);
+        }
+        Element<URIMetadataNode> element;
+        while ((element = this.nodeStack.poll()) != null) {
+            final byte[] hash = element.getElement().hash();
+            if (double_check.add(ASCII.String(hash))) hashes.add(hash);
+        }
+        if (hashes.isEmpty()) return null;
+        final AtomicInteger[] c = resultCounters();
+        final int[] counters = new int[c.length + 1];
+        for (int j = 0; j < c.length; j++) counters[j] = c[j].get();
+        counters[c.length] = this.localsolroffset;
+        return new QueryResultCache.Entry(hashes, counters, facetNavigators());
+    }
+
+    /**
+     * fill this event with the result of an earlier search: the navigators and counters are set and
+     * the metadata of the cached urls is put on the node stack, with weights that keep the cached ranking.
+     * The metadata of all urls is read with one index query. Urls which had been deleted from the index in the meantime are left out.
+     * @param cached the entry from the QueryResultCache
+     */
+    private void restoreResultCacheEntry(final QueryResultCache.Entry cached) {
+        final int[] counters = cached.getCounters();
+        final AtomicInteger[] c = resultCounters();
+        for (int i = 0; i < c.length && i < counters.length; i++) c[i].set(counters[i]);
+        if (counters.length > c.length) this.localsolroffset = counters[c.length];
+        for (final String name: cached.facetNames()) {
+            if (name.startsWith(VOCABULARY_FACET) && !this.vocabularyNavigator.containsKey(name.substring(VOCABULARY_FACET.length()))) {
+                this.vocabularyNavigator.put(name.substring(VOCABULARY_FACET.length()), new ConcurrentScoreMap<String>());
+            }
+        }
+        final Map<String, ScoreMap<String>> navigators = facetNavigators();
+        for (final String name: cached.facetNames()) cached.facet(name, navigators.get(name));
+        final int size = Math.min(cached.size(), max_results_node);
+        final List<byte[]> hashes = new ArrayList<byte[]>(size);
+        for (int i = 0; i < size; i++) hashes.add(cached.urlhash(i));
+        final Map<String, URIMetadataNode> nodes = this.query.getSegment().fulltext().getMetadata(hashes);
+        for (int i = 0; i < size; i++) {
+            final URIMetadataNode node = nodes.get(ASCII.String(hashes.get(i)));
+            if (node == null) continue;
+            try {
+                this.urlhashes.putUnique(node.hash());
+            } catch (final SpaceExceededException e) {
+                break;
+            }
+            this.nodeStack.put(new ReverseElement<URIMetadataNode>(node, size - i));
+        }
+    }
+
+    private AtomicInteger[] resultCounters() {
+        return new AtomicInteger[]{
+            this.local_rwi_available, this.local_rwi_stored, this.remote_rwi_available, this.remote_rwi_stored, this.remote_rwi_peerCount,
+            this.local_solr_available, this.local_solr_stored, this.remote_solr_available, this.remote_solr_stored, this.remote_solr_peerCount};
+    }
+
+    /**
+     * @return all active navigators of this event, key is a name which is used in the QueryResultCache
+     */
+    private Map<String, ScoreMap<String>> facetNavigators() {
+        final Map<String, ScoreMap<String>> navigators = new LinkedHashMap<String, ScoreMap<String>>();
+        if (this.locationNavigator != null) navigators.put("location", this.locationNavigator);
+        if (this.hostNavigator != null) navigators.put("hosts", this.hostNavigator);
+        if (this.protocolNavigator != null) navigators.put("protocol", this.protocolNavigator);
+        if (this.filetypeNavigator != null) navigators.put("filetype", this.filetypeNavigator);
+        if (this.dateNavigator != null) navigators.put("date", this.dateNavigator);
+        if (this.languageNavigator != null) navigators.put("language", this.languageNavigator);
+        for (final Map.Entry<String, ScoreMap<String>> entry: this.vocabularyNavigator.entrySet()) navigators.put(VOCABULARY_FACET + entry.getKey(), entry.getValue());
+        for (final Map.Entry<String, Navigator> entry: this.navigatorPlugins.entrySet()) navigators.put(PLUGIN_FACET + entry.getKey(), entry.getValue());
+        return navigators;
+    }
+
     public String abstractsString(final byte[] hash) {
         return this.IAResults.get(hash);
     }
@@ -1626,7 +1710,7 @@ public final class SearchEvent {
         EventTracker.update(EventTracker.EClass.SEARCH, new ProfilingGraph.EventSearch(this.query.id(true), SearchEventType.ONERESULT, "started, item = " + item + ", available = " + this.getResultCount(), 0, 0), false);
         // wait until a local solr is finished, we must do that to be able to check if we need more
         if (this.localsolrsearch != null && this.localsolrsearch.isAlive()) {try {this.localsolrsearch.join(100);} catch (final InterruptedException e) {}}
-        if (item >= this.localsolroffset && this.local_solr_stored.get() == 0 && this.localsolrsearch.isAlive()) {try {this.localsolrsearch.join();} catch (final InterruptedException e) {}}
+        if (item >= this.localsolroffset && this.local_solr_stored.get() == 0 && this.localsolrsearch != null && this.localsolrsearch.isAlive()) {try {this.localsolrsearch.join();} catch (final InterruptedException e) {}}
         if (item >= this.localsolroffset && this.local_solr_stored.get() >= item) {
             // load remaining solr results now
             int nextitems = item - this.localsolroffset + this.query.itemsPerPage; // example: suddenly switch to item 60, just 10 had been shown, 20 loaded.
@@ -31,6 +31,7 @@ import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.SortedSet;
 
+import net.yacy.cora.document.encoding.ASCII;
 import net.yacy.cora.util.ConcurrentLog;
 import net.yacy.data.WorkTables;
 import net.yacy.kelondro.util.MemoryControl;
@@ -49,6 +50,7 @@ public class SearchEventCache {
     private static final long memlimitMedium = 200 * 1024 * 1024; // 100 MB
     public volatile static String lastEventID = "";
     public static long cacheInsert = 0, cacheHit = 0, cacheMiss = 0, cacheDelete = 0;
+    public static final QueryResultCache resultCache = new QueryResultCache(16 * 1024 * 1024, 3600000); // the final results of events which left this cache
 
     public static int size() {
         return lastEvents.size();
@@ -64,6 +66,7 @@ public class SearchEventCache {
     }
 
     public static boolean delete(final String urlhash) {
+        resultCache.removeURL(ASCII.getBytes(urlhash));
         synchronized (lastEvents) {
             for (final SearchEvent event: lastEvents.values()) {
                 if (event.delete(urlhash)) return true;
@@ -87,6 +90,7 @@ public class SearchEventCache {
                 event = eventEntry.getValue();
                 if (event == null) continue;
                 if (all || event.getEventTime() + acceptTime < System.currentTimeMillis()) {
+                    storeResult(event);
                     event.cleanup();
                     i.remove();
                     cacheDelete++;
@@ -108,6 +112,7 @@ public class SearchEventCache {
                 eventEntry = i.next();
                 event = eventEntry.getValue();
                 if (event == null) continue;
+                storeResult(event);
                 event.cleanup();
                 i.remove();
                 cacheDelete++;
@@ -117,6 +122,25 @@ public class SearchEventCache {
         }
     }
 
+    /**
+     * keep the final result of an event in the result cache before the event is cleaned up
+     * @param event the event which is removed from this cache
+     */
+    private static void storeResult(final SearchEvent event) {
+        if (!resultCache.isEnabled()) return;
+        try {
+            final QueryResultCache.Entry entry = event.resultCacheEntry();
+            if (entry != null) resultCache.put(QueryResultCache.key(event.query, navigation()), entry);
+        } catch (final Throwable e) {
+            ConcurrentLog.logException(e);
+        }
+    }
+
+    private static String navigation() {
+        final Switchboard sb = Switchboard.getSwitchboard();
+        return sb == null ? "" : sb.getConfig("search.navigation", "");
+    }
+
     public static SearchEvent getEvent(final String eventID) {
         SearchEvent event = lastEvents.get(eventID);
         if (event == null) {
@@ -168,12 +192,24 @@ public class SearchEventCache {
                 ConcurrentLog.info("SearchEventCache", "getEvent: " + lastEvents.size() + " in cache");
             }
             
-            // start a new event
+            // check if the result of an earlier search can be re-used; abstracts can only be computed with a new search
             Switchboard sb = Switchboard.getSwitchboard();
+            QueryResultCache.Entry cached = null;
+            if (resultCache.isEnabled() && !generateAbstracts) {
+                final String key = QueryResultCache.key(query, navigation());
+                cached = resultCache.get(key);
+                if (cached != null && sb != null && !sb.crawlQueues.noticeURL.isEmpty() && System.currentTimeMillis() - cached.getTime() > 60000) {
+                    // same as above: during a local crawl, results are not older than a minute
+                    resultCache.remove(key);
+                    cached = null;
+                }
+            }
+
+            // start a new event
             final boolean delete = sb == null || Switchboard.getSwitchboard().getConfigBool(SwitchboardConstants.SEARCH_VERIFY_DELETE, true)
                     || (sb.getConfigBool(SwitchboardConstants.NETWORK_SEARCHVERIFY, false) && sb.peers.mySeed().getFlagAcceptRemoteIndex());
             final boolean addToLocalIdx = sb == null || Switchboard.getSwitchboard().getConfigBool(SwitchboardConstants.REMOTESEARCH_RESULT_STORE, true);
-            event = new SearchEvent(query, peers, workTables, preselectedPeerHashes, generateAbstracts, loader, remote_maxcount, remote_maxtime, delete, addToLocalIdx);
+            event = new SearchEvent(query, peers, workTables, preselectedPeerHashes, generateAbstracts, loader, remote_maxcount, remote_maxtime, delete, addToLocalIdx, cached);
             /* Optional config option may be valued to limit size of remote documents added to local index */
             if(sb != null) {
             	event.setRemoteDocStoredMaxSize(sb.getConfigLong(SwitchboardConstants.REMOTESEARCH_RESULT_STORE_MAXSIZE, -1));
@@ -26,12 +26,12 @@
 
 package net.yacy.search.ranking;
 
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.Map;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.Semaphore;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
 import net.yacy.cora.document.encoding.ASCII;
 import net.yacy.cora.document.id.DigestURL;
@@ -44,16 +44,28 @@ import net.yacy.kelondro.data.meta.URIMetadataNode;
 import net.yacy.kelondro.data.word.WordReference;
 import net.yacy.kelondro.data.word.WordReferenceRow;
 import net.yacy.kelondro.data.word.WordReferenceVars;
+import net.yacy.kelondro.index.Row;
 import net.yacy.kelondro.rwi.ReferenceContainer;
 import net.yacy.kelondro.util.Bitfield;
+import net.yacy.search.index.Segment;
 
 
 public class ReferenceOrder {
 
     private static int cores = Runtime.getRuntime().availableProcessors();
 
-    private       int maxdomcount;
-    private       WordReferenceVars min, max;
+    /**
+     * the number of entries of a container which are normalized in one task
+     */
+    private static final int chunkSize = 256;
+
+    /**
+     * the pool for the normalization, shared by all queries
+     */
+    private static final ForkJoinPool rankingPool = new ForkJoinPool(cores);
+
+    private volatile int maxdomcount;
+    private volatile WordReferenceVars min, max;
     private final ConcurrentScoreMap<String> doms; // collected for "authority" heuristic
     private final RankingProfile ranking;
     private final String language;
@@ -67,145 +79,140 @@ public class ReferenceOrder {
         this.language = language;
     }
 
-    public BlockingQueue<WordReferenceVars> normalizeWith(final ReferenceContainer<WordReference> container, long maxtime, final boolean local) {
-        final LinkedBlockingQueue<WordReferenceVars> out = new LinkedBlockingQueue<WordReferenceVars>();
-        int threads = cores;
-        if (container.size() < 100) threads = 2;
-        final Thread distributor = new NormalizeDistributor(container, out, threads, maxtime, local);
-        distributor.start();
+    /**
+     * decode and normalize the entries of a container: find the minimum and maximum of the separate ranking criteria
+     * and count the entries per host. Containers with more than chunkSize entries are split into chunks
+     * which are processed in the shared ranking pool; the calling thread waits for the result.
+     * @param container
+     * @param maxtime the maximum time for the normalization; entries which are not decoded within that time are omitted
+     * @param local
+     * @return the decoded entries, ready for cardinal()
+     */
+    public WordReferenceVars[] normalize(final ReferenceContainer<WordReference> container, final long maxtime, final boolean local) {
+        final int size = container.size();
+        final WordReferenceVars[] decoded = new WordReferenceVars[size];
+        if (size == 0) return decoded;
+        final long timeout = maxtime == Long.MAX_VALUE ? Long.MAX_VALUE : System.currentTimeMillis() + maxtime;
+        final NormalizeTask task = new NormalizeTask(container, decoded, 0, size, timeout, local);
+        if (size <= chunkSize || ForkJoinTask.inForkJoinPool()) {
+            task.invoke(); // small containers are done in the calling thread
+        } else {
+            rankingPool.invoke(task);
+        }
 
-        // return the resulting queue while the processing queues are still working
-        return out;
+        // update the global min/max; new objects are assigned so that a concurrent cardinal() computation sees a consistent state of each object
+        if (task.min != null) synchronized (this) {
+            final WordReferenceVars newmin = this.min == null ? task.min : this.min.clone();
+            final WordReferenceVars newmax = this.max == null ? task.max : this.max.clone();
+            if (this.min != null) newmin.min(task.min);
+            if (this.max != null) newmax.max(task.max);
+            this.min = newmin;
+            this.max = newmax;
+            for (final Map.Entry<String, Integer> e: task.doms.entrySet()) {
+                this.doms.inc(e.getKey(), e.getValue().intValue());
+            }
+            if (!this.doms.isEmpty()) this.maxdomcount = this.doms.getMaxScore();
+        }
+
+        // entries may be missing because of the timeout
+        int c = 0;
+        for (int i = 0; i < size; i++) if (decoded[i] != null) decoded[c++] = decoded[i];
+        return c == size ? decoded : Arrays.copyOf(decoded, c);
     }
 
-    private final class NormalizeDistributor extends Thread {
+    /**
+     * normalization of a part of a container. Each task computes the min/max and the host counts of its part;
+     * the results of the sub-tasks are joined when they are finished, without any shared state.
+     */
+    private final class NormalizeTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 4530434929744938542L;
 
-        ReferenceContainer<WordReference> container;
-        LinkedBlockingQueue<WordReferenceVars> out;
-        private final int threads;
-        private final long maxtime;
+        private final ReferenceContainer<WordReference> container;
+        private final WordReferenceVars[] decoded;
+        private final int from, to;
+        private final long timeout;
         private final boolean local;
-        
-        public NormalizeDistributor(final ReferenceContainer<WordReference> container, final LinkedBlockingQueue<WordReferenceVars> out, final int threads, final long maxtime, final boolean local) {
-        	super("ReferenceOrder.NormalizeDistributor");
+        private WordReferenceVars min, max;
+        private Map<String, Integer> doms;
+
+        private NormalizeTask(final ReferenceContainer<WordReference> container, final WordReferenceVars[] decoded, final int from, final int to, final long timeout, final boolean local) {
             this.container = container;
-            this.out = out;
-            this.threads = threads;
-            this.maxtime = maxtime;
+            this.decoded = decoded;
+            this.from = from;
+            this.to = to;
+            this.timeout = timeout;
             this.local = local;
+            this.min = null;
+            this.max = null;
+            this.doms = null;
         }
 
         @Override
-        public void run() {
-            // transform the reference container into a stream of parsed entries
-            final BlockingQueue<WordReferenceVars> vars = WordReferenceVars.transform(this.container, this.maxtime, this.local);
-
-            // start the transformation threads
-            final Semaphore termination = new Semaphore(this.threads);
-            final NormalizeWorker[] worker = new NormalizeWorker[this.threads];
-            for (int i = 0; i < this.threads; i++) {
-                worker[i] = new NormalizeWorker(this.out, termination, this.maxtime);
-                worker[i].start();
+        protected void compute() {
+            if (this.to - this.from <= chunkSize) {
+                computeChunk();
+                return;
             }
-
-            // fill the queue
-            WordReferenceVars iEntry;
-            int p = 0;
-            long timeout = this.maxtime == Long.MAX_VALUE ? Long.MAX_VALUE : System.currentTimeMillis() + this.maxtime;
-            try {
-                while ((iEntry = vars.take()) != WordReferenceVars.poison) {
-                    worker[p % this.threads].add(iEntry);
-                    p++;
-                    if (System.currentTimeMillis() > timeout) {
-                        ConcurrentLog.warn("NormalizeDistributor", "adding of decoded rows to workers ended with timeout = " + this.maxtime);
-                        break;
-                    }
-                }
-            } catch (final InterruptedException e) {
+            final int mid = (this.from + this.to) >>> 1;
+            final NormalizeTask left = new NormalizeTask(this.container, this.decoded, this.from, mid, this.timeout, this.local);
+            final NormalizeTask right = new NormalizeTask(this.container, this.decoded, mid, this.to, this.timeout, this.local);
+            invokeAll(left, right);
+            this.min = left.min;
+            this.max = left.max;
+            if (this.min == null) {
+                this.min = right.min;
+                this.max = right.max;
+            } else if (right.min != null) {
+                this.min.min(right.min);
+                this.max.max(right.max);
             }
 
-            // insert poison to stop the queues
-            for (int i = 0; i < this.threads; i++) worker[i].add(WordReferenceVars.poison);
-
-            // wait for termination but not too long to make it possible that this
-            // is called from outside with a join to get some normalization results
-            // before going on
-            for (int i = 0; i < this.threads; i++) try {worker[i].join(100);} catch (final InterruptedException e) {}
-        }
-    }
-
-    /**
-     * normalize ranking: find minimum and maximum of separate ranking criteria
-     */
-    private class NormalizeWorker extends Thread {
-
-        private final BlockingQueue<WordReferenceVars> out;
-        private final Semaphore termination;
-        private final BlockingQueue<WordReferenceVars> decodedEntries;
-        private final long maxtime;
-
-        public NormalizeWorker(final BlockingQueue<WordReferenceVars> out, final Semaphore termination, long maxtime) {
-        	super("ReferenceOrder.NormalizeWorker");
-            this.out = out;
-            this.termination = termination;
-            this.decodedEntries = new LinkedBlockingQueue<WordReferenceVars>();
-            this.maxtime = maxtime;
-        }
-
-        public void add(final WordReferenceVars entry) {
-            try {
-                this.decodedEntries.put(entry);
-            } catch (final InterruptedException e) {
+            // merge the smaller host count map into the larger one
+            this.doms = left.doms.size() >= right.doms.size() ? left.doms : right.doms;
+            final Map<String, Integer> other = this.doms == left.doms ? right.doms : left.doms;
+            Integer count;
+            for (final Map.Entry<String, Integer> e: other.entrySet()) {
+                count = this.doms.get(e.getKey());
+                this.doms.put(e.getKey(), count == null ? e.getValue() : LargeNumberCache.valueOf(count.intValue() + e.getValue().intValue()));
             }
         }
 
-        @Override
-        public void run() {
-            try {
-                WordReferenceVars iEntry;
-                final Map<String, Integer> doms0 = new HashMap<String, Integer>();
-                String dom;
-                Integer count;
-                final Integer int1 = 1;
-                long timeout = this.maxtime == Long.MAX_VALUE ? Long.MAX_VALUE : System.currentTimeMillis() + this.maxtime;
-                while ((iEntry = this.decodedEntries.take()) != WordReferenceVars.poison) {
-                    // find min/max
-                    if (ReferenceOrder.this.min == null) ReferenceOrder.this.min = iEntry.clone(); else ReferenceOrder.this.min.min(iEntry);
-                    if (ReferenceOrder.this.max == null) ReferenceOrder.this.max = iEntry.clone(); else ReferenceOrder.this.max.max(iEntry);
-                    this.out.put(iEntry); // must be after the min/max check to prevent that min/max is null in cardinal()
-                    // update domcount
-                    dom = iEntry.hosthash();
-                    count = doms0.get(dom);
-                    if (count == null) {
-                        doms0.put(dom, int1);
-                    } else {
-                        doms0.put(dom, LargeNumberCache.valueOf(count.intValue() + 1));
-                    }
+        private void computeChunk() {
+            final Map<String, Integer> doms0 = new HashMap<String, Integer>();
+            this.doms = doms0;
+            Row.Entry entry;
+            WordReferenceVars iEntry;
+            String dom;
+            Integer count;
+            final Integer int1 = 1;
+            for (int p = this.from; p < this.to; p++) {
+                if ((p & 0x3f) == 0 && System.currentTimeMillis() > this.timeout) {
+                    ConcurrentLog.warn("ReferenceOrder", "normalization of decoded rows ended with timeout");
+                    break;
+                }
+                entry = this.container.get(p, false);
+                if (entry == null) continue;
+                iEntry = new WordReferenceVars(Segment.wordReferenceFactory.produceSlow(entry), this.local);
+                this.decoded[p] = iEntry;
 
-                    if (System.currentTimeMillis() > timeout) {
-                        ConcurrentLog.warn("NormalizeWorker", "normlization of decoded rows ended with timeout = " + this.maxtime);
-                        break;
-                    }
+                // find min/max
+                if (this.min == null) {
+                    this.min = iEntry.clone();
+                    this.max = iEntry.clone();
+                } else {
+                    this.min.min(iEntry);
+                    this.max.max(iEntry);
                 }
 
-                // update domain score
-                Map.Entry<String, Integer> entry;
-                final Iterator<Map.Entry<String, Integer>> di = doms0.entrySet().iterator();
-                while (di.hasNext()) {
-                    entry = di.next();
-                    ReferenceOrder.this.doms.inc(entry.getKey(), (entry.getValue()).intValue());
+                // update domcount
+                dom = iEntry.hosthash();
+                count = doms0.get(dom);
+                if (count == null) {
+                    doms0.put(dom, int1);
+                } else {
+                    doms0.put(dom, LargeNumberCache.valueOf(count.intValue() + 1));
                 }
-                if (!ReferenceOrder.this.doms.isEmpty()) ReferenceOrder.this.maxdomcount = ReferenceOrder.this.doms.getMaxScore();
-            } catch (final InterruptedException e) {
-                ConcurrentLog.logException(e);
-            } catch (final Exception e) {
-                ConcurrentLog.logException(e);
-            } finally {
-                // insert poison to signal the termination to next queue
-                try {
-                    this.termination.acquire();
-                    if (this.termination.availablePermits() == 0) this.out.put(WordReferenceVars.poison);
-                } catch (final InterruptedException e) {}
             }
         }
     }
@@ -222,28 +229,29 @@ public class ReferenceOrder {
      */
     public long cardinal(final WordReference t) {
         // the normalizedEntry must be a normalized indexEntry
-        assert this.min != null;
-        assert this.max != null;
+        final WordReferenceVars min = this.min, max = this.max;
+        assert min != null;
+        assert max != null;
         assert t != null;
         assert this.ranking != null;
         final Bitfield flags = t.flags();
-        final long tf = ((this.max.termFrequency() == this.min.termFrequency()) ? 0 : (((int)(((t.termFrequency()-this.min.termFrequency())*256.0)/(this.max.termFrequency() - this.min.termFrequency())))) << this.ranking.coeff_termfrequency);
+        final long tf = ((max.termFrequency() == min.termFrequency()) ? 0 : (((int)(((t.termFrequency()-min.termFrequency())*256.0)/(max.termFrequency() - min.termFrequency())))) << this.ranking.coeff_termfrequency);
         //System.out.println("tf(" + t.urlHash + ") = " + Math.floor(1000 * t.termFrequency()) + ", min = " + Math.floor(1000 * min.termFrequency()) + ", max = " + Math.floor(1000 * max.termFrequency()) + ", tf-normed = " + tf);
         final long r =
              ((256 - DigestURL.domLengthNormalized(t.urlhash())) << this.ranking.coeff_domlength)
-           + ((this.max.urlcomps()      == this.min.urlcomps()   )   ? 0 : (256 - (((t.urlcomps()     - this.min.urlcomps()    ) << 8) / (this.max.urlcomps()    - this.min.urlcomps())    )) << this.ranking.coeff_urlcomps)
-           + ((this.max.urllength()     == this.min.urllength()  )   ? 0 : (256 - (((t.urllength()    - this.min.urllength()   ) << 8) / (this.max.urllength()   - this.min.urllength())   )) << this.ranking.coeff_urllength)
-           + ((this.max.posintext()     == this.min.posintext())     ? 0 : (256 - (((t.posintext()    - this.min.posintext()   ) << 8) / (this.max.posintext()   - this.min.posintext())   )) << this.ranking.coeff_posintext)
-           + ((this.max.posofphrase()   == this.min.posofphrase())   ? 0 : (256 - (((t.posofphrase()  - this.min.posofphrase() ) << 8) / (this.max.posofphrase() - this.min.posofphrase()) )) << this.ranking.coeff_posofphrase)
-           + ((this.max.posinphrase()   == this.min.posinphrase())   ? 0 : (256 - (((t.posinphrase()  - this.min.posinphrase() ) << 8) / (this.max.posinphrase() - this.min.posinphrase()) )) << this.ranking.coeff_posinphrase)
-           + ((this.max.distance()      == this.min.distance()   )   ? 0 : (256 - (((t.distance()     - this.min.distance()    ) << 8) / (this.max.distance()    - this.min.distance())    )) << this.ranking.coeff_worddistance)
-           + ((this.max.virtualAge()    == this.min.virtualAge())    ? 0 :        (((t.virtualAge()   - this.min.virtualAge()  ) << 8) / (this.max.virtualAge()  - this.min.virtualAge())   ) << this.ranking.coeff_date)
-           + ((this.max.wordsintitle()  == this.min.wordsintitle())  ? 0 : (((t.wordsintitle() - this.min.wordsintitle()  ) << 8) / (this.max.wordsintitle() - this.min.wordsintitle())  ) << this.ranking.coeff_wordsintitle)
-           + ((this.max.wordsintext()   == this.min.wordsintext())   ? 0 : (((t.wordsintext()  - this.min.wordsintext()   ) << 8) / (this.max.wordsintext()  - this.min.wordsintext())   ) << this.ranking.coeff_wordsintext)
-           + ((this.max.phrasesintext() == this.min.phrasesintext()) ? 0 : (((t.phrasesintext()- this.min.phrasesintext() ) << 8) / (this.max.phrasesintext()- this.min.phrasesintext()) ) << this.ranking.coeff_phrasesintext)
-           + ((this.max.llocal()        == this.min.llocal())        ? 0 : (((t.llocal()       - this.min.llocal()        ) << 8) / (this.max.llocal()       - this.min.llocal())        ) << this.ranking.coeff_llocal)
-           + ((this.max.lother()        == this.min.lother())        ? 0 : (((t.lother()       - this.min.lother()        ) << 8) / (this.max.lother()       - this.min.lother())        ) << this.ranking.coeff_lother)
-           + ((this.max.hitcount()      == this.min.hitcount())      ? 0 : (((t.hitcount()     - this.min.hitcount()      ) << 8) / (this.max.hitcount()     - this.min.hitcount())      ) << this.ranking.coeff_hitcount)
+           + ((max.urlcomps()      == min.urlcomps()   )   ? 0 : (256 - (((t.urlcomps()     - min.urlcomps()    ) << 8) / (max.urlcomps()    - min.urlcomps())    )) << this.ranking.coeff_urlcomps)
+           + ((max.urllength()     == min.urllength()  )   ? 0 : (256 - (((t.urllength()    - min.urllength()   ) << 8) / (max.urllength()   - min.urllength())   )) << this.ranking.coeff_urllength)
+           + ((max.posintext()     == min.posintext())     ? 0 : (256 - (((t.posintext()    - min.posintext()   ) << 8) / (max.posintext()   - min.posintext())   )) << this.ranking.coeff_posintext)
+           + ((max.posofphrase()   == min.posofphrase())   ? 0 : (256 - (((t.posofphrase()  - min.posofphrase() ) << 8) / (max.posofphrase() - min.posofphrase()) )) << this.ranking.coeff_posofphrase)
+           + ((max.posinphrase()   == min.posinphrase())   ? 0 : (256 - (((t.posinphrase()  - min.posinphrase() ) << 8) / (max.posinphrase() - min.posinphrase()) )) << this.ranking.coeff_posinphrase)
+           + ((max.distance()      == min.distance()   )   ? 0 : (256 - (((t.distance()     - min.distance()    ) << 8) / (max.distance()    - min.distance())    )) << this.ranking.coeff_worddistance)
+           + ((max.virtualAge()    == min.virtualAge())    ? 0 :        (((t.virtualAge()   - min.virtualAge()  ) << 8) / (max.virtualAge()  - min.virtualAge())   ) << this.ranking.coeff_date)
+           + ((max.wordsintitle()  == min.wordsintitle())  ? 0 : (((t.wordsintitle() - min.wordsintitle()  ) << 8) / (max.wordsintitle() - min.wordsintitle())  ) << this.ranking.coeff_wordsintitle)
+           + ((max.wordsintext()   == min.wordsintext())   ? 0 : (((t.wordsintext()  - min.wordsintext()   ) << 8) / (max.wordsintext()  - min.wordsintext())   ) << this.ranking.coeff_wordsintext)
+           + ((max.phrasesintext() == min.phrasesintext()) ? 0 : (((t.phrasesintext()- min.phrasesintext() ) << 8) / (max.phrasesintext()- min.phrasesintext()) ) << this.ranking.coeff_phrasesintext)
+           + ((max.llocal()        == min.llocal())        ? 0 : (((t.llocal()       - min.llocal()        ) << 8) / (max.llocal()       - min.llocal())        ) << this.ranking.coeff_llocal)
+           + ((max.lother()        == min.lother())        ? 0 : (((t.lother()       - min.lother()        ) << 8) / (max.lother()       - min.lother())        ) << this.ranking.coeff_lother)
+           + ((max.hitcount()      == min.hitcount())      ? 0 : (((t.hitcount()     - min.hitcount()      ) << 8) / (max.hitcount()     - min.hitcount())      ) << this.ranking.coeff_hitcount)
            + tf
            + ((this.ranking.coeff_authority > 12) ? (authority(t.hosthash()) << this.ranking.coeff_authority) : 0)
            + ((flags.get(WordReferenceRow.flag_app_dc_identifier))  ? 255 << this.ranking.coeff_appurl             : 0)
@@ -31,6 +31,8 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
 import java.util.regex.Pattern;
 
 import net.yacy.cora.document.encoding.ASCII;
@@ -47,6 +49,7 @@ import net.yacy.crawler.retrieval.Request;
 import net.yacy.crawler.retrieval.Response;
 import net.yacy.document.Document;
 import net.yacy.document.Parser;
+import net.yacy.document.SentenceIndex;
 import net.yacy.document.SnippetExtractor;
 import net.yacy.document.WordTokenizer;
 import net.yacy.document.parser.html.CharacterCoding;
@@ -186,6 +189,7 @@ public class TextSnippet implements Comparable<TextSnippet>, Comparator<TextSnip
         String textline = null;
         HandleSet remainingHashes = queryhashes.clone();
         List<StringBuilder> sentences = null;
+        SortedMap<Integer, StringBuilder> candidates = null; // the sentences which may contain query words, if the document has a sentence index
         
         // try to get the snippet from metadata
         removeMatchingHashes(row.url().toTokens(), remainingHashes);
@@ -203,10 +207,22 @@ public class TextSnippet implements Comparable<TextSnippet>, Comparator<TextSnip
                 for (String s:solrdesc) sentences.add(new StringBuilder(s));
             }
             final String solrText = row.getText();
-            if (solrText != null && solrText.length() > 0) { // TODO: instead of join with desc, we could check if snippet already complete and skip further computation
+            final byte[] sentenceIndex = pre ? null : net.yacy.crawler.data.Cache.getSentenceIndex(url.hash());
+            if (sentenceIndex != null) {
+                // jump to the sentences which may contain query words, there is no need to split or to parse the text
+                candidates = new TreeMap<Integer, StringBuilder>();
+                int line = 0;
+                if (sentences != null) for (final StringBuilder s: sentences) candidates.put(line++, s);
+                if (SentenceIndex.candidates(sentenceIndex, remainingHashes, line, candidates)) {
+                    sentences = new ArrayList<StringBuilder>(candidates.values());
+                } else {
+                    candidates = null;
+                }
+            }
+            if (candidates == null && solrText != null && solrText.length() > 0) { // TODO: instead of join with desc, we could check if snippet already complete and skip further computation
                 // compute sentences from solr query
                 if (sentences == null) sentences = row.getSentences(pre); else sentences.addAll(row.getSentences(pre));
-            } else if (net.yacy.crawler.data.Cache.has(url.hash())) {
+            } else if (candidates == null && net.yacy.crawler.data.Cache.has(url.hash())) {
                 // get the sentences from the cache
                 final Request request = loader == null ? null : loader.request(url, true, reindexing);
                 Response response;
@@ -234,7 +250,7 @@ public class TextSnippet implements Comparable<TextSnippet>, Comparator<TextSnip
 
             if (sentences.size() > 0) {
                 try {
-                    final SnippetExtractor tsr = new SnippetExtractor(sentences, remainingHashes, snippetMaxLength);
+                    final SnippetExtractor tsr = candidates == null ? new SnippetExtractor(sentences, remainingHashes, snippetMaxLength) : new SnippetExtractor(candidates, remainingHashes, snippetMaxLength);
                     textline = tsr.getSnippet();
                     remainingHashes = tsr.getRemainingWords();
                 } catch (final UnsupportedOperationException e) {
@@ -0,0 +1,399 @@
+// CompiledTemplate.java
+// first published on http://yacy.net
+//
+// This is a part of YaCy, a peer-to-peer based web search engine
+//
+// LICENSE
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.server.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import net.yacy.cora.document.encoding.UTF8;
+import net.yacy.cora.util.ConcurrentLog;
+import net.yacy.server.serverObjects;
+
+/**
+ * a template which is parsed once into an immutable tree of instructions: literal byte slices,
+ * normal patterns #[key]#, multi templates #{key}#..#{/key}#, alternatives #(key)#..::..#(/key)#
+ * and includes #%file%#. Rendering walks the tree and writes straight to the output stream,
+ * so the template source is not scanned again for each request.
+ * The syntax and the prefix rules are the same as described in TemplateEngine.
+ */
+public final class CompiledTemplate {
+
+    private final static byte hashChar = (byte) '#';
+    private final static byte[] pClose = {']', '#'};
+    private final static byte[] mClose = {'}', '#'};
+    private final static byte[] aClose = {')', '#'};
+    private final static byte[] iClose = {'%', '#'};
+    private final static byte[] dpdpa = {':', ':'};
+    private final static byte[] PP = {'%', '%'};
+
+    private final static byte[] UNRESOLVED_PATTERN = UTF8.getBytes("-UNRESOLVED_PATTERN-");
+
+    private interface Node {
+        public void render(OutputStream out, serverObjects pattern, String prefix) throws IOException;
+    }
+
+    private final String name;
+    private final Node[] nodes;
+
+    private CompiledTemplate(final String name, final Node[] nodes) {
+        this.name = name;
+        this.nodes = nodes;
+    }
+
+    /**
+     * parse a template
+     * @param name the name of the template, used for log messages
+     * @param b the template source; the array is referenced by the compiled template and must not be changed
+     * @return the compiled template
+     */
+    public static CompiledTemplate compile(final String name, final byte[] b) {
+        return new CompiledTemplate(name, new Parser(name, b).parse(0, b.length));
+    }
+
+    /**
+     * write the template with all patterns replaced
+     * @param out
+     * @param pattern
+     * @throws IOException
+     */
+    public void render(final OutputStream out, final serverObjects pattern) throws IOException {
+        render(out, pattern, "");
+    }
+
+    public void render(final OutputStream out, final serverObjects pattern, final String prefix) throws IOException {
+        render(this.nodes, out, pattern, prefix);
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    private static void render(final Node[] nodes, final OutputStream out, final serverObjects pattern, final String prefix) throws IOException {
+        for (final Node node: nodes) node.render(out, pattern, prefix);
+    }
+
+    private static byte[] replacePattern(final String key, final serverObjects pattern) {
+        if (!pattern.containsKey(key)) return UNRESOLVED_PATTERN;
+        final String value = pattern.get(key);
+        return value == null ? UNRESOLVED_PATTERN : UTF8.getBytes(value);
+    }
+
+    private static int indexOf(final byte[] b, final byte[] p, final int start, final int end) {
+        final int last = end - p.length;
+        search: for (int i = start; i <= last; i++) {
+            for (int j = 0; j < p.length; j++) if (b[i + j] != p[j]) continue search;
+            return i;
+        }
+        return -1;
+    }
+
+    private static final class Literal implements Node {
+        private final byte[] b;
+        private final int offset, length;
+        private Literal(final byte[] b, final int offset, final int length) {
+            this.b = b;
+            this.offset = offset;
+            this.length = length;
+        }
+        @Override
+        public void render(final OutputStream out, final serverObjects pattern, final String prefix) throws IOException {
+            out.write(this.b, this.offset, this.length);
+        }
+    }
+
+    /**
+     * #[key]#
+     */
+    private static final class Variable implements Node {
+        private final String key;
+        private Variable(final String key) {
+            this.key = key;
+        }
+        @Override
+        public void render(final OutputStream out, final serverObjects pattern, final String prefix) throws IOException {
+            out.write(replacePattern(prefix + this.key, pattern));
+        }
+    }
+
+    /**
+     * #{key}# .. #{/key}#
+     */
+    private static final class Multi implements Node {
+        private final String key;
+        private final Node[] body;
+        private Multi(final String key, final Node[] body) {
+            this.key = key;
+            this.body = body;
+        }
+        @Override
+        public void render(final OutputStream out, final serverObjects pattern, final String prefix) throws IOException {
+            final String patternKey = prefix + this.key;
+            final String value = pattern.get(patternKey);
+            if (value == null || value.isEmpty()) return;
+            int num;
+            try {
+                num = Integer.parseInt(value); // key contains the iteration number as string
+            } catch (final NumberFormatException e) {
+                ConcurrentLog.logException(e);
+                return;
+            }
+            final String p = patternKey + "_";
+            for (int i = 0; i < num; i++) CompiledTemplate.render(this.body, out, pattern, p + i + "_");
+        }
+    }
+
+    /**
+     * #(key)# .. :: .. #(/key)#
+     */
+    private static final class Alternative implements Node {
+        private final String name, key;
+        private final Node[][] alternatives;
+        private final byte[] b; // the source, for alternatives which are selected by name
+        private final int offset, length;
+        private final ConcurrentHashMap<String, Node[]> byName;
+        private Alternative(final String name, final String key, final Node[][] alternatives, final byte[] b, final int offset, final int length) {
+            this.name = name;
+            this.key = key;
+            this.alternatives = alternatives;
+            this.b = b;
+            this.offset = offset;
+            this.length = length;
+            this.byName = new ConcurrentHashMap<String, Node[]>();
+        }
+        @Override
+        public void render(final OutputStream out, final serverObjects pattern, final String prefix) throws IOException {
+            final String patternKey = prefix + this.key;
+            final String patternId = pattern.get(patternKey);
+            // lazy parsing of pattern value; numeric values, "true", "false" and no value allowed
+            int which = 0;
+            if (patternId != null && !"false".equals(patternId)) {
+                if ("true".equals(patternId)) {
+                    which = 1;
+                } else try {
+                    which = Integer.parseInt(patternId); // index
+                } catch (final NumberFormatException e) {
+                    final Node[] selected = byName(patternId);
+                    if (selected == null) {
+                        ConcurrentLog.severe("TEMPLATE", "Bad Key-Value pair in #()# construct: key=\"" + patternKey + "\", value=\"" + patternId + "\" in " + this.name);
+                    } else {
+                        CompiledTemplate.render(selected, out, pattern, patternKey + "_");
+                    }
+                    return;
+                }
+            }
+            // an index which is out of range selects the last alternative
+            if (which < 0 || which >= this.alternatives.length) which = this.alternatives.length - 1;
+            CompiledTemplate.render(this.alternatives[which], out, pattern, patternKey + "_");
+        }
+        /**
+         * an alternative is selected by name with a %%name mark; the alternative is the text after the mark
+         */
+        private Node[] byName(final String patternName) {
+            Node[] nodes = this.byName.get(patternName);
+            if (nodes != null) return nodes;
+            final int end = this.offset + this.length;
+            final int p = indexOf(this.b, concat(PP, UTF8.getBytes(patternName)), this.offset, end);
+            if (p < 0) return null;
+            final int start = p + 2 + UTF8.getBytes(patternName).length;
+            int q = indexOf(this.b, dpdpa, start, end);
+            if (q < 0) q = end;
+            nodes = new Parser(this.name, this.b).parse(start, q);
+            this.byName.put(patternName, nodes);
+            return nodes;
+        }
+    }
+
+    /**
+     * #%file%# or #%[key]%#
+     */
+    private static final class Include implements Node {
+        private final String filename, key; // one of both is null
+        private Include(final String filename, final String key) {
+            this.filename = filename;
+            this.key = key;
+        }
+        @Override
+        public void render(final OutputStream out, final serverObjects pattern, final String prefix) throws IOException {
+            String filename = this.filename;
+            if (filename == null) {
+                final byte[] f = replacePattern(prefix + this.key, pattern);
+                if (f.length == 0 || java.util.Arrays.equals(f, UNRESOLVED_PATTERN)) return;
+                filename = UTF8.String(f);
+            }
+            final CompiledTemplate include;
+            try {
+                include = TemplateEngine.getInclude(HTTPDFileHandler.getLocalizedFile(filename, pattern.get("clientlanguage")));
+            } catch (final IOException e) {
+                // file not found?
+                ConcurrentLog.severe("FILEHANDLER", "Include Error with file " + filename + ": " + e.getMessage());
+                return;
+            }
+            include.render(out, pattern, ""); // clear pattern prefix for include
+        }
+    }
+
+    private static byte[] concat(final byte[] a, final byte[] b) {
+        final byte[] c = new byte[a.length + b.length];
+        System.arraycopy(a, 0, c, 0, a.length);
+        System.arraycopy(b, 0, c, a.length, b.length);
+        return c;
+    }
+
+    private static final class Parser {
+
+        private final String name;
+        private final byte[] b;
+
+        private Parser(final String name, final byte[] b) {
+            this.name = name;
+            this.b = b;
+        }
+
+        private Node[] parse(final int start, final int end) {
+            final List<Node> nodes = new ArrayList<Node>();
+            int pos = start;
+            int literal = start; // start of the pending literal
+            while (pos < end) {
+                if (this.b[pos] != hashChar) {
+                    pos++;
+                    continue;
+                }
+                final int tag = pos++;
+                if (pos >= end) break;
+                final byte c = this.b[pos++];
+                if (c == '{') {
+                    // #{key}#
+                    final int k = indexOf(this.b, mClose, pos, end);
+                    if (k < 0) return truncate(nodes, literal, tag);
+                    final byte[] key = slice(pos, k);
+                    pos = killNewline(k + 2, end);
+                    final int close = indexOf(this.b, concat(concat(new byte[]{'#', '{', '/'}, key), mClose), pos, end);
+                    if (close < 0) {
+                        ConcurrentLog.severe("TEMPLATE", "No Close Key found for #{" + UTF8.String(key) + "}# in " + this.name);
+                        return truncate(nodes, literal, tag);
+                    }
+                    addLiteral(nodes, literal, tag);
+                    nodes.add(new Multi(UTF8.String(key), parse(pos, close)));
+                    pos = killNewline(close + key.length + 5, end);
+                    literal = pos;
+                } else if (c == '(') {
+                    // #(key)#
+                    final int k = indexOf(this.b, aClose, pos, end);
+                    if (k < 0) return truncate(nodes, literal, tag);
+                    final byte[] key = slice(pos, k);
+                    addLiteral(nodes, literal, tag);
+                    pos = parseAlternative(nodes, UTF8.String(key), k + 2, end);
+                    literal = pos;
+                } else if (c == '[') {
+                    // #[key]#
+                    final int k = indexOf(this.b, pClose, pos, end);
+                    if (k < 0) return truncate(nodes, literal, tag);
+                    addLiteral(nodes, literal, tag);
+                    nodes.add(new Variable(UTF8.String(slice(pos, k))));
+                    pos = k + 2;
+                    literal = pos;
+                } else if (c == '%') {
+                    // #%file%#
+                    final int k = indexOf(this.b, iClose, pos, end);
+                    if (k < 0) return truncate(nodes, literal, tag);
+                    addLiteral(nodes, literal, tag);
+                    if (k > pos) {
+                        if (this.b[pos] == '[' && this.b[k - 1] == ']' && k - pos > 1) {
+                            nodes.add(new Include(null, UTF8.String(slice(pos + 1, k - 1))));
+                        } else {
+                            nodes.add(new Include(UTF8.String(slice(pos, k)), null));
+                        }
+                    }
+                    pos = k + 2;
+                    literal = pos;
+                }
+                // any other character: the hash has no meaning and is part of the literal, together with the following character
+            }
+            addLiteral(nodes, literal, end);
+            return nodes.toArray(new Node[nodes.size()]);
+        }
+
+        /**
+         * an unclosed tag swallows the remaining text
+         */
+        private Node[] truncate(final List<Node> nodes, final int literal, final int tag) {
+            addLiteral(nodes, literal, tag);
+            return nodes.toArray(new Node[nodes.size()]);
+        }
+
+        /**
+         * split the alternatives at '::' on the same nesting level of alternatives
+         * @return the position after the closing tag
+         */
+        private int parseAlternative(final List<Node> nodes, final String key, final int start, final int end) {
+            final byte[] closeKey = UTF8.getBytes("/" + key);
+            final List<Node[]> alternatives = new ArrayList<Node[]>();
+            int others = 0;
+            int pos = start;
+            int segment = start;
+            while (pos < end) {
+                final byte c = this.b[pos++];
+                if (c == hashChar) {
+                    if (pos >= end || this.b[pos] != '(') continue;
+                    final int tag = pos - 1;
+                    final int k = indexOf(this.b, aClose, pos + 1, end);
+                    if (k < 0) break;
+                    pos = k + 2;
+                    if (k - tag - 2 == closeKey.length && indexOf(this.b, closeKey, tag + 2, k) == tag + 2) {
+                        // reached the end
+                        alternatives.add(parse(segment, tag));
+                        nodes.add(new Alternative(this.name, key, alternatives.toArray(new Node[alternatives.size()][]), this.b, start, tag - start));
+                        return pos;
+                    }
+                    if (others > 0 && this.b[tag + 2] == '/') others--; else others++; // nested
+                } else if (c == ':' && others == 0) { // ignore :: in nested expressions
+                    if (pos >= end) break;
+                    if (this.b[pos++] == ':') {
+                        alternatives.add(parse(segment, pos - 2));
+                        segment = pos;
+                    }
+                }
+            }
+            ConcurrentLog.severe("TEMPLATE", "No Close Key found for #(" + key + ")# in " + this.name);
+            alternatives.add(parse(segment, end));
+            nodes.add(new Alternative(this.name, key, alternatives.toArray(new Node[alternatives.size()][]), this.b, start, end - start));
+            return end;
+        }
+
+        private int killNewline(final int pos, final int end) {
+            return pos < end && this.b[pos] == '\n' ? pos + 1 : pos;
+        }
+
+        private void addLiteral(final List<Node> nodes, final int start, final int end) {
+            if (end > start) nodes.add(new Literal(this.b, start, end - start));
+        }
+
+        private byte[] slice(final int start, final int end) {
+            final byte[] s = new byte[end - start];
+            System.arraycopy(this.b, start, s, 0, s.length);
+            return s;
+        }
+    }
+}
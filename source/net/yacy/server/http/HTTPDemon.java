@@ -26,7 +26,6 @@ package net.yacy.server.http;
 
 import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.PrintStream;
@@ -124,7 +123,6 @@ public final class HTTPDemon {
             ResponseHeader header
     ) throws IOException {
 
-        FileInputStream fis = null;
         ByteArrayOutputStream o = null;
         try {
             // setting the proper http status message
@@ -188,8 +186,7 @@ public final class HTTPDemon {
             final File htRootPath = new File(switchboard.getAppPath(), switchboard.getConfig(SwitchboardConstants.HTROOT_PATH,SwitchboardConstants.HTROOT_PATH_DEFAULT));
 
             TemplateEngine.writeTemplate(
-                    "/proxymsg/error.html",
-                    fis = new FileInputStream(new File(htRootPath, "/proxymsg/error.html")),
+                    new File(htRootPath, "/proxymsg/error.html"),
                     o = new ByteArrayOutputStream(512),
                     tp
             );
@@ -210,7 +207,6 @@ public final class HTTPDemon {
             }
             respond.flush();
         } finally {
-            if (fis != null) try { fis.close(); } catch (final Exception e) { ConcurrentLog.logException(e); }
             if (o != null)   try { o.close();   } catch (final Exception e) { ConcurrentLog.logException(e); }
         }
     }
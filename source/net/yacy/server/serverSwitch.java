@@ -41,6 +41,11 @@ import java.util.Set;
 import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import net.yacy.cora.order.Digest;
 import net.yacy.cora.protocol.ClientIdentification;
@@ -72,6 +77,9 @@ public class serverSwitch {
 	protected int serverJobs;
 	private ConcurrentMap<String, String> configProps;
 	private final ConcurrentMap<String, String> configRemoved;
+	private final AtomicBoolean configDirty; // true if a write of the config file is scheduled
+	private final ScheduledThreadPoolExecutor configWriter;
+	private final long configSaveDelay; // milliseconds
 	private final NavigableMap<String, BusyThread> workerThreads;
 	private YaCyHttpServer httpserver; // implemented HttpServer
 	private ConcurrentMap<String, Integer> upnpPortMap = new ConcurrentHashMap<>();
@@ -134,6 +142,18 @@ public class serverSwitch {
 			saveConfig();
 		}
 
+		// init the write-behind of config changes
+		this.configDirty = new AtomicBoolean(false);
+		this.configSaveDelay = Math.max(0, getConfigLong("server.configSaveDelay", 5000));
+		this.configWriter = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+			@Override
+			public Thread newThread(final Runnable r) {
+				final Thread t = new Thread(r, "serverSwitch.configWriter");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+
 		// init thread control
 		this.workerThreads = new TreeMap<String, BusyThread>();
 
@@ -301,7 +321,7 @@ public class serverSwitch {
 		// set the value
 		final String oldValue = this.configProps.put(key, value);
 		if (oldValue == null || !value.equals(oldValue)) {
-			saveConfig();
+			configChanged();
 		}
 	}
 
@@ -503,7 +523,46 @@ public class serverSwitch {
 	private void saveConfig() {
 		ConcurrentMap<String, String> configPropsCopy = new ConcurrentHashMap<String, String>();
 		configPropsCopy.putAll(this.configProps); // avoid concurrency problems
-		FileUtils.saveMap(this.configFile, configPropsCopy, this.configComment);
+		synchronized (this.configFile) {
+			// saveMap writes a temporary file and moves it to the config file
+			FileUtils.saveMap(this.configFile, configPropsCopy, this.configComment);
+		}
+	}
+
+	/**
+	 * schedule a write of the config file; all changes within the save delay
+	 * are written together, so the caller does not wait for the file system
+	 */
+	private void configChanged() {
+		if (!this.configDirty.compareAndSet(false, true)) return; // a write is already scheduled
+		if (this.configSaveDelay > 0) try {
+			this.configWriter.schedule(new Runnable() {
+				@Override
+				public void run() {
+					flushConfig();
+				}
+			}, this.configSaveDelay, TimeUnit.MILLISECONDS);
+			return;
+		} catch (final RejectedExecutionException e) {
+			// the writer is shut down; write now
+		}
+		flushConfig();
+	}
+
+	/**
+	 * write the config file now if it has changes which are not yet written
+	 */
+	public void flushConfig() {
+		if (this.configDirty.getAndSet(false)) saveConfig();
+	}
+
+	/**
+	 * write the pending config changes and stop the write-behind;
+	 * later changes are written immediately
+	 */
+	public void closeConfig() {
+		this.configWriter.shutdown();
+		flushConfig();
 	}
 
 	/**
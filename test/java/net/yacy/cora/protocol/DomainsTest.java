@@ -19,6 +19,11 @@
  */
 package net.yacy.cora.protocol;
 
+import java.io.File;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.HashMap;
 import java.util.Map;
 import org.junit.Test;
@@ -82,4 +87,36 @@ public class DomainsTest {
             assertEquals(teststr, expectedHost, host);
         }
     }
+
+    /**
+     * Test of saveNameCache and loadNameCache, the persistence of the dns cache.
+     */
+    @Test
+    public void testNameCachePersistence() throws Exception {
+        final File dir = new File("test/DATA/WORK");
+        dir.mkdirs();
+        final File file = new File(dir, "dnscache.list");
+        final long future = System.currentTimeMillis() + 60000L;
+        final long past = System.currentTimeMillis() - 60000L;
+        Files.write(file.toPath(), ("cached.test.yacy 10.1.2.3 " + future + "\n"
+                + "expired.test.yacy 10.1.2.4 " + past + "\n"
+                + "broken line\n").getBytes(StandardCharsets.UTF_8));
+        assertEquals(1, Domains.loadNameCache(file));
+        final InetAddress ip = Domains.dnsResolveFromCache("cached.test.yacy");
+        assertNotNull(ip);
+        assertEquals("10.1.2.3", ip.getHostAddress());
+        try {
+            Domains.dnsResolveFromCache("expired.test.yacy");
+            fail("expired entry was loaded");
+        } catch (final UnknownHostException e) {
+            // expected
+        }
+
+        Domains.setHostName(InetAddress.getByAddress("saved.test.yacy", new byte[]{10, 1, 2, 5}), "saved.test.yacy");
+        Domains.saveNameCache(file);
+        final String content = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        assertTrue(content.contains("saved.test.yacy 10.1.2.5 "));
+        assertTrue(content.contains("cached.test.yacy 10.1.2.3 " + future));
+        file.delete();
+    }
 }
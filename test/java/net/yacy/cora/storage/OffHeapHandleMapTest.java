@@ -0,0 +1,97 @@
+package net.yacy.cora.storage;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.TreeMap;
+
+import net.yacy.cora.document.encoding.ASCII;
+import net.yacy.cora.order.Base64Order;
+import net.yacy.kelondro.index.RowHandleMap;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+
+public class OffHeapHandleMapTest {
+
+    final String testDir = "test/DATA/INDEX/HANDLEMAP";
+
+    private static byte[] randomKey(final Random r) {
+        final byte[] b = new byte[9];
+        r.nextBytes(b);
+        return ASCII.getBytes(Base64Order.enhancedCoder.encode(b).substring(0, 12));
+    }
+
+    /**
+     * Test of put, get, remove and the key iteration against a TreeMap
+     */
+    @Test
+    public void testPutGetRemove() throws Exception {
+        final OffHeapHandleMap map = new OffHeapHandleMap(12, Base64Order.enhancedCoder, 4, 10);
+        final TreeMap<byte[], Long> reference = new TreeMap<byte[], Long>(Base64Order.enhancedCoder);
+        final Random r = new Random(0);
+        for (int i = 0; i < 20000; i++) {
+            final byte[] key = randomKey(r);
+            map.put(key, i);
+            reference.put(key, (long) i);
+        }
+        int c = 0;
+        for (final byte[] key: reference.keySet()) {
+            if (c++ % 3 == 0) assertEquals(reference.get(key).longValue(), map.remove(key));
+        }
+        c = 0;
+        for (final Iterator<byte[]> i = reference.keySet().iterator(); i.hasNext();) {
+            i.next();
+            if (c++ % 3 == 0) i.remove();
+        }
+        assertEquals(reference.size(), map.size());
+        for (final byte[] key: reference.keySet()) assertEquals(reference.get(key).longValue(), map.get(key));
+
+        // ordered iteration in both directions
+        Iterator<byte[]> i = map.keys(true, null);
+        for (final byte[] key: reference.keySet()) assertArrayEquals(key, i.next());
+        assertFalse(i.hasNext());
+        i = map.keys(false, null);
+        for (final byte[] key: reference.descendingKeySet()) assertArrayEquals(key, i.next());
+        assertFalse(i.hasNext());
+
+        // iteration from a start key
+        final byte[] start = reference.keySet().toArray(new byte[0][])[100];
+        i = map.keys(true, start);
+        for (final byte[] key: reference.tailMap(start, true).keySet()) assertArrayEquals(key, i.next());
+        assertFalse(i.hasNext());
+        map.close();
+    }
+
+    /**
+     * the dump format must be the same as that of the RowHandleMap
+     */
+    @Test
+    public void testDumpCompatibility() throws Exception {
+        final File dir = new File(testDir);
+        dir.mkdirs();
+        final File dumpFile = new File(dir, "offheap.idx");
+        final OffHeapHandleMap map = new OffHeapHandleMap(12, Base64Order.enhancedCoder, 8, 1000);
+        final Random r = new Random(1);
+        for (int i = 0; i < 5000; i++) map.put(randomKey(r), i * 1000L);
+        assertEquals(5000, map.dump(dumpFile));
+
+        final RowHandleMap rowMap = new RowHandleMap(12, Base64Order.enhancedCoder, 8, dumpFile);
+        assertEquals(map.size(), rowMap.size());
+        final OffHeapHandleMap loaded = new OffHeapHandleMap(12, Base64Order.enhancedCoder, 8, dumpFile);
+        assertEquals(map.size(), loaded.size());
+        final Iterator<byte[]> i = map.keys(true, null);
+        while (i.hasNext()) {
+            final byte[] key = i.next();
+            assertEquals(map.get(key), rowMap.get(key));
+            assertEquals(map.get(key), loaded.get(key));
+        }
+        assertTrue(dumpFile.delete());
+        map.close();
+        loaded.close();
+        rowMap.close();
+    }
+}
@@ -0,0 +1,81 @@
+package net.yacy.crawler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class HostSchedulerTest {
+
+    /**
+     * Test of the order of take() with schedule and reschedule
+     */
+    @Test
+    public void testOrder() {
+        HostScheduler scheduler = new HostScheduler();
+        assertTrue(scheduler.schedule("hostA", 300));
+        assertTrue(scheduler.schedule("hostB", 100));
+        assertTrue(scheduler.schedule("hostC", 200));
+        assertFalse("a host must not be scheduled twice", scheduler.schedule("hostB", 50));
+        assertEquals(3, scheduler.size());
+        assertEquals(100, scheduler.nextTime());
+
+        assertTrue(scheduler.reschedule("hostB", 400));
+        assertEquals("hostC", scheduler.take());
+        assertEquals("hostA", scheduler.take());
+        assertFalse(scheduler.reschedule("hostA", 10)); // taken hosts are not in the schedule
+        assertEquals("hostB", scheduler.take());
+        assertNull(scheduler.take());
+        assertEquals(Long.MAX_VALUE, scheduler.nextTime());
+    }
+
+    /**
+     * hosts with the same time are taken in the order of scheduling
+     */
+    @Test
+    public void testRoundRobin() {
+        HostScheduler scheduler = new HostScheduler();
+        scheduler.schedule("hostA", 100);
+        scheduler.schedule("hostB", 100);
+        String first = scheduler.take();
+        assertEquals("hostA", first);
+        scheduler.schedule(first, 100);
+        assertEquals("hostB", scheduler.take());
+        assertEquals("hostA", scheduler.take());
+    }
+
+    /**
+     * a host which is re-scheduled back to its original time must stay in the schedule
+     */
+    @Test
+    public void testRescheduleBack() throws Exception {
+        final HostScheduler scheduler = new HostScheduler();
+        scheduler.schedule("hostA", 100);
+        assertTrue(scheduler.reschedule("hostA", 200));
+        assertTrue(scheduler.reschedule("hostA", 100));
+        assertEquals(100, scheduler.nextTime());
+        assertEquals("hostA", scheduler.take());
+        assertNull(scheduler.take());
+
+        // concurrent reschedules between two times, like latency updates of several loader threads
+        scheduler.schedule("hostA", 100);
+        final Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            final int offset = t;
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 100000; i++) scheduler.reschedule("hostA", (i + offset) % 2 == 0 ? 100 : 200);
+                }
+            };
+            threads[t].start();
+        }
+        for (final Thread thread: threads) thread.join();
+        assertTrue(scheduler.isScheduled("hostA"));
+        assertEquals("hostA", scheduler.take());
+        assertNull(scheduler.take());
+        assertEquals(0, scheduler.size());
+    }
+}
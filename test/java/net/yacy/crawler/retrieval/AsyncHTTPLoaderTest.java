@@ -0,0 +1,225 @@
+package net.yacy.crawler.retrieval;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.http.StatusLine;
+import org.eclipse.jetty.server.NetworkConnector;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import net.yacy.cora.document.id.DigestURL;
+import net.yacy.cora.protocol.HeaderFramework;
+import net.yacy.cora.protocol.RequestHeader;
+import net.yacy.cora.protocol.ResponseHeader;
+import net.yacy.cora.util.ConcurrentLog;
+import net.yacy.kelondro.io.SpillBuffer;
+
+/**
+ * Tests of the asynchronous loader against a local jetty server
+ */
+public class AsyncHTTPLoaderTest {
+
+    private static final byte[] BIG = new byte[3 * 1024 * 1024];
+    private static Server server;
+    private static int port;
+
+    @BeforeClass
+    public static void startServer() throws Exception {
+        for (int i = 0; i < BIG.length; i++) BIG[i] = (byte) ('a' + i % 26);
+        server = new Server(0);
+        server.setHandler(new AbstractHandler() {
+            @Override
+            public void handle(final String target, final org.eclipse.jetty.server.Request baseRequest, final HttpServletRequest request, final HttpServletResponse response) throws IOException {
+                baseRequest.setHandled(true);
+                if (target.equals("/redirect")) {
+                    response.sendRedirect("/page0");
+                } else if (target.equals("/gzip")) {
+                    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                    final GZIPOutputStream gzip = new GZIPOutputStream(bytes);
+                    gzip.write(BIG, 0, 10000);
+                    gzip.close();
+                    response.setContentType("text/plain");
+                    response.setHeader(HeaderFramework.CONTENT_ENCODING, "gzip");
+                    response.setContentLength(bytes.size());
+                    response.getOutputStream().write(bytes.toByteArray());
+                } else if (target.equals("/big")) {
+                    response.setContentType("text/plain");
+                    response.getOutputStream().write(BIG);
+                } else if (target.startsWith("/page")) {
+                    response.setContentType("text/html");
+                    response.getWriter().write("<html><body>" + target + " " + request.getHeader(HeaderFramework.USER_AGENT) + "</body></html>");
+                } else {
+                    response.sendError(404);
+                }
+            }
+        });
+        server.start();
+        port = ((NetworkConnector) server.getConnectors()[0]).getLocalPort();
+    }
+
+    @AfterClass
+    public static void stopServer() throws Exception {
+        server.stop();
+    }
+
+    private static Request request(final String path) throws MalformedURLException {
+        return new Request(new DigestURL("http://127.0.0.1:" + port + path), null);
+    }
+
+    private static RequestHeader header() {
+        final RequestHeader header = new RequestHeader();
+        header.put(HeaderFramework.USER_AGENT, "yacytest");
+        return header;
+    }
+
+    private static final class Result {
+        private StatusLine statusline;
+        private ResponseHeader responseHeader;
+        private byte[] content;
+        private String error;
+    }
+
+    private static final class Collector implements AsyncHTTPLoader.Listener {
+        private final Map<String, Result> results = new ConcurrentHashMap<String, Result>();
+        private final CountDownLatch done;
+
+        private Collector(final int count) {
+            this.done = new CountDownLatch(count);
+        }
+
+        @Override
+        public void loaded(final Request request, final RequestHeader requestHeader, final StatusLine statusline, final ResponseHeader responseHeader, final SpillBuffer body) {
+            final Result r = new Result();
+            r.statusline = statusline;
+            r.responseHeader = responseHeader;
+            try {
+                if (body != null) r.content = body.getBytes();
+            } catch (final IOException e) {
+                r.error = e.getMessage();
+            } finally {
+                if (body != null) body.delete();
+            }
+            this.results.put(request.url().getFile(), r);
+            this.done.countDown();
+        }
+
+        @Override
+        public void failed(final Request request, final String reason) {
+            final Result r = new Result();
+            r.error = reason;
+            this.results.put(request.url().getFile(), r);
+            this.done.countDown();
+        }
+    }
+
+    /**
+     * Test many requests in flight, redirections and errors
+     */
+    @Test
+    public void testLoad() throws Exception {
+        final AsyncHTTPLoader loader = new AsyncHTTPLoader(new ConcurrentLog("AsyncHTTPLoaderTest"), 10000, 100, 4, 4);
+        try {
+            final int pages = 50;
+            final Collector collector = new Collector(pages + 2);
+            for (int i = 0; i < pages; i++) assertTrue(loader.load(request("/page" + i), header(), -1, collector));
+            assertTrue(loader.load(request("/redirect"), header(), -1, collector));
+            assertTrue(loader.load(request("/missing"), header(), -1, collector));
+            assertTrue(collector.done.await(30, TimeUnit.SECONDS));
+
+            for (int i = 0; i < pages; i++) {
+                final Result r = collector.results.get("/page" + i);
+                assertEquals(200, r.statusline.getStatusCode());
+                assertEquals("<html><body>/page" + i + " yacytest</body></html>", new String(r.content, "UTF-8"));
+            }
+            final Result redirect = collector.results.get("/redirect");
+            assertEquals(302, redirect.statusline.getStatusCode());
+            assertTrue(redirect.responseHeader.get(HeaderFramework.LOCATION).endsWith("/page0"));
+            assertNull(redirect.content);
+            assertEquals(404, collector.results.get("/missing").statusline.getStatusCode());
+            assertEquals(0, loader.size());
+            assertEquals(pages + 2, loader.loadedCount());
+        } finally {
+            loader.close();
+        }
+    }
+
+    /**
+     * Test that a compressed content is decoded and that the headers of the compressed content are removed
+     */
+    @Test
+    public void testGzip() throws Exception {
+        final AsyncHTTPLoader loader = new AsyncHTTPLoader(new ConcurrentLog("AsyncHTTPLoaderTest"), 10000, 10, 2, 4);
+        try {
+            final Collector collector = new Collector(1);
+            assertTrue(loader.load(request("/gzip"), header(), -1, collector));
+            assertTrue(collector.done.await(30, TimeUnit.SECONDS));
+            final Result r = collector.results.get("/gzip");
+            assertEquals(200, r.statusline.getStatusCode());
+            assertEquals(10000, r.content.length);
+            assertNull(r.responseHeader.get(HeaderFramework.CONTENT_ENCODING));
+            assertNull(r.responseHeader.get(HeaderFramework.CONTENT_LENGTH));
+        } finally {
+            loader.close();
+        }
+    }
+
+    /**
+     * Test that a large content is spilled to a file and that the size limit is enforced
+     */
+    @Test
+    public void testLargeContent() throws Exception {
+        final AsyncHTTPLoader loader = new AsyncHTTPLoader(new ConcurrentLog("AsyncHTTPLoaderTest"), 10000, 10, 2, 4);
+        try {
+            final Collector collector = new Collector(1);
+            final SpillBuffer[] spilled = new SpillBuffer[1];
+            final CountDownLatch loaded = new CountDownLatch(1);
+            loader.load(request("/big"), header(), -1, new AsyncHTTPLoader.Listener() {
+                @Override
+                public void loaded(final Request request, final RequestHeader requestHeader, final StatusLine statusline, final ResponseHeader responseHeader, final SpillBuffer body) {
+                    spilled[0] = body;
+                    loaded.countDown();
+                }
+                @Override
+                public void failed(final Request request, final String reason) {
+                    loaded.countDown();
+                }
+            });
+            assertTrue(loaded.await(30, TimeUnit.SECONDS));
+            assertNotNull(spilled[0]);
+            assertTrue(spilled[0].isSpilled());
+            final InputStream in = spilled[0].getInputStream();
+            final byte[] content = new byte[BIG.length];
+            int p = 0, c;
+            while (p < content.length && (c = in.read(content, p, content.length - p)) > 0) p += c;
+            in.close();
+            assertArrayEquals(BIG, content);
+            spilled[0].delete();
+
+            loader.load(request("/big"), header(), 1024 * 1024, collector);
+            assertTrue(collector.done.await(30, TimeUnit.SECONDS));
+            assertNotNull(collector.results.get("/big").error);
+        } finally {
+            loader.close();
+        }
+    }
+}
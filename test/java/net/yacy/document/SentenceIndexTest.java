@@ -0,0 +1,70 @@
+package net.yacy.document;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import net.yacy.cora.storage.HandleSet;
+import net.yacy.cora.util.SpaceExceededException;
+import net.yacy.kelondro.data.word.Word;
+import net.yacy.kelondro.index.RowHandleSet;
+
+import org.junit.Test;
+
+public class SentenceIndexTest {
+
+    private static List<StringBuilder> sentences() {
+        final List<StringBuilder> sentences = new ArrayList<StringBuilder>();
+        for (final StringBuilder s: new SentenceReader("YaCy is a free search engine. Everyone can use it to build a search portal. "
+                + "The peers exchange their index with each other. Die Suchmaschine ist für alle da. "
+                + "Lorem ipsum dolor sit amet, consectetur adipisici elit, sed eiusmod tempor incidunt ut labore et dolore magna aliqua.", false)) {
+            sentences.add(s);
+        }
+        return sentences;
+    }
+
+    private static HandleSet query(final String... words) throws SpaceExceededException {
+        final HandleSet hashes = new RowHandleSet(Word.commonHashLength, Word.commonHashOrder, 0);
+        for (final String word: words) hashes.put(Word.word2hash(word));
+        return hashes;
+    }
+
+    /**
+     * Test that all sentences with a query word are selected and decoded correctly
+     */
+    @Test
+    public void testCandidates() throws SpaceExceededException {
+        final List<StringBuilder> sentences = sentences();
+        final byte[] index = SentenceIndex.encode(sentences);
+        assertEquals(sentences.size(), SentenceIndex.size(index));
+
+        final SortedMap<Integer, StringBuilder> candidates = new TreeMap<Integer, StringBuilder>();
+        assertTrue(SentenceIndex.candidates(index, query("search", "für"), 3, candidates));
+        for (int i = 0; i < sentences.size(); i++) {
+            final String s = sentences.get(i).toString();
+            if (s.contains("search") || s.contains("für")) assertEquals(s, candidates.get(i + 3).toString());
+            if (candidates.containsKey(i + 3)) assertEquals(s, candidates.get(i + 3).toString());
+        }
+        assertTrue(candidates.size() < sentences.size());
+
+        assertFalse(SentenceIndex.candidates(new byte[]{0}, query("search"), 0, candidates));
+    }
+
+    /**
+     * Test that a snippet from the candidates is the same as a snippet from all sentences
+     */
+    @Test
+    public void testSnippet() throws SpaceExceededException {
+        final List<StringBuilder> sentences = sentences();
+        final byte[] index = SentenceIndex.encode(sentences);
+        final HandleSet query = query("index", "peers");
+        final SortedMap<Integer, StringBuilder> candidates = new TreeMap<Integer, StringBuilder>();
+        SentenceIndex.candidates(index, query, 0, candidates);
+        assertEquals(new SnippetExtractor(sentences, query, 100).getSnippet(), new SnippetExtractor(candidates, query, 100).getSnippet());
+    }
+}
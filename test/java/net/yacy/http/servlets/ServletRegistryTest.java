@@ -0,0 +1,151 @@
+/**
+ *  ServletRegistryTest
+ *  First released at http://yacy.net
+ *
+ *  This library is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU Lesser General Public
+ *  License as published by the Free Software Foundation; either
+ *  version 2.1 of the License, or (at your option) any later version.
+ *
+ *  This library is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *  Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program in the file lgpl21.txt
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.yacy.http.servlets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Arrays;
+
+import net.yacy.cora.protocol.RequestHeader;
+import net.yacy.server.serverClassLoader;
+import net.yacy.server.serverObjects;
+import net.yacy.server.serverSwitch;
+
+import org.junit.Test;
+
+public class ServletRegistryTest {
+
+    /**
+     * a servlet which returns its post arguments or fails if the argument 'fail' is set
+     */
+    public static class Echo {
+        public static serverObjects respond(final RequestHeader header, final serverObjects post, final serverSwitch env) {
+            if (post.containsKey("fail")) throw new IllegalStateException("fail");
+            return post;
+        }
+    }
+
+    /**
+     * a second servlet for the ordering of the servlets
+     */
+    public static class Empty {
+        public static serverObjects respond(final RequestHeader header, final serverObjects post, final serverSwitch env) {
+            return new serverObjects();
+        }
+    }
+
+    private static File classFile(final Class<?> c) throws Exception {
+        return new File(c.getResource(c.getName().substring(c.getName().lastIndexOf('.') + 1) + ".class").toURI());
+    }
+
+    @Test
+    public void testLatencyBound() {
+        assertEquals(1, ServletRegistry.latencyBound(0));
+        assertEquals(2, ServletRegistry.latencyBound(1));
+        assertEquals(1L << (ServletRegistry.LATENCY_BUCKETS - 2), ServletRegistry.latencyBound(ServletRegistry.LATENCY_BUCKETS - 2));
+        assertEquals(Long.MAX_VALUE, ServletRegistry.latencyBound(ServletRegistry.LATENCY_BUCKETS - 1));
+    }
+
+    /**
+     * Test that each call is counted in the first bucket whose bound is above the call time
+     */
+    @Test
+    public void testRecord() throws Exception {
+        final ServletRegistry registry = new ServletRegistry(new serverClassLoader());
+        final ServletRegistry.Servlet servlet = registry.get(classFile(Echo.class));
+        final long ms = 1000000L;
+        servlet.record(0);                // bucket 0: < 1 ms
+        servlet.record(ms - 1);           // bucket 0
+        servlet.record(ms);               // bucket 1: < 2 ms
+        servlet.record(5 * ms);           // bucket 3: < 8 ms
+        servlet.record(7 * ms + ms / 2);  // bucket 3
+        servlet.record(8 * ms);           // bucket 4: < 16 ms
+        servlet.record(1000000 * ms);     // last bucket
+        assertEquals(2, servlet.getLatencyCount(0));
+        assertEquals(1, servlet.getLatencyCount(1));
+        assertEquals(0, servlet.getLatencyCount(2));
+        assertEquals(2, servlet.getLatencyCount(3));
+        assertEquals(1, servlet.getLatencyCount(4));
+        assertEquals(1, servlet.getLatencyCount(ServletRegistry.LATENCY_BUCKETS - 1));
+        assertEquals(7, servlet.getCalls());
+        assertEquals(1000000, servlet.getMaxTime());
+    }
+
+    @Test
+    public void testServletsByTime() throws Exception {
+        final ServletRegistry registry = new ServletRegistry(new serverClassLoader());
+        final ServletRegistry.Servlet echo = registry.get(classFile(Echo.class));
+        final ServletRegistry.Servlet empty = registry.get(classFile(Empty.class));
+        echo.record(1000000L);
+        empty.record(3000000L);
+        assertEquals(Arrays.asList(empty, echo), registry.servletsByTime());
+        echo.record(5000000L);
+        assertEquals(Arrays.asList(echo, empty), registry.servletsByTime());
+    }
+
+    @Test
+    public void testInvoke() throws Exception {
+        final ServletRegistry registry = new ServletRegistry(new serverClassLoader());
+        final File file = classFile(Echo.class);
+        final ServletRegistry.Servlet servlet = registry.get(file);
+        assertSame(servlet, registry.get(file));
+        assertEquals(1, registry.size());
+
+        final serverObjects post = new serverObjects();
+        assertSame(post, servlet.invoke(new RequestHeader(), post, null));
+        post.put("fail", "1");
+        try {
+            servlet.invoke(new RequestHeader(), post, null);
+            fail("exception of the servlet not thrown");
+        } catch (final InvocationTargetException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        assertEquals(2, servlet.getCalls());
+        assertEquals(1, servlet.getErrors());
+    }
+
+    @Test
+    public void testGetMissingClass() {
+        final ServletRegistry registry = new ServletRegistry(new serverClassLoader());
+        try {
+            registry.get(new File("test/DATA/missing.class"));
+            fail("missing class not reported");
+        } catch (final InvocationTargetException e) {
+            assertTrue(e.getCause() instanceof ClassNotFoundException);
+        }
+        assertEquals(0, registry.size());
+    }
+
+    @Test
+    public void testGetMissingRespond() throws Exception {
+        final ServletRegistry registry = new ServletRegistry(new serverClassLoader());
+        try {
+            registry.get(classFile(ServletRegistryTest.class));
+            fail("missing respond method not reported");
+        } catch (final InvocationTargetException e) {
+            assertTrue(e.getCause() instanceof NoSuchMethodException);
+        }
+        assertEquals(0, registry.size());
+    }
+}
@@ -0,0 +1,75 @@
+package net.yacy.kelondro.blob;
+
+import java.io.File;
+import java.util.zip.Deflater;
+
+import net.yacy.cora.document.encoding.ASCII;
+import net.yacy.cora.order.NaturalOrder;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+
+public class CompressorTest {
+
+    final String testDir = "test/DATA/INDEX/BLOB";
+
+    private static byte[] key(final int i) {
+        return ASCII.getBytes(String.format("key%09d", i));
+    }
+
+    private static byte[] value(final int i) {
+        final StringBuilder sb = new StringBuilder();
+        for (int j = 0; j < 50; j++) sb.append("content of document ").append(i).append(' ');
+        return ASCII.getBytes(sb.toString());
+    }
+
+    private Heap createHeap(final String name) throws Exception {
+        final File heapFile = new File(testDir, name);
+        heapFile.getParentFile().mkdirs();
+        HeapWriter.delete(heapFile);
+        return new Heap(heapFile, 12, NaturalOrder.naturalOrder, 1024);
+    }
+
+    /**
+     * Test of the write and read of entries which are flushed from the buffer to the backend
+     */
+    @Test
+    public void testRoundTrip() throws Exception {
+        final Heap heap = createHeap("compressor.blob");
+        final Compressor compressor = new Compressor(heap, 8 * 1024, new DeflateCodec(Deflater.BEST_SPEED));
+        for (int i = 0; i < 100; i++) compressor.insert(key(i), value(i));
+        assertEquals(100, compressor.size());
+        assertTrue(heap.size() > 0); // the small buffer enforces flushes
+        for (int i = 0; i < 100; i++) {
+            assertArrayEquals(value(i), compressor.get(key(i)));
+            assertEquals(value(i).length, compressor.length(key(i)));
+        }
+        // the entries are compressed in the backend
+        final byte[] record = heap.get(key(0));
+        assertNotNull(record);
+        assertTrue(record.length < value(0).length);
+
+        compressor.delete(key(50));
+        assertFalse(compressor.containsKey(key(50)));
+        assertEquals(99, compressor.size());
+        compressor.close(true);
+    }
+
+    /**
+     * Test that entries which were written with gzip by former releases are still readable
+     */
+    @Test
+    public void testReadGzipRecords() throws Exception {
+        final Heap heap = createHeap("legacy.blob");
+        final GzipCodec gzip = new GzipCodec(Deflater.BEST_COMPRESSION);
+        heap.insert(key(1), gzip.encode(value(1)));
+        final Compressor compressor = new Compressor(heap, 8 * 1024);
+        assertArrayEquals(value(1), compressor.get(key(1)));
+        assertEquals(value(1).length, compressor.length(key(1)));
+        compressor.close(true);
+    }
+}
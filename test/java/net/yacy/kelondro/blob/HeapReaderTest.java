@@ -0,0 +1,105 @@
+package net.yacy.kelondro.blob;
+
+import java.io.File;
+
+import net.yacy.cora.document.encoding.ASCII;
+import net.yacy.cora.order.NaturalOrder;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+
+public class HeapReaderTest {
+
+    final String testDir = "test/DATA/INDEX/BLOB";
+
+    private static byte[] key(final int i) {
+        return ASCII.getBytes(String.format("key%09d", i));
+    }
+
+    private File createHeap(final String name, final int count) throws Exception {
+        final File heapFile = new File(testDir, name);
+        heapFile.getParentFile().mkdirs();
+        HeapWriter.delete(heapFile);
+        final Heap heap = new Heap(heapFile, 12, NaturalOrder.naturalOrder, 1024);
+        for (int i = 0; i < count; i++) heap.insert(key(i), ASCII.getBytes("value" + i));
+        heap.close(true);
+        return heapFile;
+    }
+
+    /**
+     * Test of get, length and delete in the memory-mapped read mode
+     */
+    @Test
+    public void testMemoryMappedReads() throws Exception {
+        final File heapFile = createHeap("mapped.blob", 1000);
+        final HeapModifier heap = new HeapModifier(heapFile, 12, NaturalOrder.naturalOrder);
+        assertTrue(heap.memoryMap());
+        assertTrue(heap.isMemoryMapped());
+        assertArrayEquals(ASCII.getBytes("value500"), heap.get(key(500)));
+        assertEquals(8, heap.length(key(500)));
+        assertNull(heap.get(key(1000)));
+
+        heap.delete(key(500));
+        assertNull(heap.get(key(500)));
+        assertArrayEquals(ASCII.getBytes("value501"), heap.get(key(501)));
+        heap.close(false);
+        assertFalse(heap.isMemoryMapped());
+        HeapWriter.delete(heapFile);
+    }
+
+    /**
+     * Test of the key filter and the persistence of the filter dump
+     */
+    @Test
+    public void testKeyFilter() throws Exception {
+        final File heapFile = createHeap("filter.blob", 1000);
+        HeapModifier heap = new HeapModifier(heapFile, 12, NaturalOrder.naturalOrder);
+        assertTrue(heap.mightContain(key(2000))); // no filter loaded
+        assertTrue(heap.loadKeyFilter());
+        for (int i = 0; i < 1000; i++) assertTrue(heap.mightContain(key(i)));
+        int falsePositives = 0;
+        for (int i = 1000; i < 2000; i++) if (heap.mightContain(key(i))) falsePositives++;
+        assertTrue("false positives: " + falsePositives, falsePositives < 100);
+        heap.close(true);
+
+        // the filter must be stored next to the index dump
+        boolean dumped = false;
+        for (final String f: heapFile.getParentFile().list()) if (f.startsWith(heapFile.getName()) && f.endsWith(".blm")) dumped = true;
+        assertTrue(dumped);
+
+        heap = new HeapModifier(heapFile, 12, NaturalOrder.naturalOrder);
+        assertTrue(heap.loadKeyFilter());
+        for (int i = 0; i < 1000; i++) assertTrue(heap.mightContain(key(i)));
+        heap.close(false);
+        HeapWriter.delete(heapFile);
+    }
+
+    /**
+     * Test of the off-heap index, initialized from the heap file and from the index dump
+     */
+    @Test
+    public void testOffHeapIndex() throws Exception {
+        HeapReader.offHeapIndex = true;
+        try {
+            final File heapFile = createHeap("offheap.blob", 1000);
+            HeapModifier heap = new HeapModifier(heapFile, 12, NaturalOrder.naturalOrder);
+            assertEquals(1000, heap.size());
+            assertArrayEquals(ASCII.getBytes("value123"), heap.get(key(123)));
+            heap.delete(key(123));
+            heap.close(true);
+
+            heap = new HeapModifier(heapFile, 12, NaturalOrder.naturalOrder);
+            assertEquals(999, heap.size());
+            assertNull(heap.get(key(123)));
+            assertArrayEquals(ASCII.getBytes("value124"), heap.get(key(124)));
+            heap.close(false);
+            HeapWriter.delete(heapFile);
+        } finally {
+            HeapReader.offHeapIndex = false;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package net.yacy.kelondro.blob;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import net.yacy.cora.document.encoding.ASCII;
+import net.yacy.cora.order.Base64Order;
+
+import org.junit.Test;
+
+public class MapDataMiningTest {
+
+    final String testDir = "test/DATA/INDEX/BLOB";
+
+    private static final String[] sortFields = new String[] {"LastSeen"};
+    private static final String[] longaccFields = new String[] {"LCount"};
+    private static final String[] floataccFields = new String[] {"RSpeed"};
+
+    private static byte[] key(final int i) {
+        return ASCII.getBytes(String.format("AAAAAAAA%04d", i));
+    }
+
+    private static Map<String, String> map(final long lcount, final float rspeed, final String lastSeen) {
+        final Map<String, String> map = new HashMap<String, String>();
+        map.put("LCount", Long.toString(lcount));
+        map.put("RSpeed", Float.toString(rspeed));
+        map.put("LastSeen", lastSeen);
+        return map;
+    }
+
+    private MapDataMining open(final File file) throws Exception {
+        return new MapDataMining(file, 12, Base64Order.enhancedCoder, 1024, 100, sortFields, longaccFields, floataccFields);
+    }
+
+    /**
+     * Test that the accumulators follow inserts, replacements and deletions and are re-computed when the table is opened
+     */
+    @Test
+    public void testAccumulators() throws Exception {
+        final File file = new File(testDir, "datamining.heap");
+        file.getParentFile().mkdirs();
+        HeapWriter.delete(file);
+        MapDataMining db = open(file);
+        db.insert(key(0), map(100, 1.5f, "20140101000000"));
+        db.insert(key(1), map(20, 0.5f, "20140102000000"));
+        db.insert(key(2), map(3, 0.0f, "20140103000000"));
+        assertEquals(123, db.getLongAcc("LCount"));
+        assertEquals(2.0f, db.getFloatAcc("RSpeed"), 0.001f);
+
+        db.insert(key(1), map(50, 1.0f, "20140104000000")); // replace
+        assertEquals(153, db.getLongAcc("LCount"));
+        assertEquals(2.5f, db.getFloatAcc("RSpeed"), 0.001f);
+
+        db.delete(key(0));
+        db.delete(key(0)); // deleting a missing key does not change the accumulators
+        assertEquals(53, db.getLongAcc("LCount"));
+        assertEquals(1.0f, db.getFloatAcc("RSpeed"), 0.001f);
+
+        assertEquals(2, db.sizeAtLeast("LastSeen", "20140103000000"));
+        assertEquals(1, db.sizeAtLeast("LastSeen", "20140103000100"));
+        assertEquals(-1, db.sizeAtLeast("Name", "x"));
+        db.close();
+
+        db = open(file);
+        assertEquals(2, db.size());
+        assertEquals(53, db.getLongAcc("LCount"));
+        db.delete(key(1));
+        assertEquals(3, db.getLongAcc("LCount"));
+        db.close();
+    }
+}
@@ -0,0 +1,57 @@
+package net.yacy.kelondro.data.word;
+
+import java.util.Iterator;
+import java.util.Map;
+
+import net.yacy.cora.document.encoding.ASCII;
+import net.yacy.cora.document.encoding.UTF8;
+import net.yacy.cora.document.id.DigestURL;
+import net.yacy.crawler.retrieval.Response;
+import net.yacy.kelondro.rwi.ReferenceContainerCache;
+import net.yacy.kelondro.util.Bitfield;
+import net.yacy.search.index.Segment;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+
+public class WordReferenceCodecTest {
+
+    /**
+     * the binary form must decode to the same references as the text form
+     */
+    @Test
+    public void testEncodeDecode() throws Exception {
+        final ReferenceContainerCache<WordReference> indexes = new ReferenceContainerCache<WordReference>(Segment.wordReferenceFactory, Word.commonHashOrder, Word.commonHashLength);
+        final String[] words = new String[]{"alpha", "beta", "gamma"};
+        int count = 0;
+        for (int i = 0; i < 100; i++) {
+            final DigestURL url = new DigestURL("http://test" + (i % 7) + ".org/page" + i + ".html");
+            final WordReferenceRow ientry = new WordReferenceRow(
+                    url.hash(), 30, 3, 2, 100 + i, 10,
+                    System.currentTimeMillis(), System.currentTimeMillis(),
+                    UTF8.getBytes("en"), Response.DT_TEXT, 1, 2);
+            final Word word = new Word(i + 1, 1, 1);
+            word.flags = new Bitfield(4);
+            ientry.setWord(word);
+            for (int w = 0; w <= i % words.length; w++) {
+                indexes.add(Word.word2hash(words[w]), ientry);
+                count++;
+            }
+        }
+
+        final byte[] b = WordReferenceCodec.encode(indexes);
+        final Iterator<Map.Entry<String, WordReferenceRow>> i = WordReferenceCodec.decode(b);
+        int decoded = 0;
+        while (i.hasNext()) {
+            final Map.Entry<String, WordReferenceRow> entry = i.next();
+            final WordReference original = indexes.get(ASCII.getBytes(entry.getKey()), null).getReference(entry.getValue().urlhash());
+            assertTrue(original != null);
+            assertEquals(original.toPropertyForm(), entry.getValue().toPropertyForm());
+            decoded++;
+        }
+        assertEquals(count, decoded);
+        assertFalse(i.hasNext());
+    }
+}
@@ -94,4 +94,39 @@ public class WordReferenceVarsTest {
 
     }
 
+    /**
+     * Test of the position list of joined references, of class WordReferenceVars.
+     */
+    @Test
+    public void testPositions() throws MalformedURLException {
+        DigestURL url = new DigestURL("http://test.org/test.html");
+        final WordReferenceRow ientry = new WordReferenceRow(
+                url.hash(), 20, 3, 2,
+                1, 1,
+                System.currentTimeMillis(), System.currentTimeMillis(),
+                UTF8.getBytes("en"), Response.DT_TEXT,
+                0, 0);
+        Word word = new Word(10, 1, 100);
+        word.flags = new Bitfield(4);
+        ientry.setWord(word);
+
+        WordReferenceVars wv = new WordReferenceVars(ientry, true);
+        assertNull(wv.positions());
+        assertEquals(0, wv.distance());
+
+        wv.addPosition(0); // ignored
+        for (int p = 12; p <= 20; p += 2) wv.addPosition(p);
+        assertEquals(5, wv.positions().size());
+        assertEquals(Integer.valueOf(12), wv.positions().iterator().next());
+        assertEquals(2, wv.distance()); // (2 + 2 + 2 + 2 + 2) / 5
+
+        // a clone has its own positions
+        WordReferenceVars wc = wv.clone();
+        wc.addPosition(40);
+        assertEquals(5, wv.positions().size());
+        assertEquals(6, wc.positions().size());
+        assertEquals(wv.distance(), new WordReferenceVars(wv, true).distance());
+        assertArrayEquals(UTF8.getBytes("en"), wc.getLanguage());
+    }
+
 }
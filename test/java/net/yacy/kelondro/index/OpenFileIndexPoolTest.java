@@ -0,0 +1,66 @@
+package net.yacy.kelondro.index;
+
+import java.io.File;
+
+import net.yacy.cora.document.encoding.ASCII;
+import net.yacy.cora.order.NaturalOrder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import org.junit.Test;
+
+
+public class OpenFileIndexPoolTest {
+
+    final String testDir = "test/DATA/INDEX/POOL";
+
+    private final Row rowdef = new Row(new Column[]{
+            new Column("key", Column.celltype_binary, Column.encoder_bytes, 12, "key"),
+            new Column("value", Column.celltype_binary, Column.encoder_bytes, 4, "value")},
+            NaturalOrder.naturalOrder);
+
+    /**
+     * Test of hits, misses and the eviction of idle files
+     */
+    @Test
+    public void testEviction() throws Exception {
+        final File dir = new File(testDir);
+        dir.mkdirs();
+        final OpenFileIndexPool pool = new OpenFileIndexPool(2);
+        final File[] files = new File[4];
+        for (int i = 0; i < files.length; i++) {
+            files[i] = new File(dir, "pool" + i + ".stack");
+            if (files[i].exists()) files[i].delete();
+        }
+
+        final Index a = pool.acquire(files[0], this.rowdef, false);
+        assertNotNull(a);
+        a.put(this.rowdef.newEntry(new byte[][]{ASCII.getBytes("key000000000"), ASCII.getBytes("val0")}));
+        assertSame(a, pool.acquire(files[0], this.rowdef, false));
+        assertEquals(1, pool.getHits());
+        assertEquals(1, pool.getMisses());
+        pool.release(files[0]);
+
+        // files[0] is still in use and must not be closed
+        for (int i = 1; i < files.length; i++) {
+            pool.acquire(files[i], this.rowdef, false);
+            pool.release(files[i]);
+        }
+        assertEquals(2, pool.size());
+        assertEquals(2, pool.getEvictions());
+        assertEquals(1, a.size());
+
+        // after the release the file is the least recently used one and closed first
+        pool.release(files[0]);
+        pool.acquire(files[1], this.rowdef, false);
+        pool.release(files[1]);
+        assertEquals(2, pool.size());
+        final Index b = pool.acquire(files[0], this.rowdef, false);
+        assertEquals(1, b.size());
+        pool.release(files[0]);
+
+        pool.setMaxOpen(0);
+        assertEquals(0, pool.size());
+        for (final File f: files) f.delete();
+    }
+}
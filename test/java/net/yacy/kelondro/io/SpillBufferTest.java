@@ -0,0 +1,86 @@
+package net.yacy.kelondro.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import net.yacy.kelondro.util.FileUtils;
+
+import org.junit.Test;
+
+public class SpillBufferTest {
+
+    private static byte[] content(final int size) {
+        final byte[] b = new byte[size];
+        for (int i = 0; i < size; i++) b[i] = (byte) (i * 31);
+        return b;
+    }
+
+    /**
+     * Test that content below the threshold stays in memory
+     */
+    @Test
+    public void testInMemory() throws IOException {
+        final byte[] b = content(100);
+        final SpillBuffer buffer = new SpillBuffer(1000);
+        assertEquals(100, buffer.transferFrom(new ByteArrayInputStream(b), -1));
+        assertFalse(buffer.isSpilled());
+        assertArrayEquals(b, buffer.getBytes());
+        assertArrayEquals(b, FileUtils.read(buffer.getInputStream()));
+        buffer.delete();
+    }
+
+    /**
+     * Test that content beyond the threshold is written to a file and can be read more than once
+     */
+    @Test
+    public void testSpill() throws IOException {
+        final byte[] b = content(100000);
+        final SpillBuffer buffer = new SpillBuffer(1000);
+        buffer.transferFrom(new ByteArrayInputStream(b), -1);
+        assertTrue(buffer.isSpilled());
+        assertEquals(b.length, buffer.length());
+        assertArrayEquals(b, FileUtils.read(buffer.getInputStream()));
+        assertArrayEquals(b, buffer.getBytes());
+        buffer.delete();
+    }
+
+    /**
+     * Test mark/reset across the memory and file part
+     */
+    @Test
+    public void testMarkReset() throws IOException {
+        final byte[] b = content(5000);
+        final SpillBuffer buffer = new SpillBuffer(1000);
+        buffer.write(b, 0, b.length);
+        final InputStream in = buffer.getInputStream();
+        assertTrue(in.markSupported());
+        assertEquals(990, in.skip(990));
+        in.mark(0);
+        final byte[] r = new byte[20];
+        assertEquals(10, in.read(r, 0, 20)); // the rest of the memory part
+        assertEquals(10, in.read(r, 10, 10)); // the beginning of the file part
+        in.reset();
+        for (int i = 990; i < 1010; i++) assertEquals(b[i] & 0xff, in.read());
+        in.close();
+        buffer.delete();
+    }
+
+    /**
+     * Test that the size limit is enforced
+     */
+    @Test(expected = IOException.class)
+    public void testMaxBytes() throws IOException {
+        final SpillBuffer buffer = new SpillBuffer(10);
+        try {
+            buffer.transferFrom(new ByteArrayInputStream(content(100)), 50);
+        } finally {
+            buffer.delete();
+        }
+    }
+}
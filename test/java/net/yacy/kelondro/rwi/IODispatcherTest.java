@@ -0,0 +1,106 @@
+package net.yacy.kelondro.rwi;
+
+import java.io.File;
+
+import net.yacy.cora.document.encoding.UTF8;
+import net.yacy.cora.document.id.DigestURL;
+import net.yacy.crawler.retrieval.Response;
+import net.yacy.kelondro.data.word.Word;
+import net.yacy.kelondro.data.word.WordReference;
+import net.yacy.kelondro.data.word.WordReferenceRow;
+import net.yacy.kelondro.util.Bitfield;
+import net.yacy.kelondro.util.FileUtils;
+import net.yacy.search.index.Segment;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+
+public class IODispatcherTest {
+
+    final String testDir = "test/DATA/INDEX/RWI";
+
+    private static WordReferenceRow reference(final int i) throws Exception {
+        final DigestURL url = new DigestURL("http://test" + (i % 7) + ".org/page" + i + ".html");
+        final WordReferenceRow ientry = new WordReferenceRow(
+                url.hash(), 30, 3, 2, 100 + i, 10,
+                System.currentTimeMillis(), System.currentTimeMillis(),
+                UTF8.getBytes("en"), Response.DT_TEXT, 1, 2);
+        final Word word = new Word(i + 1, 1, 1);
+        word.flags = new Bitfield(4);
+        ientry.setWord(word);
+        return ientry;
+    }
+
+    /**
+     * Test of the k-way merge of many dump files by the merge threads
+     */
+    @Test
+    public void testMergeManyFiles() throws Exception {
+        final File dir = new File(this.testDir);
+        FileUtils.deletedelete(dir);
+        dir.mkdirs();
+        final byte[] common = Word.word2hash("common");
+        final ReferenceContainerArray<WordReference> array = new ReferenceContainerArray<WordReference>(dir, "text.index", Segment.wordReferenceFactory, Word.commonHashOrder, Word.commonHashLength);
+        final IODispatcher dispatcher = new IODispatcher(2, 2, 1024 * 1024);
+
+        // the dispatcher is not started, so the dumps are done synchronously
+        final int files = 6, perFile = 50;
+        for (int f = 0; f < files; f++) {
+            final ReferenceContainerCache<WordReference> cache = new ReferenceContainerCache<WordReference>(Segment.wordReferenceFactory, Word.commonHashOrder, Word.commonHashLength);
+            for (int i = 0; i < perFile; i++) {
+                final WordReferenceRow ref = reference(f * perFile + i);
+                cache.add(common, ref);
+                cache.add(Word.word2hash("file" + f), ref);
+            }
+            dispatcher.dump(cache, array.newContainerBLOBFile(), array);
+            Thread.sleep(2); // the file names are made of the time
+        }
+        assertEquals(files, array.entries());
+        assertTrue(dispatcher.getBytesDumped() > 0);
+
+        dispatcher.start();
+        assertTrue(array.shrinkManySmallFiles(dispatcher, Long.MAX_VALUE, 8));
+        dispatcher.terminate();
+
+        assertEquals(1, array.entries());
+        assertEquals(1, dispatcher.getMergeCount());
+        assertTrue(dispatcher.getMergeAmplification() > 1.0d);
+        assertEquals(files * perFile, array.get(common).size());
+        for (int f = 0; f < files; f++) assertEquals(perFile, array.get(Word.word2hash("file" + f)).size());
+        array.close();
+        FileUtils.deletedelete(dir);
+    }
+
+    /**
+     * Test that dumps which are offered while and after the dispatcher terminates are not lost
+     */
+    @Test
+    public void testDumpAfterTerminate() throws Exception {
+        final File dir = new File(this.testDir);
+        FileUtils.deletedelete(dir);
+        dir.mkdirs();
+        final ReferenceContainerArray<WordReference> array = new ReferenceContainerArray<WordReference>(dir, "text.index", Segment.wordReferenceFactory, Word.commonHashOrder, Word.commonHashLength);
+        final IODispatcher dispatcher = new IODispatcher(8, 2, 1024 * 1024);
+        dispatcher.start();
+        final int files = 4;
+        final Thread terminator = new Thread() {
+            @Override
+            public void run() {
+                dispatcher.terminate();
+            }
+        };
+        for (int f = 0; f < files; f++) {
+            if (f == files / 2) terminator.start();
+            final ReferenceContainerCache<WordReference> cache = new ReferenceContainerCache<WordReference>(Segment.wordReferenceFactory, Word.commonHashOrder, Word.commonHashLength);
+            cache.add(Word.word2hash("file" + f), reference(f));
+            dispatcher.dump(cache, array.newContainerBLOBFile(), array);
+            Thread.sleep(2); // the file names are made of the time
+        }
+        terminator.join();
+        assertEquals(files, array.entries());
+        assertEquals(files, dispatcher.getDumpCount());
+        array.close();
+        FileUtils.deletedelete(dir);
+    }
+}
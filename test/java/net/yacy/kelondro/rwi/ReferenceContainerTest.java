@@ -19,18 +19,23 @@
  */
 package net.yacy.kelondro.rwi;
 
+import java.util.Arrays;
 import java.util.Queue;
 import java.util.concurrent.LinkedBlockingQueue;
+import net.yacy.cora.document.encoding.UTF8;
 import net.yacy.cora.document.id.DigestURL;
 import net.yacy.cora.document.id.MultiProtocolURL;
 import net.yacy.crawler.retrieval.Response;
 import net.yacy.kelondro.data.word.Word;
 import net.yacy.kelondro.data.word.WordReference;
 import net.yacy.kelondro.data.word.WordReferenceFactory;
+import net.yacy.kelondro.data.word.WordReferenceRow;
 import net.yacy.kelondro.data.word.WordReferenceVars;
 import net.yacy.kelondro.util.Bitfield;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import org.junit.Test;
 
@@ -97,4 +102,69 @@ public class ReferenceContainerTest {
         assertEquals("distance()", wentry.distance(), wc.distance());
     }
 
+    private static ReferenceContainer<WordReference> container(final String term, final int modulo, final int count) throws Exception {
+        ReferenceFactory<WordReference> wordReferenceFactory = new WordReferenceFactory();
+        ReferenceContainer<WordReference> rc = new ReferenceContainer<WordReference>(wordReferenceFactory, Word.word2hash(term), count);
+        for (int i = 0; i < count * modulo; i += modulo) {
+            DigestURL url = new DigestURL("http://test.org/page" + i + ".html");
+            WordReferenceRow ientry = new WordReferenceRow(
+                    url.hash(), 30, 3, 2, 100, 10,
+                    System.currentTimeMillis(), System.currentTimeMillis(),
+                    UTF8.getBytes("en"), Response.DT_TEXT, 1, 2);
+            Word word = new Word(i + 1, 1, 1);
+            word.flags = new Bitfield(4);
+            ientry.setWord(word);
+            rc.add(ientry);
+        }
+        return rc;
+    }
+
+    /**
+     * Test of the join of many containers of very different size, of class ReferenceContainer.
+     */
+    @Test
+    public void testJoinContainers() throws Exception {
+        ReferenceFactory<WordReference> wordReferenceFactory = new WordReferenceFactory();
+        ReferenceContainer<WordReference> frequent = container("frequent", 1, 6000); // page0 .. page5999
+        ReferenceContainer<WordReference> medium = container("medium", 3, 800);      // page0, page3 .. page2397
+        ReferenceContainer<WordReference> rare = container("rare", 100, 20);         // page0, page100 .. page1900
+
+        // expected: the pages of the rare container which are also in the medium container (multiples of 300 up to 1800)
+        ReferenceContainer<WordReference> joined = ReferenceContainer.joinContainers(wordReferenceFactory, Arrays.asList(frequent, rare, medium), Integer.MAX_VALUE);
+        assertNotNull(joined);
+        assertEquals(7, joined.size());
+        for (int i = 0; i <= 1800; i += 300) {
+            assertTrue(joined.has(new DigestURL("http://test.org/page" + i + ".html").hash()));
+        }
+
+        // the pairwise join must have the same result as the join of both containers in one pass
+        ReferenceContainer<WordReference> pairwise = ReferenceContainer.joinConstructive(wordReferenceFactory, medium, frequent, Integer.MAX_VALUE);
+        assertEquals(800, pairwise.size());
+
+        // an empty container gives no result
+        assertNull(ReferenceContainer.joinContainers(wordReferenceFactory, Arrays.asList(rare, container("other", 1, 0)), Integer.MAX_VALUE));
+    }
+
+    /**
+     * Test of excludeDestructive, of class ReferenceContainer.
+     */
+    @Test
+    public void testExcludeDestructive() throws Exception {
+        ReferenceFactory<WordReference> wordReferenceFactory = new WordReferenceFactory();
+
+        // a small container is removed from a large container
+        ReferenceContainer<WordReference> pivot = container("frequent", 1, 3000);
+        ReferenceContainer<WordReference> result = ReferenceContainer.excludeDestructive(wordReferenceFactory, pivot, container("rare", 100, 20));
+        assertEquals(3000 - 20, result.size());
+        assertFalse(result.has(new DigestURL("http://test.org/page100.html").hash()));
+        assertTrue(result.has(new DigestURL("http://test.org/page101.html").hash()));
+
+        // a large container is removed from a small container
+        pivot = container("medium", 3, 200);
+        result = ReferenceContainer.excludeDestructive(wordReferenceFactory, pivot, container("frequent", 2, 3000));
+        assertEquals(100, result.size()); // the odd multiples of 3 remain
+        assertTrue(result.has(new DigestURL("http://test.org/page3.html").hash()));
+        assertFalse(result.has(new DigestURL("http://test.org/page6.html").hash()));
+    }
+
 }
@@ -118,4 +118,74 @@ public class BlacklistTest {
     	Assert.assertFalse(Blacklist.isListed("fr.notblacklisted.org", "/path/with/many/segments/e/f/g/h/i/j/k/l/m/n/o/p/q/r/s/t/u/v/w/x/y/z/file.html", blacklistMapMatched, blacklistMapNotMatched));
     }
 
+
+    /**
+     * Tests the host wildcards and the host regex pre-filter of the compiled matcher.
+     */
+    @Test
+    public void testMatcherHostForms() {
+        final Map<String, Set<Pattern>> blacklistMapMatched = new HashMap<>();
+        Set<Pattern> patterns = new HashSet<>();
+        patterns.add(Pattern.compile("ads/.*", Pattern.CASE_INSENSITIVE));
+        blacklistMapMatched.put("*.tracker.com", patterns);
+
+        patterns = new HashSet<>();
+        patterns.add(Pattern.compile("private/.*", Pattern.CASE_INSENSITIVE));
+        patterns.add(Pattern.compile("secret\\.html", Pattern.CASE_INSENSITIVE));
+        blacklistMapMatched.put("example.org", patterns);
+
+        final Map<String, Set<Pattern>> blacklistMapNotMatched = new HashMap<>();
+        patterns = new HashSet<>();
+        patterns.add(Pattern.compile(".*"));
+        blacklistMapNotMatched.put(".*doubleclick\\..*", patterns);
+
+        final BlacklistMatcher matcher = new BlacklistMatcher(blacklistMapMatched, blacklistMapNotMatched);
+        assertTrue(matcher.isListed("www.tracker.com", "/ads/banner.gif"));
+        assertTrue(matcher.isListed("a.b.tracker.com", "/ADS/banner.gif"));
+        assertFalse(matcher.isListed("tracker.com", "/ads/banner.gif"));
+        assertFalse(matcher.isListed("www.tracker.com", "/index.html"));
+        assertFalse(matcher.isListed("notatracker.com", "/ads/banner.gif"));
+
+        assertTrue(matcher.isListed("example.org", "/private/index.html"));
+        assertTrue(matcher.isListed("www.example.org", "/secret.html"));
+        assertTrue(matcher.isListed("example.org.uk", "/secret.html"));
+        assertFalse(matcher.isListed("example.org", "/secretxhtml"));
+        assertFalse(matcher.isListed("myexample.org", "/private/index.html"));
+
+        assertTrue(matcher.isListed("ad.doubleclick.net", "/"));
+        assertTrue(matcher.isListed("ad.doubleclick.net", "/other")); // from the verdict cache
+        assertTrue(matcher.isListed("doubleclick.net", "/"));
+        assertFalse(matcher.isListed("doubleclick-net.org", "/"));
+        assertEquals(4, matcher.size());
+
+        assertEquals("doubleclick.", BlacklistMatcher.literal(".*doubleclick\\..*"));
+        assertEquals("samples", BlacklistMatcher.literal(".*samples.fr"));
+        assertNull(BlacklistMatcher.literal("(ads|track)\\..*"));
+        assertNull(BlacklistMatcher.literal(".*a?b.*"));
+        assertEquals("tracker", BlacklistMatcher.literal(".*ads\\d+tracker.*"));
+    }
+
+    /**
+     * Tests that escapes with an argument do not produce a wrong literal, which would reject matching hosts.
+     */
+    @Test
+    public void testLiteralEscapes() {
+        assertNull(BlacklistMatcher.literal("a\\x61bc"));
+        assertNull(BlacklistMatcher.literal("ad\\u0073server"));
+        assertNull(BlacklistMatcher.literal("ads\\0141server"));
+        assertNull(BlacklistMatcher.literal("tr\\cJacker"));
+        assertNull(BlacklistMatcher.literal("ads\\p{L}server"));
+        assertNull(BlacklistMatcher.literal("ads\\Q.\\Eserver"));
+        assertNull(BlacklistMatcher.literal("ads\\1server"));
+
+        final Map<String, Set<Pattern>> blacklistMapNotMatched = new HashMap<>();
+        final Set<Pattern> patterns = new HashSet<>();
+        patterns.add(Pattern.compile(".*"));
+        blacklistMapNotMatched.put("a\\x61bc", patterns);
+        blacklistMapNotMatched.put("ads\\Q.\\Eserver", patterns);
+        final BlacklistMatcher matcher = new BlacklistMatcher(new HashMap<String, Set<Pattern>>(), blacklistMapNotMatched);
+        assertTrue(matcher.isListed("aabc", "/"));
+        assertTrue(matcher.isListed("ads.server", "/"));
+        assertFalse(matcher.isListed("adsxserver", "/"));
+    }
 }
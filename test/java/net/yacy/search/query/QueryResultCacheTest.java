@@ -0,0 +1,86 @@
+package net.yacy.search.query;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.yacy.cora.document.encoding.ASCII;
+import net.yacy.cora.sorting.ConcurrentScoreMap;
+import net.yacy.cora.sorting.ScoreMap;
+
+import org.junit.Test;
+
+public class QueryResultCacheTest {
+
+    private static byte[] hash(final int i) {
+        return ASCII.getBytes(String.format("AAAAAAAA%04d", i));
+    }
+
+    private static QueryResultCache.Entry entry(final int first, final int count) {
+        final List<byte[]> hashes = new ArrayList<byte[]>();
+        for (int i = first; i < first + count; i++) hashes.add(hash(i));
+        final Map<String, ScoreMap<String>> facets = new HashMap<String, ScoreMap<String>>();
+        final ScoreMap<String> hosts = new ConcurrentScoreMap<String>();
+        hosts.inc("yacy.net", 7);
+        hosts.inc("example.org", 2);
+        facets.put("hosts", hosts);
+        facets.put("language", new ConcurrentScoreMap<String>()); // empty navigators are not stored
+        return new QueryResultCache.Entry(hashes, new int[]{count, 42}, facets);
+    }
+
+    /**
+     * Test that an entry keeps the ranking, the counters and the facet counts
+     */
+    @Test
+    public void testEntry() {
+        final QueryResultCache.Entry entry = entry(0, 20);
+        assertEquals(20, entry.size());
+        for (int i = 0; i < 20; i++) assertArrayEquals(hash(i), entry.urlhash(i));
+        assertTrue(entry.contains(hash(19)));
+        assertFalse(entry.contains(hash(20)));
+        assertArrayEquals(new int[]{20, 42}, entry.getCounters());
+        assertEquals(1, entry.facetNames().size());
+        final ScoreMap<String> hosts = new ConcurrentScoreMap<String>();
+        entry.facet("hosts", hosts);
+        assertEquals(7, hosts.get("yacy.net"));
+        assertEquals(2, hosts.get("example.org"));
+    }
+
+    /**
+     * Test that the least recently used entries are evicted when the byte budget is exceeded
+     */
+    @Test
+    public void testEviction() {
+        final long entrySize = entry(0, 20).byteSize() + 40 + 2 * "q0".length();
+        final QueryResultCache cache = new QueryResultCache(3 * entrySize, 3600000);
+        cache.put("q0", entry(0, 20));
+        cache.put("q1", entry(20, 20));
+        cache.put("q2", entry(40, 20));
+        assertEquals(3, cache.size());
+        assertEquals(3 * entrySize, cache.byteSize());
+        assertNotNull(cache.get("q0")); // q1 is now the least recently used entry
+        cache.put("q3", entry(60, 20));
+        assertEquals(3, cache.size());
+        assertNull(cache.get("q1"));
+        assertNotNull(cache.get("q0"));
+        assertEquals(1, cache.cacheEvict);
+
+        assertEquals(1, cache.removeURL(hash(65)));
+        assertNull(cache.get("q3"));
+        assertEquals(2 * entrySize, cache.byteSize());
+
+        cache.setLimits(entrySize, 3600000);
+        assertEquals(1, cache.size());
+        cache.setLimits(entrySize, -1);
+        assertNull(cache.get("q0")); // expired
+        assertEquals(0, cache.byteSize());
+    }
+}
@@ -0,0 +1,80 @@
+package net.yacy.server.http;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+import net.yacy.cora.document.encoding.UTF8;
+import net.yacy.kelondro.util.FileUtils;
+import net.yacy.server.serverObjects;
+
+import org.junit.Test;
+
+public class TemplateEngineTest {
+
+    private static String render(final String template, final serverObjects pattern) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TemplateEngine.writeTemplate("test", new ByteArrayInputStream(UTF8.getBytes(template)), out, pattern);
+        return UTF8.String(out.toByteArray());
+    }
+
+    /**
+     * Test of the template syntax, see the example in TemplateEngine
+     */
+    @Test
+    public void testWriteTemplate() throws IOException {
+        final String template = "#{times}#\nGood #(daytime)#morning::evening#(/daytime)#, #[name]#!(#[num]#)\n#{/times}#\n# #[missing]#";
+        final serverObjects pattern = new serverObjects();
+        pattern.put("times", 2);
+        for (int i = 0; i < 2; i++) {
+            pattern.put("times_" + i + "_daytime", i);
+            pattern.put("times_" + i + "_name", "John Connor");
+            pattern.put("times_" + i + "_num", i + 1);
+        }
+        assertEquals("Good morning, John Connor!(1)\nGood evening, John Connor!(2)\n# -UNRESOLVED_PATTERN-", render(template, pattern));
+        assertEquals(template, render(template, null));
+    }
+
+    /**
+     * Test of alternatives with nested alternatives and values out of range
+     */
+    @Test
+    public void testAlternatives() throws IOException {
+        final String template = "#(a)#zero::one#(b)#x::y#(/b)#::two#(/a)#";
+        final serverObjects pattern = new serverObjects();
+        assertEquals("zero", render(template, pattern));
+        pattern.put("a", "true");
+        pattern.put("a_b", 1);
+        assertEquals("oney", render(template, pattern));
+        pattern.put("a", 7);
+        assertEquals("two", render(template, pattern));
+        pattern.put("a", "false");
+        assertEquals("zero", render(template, pattern));
+    }
+
+    /**
+     * Test that a cached template is compiled again when the file changes
+     */
+    @Test
+    public void testFileCache() throws IOException {
+        final File file = new File("test/DATA/templates/test.html");
+        file.getParentFile().mkdirs();
+        final serverObjects pattern = new serverObjects();
+        pattern.put("name", "world");
+
+        FileUtils.copy(UTF8.getBytes("hello #[name]#"), file);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TemplateEngine.writeTemplate(file, out, pattern);
+        assertEquals("hello world", UTF8.String(out.toByteArray()));
+
+        FileUtils.copy(UTF8.getBytes("goodbye #[name]#"), file);
+        file.setLastModified(file.lastModified() + 2000);
+        out = new ByteArrayOutputStream();
+        TemplateEngine.writeTemplate(file, out, pattern);
+        assertEquals("goodbye world", UTF8.String(out.toByteArray()));
+        FileUtils.deletedelete(file.getParentFile());
+    }
+}